@@ -0,0 +1,247 @@
+package basics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+import javatools.administrative.Announce;
+import javatools.filehandlers.FileSet;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class converts all theme files of a directory (or of a FileSet glob such
+as "yago/*.tsv") into another format. The files are scheduled largest first
+on a work-stealing pool, so that a big file does not end up running alone at
+the end. A semaphore limits the number of files that are read and written at
+the same time. Outputs that are newer than their inputs are skipped. If
+both the TTL and the TSV file of a theme are given, the TTL file is the
+source. At the end, the class prints the throughput per file and in total.
+ */
+public class BatchConverter {
+
+  /** Target format (tsv, tsv-value, ttl), or NULL for "the other format" */
+  protected final String to;
+
+  /** Compress the output? */
+  protected final boolean compress;
+
+  /** Parse every fact instead of transcoding? */
+  protected final boolean parse;
+
+  /** Threads of the pool */
+  protected final int threads;
+
+  /** Limits the number of files that are converted at the same time */
+  protected final Semaphore ioSlots;
+
+  /** Files that are being converted */
+  protected Set<File> inputs = Collections.emptySet();
+
+  /** Result of the conversion of one file */
+  public static class Result implements Comparable<Result> {
+
+    public final File input;
+
+    public final File output;
+
+    /** Number of facts, or -1 if the file was skipped */
+    public long facts = -1;
+
+    /** Bytes read */
+    public long bytes;
+
+    /** Time in ms */
+    public long time;
+
+    /** Error, or NULL */
+    public Exception error;
+
+    public Result(File input, File output) {
+      this.input = input;
+      this.output = output;
+    }
+
+    /** TRUE if the file was skipped */
+    public boolean skipped() {
+      return (facts == -1 && error == null);
+    }
+
+    @Override
+    public int compareTo(Result o) {
+      return (input.getName().compareTo(o.input.getName()));
+    }
+
+    @Override
+    public String toString() {
+      if (error != null) return (String.format("%-40s FAILED: %s", input.getName(), error));
+      if (skipped()) return (String.format("%-40s up to date", input.getName()));
+      return (String.format("%-40s %,15d facts %,10.1f MB %,8.1f s %,8.1f MB/s", input.getName(), facts, bytes / 1e6, time / 1000.0,
+          bytes / 1e3 / Math.max(1, time)));
+    }
+  }
+
+  /**
+   * Creates a batch converter. threads is the number of worker threads,
+   * concurrentFiles the maximal number of files that are converted at the
+   * same time.
+   */
+  public BatchConverter(String to, boolean compress, boolean parse, int threads, int concurrentFiles) {
+    this.to = to;
+    this.compress = compress;
+    this.parse = parse;
+    this.threads = Math.max(1, threads);
+    this.ioSlots = new Semaphore(Math.max(1, concurrentFiles));
+  }
+
+  /** Returns the theme files of a directory or a FileSet glob */
+  public static List<File> inputFiles(String dirOrGlob) {
+    List<File> result = new ArrayList<>();
+    File dir = new File(dirOrGlob);
+    Collection<File> candidates = dir.isDirectory() ? java.util.Arrays.asList(dir.listFiles()) : new FileSet(dirOrGlob);
+    for (File f : candidates) {
+      if (!f.isFile()) continue;
+      String ext = FactWriter.formatExtension(f);
+      if (ext.equals(".tsv") || ext.equals(".ttl")) result.add(f);
+    }
+    return (result);
+  }
+
+  /** Returns the target format for a file */
+  protected String targetFormat(File input) {
+    if (to != null) return (to);
+    return (FactWriter.formatExtension(input).equals(".ttl") ? "tsv-value" : "ttl");
+  }
+
+  /** TRUE if the output exists and is newer than the input */
+  protected static boolean upToDate(File input, File output) {
+    return (output.exists() && output.length() > 0 && output.lastModified() >= input.lastModified());
+  }
+
+  /**
+   * TRUE if the input is itself the output of an earlier run. This happens
+   * only without a target format, when both the TTL and the TSV file of a
+   * theme are inputs: then the TTL file is the source and the TSV file is
+   * derived. This keeps us from translating yagoTypes.tsv back into the
+   * original yagoTypes.ttl, no matter which of the two is newer.
+   */
+  protected boolean isDerived(File input, File output) {
+    if (to != null || !inputs.contains(output.getAbsoluteFile())) return (false);
+    if (!FactWriter.formatExtension(output).equals(".ttl")) return (false);
+    if (input.lastModified() > output.lastModified()) Announce.warning(input, "is newer than its source", output, "and is not converted back");
+    return (true);
+  }
+
+  /** Converts one file */
+  protected Result convert(File input) {
+    String format = targetFormat(input);
+    File output = Tsv2Ttl.outputFile(input, format, compress);
+    Result result = new Result(input, output);
+    if (output.equals(input) || upToDate(input, output) || isDerived(input, output)) return (result);
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+        boolean acquired = false;
+
+        @Override
+        public boolean block() throws InterruptedException {
+          ioSlots.acquire();
+          acquired = true;
+          return (true);
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return (acquired || (acquired = ioSlots.tryAcquire()));
+        }
+      });
+    } catch (InterruptedException e) {
+      result.error = e;
+      return (result);
+    }
+    long start = System.currentTimeMillis();
+    try {
+      if (!parse && !FactWriter.formatExtension(input).equals(FactWriter.formatExtension(output))) {
+        Transcoder transcoder = Transcoder.transcode(input, output, format.equals("tsv-value"));
+        result.facts = transcoder.facts();
+        result.bytes = transcoder.bytesRead();
+      } else {
+        try (FactWriter out = Tsv2Ttl.writer(output, format)) {
+          ConversionPipeline pipeline = new ConversionPipeline(input, out, 1).setReport(false);
+          result.facts = pipeline.run();
+          result.bytes = pipeline.bytesRead();
+        }
+      }
+    } catch (Exception e) {
+      result.error = e;
+      result.facts = -1;
+      output.delete();
+    } finally {
+      ioSlots.release();
+    }
+    result.time = System.currentTimeMillis() - start;
+    return (result);
+  }
+
+  /** Converts the files, largest first. Returns the results ordered by file name */
+  public List<Result> convert(Collection<File> inputs) {
+    List<File> files = new ArrayList<>(inputs);
+    this.inputs = new HashSet<>();
+    for (File f : files) {
+      this.inputs.add(f.getAbsoluteFile());
+    }
+    Collections.sort(files, (a, b) -> Long.compare(b.length(), a.length()));
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+      for (File f : files) {
+        tasks.add(pool.submit(() -> convert(f)));
+      }
+      List<Result> results = new ArrayList<>();
+      for (ForkJoinTask<Result> task : tasks) {
+        results.add(task.join());
+      }
+      Collections.sort(results);
+      return (results);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** Prints the results and a total */
+  public static void printSummary(List<Result> results, long time) {
+    long facts = 0, bytes = 0;
+    int converted = 0, skipped = 0, failed = 0;
+    for (Result r : results) {
+      Announce.message(r);
+      if (r.error != null) failed++;
+      else if (r.skipped()) skipped++;
+      else {
+        converted++;
+        facts += r.facts;
+        bytes += r.bytes;
+      }
+    }
+    Announce.message(String.format("Total: %d converted, %d up to date, %d failed, %,d facts, %,.1f MB in %,.1f s (%,.1f MB/s, %,.0f facts/s)", converted,
+        skipped, failed, facts, bytes / 1e6, time / 1000.0, bytes / 1e3 / Math.max(1, time), facts * 1000.0 / Math.max(1, time)));
+  }
+}
@@ -0,0 +1,35 @@
+package basics;
+
+import java.nio.ByteBuffer;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class has helpers for the memory-mapped files of the indexes
+(GeoIndex, LabelIndex).
+
+Example:
+  IntBuffer starts = Buffers.slice(mapped, 16, 4 * size).asIntBuffer();
+ */
+public class Buffers {
+
+  /** Returns the part [start, start+length) of a buffer, without changing the buffer */
+  public static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+    ByteBuffer result = buffer.duplicate();
+    result.position(start);
+    result.limit(start + length);
+    return (result.slice());
+  }
+}
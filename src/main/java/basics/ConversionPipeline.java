@@ -0,0 +1,286 @@
+package basics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class converts a fact file into another format with several threads.
+It has three stages:
+(1) the reader splits the input into chunks. For TSV, these are chunks of
+lines. For TTL, these are chunks of parsed facts, because TTL statements
+depend on the preceding prefixes and can span several lines.
+(2) a pool of workers parses (TSV) and formats the chunks.
+(3) the writer appends the formatted chunks to the output in the order of
+the input.
+The stages are connected by a bounded queue, so that memory stays bounded
+even if the writer is slower than the reader. Writers that cannot format
+facts (see FactFormatter) get the chunks as batches of facts. The
+reader stops at the first error of the writer.
+ */
+public class ConversionPipeline {
+
+  /** Number of lines or facts per chunk */
+  public static final int CHUNKSIZE = 10000;
+
+  /** Seconds between progress reports */
+  public static final int REPORTINTERVAL = 10;
+
+  /** Input file */
+  protected final File input;
+
+  /** Output writer */
+  protected final FactWriter output;
+
+  /** The output writer as a formatter, or NULL if it cannot format */
+  protected final FactFormatter formatter;
+
+  /** Number of worker threads */
+  protected final int threads;
+
+  /** Facts written so far */
+  protected final AtomicLong facts = new AtomicLong();
+
+  /** Input bytes read so far */
+  protected final AtomicLong bytesRead = new AtomicLong();
+
+  /** Output bytes written so far */
+  protected final AtomicLong bytesWritten = new AtomicLong();
+
+  /** Start time in ms */
+  protected long start;
+
+  /** Print progress messages? */
+  protected boolean report = true;
+
+  /** A formatted chunk, or a chunk of facts if the writer cannot format */
+  protected static class Chunk {
+
+    final CharSequence text;
+
+    final Fact[] facts;
+
+    final int numFacts;
+
+    Chunk(CharSequence text, int numFacts) {
+      this.text = text;
+      this.facts = null;
+      this.numFacts = numFacts;
+    }
+
+    Chunk(Fact[] facts, int numFacts) {
+      this.text = null;
+      this.facts = facts;
+      this.numFacts = numFacts;
+    }
+  }
+
+  /** The writer stage of the current run */
+  protected WriterStage writer;
+
+  /** Input stream that counts the bytes read */
+  protected class CountingInputStream extends FilterInputStream {
+
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) bytesRead.incrementAndGet();
+      return (c);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) bytesRead.addAndGet(n);
+      return (n);
+    }
+  }
+
+  /**
+   * Creates a pipeline that converts the input file into the output writer.
+   * If the writer is a FactFormatter, the workers format the facts in
+   * parallel.
+   */
+  public ConversionPipeline(File input, FactWriter output, int threads) {
+    this.input = input;
+    this.output = output;
+    this.formatter = FactFormatter.of(output);
+    this.threads = Math.max(1, threads);
+  }
+
+  /** Switches the progress messages on or off */
+  public ConversionPipeline setReport(boolean report) {
+    this.report = report;
+    return (this);
+  }
+
+  /** Returns the number of input bytes read so far */
+  public long bytesRead() {
+    return (bytesRead.get());
+  }
+
+  /** Runs the conversion, returns the number of facts */
+  public long run() throws IOException, InterruptedException {
+    start = System.currentTimeMillis();
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    if (report) reporter.scheduleAtFixedRate(() -> Announce.message(progress()), REPORTINTERVAL, REPORTINTERVAL, TimeUnit.SECONDS);
+    // An empty future marks the end of the input
+    BlockingQueue<Future<Chunk>> queue = new ArrayBlockingQueue<>(threads * 4);
+    Future<Chunk> end = workers.submit(() -> null);
+    writer = new WriterStage(queue);
+    Thread writerThread = new Thread(writer, "ConversionPipeline writer");
+    writerThread.start();
+    try (InputStream in = new CountingInputStream(new FileInputStream(input))) {
+      String name = input.getName();
+      switch (FactSource.formatExtension(name)) {
+        case ".tsv":
+          readTsv(FactSource.openReader(in, name), workers, queue);
+          break;
+        case ".ttl":
+          readTtl(new N4Reader(FactSource.openReader(in, name), input.toString()), workers, queue);
+          break;
+        default:
+          throw new IOException("Unknown file format " + input);
+      }
+    } finally {
+      queue.put(end);
+      writerThread.join();
+      workers.shutdownNow();
+      reporter.shutdownNow();
+    }
+    if (writer.error != null) throw new IOException("Error while writing " + output.getFile(), writer.error);
+    return (facts.get());
+  }
+
+  /** Reader stage for TSV: cuts the input into chunks of lines */
+  protected void readTsv(BufferedReader in, ExecutorService workers, BlockingQueue<Future<Chunk>> queue) throws IOException, InterruptedException {
+    List<String> lines = new ArrayList<>(CHUNKSIZE);
+    String line;
+    while (writer.error == null && (line = in.readLine()) != null) {
+      lines.add(line);
+      if (lines.size() == CHUNKSIZE) {
+        queue.put(workers.submit(tsvWorker(lines)));
+        lines = new ArrayList<>(CHUNKSIZE);
+      }
+    }
+    if (!lines.isEmpty() && writer.error == null) queue.put(workers.submit(tsvWorker(lines)));
+  }
+
+  /** Worker that parses and formats TSV lines */
+  protected Callable<Chunk> tsvWorker(final List<String> lines) {
+    return () -> {
+      Fact[] chunk = new Fact[lines.size()];
+      int count = 0;
+      for (String line : lines) {
+        Fact f = TsvReader.parseLine(line);
+        if (f != null) chunk[count++] = f;
+      }
+      return (format(chunk, count));
+    };
+  }
+
+  /** Formats facts into a chunk, or keeps them if the writer cannot format */
+  protected Chunk format(Fact[] chunk, int count) {
+    if (formatter == null) return (new Chunk(chunk, count));
+    StringBuilder result = new StringBuilder(count * 100);
+    for (int i = 0; i < count; i++) {
+      formatter.format(chunk[i], result);
+    }
+    return (new Chunk(result, count));
+  }
+
+  /** Reader stage for TTL: parses the input and cuts it into chunks of facts */
+  protected void readTtl(Iterator<Fact> in, ExecutorService workers, BlockingQueue<Future<Chunk>> queue) throws InterruptedException {
+    Fact[] chunk = new Fact[CHUNKSIZE];
+    int count;
+    while (writer.error == null && (count = FactSource.nextBatch(in, chunk)) > 0) {
+      queue.put(workers.submit(formatWorker(chunk, count)));
+      chunk = new Fact[CHUNKSIZE];
+    }
+  }
+
+  /** Worker that formats facts */
+  protected Callable<Chunk> formatWorker(final Fact[] chunk, final int count) {
+    return () -> format(chunk, count);
+  }
+
+  /** Writer stage: writes the chunks in the order in which they were read */
+  protected class WriterStage implements Runnable {
+
+    final BlockingQueue<Future<Chunk>> queue;
+
+    /** Error that happened while writing, or NULL */
+    volatile Throwable error;
+
+    WriterStage(BlockingQueue<Future<Chunk>> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          Chunk chunk = queue.take().get();
+          if (chunk == null) return;
+          if (error != null) continue;
+          if (chunk.text != null) formatter.writeFormatted(chunk.text);
+          else output.write(chunk.facts, 0, chunk.numFacts);
+          facts.addAndGet(chunk.numFacts);
+          bytesWritten.set(output.bytesWritten());
+        } catch (InterruptedException e) {
+          error = e;
+          return;
+        } catch (ExecutionException e) {
+          // Keep on draining the queue until the reader has seen the error
+          error = e.getCause();
+        } catch (IOException | RuntimeException e) {
+          error = e;
+        }
+      }
+    }
+  }
+
+  /** Returns a progress message with facts/sec and bytes/sec */
+  public String progress() {
+    double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+    return (String.format("%,d facts (%,.0f facts/s), %,.1f MB read (%,.1f MB/s), %,.1f MB written (%,.1f MB/s)", facts.get(), facts.get() / seconds,
+        bytesRead.get() / 1e6, bytesRead.get() / 1e6 / seconds, bytesWritten.get() / 1e6, bytesWritten.get() / 1e6 / seconds));
+  }
+}
@@ -0,0 +1,120 @@
+package basics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class estimates how often strings occur in fixed memory (count-min
+sketch). Each string increments one counter in each of the rows; the
+estimate is the smallest of these counters. It never underestimates, and
+it overestimates by at most 2N/width (N = total count) with probability
+1-(1/2)^depth. Sketches of the same size can be merged.
+ */
+public class CountMinSketch {
+
+  /** Counters, row by row */
+  protected final long[] counts;
+
+  /** Number of rows and counters per row */
+  protected final int depth, width;
+
+  /** Total count */
+  protected long total = 0;
+
+  /** Uses 4 rows of 2048 counters (64 KB) */
+  public CountMinSketch() {
+    this(4, 2048);
+  }
+
+  public CountMinSketch(int depth, int width) {
+    if (depth < 1 || width < 1) throw new IllegalArgumentException("CountMinSketch needs at least one row and one counter");
+    this.depth = depth;
+    this.width = width;
+    this.counts = new long[depth * width];
+  }
+
+  /** Returns the counter of a hash in a row */
+  protected int index(long hash, int row) {
+    // Double hashing: h1 + row * h2
+    int h = (int) hash + row * (int) (hash >>> 32);
+    return (row * width + (h & 0x7FFFFFFF) % width);
+  }
+
+  /** Adds a string count times */
+  public void add(CharSequence s, long count) {
+    long hash = HyperLogLog.hash(s);
+    for (int row = 0; row < depth; row++) {
+      counts[index(hash, row)] += count;
+    }
+    total += count;
+  }
+
+  /** Adds a string once */
+  public void add(CharSequence s) {
+    add(s, 1);
+  }
+
+  /** Returns the estimated count of a string (never too small) */
+  public long estimate(CharSequence s) {
+    long hash = HyperLogLog.hash(s);
+    long result = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      result = Math.min(result, counts[index(hash, row)]);
+    }
+    return (result);
+  }
+
+  /** Returns the total count */
+  public long total() {
+    return (total);
+  }
+
+  /** Adds the counters of another sketch */
+  public void merge(CountMinSketch other) {
+    if (other.depth != depth || other.width != width) throw new IllegalArgumentException("Cannot merge CountMinSketches of different sizes");
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    total += other.total;
+  }
+
+  /** Writes the sketch */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(depth);
+    out.writeInt(width);
+    out.writeLong(total);
+    for (long c : counts) {
+      out.writeLong(c);
+    }
+  }
+
+  /** Reads a sketch */
+  public static CountMinSketch read(DataInput in) throws IOException {
+    CountMinSketch result = new CountMinSketch(in.readInt(), in.readInt());
+    result.total = in.readLong();
+    for (int i = 0; i < result.counts.length; i++) {
+      result.counts[i] = in.readLong();
+    }
+    return (result);
+  }
+
+  @Override
+  public String toString() {
+    return ("CountMinSketch " + depth + "x" + width + " of " + total);
+  }
+}
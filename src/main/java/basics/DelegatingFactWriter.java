@@ -0,0 +1,87 @@
+package basics;
+
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class wraps a FactWriter and passes everything on to it, including
+format() and writeFormatted() if the wrapped writer is a FactFormatter.
+Subclasses override what they want to see. Subclasses that have to see every
+fact must return NULL in formatter(), because formatted text bypasses
+write().
+ */
+public class DelegatingFactWriter extends FactWriter implements FactFormatter {
+
+  /** The writer that we pass on to */
+  protected final FactWriter out;
+
+  public DelegatingFactWriter(FactWriter out) {
+    super(out.getFile());
+    this.out = out;
+  }
+
+  @Override
+  public void write(Fact f) throws IOException {
+    out.write(f);
+  }
+
+  @Override
+  public void write(Fact[] facts, int offset, int length) throws IOException {
+    out.write(facts, offset, length);
+  }
+
+  @Override
+  public void writeComment(String comment) throws IOException {
+    out.writeComment(comment);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /** Returns this writer if the wrapped writer can format (see FactFormatter.of()), else NULL */
+  public FactFormatter formatter() {
+    return (FactFormatter.of(out) == null ? null : this);
+  }
+
+  /** Only if formatter() is not NULL */
+  @Override
+  public void format(Fact f, StringBuilder builder) {
+    ((FactFormatter) out).format(f, builder);
+  }
+
+  /** Only if formatter() is not NULL */
+  @Override
+  public void writeFormatted(CharSequence formatted) throws IOException {
+    ((FactFormatter) out).writeFormatted(formatted);
+  }
+
+  @Override
+  public long bytesWritten() {
+    return (out.bytesWritten());
+  }
+
+  @Override
+  public void indexIds() {
+    out.indexIds();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,84 @@
+package basics;
+
+import java.util.Arrays;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class maps strings (typically fact components) to consecutive ints and
+back. It keeps the strings in an array and an open-addressing hash table of
+ints, so that it needs no objects per entry. It is not thread-safe.
+ */
+public class Dictionary {
+
+  /** The strings, by id */
+  protected String[] strings = new String[16];
+
+  /** Hash table of ids + 1, 0 for empty slots */
+  protected int[] table = new int[32];
+
+  /** Number of strings */
+  protected int size = 0;
+
+  /** Returns the slot of a string in the table */
+  protected int slot(String s) {
+    int mask = table.length - 1;
+    int h = s.hashCode();
+    int i = (h ^ (h >>> 16)) & mask;
+    while (table[i] != 0 && !strings[table[i] - 1].equals(s)) {
+      i = (i + 1) & mask;
+    }
+    return (i);
+  }
+
+  /** Returns the id of a string, or -1 */
+  public int id(String s) {
+    return (table[slot(s)] - 1);
+  }
+
+  /** Returns the id of a string, adds it if necessary */
+  public int add(String s) {
+    int i = slot(s);
+    if (table[i] != 0) return (table[i] - 1);
+    if (size == strings.length) strings = Arrays.copyOf(strings, size * 2);
+    strings[size] = s;
+    table[i] = ++size;
+    if (size * 2 > table.length) rehash();
+    return (size - 1);
+  }
+
+  /** Doubles the hash table */
+  protected void rehash() {
+    table = new int[table.length * 2];
+    for (int id = 0; id < size; id++) {
+      table[slot(strings[id])] = id + 1;
+    }
+  }
+
+  /** Returns the string of an id */
+  public String get(int id) {
+    return (strings[id]);
+  }
+
+  /** Returns the number of strings */
+  public int size() {
+    return (size);
+  }
+
+  /** Shrinks the arrays to the number of strings */
+  public void trim() {
+    strings = Arrays.copyOf(strings, Math.max(1, size));
+  }
+}
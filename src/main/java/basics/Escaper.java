@@ -0,0 +1,246 @@
+package basics;
+
+import javatools.parsers.Char17;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class backslash-encodes and decodes fact components. It produces exactly
+the same output as Char17.encodeBackslash and Char17.decodeBackslash, but it
+first scans for characters that need work and returns the input string itself
+if there are none, which is the common case in YAGO. If there is work to do,
+it copies the clean runs in bulk and handles the special characters in the
+same pass. The legality of ASCII characters is precomputed in a table.
+
+TURTLESTRING and TURTLEURI follow FactComponent.turtleString and
+FactComponent.turtleUri.
+ */
+public class Escaper {
+
+  /** Legal characters */
+  protected final Char17.Legal legal;
+
+  /** Replacement of each ASCII character, or NULL if it is kept */
+  protected final String[] asciiReplacement = new String[128];
+
+  /** Escaper for string literals */
+  public static final Escaper TURTLESTRING = new Escaper(FactComponent.turtleString);
+
+  /** Escaper for URIs in angle brackets */
+  public static final Escaper TURTLEURI = new Escaper(FactComponent.turtleUri);
+
+  /** Creates an escaper that keeps the legal characters (except the backslash) */
+  public Escaper(Char17.Legal legal) {
+    this.legal = legal;
+    for (char c = 0; c < 128; c++) {
+      if (c == '\\' || !legal.isLegal(c)) asciiReplacement[c] = replacement(c);
+    }
+  }
+
+  /** Returns the escape sequence for a character, as Char17.encodeBackslash does */
+  protected static String replacement(char c) {
+    if (Char17.charToBackslash.containsKey(c)) return (Char17.charToBackslash.get(c));
+    String hex = Integer.toHexString(c);
+    return ("\\u0000".substring(0, 6 - hex.length()) + hex);
+  }
+
+  /** Returns the position of the first character in s[start,end) that has to be encoded, or -1 */
+  public int firstSpecial(CharSequence s, int start, int end) {
+    String[] table = asciiReplacement;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c < 128 ? table[c] != null : !legal.isLegal(c)) return (i);
+    }
+    return (-1);
+  }
+
+  /** Encodes a string. Returns the string itself if nothing has to be encoded. */
+  public String encode(String s) {
+    int first = firstSpecial(s, 0, s.length());
+    if (first == -1) return (s);
+    StringBuilder result = new StringBuilder(s.length() + 16);
+    encode(s, first, s.length(), result.append(s, 0, first));
+    return (result.toString());
+  }
+
+  /** Appends the encoding of s[start,end) */
+  public StringBuilder encode(CharSequence s, int start, int end, StringBuilder result) {
+    String[] table = asciiReplacement;
+    int clean = start;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      String replacement;
+      if (c < 128) {
+        replacement = table[c];
+        if (replacement == null) continue;
+      } else {
+        if (legal.isLegal(c)) continue;
+        replacement = replacement(c);
+      }
+      if (clean < i) result.append(s, clean, i);
+      result.append(replacement);
+      clean = i + 1;
+    }
+    if (clean < end) result.append(s, clean, end);
+    return (result);
+  }
+
+  /** Decodes backslash sequences. Returns the string itself if there are none. */
+  public static String decode(String s) {
+    if (s == null) return (null);
+    int first = s.indexOf('\\');
+    if (first == -1) return (s);
+    int length = s.length();
+    StringBuilder result = new StringBuilder(length);
+    result.append(s, 0, first);
+    int clean = first;
+    for (int i = first; i < length; i++) {
+      if (s.charAt(i) != '\\' || i + 1 >= length) continue;
+      if (clean < i) result.append(s, clean, i);
+      clean = i + 1;
+      char next = s.charAt(i + 1);
+      switch (next) {
+        case 'u':
+          int code = i + 6 <= length ? parseHex(s, i + 2, i + 6) : Integer.MIN_VALUE;
+          if (code == Integer.MIN_VALUE) {
+            // Invalid sequences keep the backslash
+            result.append('\\');
+          } else {
+            result.append((char) code);
+            i += 5;
+            clean = i + 1;
+          }
+          break;
+        case 'b':
+          result.append('\b');
+          clean = ++i + 1;
+          break;
+        case 't':
+          result.append('\t');
+          clean = ++i + 1;
+          break;
+        case 'n':
+          result.append('\n');
+          clean = ++i + 1;
+          break;
+        case 'f':
+          result.append('\f');
+          clean = ++i + 1;
+          break;
+        case 'r':
+          result.append('\r');
+          clean = ++i + 1;
+          break;
+        case '\\':
+          result.append('\\');
+          clean = ++i + 1;
+          break;
+        case '"':
+          result.append('"');
+          clean = ++i + 1;
+          break;
+        case '\'':
+          result.append('\'');
+          clean = ++i + 1;
+          break;
+        case '0':
+        case '1':
+        case '2':
+        case '3':
+        case '4':
+        case '5':
+        case '6':
+        case '7':
+          // Char17 collects the digits 0-8 and fails on 8
+          int end = i + 1;
+          while (end < length && s.charAt(end) >= '0' && s.charAt(end) <= '8') {
+            end++;
+          }
+          long octal = 0;
+          for (int j = i + 1; j < end && octal != -1; j++) {
+            char d = s.charAt(j);
+            octal = d == '8' || octal * 8 + d - '0' > Integer.MAX_VALUE ? -1 : octal * 8 + d - '0';
+          }
+          if (octal == -1) {
+            result.append('\\');
+          } else {
+            result.append((char) octal);
+            i = end - 1;
+            clean = end;
+          }
+          break;
+        default:
+          result.append('\\');
+      }
+    }
+    if (clean < length) result.append(s, clean, length);
+    return (result.toString());
+  }
+
+  /**
+   * Parses s[start,end) as Integer.parseInt(s, 16) would. Returns
+   * Integer.MIN_VALUE if the number is invalid.
+   */
+  protected static int parseHex(String s, int start, int end) {
+    boolean negative = false;
+    char first = s.charAt(start);
+    if (first == '-' || first == '+') {
+      negative = first == '-';
+      start++;
+    }
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(s.charAt(i), 16);
+      if (digit < 0) return (Integer.MIN_VALUE);
+      result = result * 16 + digit;
+    }
+    return (negative ? -result : result);
+  }
+
+  /** Benchmark against Char17 */
+  public static void main(String[] args) throws Exception {
+    String[] samples = { "Elvis Presley", "Barack_Obama", "Ludwig van Beethoven was a German composer and pianist.", "Köln",
+        "He said \"hello\"\nand left\\", "a\\u0020b\\nc\\\"d" };
+    int n = 2000000;
+    for (int round = 0; round < 3; round++) {
+      for (String sample : samples) {
+        String decoded = Char17.decodeBackslash(sample);
+        long sum = 0;
+        long time = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          sum += Char17.encodeBackslash(decoded, FactComponent.turtleString).length();
+        }
+        long char17Encode = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          sum += TURTLESTRING.encode(decoded).length();
+        }
+        long escaperEncode = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          sum += Char17.decodeBackslash(sample).length();
+        }
+        long char17Decode = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          sum += decode(sample).length();
+        }
+        long escaperDecode = System.nanoTime() - time;
+        System.out.printf("%-60s encode: Char17 %4d ns, Escaper %4d ns   decode: Char17 %4d ns, Escaper %4d ns  (%d)%n", sample.replace("\n", " "),
+            char17Encode / n, escaperEncode / n, char17Decode / n, escaperDecode / n, sum);
+      }
+    }
+  }
+}
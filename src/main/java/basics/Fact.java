@@ -46,6 +46,9 @@ public class Fact {
   /** Hash code */
   protected final int hashCode;
 
+  /** Parsed view on the object, created on demand */
+  protected LiteralView objectView;
+
   /**
    * All fact components must be the output of a method of the class
    * FactComponent!
@@ -75,6 +78,7 @@ public class Fact {
     this.relation = copy.relation;
     this.id = copy.getId();
     this.hashCode = copy.hashCode;
+    this.objectView = copy.objectView;
   }
 
   @Override
@@ -91,16 +95,25 @@ public class Fact {
 
   /** Returns arg n as a Java string */
   public String getArgJavaString(int a) {
-    return (FactComponent.asJavaString(a == 1 ? subject : object));
+    return (a == 1 ? FactComponent.asJavaString(subject) : getObjectAsJavaString());
   }
 
   /** Returns object as a Java string */
   public String getObjectAsJavaString() {
-    return (FactComponent.asJavaString(object));
+    return (getObjectView().getJavaString());
+  }
+
+  /** Returns the parsed view on the object. It is computed once per fact. */
+  public LiteralView getObjectView() {
+    LiteralView view = objectView;
+    if (view == null) objectView = view = new LiteralView(object);
+    return (view);
   }
 
   /** Returns arg n, strips quotes, compiles a case-insensitive pattern */
   public Pattern getArgPattern(int a) {
+    FactComponent.Caches caches = FactComponent.getCaches();
+    if (caches != null) return (caches.patterns.get(getArgJavaString(a), s -> Pattern.compile(s, Pattern.CASE_INSENSITIVE)));
     return (Pattern.compile(getArgJavaString(a), Pattern.CASE_INSENSITIVE));
   }
 
@@ -126,7 +139,12 @@ public class Fact {
 
   /** returns the datatype of the second argument */
   public String getDataType() {
-    return (FactComponent.getDatatype(object));
+    return (getObjectView().getDatatype());
+  }
+
+  /** returns the language of the second argument */
+  public String getLanguage() {
+    return (getObjectView().getLanguage());
   }
 
   @Override
@@ -165,26 +183,33 @@ public class Fact {
     }
   }
 
+  /**
+   * Returns the value for the TSV value column: yyyy.mmdd for dates, the
+   * number for other typed literals that are floats, or NULL
+   */
   public String getValue() {
-    String val = null;
-    if (FactComponent.isLiteral(object)) {
-      String datatype = getDataType();
-      if (datatype != null && datatype.equals("xsd:date")) {
-        String[] split = getObjectAsJavaString().split("-");
-        if (split.length == 3) {
-          for (int i = 0; i < 3; i++) {
-            split[i] = split[i].replace('#', '0');
-            while (split[i].length() < 2)
-              split[i] = "0" + split[i];
-          }
-          val = split[0] + "." + split[1] + split[2];
-        }
-      } else if (datatype != null) {
-        String object = getObjectAsJavaString();
-        if (FactComponent.javaStringIsFloat(object)) val = object;
-      }
-    }
-    return val;
+    LiteralView view = getObjectView();
+    String datatype = view.getDatatype();
+    if (datatype == null) return (null);
+    if (datatype.equals(YAGO.date)) return (TypedLiterals.dateValue(view.getJavaString()));
+    String object = view.getJavaString();
+    if (TypedLiterals.isFloat(object)) return (object);
+    return (null);
+  }
+
+  /** Returns the numeric value of getValue() without creating it, or NaN */
+  public double getDoubleValue() {
+    return (TypedLiterals.doubleValue(getObjectView()));
+  }
+
+  /** Returns the value of an integer literal, or TypedLiterals.NOLONG */
+  public long getLongValue() {
+    return (TypedLiterals.longValue(getObjectView()));
+  }
+
+  /** Returns the date code (see TypedLiterals) of a date literal, or TypedLiterals.NODATE */
+  public long getDateValue() {
+    return (TypedLiterals.dateValue(getObjectView()));
   }
 
   /** returns a TSV line */
@@ -3,7 +3,6 @@ package basics;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,6 +37,61 @@ public class FactComponent {
   /** Pattern for Wikipedia URLs*/
   public static Pattern wikipediaUrlPattern = Pattern.compile("https?://([a-z]{1,3}).wikipedia.org/wiki/(.*)");
 
+  /** Caches of the conversions below, or NULL if caching is off */
+  protected static volatile Caches caches;
+
+  /**
+   * Caches for the conversions that see the same inputs over and over
+   * (forYagoEntity and thus forWordnetEntity, forWikipediaTitle,
+   * forWikipediaURL, hashEntity, getLanguageOfEntity) and for
+   * Fact.getArgPattern.
+   */
+  public static class Caches {
+
+    public final MemoCache<String, String> yagoEntity;
+
+    public final MemoCache<String, String> wikipediaTitle;
+
+    public final MemoCache<String, String> wikipediaUrl;
+
+    public final MemoCache<String, String> hashEntity;
+
+    public final MemoCache<String, String> languageOfEntity;
+
+    public final MemoCache<String, Pattern> patterns;
+
+    /** Creates caches with at most capacity entries each */
+    public Caches(int capacity, MemoCache.Policy policy) {
+      yagoEntity = new MemoCache<>(capacity, policy);
+      wikipediaTitle = new MemoCache<>(capacity, policy);
+      wikipediaUrl = new MemoCache<>(capacity, policy);
+      hashEntity = new MemoCache<>(capacity, policy);
+      languageOfEntity = new MemoCache<>(capacity, policy);
+      patterns = new MemoCache<>(capacity, policy);
+    }
+
+    @Override
+    public String toString() {
+      return ("forYagoEntity: " + yagoEntity + "\nforWikipediaTitle: " + wikipediaTitle + "\nforWikipediaURL: " + wikipediaUrl + "\nhashEntity: "
+          + hashEntity + "\ngetLanguageOfEntity: " + languageOfEntity + "\ngetArgPattern: " + patterns);
+    }
+  }
+
+  /** Switches on caching, with at most capacity entries per cached function */
+  public static void enableCaching(int capacity, MemoCache.Policy policy) {
+    caches = new Caches(capacity, policy);
+  }
+
+  /** Switches off caching */
+  public static void disableCaching() {
+    caches = null;
+  }
+
+  /** Returns the caches (with their hit/miss/eviction counters), or NULL if caching is off */
+  public static Caches getCaches() {
+    return (caches);
+  }
+
   /** Standard namespace prefixes that this N4Reader will assume */
   public static final Map<String, String> standardPrefixes = new FinalMap<String, String>("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#",
       "rdfs:", "http://www.w3.org/2000/01/rdf-schema#", "xsd:", "http://www.w3.org/2001/XMLSchema#", "owl:", "http://www.w3.org/2002/07/owl#",
@@ -46,33 +100,13 @@ public class FactComponent {
   /** Creates a fact component for a URI */
   public static String forUri(String s) {
     if (s.startsWith("<") && s.endsWith(">")) return (s);
-    if (s.startsWith(YAGONAMESPACE)) {
-      return ('<' + Char17.encodeBackslash(s.substring(YAGONAMESPACE.length()), turtleUri) + '>');
-    }
-    if (s.startsWith("http://")) {
-      for (Entry<String, String> entry : standardPrefixes.entrySet()) {
-        if (s.startsWith(entry.getValue())) {
-          return (forQname(entry.getKey(), s.substring(entry.getValue().length())));
-        }
-      }
-    }
-    return ('<' + Char17.encodeBackslash(s, turtleUri) + '>');
+    return (Namespaces.STANDARD.forUri(s, true));
   }
 
   /** Creates a fact component for a URI, does not encode it */
   public static String forEncodedUri(String s) {
     if (s.startsWith("<") && s.endsWith(">")) return (s);
-    if (s.startsWith(YAGONAMESPACE)) {
-      return ('<' + s.substring(YAGONAMESPACE.length()) + '>');
-    }
-    if (s.startsWith("http://")) {
-      for (Entry<String, String> entry : standardPrefixes.entrySet()) {
-        if (s.startsWith(entry.getValue())) {
-          return (entry.getKey() + s.substring(entry.getValue().length()));
-        }
-      }
-    }
-    return ('<' + s + '>');
+    return (Namespaces.STANDARD.forUri(s, false));
   }
 
   /** Creates a fact component for number */
@@ -112,12 +146,18 @@ public class FactComponent {
 
   /** Creates a fact component for a YAGO entity */
   public static String forYagoEntity(String name) {
+    Caches c = caches;
+    if (c != null) return (c.yagoEntity.get(name, FactComponent::uncachedForYagoEntity));
+    return (uncachedForYagoEntity(name));
+  }
+
+  protected static String uncachedForYagoEntity(String name) {
     return (forUri(name.replace(' ', '_')));
   }
 
   /** Reverses the transformation from Wikipedia title to YAGO entity */
   public static String unYagoEntity(String entity) {
-    return Char17.decodeBackslash(stripBracketsAndLanguage(entity).replace('_', ' '));
+    return Escaper.decode(stripBracketsAndLanguage(entity).replace('_', ' '));
   }
 
   /** Creates a fact component for a YAGO entity from another language */
@@ -131,6 +171,12 @@ public class FactComponent {
 
   /** Returns the language of a foreign entity (or null) */
   public static String getLanguageOfEntity(String name) {
+    Caches c = caches;
+    if (c != null) return (c.languageOfEntity.get(name, FactComponent::uncachedGetLanguageOfEntity));
+    return (uncachedGetLanguageOfEntity(name));
+  }
+
+  protected static String uncachedGetLanguageOfEntity(String name) {
     Matcher m = LAN.matcher(name);
     if (!m.lookingAt()) return (null);
     return (m.group(1));
@@ -158,7 +204,7 @@ public class FactComponent {
     cat = stripBracketsAndLanguage(cat);
     if (cat.startsWith("wikicat_")) cat = cat.substring("wikicat_".length());
     cat = cat.replace('_', ' ');
-    cat = Char17.decodeBackslash(cat);
+    cat = Escaper.decode(cat);
     return (cat);
   }
 
@@ -169,6 +215,12 @@ public class FactComponent {
 
   /** Creates a fact component for a Wikipedia title */
   public static String forWikipediaTitle(String name) {
+    Caches c = caches;
+    if (c != null) return (c.wikipediaTitle.get(name, FactComponent::uncachedForWikipediaTitle));
+    return (uncachedForWikipediaTitle(name));
+  }
+
+  protected static String uncachedForWikipediaTitle(String name) {
     name = Char17.decodeAmpersand(name).trim();
     return (forYagoEntity(name));
   }
@@ -182,6 +234,12 @@ public class FactComponent {
   /** Creates a fact component (containing the YAGO entity) for a
    Wikipedia URL */
   public static String forWikipediaURL(String url) {
+    Caches c = caches;
+    if (c != null) return (c.wikipediaUrl.get(url, FactComponent::uncachedForWikipediaURL));
+    return (uncachedForWikipediaURL(url));
+  }
+
+  protected static String uncachedForWikipediaURL(String url) {
     Matcher m = wikipediaUrlPattern.matcher(url);
     if (!m.matches()) return (null);
     String language = m.group(1);
@@ -192,8 +250,8 @@ public class FactComponent {
 
   /** Creates a fact component for a String with language. We check the syntax */
   public static String forStringWithLanguage(String string, String language) {
-    if (language != null && language.length() > 1) return ('"' + Char17.encodeBackslash(string, turtleString) + "\"@" + language);
-    return ('"' + Char17.encodeBackslash(string, turtleString) + "\"");
+    if (language != null && language.length() > 1) return ('"' + Escaper.TURTLESTRING.encode(string) + "\"@" + language);
+    return ('"' + Escaper.TURTLESTRING.encode(string) + "\"");
   }
 
   /**
@@ -215,7 +273,7 @@ public class FactComponent {
 
   /** Creates a fact component for a String with datatype. We check the syntax */
   public static String forStringWithDatatype(String string, String datatype) {
-    if (datatype != null && !datatype.equals(YAGO.string)) return ('"' + Char17.encodeBackslash(string, turtleString) + "\"^^" + datatype);
+    if (datatype != null && !datatype.equals(YAGO.string)) return ('"' + Escaper.TURTLESTRING.encode(string) + "\"^^" + datatype);
     return (forStringWithLanguage(string, null));
   }
 
@@ -322,23 +380,20 @@ public class FactComponent {
 
   /** returns the string part of a literal (with quotes) */
   public static String getString(String stringLiteral) {
-    String[] split = literalAndDatatypeAndLanguage(stringLiteral);
-    if (split == null) return (null);
-    return (split[0]);
+    if (stringLiteral == null) return (null);
+    return (new LiteralView(stringLiteral).getString());
   }
 
   /** returns the datatype part of a literal */
   public static String getDatatype(String stringLiteral) {
-    String[] split = literalAndDatatypeAndLanguage(stringLiteral);
-    if (split == null) return (null);
-    return (split[1]);
+    if (stringLiteral == null) return (null);
+    return (new LiteralView(stringLiteral).getDatatype());
   }
 
   /** returns the language part of a literal */
   public static String getLanguageOfString(String stringLiteral) {
-    String[] split = literalAndDatatypeAndLanguage(stringLiteral);
-    if (split == null) return (null);
-    return (split[2]);
+    if (stringLiteral == null) return (null);
+    return (new LiteralView(stringLiteral).getLanguage());
   }
 
   /** removes quotes before and after a string */
@@ -395,7 +450,8 @@ public class FactComponent {
 
   /** Returns a Java string for a YAGO string */
   public static String asJavaString(String stringLiteral) {
-    return (Char17.decodeBackslash(FactComponent.stripQuotes(getString(stringLiteral))));
+    if (stringLiteral == null) return (null);
+    return (new LiteralView(stringLiteral).getJavaString());
   }
 
   /** Sets data type of a literal */
@@ -472,7 +528,7 @@ public class FactComponent {
 
   /** Tells whether this string is a date */
   public static boolean javaStringIsDate(CharSequence s) {
-    return (DATEPATTERN.matcher(s).matches());
+    return (TypedLiterals.isDate(s));
   }
 
   /** Pattern for a float */
@@ -480,7 +536,7 @@ public class FactComponent {
 
   /** Tells whether this Java string is a float */
   public static boolean javaStringIsFloat(CharSequence s) {
-    return (FLOATPATTERN.matcher(s).matches());
+    return (TypedLiterals.isFloat(s));
   }
 
   /** Characters which are used to represent a hash value as String */
@@ -518,6 +574,12 @@ public class FactComponent {
 
   /** Returns a hash for an entity */
   public static String hashEntity(String entity) {
+    Caches c = caches;
+    if (c != null) return (c.hashEntity.get(entity, FactComponent::uncachedHashEntity));
+    return (uncachedHashEntity(entity));
+  }
+
+  protected static String uncachedHashEntity(String entity) {
     return (hash(stripBrackets(entity)));
   }
 
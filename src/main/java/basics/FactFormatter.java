@@ -0,0 +1,46 @@
+package basics;
+
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This interface is implemented by FactWriters that can format facts outside
+of the writer, so that several threads can format in parallel and the
+writer only appends the text. Use of() to find out whether a writer can
+format.
+
+Example:
+  FactFormatter formatter = FactFormatter.of(writer);
+  if (formatter != null) {
+    StringBuilder text = new StringBuilder();
+    formatter.format(fact, text);
+    formatter.writeFormatted(text);
+  }
+ */
+public interface FactFormatter {
+
+  /** Appends the serialization of a fact to the string builder, in the format of the writer */
+  public void format(Fact f, StringBuilder out);
+
+  /** Appends text that has been produced by format() to the output */
+  public void writeFormatted(CharSequence formatted) throws IOException;
+
+  /** Returns the writer as a FactFormatter, or NULL if it cannot format */
+  public static FactFormatter of(FactWriter w) {
+    if (w instanceof DelegatingFactWriter) return (((DelegatingFactWriter) w).formatter());
+    return (w instanceof FactFormatter ? (FactFormatter) w : null);
+  }
+}
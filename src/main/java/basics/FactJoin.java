@@ -0,0 +1,397 @@
+package basics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javatools.administrative.Announce;
+import javatools.datatypes.Pair;
+import javatools.datatypes.PeekIterator;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class joins fact sources (or any other iterables of facts) on the
+subject, the object or the id of the facts. The results are streamed.
+
+mergeJoin() joins k inputs that are sorted on their join key (as strings),
+e.g. two PartitionedFactSource relations on the subject. It keeps only the
+facts of the current key in memory.
+
+hashJoin() joins two unsorted inputs. It builds a hash table over the first
+input, and spills partitions of it to temporary TSV files when the table
+would exceed the given number of facts. The facts of the second input that
+fall into a spilled partition are spilled as well, and the spilled
+partitions are joined afterwards.
+
+Example (meta facts with their base facts):
+  for (Pair&lt;Fact,Fact&gt; p : FactJoin.hashJoin(baseFacts, Key.ID, metaFacts, Key.SUBJECT, 1000000, tmp)) ...
+ */
+public class FactJoin {
+
+  /** The component on which facts are joined */
+  public enum Key {
+    SUBJECT, OBJECT, ID;
+
+    /** Returns the join key of a fact, or NULL */
+    public String of(Fact f) {
+      switch (this) {
+        case SUBJECT:
+          return (f.getSubject());
+        case OBJECT:
+          return (f.getObject());
+        default:
+          return (f.getId());
+      }
+    }
+  }
+
+  /** Number of partitions of the hash join */
+  public static final int PARTITIONS = 64;
+
+  /** Maximal recursion depth of spilled partitions */
+  public static final int MAXLEVEL = 3;
+
+  /**
+   * Joins inputs that are sorted on their key. Returns one array per
+   * combination of facts with the same key, with one fact per input. Facts
+   * with a NULL key are skipped. Throws an IllegalStateException if an input
+   * turns out not to be sorted.
+   */
+  public static PeekIterator<Fact[]> mergeJoin(List<? extends Iterable<Fact>> inputs, List<Key> keys) {
+    return (new MergeJoin(inputs, keys));
+  }
+
+  /** Joins two inputs that are sorted on their key */
+  public static PeekIterator<Pair<Fact, Fact>> mergeJoin(Iterable<Fact> left, Key leftKey, Iterable<Fact> right, Key rightKey) {
+    PeekIterator<Fact[]> join = mergeJoin(Arrays.asList(left, right), Arrays.asList(leftKey, rightKey));
+    return (new PeekIterator<Pair<Fact, Fact>>() {
+
+      @Override
+      protected Pair<Fact, Fact> internalNext() throws Exception {
+        if (!join.hasNext()) return (null);
+        Fact[] facts = join.next();
+        return (new Pair<>(facts[0], facts[1]));
+      }
+    });
+  }
+
+  /**
+   * Joins two unsorted inputs. The first input is kept in memory up to
+   * maxFacts facts, the rest is spilled to files in tmpDir. Returns pairs of
+   * (fact of the first input, fact of the second input).
+   */
+  public static PeekIterator<Pair<Fact, Fact>> hashJoin(Iterable<Fact> build, Key buildKey, Iterable<Fact> probe, Key probeKey, int maxFacts, File tmpDir) {
+    return (new HashJoin(build, buildKey, probe, probeKey, maxFacts, tmpDir, 0));
+  }
+
+  /** Iterator for mergeJoin() */
+  protected static class MergeJoin extends PeekIterator<Fact[]> {
+
+    protected final List<Iterator<Fact>> inputs = new ArrayList<>();
+
+    protected final Key[] keys;
+
+    /** Current fact of each input (or NULL at the end) */
+    protected final Fact[] heads;
+
+    /** Last key of each input, to check the order */
+    protected final String[] lastKeys;
+
+    /** Facts of the current key in each input */
+    protected final List<List<Fact>> groups = new ArrayList<>();
+
+    /** Position in each group for the next combination, or NULL if there is none */
+    protected int[] cursor;
+
+    protected MergeJoin(List<? extends Iterable<Fact>> inputs, List<Key> keys) {
+      if (inputs.size() != keys.size()) throw new IllegalArgumentException("Need one key per input");
+      this.keys = keys.toArray(new Key[keys.size()]);
+      this.heads = new Fact[inputs.size()];
+      this.lastKeys = new String[inputs.size()];
+      for (int i = 0; i < inputs.size(); i++) {
+        this.inputs.add(inputs.get(i).iterator());
+        advance(i);
+        groups.add(new ArrayList<>());
+      }
+    }
+
+    /** Moves input i to the next fact with a key */
+    protected void advance(int i) {
+      heads[i] = null;
+      while (inputs.get(i).hasNext()) {
+        Fact f = inputs.get(i).next();
+        String key = keys[i].of(f);
+        if (key == null) continue;
+        if (lastKeys[i] != null && key.compareTo(lastKeys[i]) < 0)
+          throw new IllegalStateException("Input " + i + " of the join is not sorted: " + key + " after " + lastKeys[i]);
+        lastKeys[i] = key;
+        heads[i] = f;
+        return;
+      }
+    }
+
+    @Override
+    protected Fact[] internalNext() throws Exception {
+      if (cursor == null && !nextGroups()) return (null);
+      Fact[] result = new Fact[heads.length];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = groups.get(i).get(cursor[i]);
+      }
+      // Advance the cursor like an odometer
+      int i = cursor.length - 1;
+      while (i >= 0 && ++cursor[i] == groups.get(i).size()) {
+        cursor[i--] = 0;
+      }
+      if (i < 0) cursor = null;
+      return (result);
+    }
+
+    /** Collects the facts of the next key that all inputs have. Returns FALSE at the end. */
+    protected boolean nextGroups() {
+      while (true) {
+        String max = null;
+        for (int i = 0; i < heads.length; i++) {
+          if (heads[i] == null) return (false);
+          String key = keys[i].of(heads[i]);
+          if (max == null || key.compareTo(max) > 0) max = key;
+        }
+        boolean match = true;
+        for (int i = 0; i < heads.length; i++) {
+          while (heads[i] != null && keys[i].of(heads[i]).compareTo(max) < 0) {
+            advance(i);
+          }
+          if (heads[i] == null) return (false);
+          if (!keys[i].of(heads[i]).equals(max)) match = false;
+        }
+        if (!match) continue;
+        for (int i = 0; i < heads.length; i++) {
+          List<Fact> group = groups.get(i);
+          group.clear();
+          while (heads[i] != null && keys[i].of(heads[i]).equals(max)) {
+            group.add(heads[i]);
+            advance(i);
+          }
+        }
+        cursor = new int[heads.length];
+        return (true);
+      }
+    }
+  }
+
+  /** Iterator for hashJoin() */
+  protected static class HashJoin extends PeekIterator<Pair<Fact, Fact>> {
+
+    protected final Iterable<Fact> build;
+
+    protected final Key buildKey;
+
+    protected final Iterable<Fact> probe;
+
+    protected final Key probeKey;
+
+    protected final int maxFacts;
+
+    protected final File tmpDir;
+
+    /** Recursion depth, changes the hash function */
+    protected final int level;
+
+    /** In-memory hash tables of the partitions (NULL if spilled) */
+    protected final List<Map<String, List<Fact>>> tables = new ArrayList<>();
+
+    /** Number of facts in each in-memory partition */
+    protected final int[] sizes = new int[PARTITIONS];
+
+    /** Spill files of the first and second input (NULL if not spilled) */
+    protected final File[] buildFiles = new File[PARTITIONS], probeFiles = new File[PARTITIONS];
+
+    /** Writers for the spill files of the second input */
+    protected final Writer[] probeWriters = new Writer[PARTITIONS];
+
+    /** The second input, NULL before building */
+    protected Iterator<Fact> probeIterator;
+
+    /** The current fact of the second input and its matches */
+    protected Fact current;
+
+    protected List<Fact> matches = Collections.emptyList();
+
+    protected int match;
+
+    /** Next spilled partition to join */
+    protected int nextSpilled = 0;
+
+    /** Join of the current spilled partition */
+    protected HashJoin spilledJoin;
+
+    protected HashJoin(Iterable<Fact> build, Key buildKey, Iterable<Fact> probe, Key probeKey, int maxFacts, File tmpDir, int level) {
+      this.build = build;
+      this.buildKey = buildKey;
+      this.probe = probe;
+      this.probeKey = probeKey;
+      this.maxFacts = Math.max(1, maxFacts);
+      this.tmpDir = tmpDir;
+      this.level = level;
+    }
+
+    /** Returns the partition of a key */
+    protected int partition(String key) {
+      int h = key.hashCode() * (2 * level + 1);
+      h ^= (h >>> 16) ^ (h >>> (8 + level));
+      return (h & (PARTITIONS - 1));
+    }
+
+    /** Opens a spill file (with a small buffer, because there can be many of them) */
+    protected static Writer spillWriter(File f) throws IOException {
+      return (new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8), 1 << 14));
+    }
+
+    /** Builds the hash table over the first input */
+    protected void build() throws IOException {
+      for (int i = 0; i < PARTITIONS; i++) {
+        tables.add(new HashMap<>());
+      }
+      Writer[] buildWriters = new Writer[PARTITIONS];
+      int inMemory = 0;
+      try {
+        for (Fact f : build) {
+          String key = buildKey.of(f);
+          if (key == null) continue;
+          int p = partition(key);
+          if (buildWriters[p] != null) {
+            buildWriters[p].write(f.toTsvLine());
+            continue;
+          }
+          tables.get(p).computeIfAbsent(key, k -> new ArrayList<>(1)).add(f);
+          sizes[p]++;
+          if (++inMemory > maxFacts && level < MAXLEVEL) {
+            // Spill the largest partition
+            int victim = 0;
+            for (int i = 1; i < PARTITIONS; i++) {
+              if (sizes[i] > sizes[victim]) victim = i;
+            }
+            buildFiles[victim] = File.createTempFile("join", ".tsv", tmpDir);
+            buildWriters[victim] = spillWriter(buildFiles[victim]);
+            for (List<Fact> facts : tables.get(victim).values()) {
+              for (Fact g : facts) {
+                buildWriters[victim].write(g.toTsvLine());
+              }
+            }
+            inMemory -= sizes[victim];
+            sizes[victim] = 0;
+            tables.set(victim, null);
+          }
+        }
+      } finally {
+        for (Writer w : buildWriters) {
+          if (w != null) w.close();
+        }
+      }
+      for (int p = 0; p < PARTITIONS; p++) {
+        if (buildFiles[p] == null) continue;
+        probeFiles[p] = File.createTempFile("join", ".tsv", tmpDir);
+        probeWriters[p] = spillWriter(probeFiles[p]);
+      }
+      probeIterator = probe.iterator();
+    }
+
+    @Override
+    protected Pair<Fact, Fact> internalNext() throws Exception {
+      if (probeIterator == null) build();
+      // Matches of the current fact
+      while (match >= matches.size()) {
+        if (!probeIterator.hasNext()) return (nextSpilled());
+        current = probeIterator.next();
+        String key = probeKey.of(current);
+        match = 0;
+        matches = Collections.emptyList();
+        if (key == null) continue;
+        int p = partition(key);
+        if (tables.get(p) == null) {
+          probeWriters[p].write(current.toTsvLine());
+          continue;
+        }
+        List<Fact> m = tables.get(p).get(key);
+        if (m != null) matches = m;
+      }
+      return (new Pair<>(matches.get(match++), current));
+    }
+
+    /** Returns the next result from the spilled partitions, or NULL */
+    protected Pair<Fact, Fact> nextSpilled() throws IOException {
+      if (nextSpilled == 0) {
+        // The in-memory partitions are done
+        for (int p = 0; p < PARTITIONS; p++) {
+          if (probeWriters[p] != null) probeWriters[p].close();
+          if (tables.get(p) != null) tables.get(p).clear();
+        }
+      }
+      while (true) {
+        if (spilledJoin != null) {
+          if (spilledJoin.hasNext()) return (spilledJoin.next());
+          spilledJoin.close();
+          spilledJoin = null;
+          buildFiles[nextSpilled - 1].delete();
+          probeFiles[nextSpilled - 1].delete();
+        }
+        while (nextSpilled < PARTITIONS && buildFiles[nextSpilled] == null) {
+          nextSpilled++;
+        }
+        if (nextSpilled == PARTITIONS) return (null);
+        spilledJoin = new HashJoin(FactSource.from(buildFiles[nextSpilled]), buildKey, FactSource.from(probeFiles[nextSpilled]), probeKey, maxFacts,
+            tmpDir, level + 1);
+        nextSpilled++;
+      }
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      if (spilledJoin != null) spilledJoin.close();
+      for (int p = 0; p < PARTITIONS; p++) {
+        try {
+          if (probeWriters[p] != null) probeWriters[p].close();
+        } catch (IOException e) {
+          Announce.warning(e);
+        }
+        if (buildFiles[p] != null) buildFiles[p].delete();
+        if (probeFiles[p] != null) probeFiles[p].delete();
+      }
+    }
+  }
+
+  /** Test: joins two files on the subject */
+  public static void main(String[] args) throws Exception {
+    Announce.doing("Joining", args[0], "and", args[1]);
+    long count = 0;
+    for (Pair<Fact, Fact> p : hashJoin(FactSource.from(args[0]), Key.SUBJECT, FactSource.from(args[1]), Key.SUBJECT, 1000000,
+        new File(System.getProperty("java.io.tmpdir")))) {
+      if (count++ < 10) Announce.message(p.first, p.second);
+    }
+    Announce.done(count + " results");
+  }
+}
@@ -0,0 +1,510 @@
+package basics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class runs a chain of stages over the facts of a FactSource:
+filter, map, flatMap, dedup, groupBySubject and sink. The source is read in
+batches; each batch carries its number through the chain. The stages are
+connected by bounded queues and run as tasks in a ForkJoinPool (blocking
+on the queues through ForkJoinPool.managedBlock).
+
+filter, map, flatMap and dedup run with several workers. groupBySubject and
+sink run with one worker and take the batches in the order of the input, so
+that the facts of one subject stay together (if they are together in the
+source) and the output has the order of the input.
+
+Example:
+  try (FactWriter out = FactWriter.from(new File("out.tsv"))) {
+    FactPipeline.from(FactSource.from("yagoFacts.tsv"))
+      .filter(f -&gt; f.getRelation().equals("&lt;wasBornIn&gt;"))
+      .map(f -&gt; new Fact(f.getObject(), "&lt;isBirthPlaceOf&gt;", f.getSubject()))
+      .dedup()
+      .sink(out)
+      .run();
+  }
+ */
+public class FactPipeline {
+
+  /** Number of facts per batch */
+  public static final int BATCHSIZE = 1000;
+
+  /** Seconds between progress reports */
+  public static final int REPORTINTERVAL = 10;
+
+  /** The source */
+  protected final FactSource source;
+
+  /** The stages */
+  protected final List<Stage> stages = new ArrayList<>();
+
+  /** Number of threads */
+  protected int threads = Runtime.getRuntime().availableProcessors();
+
+  /** Batches per queue */
+  protected int capacity = 16;
+
+  /** Print progress messages? */
+  protected boolean report = false;
+
+  /** Facts read from the source */
+  protected final AtomicLong read = new AtomicLong();
+
+  /** Start time in ms */
+  protected long start;
+
+  /** First error, or NULL */
+  protected volatile Throwable error;
+
+  /** A batch of facts with its number */
+  protected static class Batch {
+
+    final long number;
+
+    final List<Fact> facts;
+
+    Batch(long number, List<Fact> facts) {
+      this.number = number;
+      this.facts = facts;
+    }
+  }
+
+  /** Marks the end of the input of a stage */
+  protected static final Batch END = new Batch(-1, null);
+
+  /** A stage with its input queue and counters */
+  protected abstract static class Stage {
+
+    final String name;
+
+    /** TRUE if the stage takes the batches in order, with one worker */
+    final boolean ordered;
+
+    BlockingQueue<Batch> input;
+
+    final AtomicLong in = new AtomicLong(), out = new AtomicLong(), nanos = new AtomicLong();
+
+    /** Workers that are still running */
+    final AtomicInteger active = new AtomicInteger();
+
+    Stage(String name, boolean ordered) {
+      this.name = name;
+      this.ordered = ordered;
+    }
+
+    /** Processes the facts of a batch */
+    abstract List<Fact> process(List<Fact> facts);
+
+    /** Returns the facts that remain at the end of the input */
+    List<Fact> finish() {
+      return (new ArrayList<>(0));
+    }
+
+    @Override
+    public String toString() {
+      double seconds = Math.max(1, nanos.get() / 1e6) / 1000.0;
+      return (String.format("%s: %,d facts in, %,d out (%,.0f facts/s busy), queue %d", name, in.get(), out.get(), in.get() / seconds,
+          input == null ? 0 : input.size()));
+    }
+  }
+
+  protected FactPipeline(FactSource source) {
+    this.source = source;
+  }
+
+  /** Starts a pipeline over the facts of a source */
+  public static FactPipeline from(FactSource source) {
+    return (new FactPipeline(source));
+  }
+
+  /** Sets the number of threads */
+  public FactPipeline setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+    return (this);
+  }
+
+  /** Sets the number of batches that can wait in front of a stage */
+  public FactPipeline setCapacity(int batches) {
+    this.capacity = Math.max(1, batches);
+    return (this);
+  }
+
+  /** Prints progress messages while running */
+  public FactPipeline setReport(boolean report) {
+    this.report = report;
+    return (this);
+  }
+
+  /** Keeps the facts that satisfy the predicate */
+  public FactPipeline filter(Predicate<Fact> predicate) {
+    stages.add(new Stage("filter", false) {
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        List<Fact> result = new ArrayList<>(facts.size());
+        for (Fact f : facts) {
+          if (predicate.test(f)) result.add(f);
+        }
+        return (result);
+      }
+    });
+    return (this);
+  }
+
+  /** Replaces every fact by the result of the function (dropped if NULL) */
+  public FactPipeline map(Function<Fact, Fact> function) {
+    stages.add(new Stage("map", false) {
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        List<Fact> result = new ArrayList<>(facts.size());
+        for (Fact f : facts) {
+          Fact g = function.apply(f);
+          if (g != null) result.add(g);
+        }
+        return (result);
+      }
+    });
+    return (this);
+  }
+
+  /** Replaces every fact by the facts that the function returns */
+  public FactPipeline flatMap(Function<Fact, ? extends Iterable<Fact>> function) {
+    stages.add(new Stage("flatMap", false) {
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        List<Fact> result = new ArrayList<>(facts.size());
+        for (Fact f : facts) {
+          for (Fact g : function.apply(f)) {
+            result.add(g);
+          }
+        }
+        return (result);
+      }
+    });
+    return (this);
+  }
+
+  /** Removes facts with the same subject, relation and object as an earlier one (keeps the set of all facts in memory) */
+  public FactPipeline dedup() {
+    Set<String> seen = ConcurrentHashMap.newKeySet();
+    stages.add(new Stage("dedup", false) {
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        List<Fact> result = new ArrayList<>(facts.size());
+        for (Fact f : facts) {
+          if (seen.add(f.getSubject() + "\t" + f.getRelation() + "\t" + f.getObject())) result.add(f);
+        }
+        return (result);
+      }
+    });
+    return (this);
+  }
+
+  /**
+   * Replaces each run of consecutive facts with the same subject by the facts
+   * that the function returns. Theme files sorted by subject give one run per
+   * subject.
+   */
+  public FactPipeline groupBySubject(Function<List<Fact>, ? extends Iterable<Fact>> function) {
+    stages.add(new Stage("groupBySubject", true) {
+
+      List<Fact> group = new ArrayList<>();
+
+      void flush(List<Fact> result) {
+        if (group.isEmpty()) return;
+        for (Fact g : function.apply(group)) {
+          result.add(g);
+        }
+        group = new ArrayList<>();
+      }
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        List<Fact> result = new ArrayList<>();
+        for (Fact f : facts) {
+          if (!group.isEmpty() && !group.get(0).getSubject().equals(f.getSubject())) flush(result);
+          group.add(f);
+        }
+        return (result);
+      }
+
+      @Override
+      List<Fact> finish() {
+        List<Fact> result = new ArrayList<>();
+        flush(result);
+        return (result);
+      }
+    });
+    return (this);
+  }
+
+  /** Passes every fact to the consumer, in the order of the input */
+  public FactPipeline sink(Consumer<Fact> consumer) {
+    stages.add(new Stage("sink", true) {
+
+      @Override
+      List<Fact> process(List<Fact> facts) {
+        for (Fact f : facts) {
+          consumer.accept(f);
+        }
+        return (facts);
+      }
+    });
+    return (this);
+  }
+
+  /** Writes every fact to the writer, in the order of the input */
+  public FactPipeline sink(FactWriter out) {
+    return (sink(f -> {
+      try {
+        out.write(f);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }));
+  }
+
+  /** Takes from a queue inside the ForkJoinPool */
+  protected static class Take implements ForkJoinPool.ManagedBlocker {
+
+    final BlockingQueue<Batch> queue;
+
+    Batch batch;
+
+    Take(BlockingQueue<Batch> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+      if (batch == null) batch = queue.take();
+      return (true);
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return (batch != null || (batch = queue.poll()) != null);
+    }
+  }
+
+  /** Puts into a queue inside the ForkJoinPool */
+  protected static class Put implements ForkJoinPool.ManagedBlocker {
+
+    final BlockingQueue<Batch> queue;
+
+    final Batch batch;
+
+    boolean done = false;
+
+    Put(BlockingQueue<Batch> queue, Batch batch) {
+      this.queue = queue;
+      this.batch = batch;
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+      if (!done) queue.put(batch);
+      done = true;
+      return (true);
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return (done || (done = queue.offer(batch)));
+    }
+  }
+
+  /** Takes a batch, blocking if necessary */
+  protected static Batch take(BlockingQueue<Batch> queue) throws InterruptedException {
+    Take take = new Take(queue);
+    ForkJoinPool.managedBlock(take);
+    return (take.batch);
+  }
+
+  /** Puts a batch into the queue of a stage (nowhere after the last stage) */
+  protected void put(int stage, Batch batch) throws InterruptedException {
+    if (stage < stages.size()) ForkJoinPool.managedBlock(new Put(stages.get(stage).input, batch));
+  }
+
+  /** Records the first error */
+  protected void fail(Throwable t) {
+    synchronized (this) {
+      if (error == null) error = t;
+    }
+  }
+
+  /** Processes a batch in a stage and passes it on */
+  protected void process(int s, Batch batch) throws InterruptedException {
+    Stage stage = stages.get(s);
+    if (error != null) return;
+    long t = System.nanoTime();
+    List<Fact> result;
+    try {
+      result = stage.process(batch.facts);
+    } catch (RuntimeException | Error e) {
+      fail(e);
+      return;
+    }
+    stage.nanos.addAndGet(System.nanoTime() - t);
+    stage.in.addAndGet(batch.facts.size());
+    stage.out.addAndGet(result.size());
+    put(s + 1, new Batch(batch.number, result));
+  }
+
+  /** Worker of a stage with several workers */
+  protected void runUnordered(int s) throws InterruptedException {
+    Stage stage = stages.get(s);
+    while (true) {
+      Batch batch = take(stage.input);
+      if (batch == END) {
+        // Let the other workers see the end, too
+        ForkJoinPool.managedBlock(new Put(stage.input, END));
+        if (stage.active.decrementAndGet() == 0) put(s + 1, END);
+        return;
+      }
+      process(s, batch);
+    }
+  }
+
+  /** Worker of a stage that takes the batches in order */
+  protected void runOrdered(int s) throws InterruptedException {
+    Stage stage = stages.get(s);
+    Map<Long, Batch> waiting = new HashMap<>();
+    long next = 0;
+    while (true) {
+      Batch batch = take(stage.input);
+      if (batch == END) break;
+      waiting.put(batch.number, batch);
+      while (waiting.containsKey(next)) {
+        process(s, waiting.remove(next++));
+      }
+    }
+    // Batches that were dropped because of an error leave gaps
+    for (Batch batch : new TreeMap<>(waiting).values()) {
+      process(s, batch);
+      next = Math.max(next, batch.number + 1);
+    }
+    if (error == null) {
+      try {
+        List<Fact> rest = stage.finish();
+        stage.out.addAndGet(rest.size());
+        // The rest goes through the process of the next stages as an extra batch
+        put(s + 1, new Batch(next, rest));
+      } catch (RuntimeException | Error e) {
+        fail(e);
+      }
+    }
+    put(s + 1, END);
+  }
+
+  /** Runs the pipeline (only once), returns the number of facts that came out of the last stage */
+  public long run() throws IOException, InterruptedException {
+    if (stages.isEmpty()) throw new IllegalStateException("FactPipeline without stages");
+    if (start != 0) throw new IllegalStateException("FactPipeline can run only once");
+    start = System.currentTimeMillis();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    if (report) reporter.scheduleAtFixedRate(() -> Announce.message(progress()), REPORTINTERVAL, REPORTINTERVAL, TimeUnit.SECONDS);
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (int s = 0; s < stages.size(); s++) {
+      Stage stage = stages.get(s);
+      stage.input = new ArrayBlockingQueue<>(capacity);
+      int workers = stage.ordered ? 1 : threads;
+      stage.active.set(workers);
+      final int number = s;
+      for (int w = 0; w < workers; w++) {
+        tasks.add(pool.submit(() -> {
+          try {
+            if (stage.ordered) runOrdered(number);
+            else runUnordered(number);
+          } catch (InterruptedException e) {
+            fail(e);
+          }
+        }));
+      }
+    }
+    BlockingQueue<Batch> first = stages.get(0).input;
+    try {
+      long number = 0;
+      Iterator<Fact> it = source.iterator();
+      Fact[] batch = new Fact[BATCHSIZE];
+      int size;
+      while (error == null && (size = FactSource.nextBatch(it, batch)) > 0) {
+        first.put(new Batch(number++, Arrays.asList(batch).subList(0, size)));
+        read.addAndGet(size);
+        batch = new Fact[BATCHSIZE];
+      }
+    } catch (RuntimeException e) {
+      fail(e);
+    } finally {
+      first.put(END);
+      for (ForkJoinTask<?> task : tasks) {
+        task.join();
+      }
+      pool.shutdownNow();
+      reporter.shutdownNow();
+    }
+    if (error != null) throw new IOException("Error in the pipeline over " + source, error);
+    if (report) Announce.message(progress());
+    return (stages.get(stages.size() - 1).out.get());
+  }
+
+  /** Returns the throughput and the queue depth of every stage */
+  public String progress() {
+    double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+    StringBuilder result = new StringBuilder(String.format("%,d facts read (%,.0f facts/s)", read.get(), read.get() / seconds));
+    for (Stage stage : stages) {
+      result.append("\n  ").append(stage);
+    }
+    return (result.toString());
+  }
+
+  /** Test: copies the facts of a theme without duplicates */
+  public static void main(String[] args) throws Exception {
+    try (FactWriter out = FactWriter.from(new File(args[1]))) {
+      FactPipeline pipeline = from(FactSource.from(args[0])).dedup().sink(out).setReport(true);
+      Announce.message(pipeline.run(), "facts written");
+    }
+  }
+}
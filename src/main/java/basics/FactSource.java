@@ -1,12 +1,31 @@
 package basics;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import javatools.administrative.D;
+import javatools.datatypes.Pair;
+import javatools.datatypes.PeekIterator;
 import javatools.filehandlers.FileSet;
 import javatools.filehandlers.FileUtils;
 
@@ -35,6 +54,8 @@ public abstract class FactSource implements Iterable<Fact> {
   /** returns a fact source from a file. assumes ttl by default. */
   public static FactSource from(File f) {
     if (!f.getName().contains(".")) f = FileSet.newExtension(f, ".ttl");
+    if (FileSet.extension(f).equals(SegmentedFactWriter.MANIFEST_EXTENSION)) return (new ManifestFactSource(f));
+    if (FileSet.extension(f).equals(PartitionedFactWriter.EXTENSION)) return (new PartitionedFactSource(f));
     return (new FileFactSource(f));
   }
 
@@ -45,6 +66,8 @@ public abstract class FactSource implements Iterable<Fact> {
    */
   public static FactSource from(String f) throws MalformedURLException {
     if (f.startsWith("http:")) return (new UrlFactSource(new URL(f)));
+    if (FileSet.extension(f).equals(SegmentedFactWriter.MANIFEST_EXTENSION)) return (new ManifestFactSource(new File(f)));
+    if (FileSet.extension(f).equals(PartitionedFactWriter.EXTENSION)) return (new PartitionedFactSource(new File(f)));
     return (new FileFactSource(new File(f)));
   }
 
@@ -53,6 +76,18 @@ public abstract class FactSource implements Iterable<Fact> {
     return (new UrlFactSource(f));
   }
 
+  /** returns a reader for a file or URL stream, decompresses .gz files */
+  protected static BufferedReader openReader(InputStream in, String name) throws IOException {
+    if (name.toLowerCase().endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+    return (FileUtils.getBufferedUTF8Reader(in));
+  }
+
+  /** returns the extension of the format of a file (e.g. ".ttl" for x.ttl and x.ttl.gz) */
+  protected static String formatExtension(String name) {
+    if (name.toLowerCase().endsWith(".gz")) name = FileSet.noExtension(name);
+    return (FileSet.extension(name));
+  }
+
   /** returns a fact reader depending on the extension */
   protected static Iterator<Fact> factReader(Reader reader, String fileExtension, String info) throws Exception {
     switch (fileExtension) {
@@ -69,15 +104,174 @@ public abstract class FactSource implements Iterable<Fact> {
     return name;
   }
 
+  /** An iterator over facts that can also deliver them in batches */
+  public interface BatchReader {
+
+    /**
+     * Fills the buffer with the next facts, and returns their number. This is
+     * 0 only at the end; before the end, it can be fewer than buf.length.
+     */
+    public int nextBatch(Fact[] buf);
+  }
+
+  /**
+   * Fills the buffer with the next facts of the iterator, and returns their
+   * number (0 at the end). Uses nextBatch() if the iterator is a BatchReader.
+   */
+  public static int nextBatch(Iterator<Fact> it, Fact[] buf) {
+    if (it instanceof BatchReader) return (((BatchReader) it).nextBatch(buf));
+    int size = 0;
+    while (size < buf.length && it.hasNext()) {
+      buf[size++] = it.next();
+    }
+    return (size);
+  }
+
+  /**
+   * Calls the consumer on batches of at most batchSize facts. The list is
+   * reused for the next batch, so the consumer must not keep it.
+   */
+  public void forEachBatch(int batchSize, Consumer<List<Fact>> consumer) {
+    Iterator<Fact> it = iterator();
+    Fact[] buf = new Fact[batchSize];
+    int size;
+    while ((size = nextBatch(it, buf)) > 0) {
+      consumer.accept(Arrays.asList(buf).subList(0, size));
+    }
+  }
+
+  /**
+   * Returns the parts of this source that can be read independently of each
+   * other (e.g., the segments of a manifest). By default, this is just the
+   * source itself.
+   */
+  public List<FactSource> segments() {
+    return (Collections.singletonList(this));
+  }
+
+  /**
+   * Calls the consumer on every fact, reading the segments of this source in
+   * parallel. The consumer has to be thread-safe.
+   */
+  public void parallelForEach(Consumer<Fact> consumer, int threads) throws IOException, InterruptedException {
+    List<FactSource> segments = segments();
+    if (threads <= 1 || segments.size() == 1) {
+      for (Fact f : this) {
+        consumer.accept(f);
+      }
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, segments.size()));
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (FactSource segment : segments) {
+        results.add(executor.submit(() -> {
+          for (Fact f : segment) {
+            consumer.accept(f);
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Error while reading " + name, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the fact with the id, or NULL. By default, this scans the source.
+   * Files with an IdIndex (see FactWriter.indexIds()) answer directly.
+   */
+  public Fact getFactById(String id) throws IOException {
+    for (Fact f : this) {
+      if (id.equals(f.getId())) return (f);
+    }
+    return (null);
+  }
+
+  /** TRUE if getFactById() answers without scanning the source */
+  public boolean hasIdIndex() throws IOException {
+    return (false);
+  }
+
+  /**
+   * Returns the facts of this source whose ids are subjects of the
+   * meta-facts, by id, in one pass over the source
+   */
+  protected Map<String, Fact> factsById(Iterable<Fact> metaFacts) {
+    Map<String, Fact> result = new HashMap<>();
+    for (Fact f : metaFacts) {
+      result.put(f.getSubject(), null);
+    }
+    for (Fact f : this) {
+      if (f.getId() != null && result.containsKey(f.getId())) result.putIfAbsent(f.getId(), f);
+    }
+    return (result);
+  }
+
+  /**
+   * Groups meta-facts by their subject, and returns each group together with
+   * its base fact from this source (or NULL if the base fact is not there).
+   * Meta-facts with the same subject have to follow each other. Without an
+   * IdIndex, this reads the meta-facts twice and the source once, and keeps
+   * the base facts of all meta-facts in memory.
+   */
+  public PeekIterator<Pair<Fact, List<Fact>>> withMetaFacts(Iterable<Fact> metaFacts) {
+    final Iterator<Fact> it = metaFacts.iterator();
+    return (new PeekIterator<Pair<Fact, List<Fact>>>() {
+
+      Fact next = it.hasNext() ? it.next() : null;
+
+      /** The base facts by id, if there is no IdIndex */
+      Map<String, Fact> baseFacts;
+
+      @Override
+      protected Pair<Fact, List<Fact>> internalNext() throws Exception {
+        if (next == null) return (null);
+        if (baseFacts == null && !hasIdIndex()) baseFacts = factsById(metaFacts);
+        String id = next.getSubject();
+        List<Fact> group = new ArrayList<>();
+        while (next != null && next.getSubject().equals(id)) {
+          group.add(next);
+          next = it.hasNext() ? it.next() : null;
+        }
+        return (new Pair<>(baseFacts == null ? getFactById(id) : baseFacts.get(id), group));
+      }
+    });
+  }
+
   /** Fact source from file */
   public static class FileFactSource extends FactSource {
 
     protected File file;
 
+    /** The IdIndex of the file (or NULL), loaded on demand */
+    protected IdIndex idIndex;
+
+    protected boolean idIndexLoaded = false;
+
+    @Override
+    public synchronized boolean hasIdIndex() throws IOException {
+      if (!idIndexLoaded) {
+        idIndex = IdIndex.load(file);
+        idIndexLoaded = true;
+      }
+      return (idIndex != null);
+    }
+
+    @Override
+    public synchronized Fact getFactById(String id) throws IOException {
+      if (!hasIdIndex()) return (super.getFactById(id));
+      return (idIndex.getFact(id));
+    }
+
     @Override
     public Iterator<Fact> iterator() {
       try {
-        return factReader(FileUtils.getBufferedUTF8Reader(file), FileSet.extension(file), file.toString());
+        return factReader(openReader(new FileInputStream(file), file.getName()), formatExtension(file.getName()), file.toString());
       } catch (Exception e) {
         System.err.println("Error while opening file " + file);
         throw new RuntimeException(e);
@@ -105,7 +299,7 @@ public abstract class FactSource implements Iterable<Fact> {
     @Override
     public Iterator<Fact> iterator() {
       try {
-        return factReader(FileUtils.getBufferedUTF8Reader(file.openStream()), FileSet.extension(file.toString()), file.toString());
+        return factReader(openReader(file.openStream(), file.getPath()), formatExtension(file.getPath()), file.toString());
       } catch (Exception e) {
         e.printStackTrace();
         return (null);
@@ -125,6 +319,103 @@ public abstract class FactSource implements Iterable<Fact> {
 
   }
 
+  /**
+   * Fact source from a manifest file, as written by SegmentedFactWriter. The
+   * segments are read one after the other, or in parallel with
+   * parallelForEach().
+   */
+  public static class ManifestFactSource extends FactSource {
+
+    protected File manifest;
+
+    /** Segments of the manifest, relative to the manifest */
+    protected List<FactSource> segments;
+
+    public ManifestFactSource(File manifest) {
+      super();
+      this.manifest = manifest;
+      this.name = manifest.toString();
+    }
+
+    @Override
+    public synchronized List<FactSource> segments() {
+      if (segments == null) {
+        try {
+          List<FactSource> result = new ArrayList<>();
+          for (SegmentedFactWriter.Segment s : SegmentedFactWriter.readManifest(manifest)) {
+            result.add(new FileFactSource(new File(manifest.getAbsoluteFile().getParentFile(), s.name)));
+          }
+          segments = Collections.unmodifiableList(result);
+        } catch (IOException e) {
+          System.err.println("Error while opening manifest " + manifest);
+          throw new RuntimeException(e);
+        }
+      }
+      return (segments);
+    }
+
+    @Override
+    public boolean hasIdIndex() throws IOException {
+      for (FactSource segment : segments()) {
+        if (!segment.hasIdIndex()) return (false);
+      }
+      return (true);
+    }
+
+    @Override
+    public Fact getFactById(String id) throws IOException {
+      for (FactSource segment : segments()) {
+        Fact f = segment.getFactById(id);
+        if (f != null) return (f);
+      }
+      return (null);
+    }
+
+    @Override
+    public Iterator<Fact> iterator() {
+      final Iterator<FactSource> segmentIterator = segments().iterator();
+      return (new SegmentIterator(segmentIterator));
+    }
+
+    /** Reads the segments one after the other, batches come from one segment each */
+    protected static class SegmentIterator implements Iterator<Fact>, BatchReader {
+
+      final Iterator<FactSource> segmentIterator;
+
+      Iterator<Fact> current = null;
+
+      SegmentIterator(Iterator<FactSource> segmentIterator) {
+        this.segmentIterator = segmentIterator;
+      }
+
+      @Override
+      public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+          if (!segmentIterator.hasNext()) return (false);
+          current = segmentIterator.next().iterator();
+        }
+        return (true);
+      }
+
+      @Override
+      public Fact next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return (current.next());
+      }
+
+      @Override
+      public int nextBatch(Fact[] buf) {
+        if (!hasNext()) return (0);
+        return (FactSource.nextBatch(current, buf));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return manifest.toString();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     for (Fact f : FactSource.from("c:/fabian/data/yago2s/yagoMetaFacts.tsv")) {
       D.p(f);
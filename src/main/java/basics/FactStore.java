@@ -0,0 +1,463 @@
+package basics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class stores facts in memory and answers triple patterns such as
+getFacts("<Elvis>", null, null), where NULL is a wildcard. Components are
+mapped to ints by a Dictionary; a fact is a row in int arrays. Duplicate
+facts are stored only once.
+
+While facts are being added, the facts with the same subject (relation,
+object) form a linked list in int arrays. freeze() turns these lists into
+sorted arrays with offsets (one pair per subject, relation and object), after
+which no more facts can be added and readers never lock.
+
+A pattern is answered from the shortest list of its bound components, the
+other bound components are checked fact by fact. count() answers without
+creating Fact objects, and in O(1) if only one component is bound.
+ */
+public class FactStore implements Iterable<Fact> {
+
+  /** Maps components and ids to ints */
+  protected Dictionary dictionary = new Dictionary();
+
+  /** Number of facts */
+  protected int size = 0;
+
+  /** Fact id of each fact, or -1 */
+  protected int[] ids = new int[16];
+
+  /** Components of each fact: 0=subject, 1=relation, 2=object */
+  protected int[][] columns = { new int[16], new int[16], new int[16] };
+
+  /** Per column and term: last fact with that term (+1), before freezing */
+  protected int[][] heads = { new int[16], new int[16], new int[16] };
+
+  /** Per column and fact: previous fact with the same term (+1), before freezing */
+  protected int[][] nexts = { new int[16], new int[16], new int[16] };
+
+  /** Per column and term: number of facts with that term */
+  protected int[][] counts = { new int[16], new int[16], new int[16] };
+
+  /** Per column after freezing: facts sorted by term */
+  protected int[][] postings;
+
+  /** Per column after freezing: start of the facts of each term in postings */
+  protected int[][] offsets;
+
+  /** Per id: first fact with that id (+1) */
+  protected int[] idRows = new int[16];
+
+  /** Hash table of facts (+1) for duplicate elimination, before freezing */
+  protected int[] factTable = new int[32];
+
+  /** TRUE after freeze() */
+  protected volatile boolean frozen = false;
+
+  /** Creates an empty store */
+  public FactStore() {
+  }
+
+  /** Creates a store with the facts of a source, read with several threads */
+  public static FactStore load(FactSource source, int threads) throws IOException, InterruptedException {
+    FactStore store = new FactStore();
+    store.addAll(source, threads);
+    return (store);
+  }
+
+  /** Grows an array to hold at least n elements */
+  protected static int[] ensure(int[] a, int n) {
+    if (n <= a.length) return (a);
+    return (Arrays.copyOf(a, Math.max(n, a.length * 2)));
+  }
+
+  /** Hash of a fact row */
+  protected static int hash(int id, int s, int p, int o) {
+    int h = ((id * 31 + s) * 31 + p) * 31 + o;
+    return (h ^ (h >>> 16));
+  }
+
+  /** Returns the slot of a fact in the fact table */
+  protected int factSlot(int id, int s, int p, int o) {
+    int mask = factTable.length - 1;
+    int i = hash(id, s, p, o) & mask;
+    while (factTable[i] != 0) {
+      int f = factTable[i] - 1;
+      if (ids[f] == id && columns[0][f] == s && columns[1][f] == p && columns[2][f] == o) break;
+      i = (i + 1) & mask;
+    }
+    return (i);
+  }
+
+  /** Adds a fact. Returns FALSE if it was already there. */
+  public synchronized boolean add(Fact fact) {
+    if (frozen) throw new IllegalStateException("FactStore is frozen");
+    int id = fact.getId() == null ? -1 : dictionary.add(fact.getId());
+    int s = dictionary.add(fact.getSubject());
+    int p = dictionary.add(fact.getRelation());
+    int o = dictionary.add(fact.getObject());
+    int slot = factSlot(id, s, p, o);
+    if (factTable[slot] != 0) return (false);
+    int f = size++;
+    ids = ensure(ids, size);
+    ids[f] = id;
+    if (id != -1) {
+      idRows = ensure(idRows, dictionary.size());
+      if (idRows[id] == 0) idRows[id] = f + 1;
+    }
+    int[] row = { s, p, o };
+    for (int c = 0; c < 3; c++) {
+      columns[c] = ensure(columns[c], size);
+      nexts[c] = ensure(nexts[c], size);
+      heads[c] = ensure(heads[c], dictionary.size());
+      counts[c] = ensure(counts[c], dictionary.size());
+      columns[c][f] = row[c];
+      nexts[c][f] = heads[c][row[c]];
+      heads[c][row[c]] = f + 1;
+      counts[c][row[c]]++;
+    }
+    factTable[slot] = f + 1;
+    if (size * 2 > factTable.length) {
+      factTable = new int[factTable.length * 2];
+      for (int i = 0; i < size; i++) {
+        factTable[factSlot(ids[i], columns[0][i], columns[1][i], columns[2][i])] = i + 1;
+      }
+    }
+    return (true);
+  }
+
+  /** Adds facts */
+  public synchronized void addAll(Iterable<Fact> facts) {
+    for (Fact f : facts) {
+      add(f);
+    }
+  }
+
+  /**
+   * Adds the facts of a source. The segments of the source are parsed in
+   * parallel, but the facts are added in chunks under the lock of the store,
+   * so only the parsing runs in parallel. This helps for formats that are
+   * slow to parse (such as TTL).
+   */
+  public void addAll(FactSource source, int threads) throws IOException, InterruptedException {
+    List<FactSource> segments = source.segments();
+    if (threads <= 1 || segments.size() == 1) {
+      addAll(source);
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, segments.size()));
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (FactSource segment : segments) {
+        results.add(executor.submit(() -> {
+          List<Fact> chunk = new ArrayList<>(ConversionPipeline.CHUNKSIZE);
+          for (Fact f : segment) {
+            chunk.add(f);
+            if (chunk.size() == ConversionPipeline.CHUNKSIZE) {
+              addAll(chunk);
+              chunk.clear();
+            }
+          }
+          addAll(chunk);
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Error while reading " + source, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Turns the indexes into sorted arrays. Afterwards, no facts can be added,
+   * and lookups do not lock.
+   */
+  public synchronized void freeze() {
+    if (frozen) return;
+    int terms = dictionary.size();
+    postings = new int[3][];
+    offsets = new int[3][];
+    for (int c = 0; c < 3; c++) {
+      int[] offset = new int[terms + 1];
+      for (int t = 0; t < terms; t++) {
+        offset[t + 1] = offset[t] + (t < counts[c].length ? counts[c][t] : 0);
+      }
+      int[] posting = new int[size];
+      int[] fill = Arrays.copyOf(offset, terms);
+      for (int f = 0; f < size; f++) {
+        posting[fill[columns[c][f]]++] = f;
+      }
+      postings[c] = posting;
+      offsets[c] = offset;
+      columns[c] = Arrays.copyOf(columns[c], size);
+      counts[c] = null;
+    }
+    ids = Arrays.copyOf(ids, size);
+    heads = null;
+    nexts = null;
+    factTable = null;
+    dictionary.trim();
+    frozen = true;
+  }
+
+  /** TRUE if the store is frozen */
+  public boolean isFrozen() {
+    return (frozen);
+  }
+
+  /** Returns the number of facts */
+  public int size() {
+    return (size);
+  }
+
+  /** Returns the dictionary (do not modify) */
+  public Dictionary dictionary() {
+    return (dictionary);
+  }
+
+  /** Creates the Fact of a row */
+  protected Fact fact(int f) {
+    return (new Fact(ids[f] == -1 ? null : dictionary.get(ids[f]), dictionary.get(columns[0][f]), dictionary.get(columns[1][f]),
+        dictionary.get(columns[2][f])));
+  }
+
+  /** Number of facts with term t in column c */
+  protected int count(int c, int t) {
+    if (frozen) return (offsets[c][t + 1] - offsets[c][t]);
+    return (t < counts[c].length ? counts[c][t] : 0);
+  }
+
+  /** Returns the facts with term t in column c, in the order of insertion */
+  protected int[] list(int c, int t) {
+    if (frozen) return (Arrays.copyOfRange(postings[c], offsets[c][t], offsets[c][t + 1]));
+    int[] result = new int[count(c, t)];
+    int i = result.length;
+    for (int f = t < heads[c].length ? heads[c][t] : 0; f != 0; f = nexts[c][f - 1]) {
+      result[--i] = f - 1;
+    }
+    return (result);
+  }
+
+  /** Receives the rows of matching facts, returns FALSE to stop */
+  protected interface RowVisitor {
+
+    boolean visit(int f);
+  }
+
+  /** Visits the rows that match the pattern (NULL components are wildcards) */
+  protected void visit(String s, String p, String o, RowVisitor visitor) {
+    int[] pattern = new int[3];
+    String[] components = { s, p, o };
+    int shortest = -1;
+    for (int c = 0; c < 3; c++) {
+      if (components[c] == null) {
+        pattern[c] = -1;
+        continue;
+      }
+      pattern[c] = dictionary.id(components[c]);
+      if (pattern[c] == -1) return;
+      if (shortest == -1 || count(c, pattern[c]) < count(shortest, pattern[shortest])) shortest = c;
+    }
+    if (shortest == -1) {
+      for (int f = 0; f < size; f++) {
+        if (!visitor.visit(f)) return;
+      }
+      return;
+    }
+    int[] candidates;
+    int from, to;
+    if (frozen) {
+      candidates = postings[shortest];
+      from = offsets[shortest][pattern[shortest]];
+      to = offsets[shortest][pattern[shortest] + 1];
+    } else {
+      candidates = list(shortest, pattern[shortest]);
+      from = 0;
+      to = candidates.length;
+    }
+    for (int i = from; i < to; i++) {
+      int f = candidates[i];
+      if (pattern[0] != -1 && columns[0][f] != pattern[0]) continue;
+      if (pattern[1] != -1 && columns[1][f] != pattern[1]) continue;
+      if (pattern[2] != -1 && columns[2][f] != pattern[2]) continue;
+      if (!visitor.visit(f)) return;
+    }
+  }
+
+  /** Returns the facts that match the pattern. NULL components are wildcards. */
+  public List<Fact> getFacts(String s, String p, String o) {
+    if (!frozen) {
+      synchronized (this) {
+        return (getFactsInternal(s, p, o));
+      }
+    }
+    return (getFactsInternal(s, p, o));
+  }
+
+  protected List<Fact> getFactsInternal(String s, String p, String o) {
+    List<Fact> result = new ArrayList<>();
+    visit(s, p, o, f -> result.add(fact(f)));
+    return (result);
+  }
+
+  /** Returns the first fact that matches the pattern, or NULL */
+  public Fact getFact(String s, String p, String o) {
+    if (!frozen) {
+      synchronized (this) {
+        return (getFactInternal(s, p, o));
+      }
+    }
+    return (getFactInternal(s, p, o));
+  }
+
+  protected Fact getFactInternal(String s, String p, String o) {
+    int[] result = { -1 };
+    visit(s, p, o, f -> {
+      result[0] = f;
+      return (false);
+    });
+    return (result[0] == -1 ? null : fact(result[0]));
+  }
+
+  /** Returns the fact with the id, or NULL */
+  public Fact getFactById(String id) {
+    if (!frozen) {
+      synchronized (this) {
+        return (getFactByIdInternal(id));
+      }
+    }
+    return (getFactByIdInternal(id));
+  }
+
+  protected Fact getFactByIdInternal(String id) {
+    int t = dictionary.id(id);
+    if (t == -1 || t >= idRows.length || idRows[t] == 0) return (null);
+    return (fact(idRows[t] - 1));
+  }
+
+  /** Returns the meta-facts of a fact, i.e., the facts whose subject is its id */
+  public List<Fact> getMetaFacts(Fact fact) {
+    if (fact.getId() == null) return (Collections.emptyList());
+    return (getFacts(fact.getId(), null, null));
+  }
+
+  /** Returns the number of facts that match the pattern, without creating them */
+  public int count(String s, String p, String o) {
+    if (!frozen) {
+      synchronized (this) {
+        return (countInternal(s, p, o));
+      }
+    }
+    return (countInternal(s, p, o));
+  }
+
+  protected int countInternal(String s, String p, String o) {
+    String[] components = { s, p, o };
+    int bound = -1;
+    for (int c = 0; c < 3; c++) {
+      if (components[c] == null) continue;
+      if (bound != -1) {
+        bound = -2;
+        break;
+      }
+      bound = c;
+    }
+    if (bound == -1) return (size);
+    if (bound >= 0) {
+      int t = dictionary.id(components[bound]);
+      return (t == -1 ? 0 : count(bound, t));
+    }
+    int[] result = { 0 };
+    visit(s, p, o, f -> {
+      result[0]++;
+      return (true);
+    });
+    return (result[0]);
+  }
+
+  /** Returns the distinct components in a column (0=subject, 1=relation, 2=object) */
+  public List<String> terms(int column) {
+    List<String> result = new ArrayList<>();
+    synchronized (this) {
+      for (int t = 0; t < dictionary.size(); t++) {
+        if (count(column, t) > 0) result.add(dictionary.get(t));
+      }
+    }
+    return (result);
+  }
+
+  /**
+   * Iterates over all facts, in the order of insertion. On a frozen store,
+   * the facts are created while iterating; otherwise, the iterator runs over a
+   * copy of the facts at the time of the call.
+   */
+  @Override
+  public Iterator<Fact> iterator() {
+    if (!frozen) {
+      synchronized (this) {
+        return (Collections.unmodifiableList(getFactsInternal(null, null, null)).iterator());
+      }
+    }
+    return (new Iterator<Fact>() {
+
+      int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return (next < size);
+      }
+
+      @Override
+      public Fact next() {
+        if (next >= size) throw new NoSuchElementException();
+        return (fact(next++));
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    return ("FactStore with " + size + " facts and " + dictionary.size() + " components" + (frozen ? " (frozen)" : ""));
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    Announce.doing("Loading", args[0]);
+    FactStore store = load(FactSource.from(args[0]), Runtime.getRuntime().availableProcessors());
+    store.freeze();
+    Announce.done(store.toString());
+    for (String relation : store.terms(1)) {
+      Announce.message(relation, store.count(null, relation, null));
+    }
+  }
+}
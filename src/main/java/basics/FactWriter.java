@@ -1,10 +1,19 @@
 package basics;
 
+import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
 
 import javatools.filehandlers.FileSet;
+import javatools.filehandlers.FileUtils;
 
 /**
 Copyright 2016 Fabian M. Suchanek, with contributions by Steffen Metzger
@@ -31,6 +40,12 @@ public abstract class FactWriter implements Closeable {
   /** Contains the file */
   protected final File file;
 
+  /** Counts the bytes written to the file (if the writer was opened by openWriter) */
+  protected CountingWriter counter;
+
+  /** Collects the offsets of the facts with ids (or NULL) */
+  protected IdIndex.Builder idIndex;
+
   /** Returns the file that we are writing to */
   public File getFile() {
     return (file);
@@ -39,12 +54,55 @@ public abstract class FactWriter implements Closeable {
   /** Appends a fact to the output */
   public abstract void write(Fact f) throws IOException;
 
+  /**
+   * Appends facts[offset] ... facts[offset+length-1] to the output. Other
+   * threads cannot write in between. Writers that support format() override
+   * this to write the batch in one go.
+   */
+  public synchronized void write(Fact[] facts, int offset, int length) throws IOException {
+    for (int i = offset; i < offset + length; i++) {
+      write(facts[i]);
+    }
+  }
+
+  /** Appends the facts to the output, see write(Fact[], int, int) */
+  public void write(Collection<Fact> facts) throws IOException {
+    Fact[] batch = facts.toArray(new Fact[facts.size()]);
+    write(batch, 0, batch.length);
+  }
+
   /** Appends a comment to the output */
   public abstract void writeComment(String comment) throws IOException;
 
   /** Flushes buffers to disk */
   public abstract void flush() throws IOException;
 
+  /**
+   * Builds an IdIndex for the facts with ids that are written from now on.
+   * It is stored when the writer is closed. Not possible for compressed
+   * files.
+   */
+  public void indexIds() {
+    if (counter == null || isCompressed(file)) throw new IllegalStateException("Cannot index the ids of " + file);
+    idIndex = new IdIndex.Builder(file, dataStart());
+  }
+
+  /** Returns the offset where the facts start (after a preamble) */
+  protected long dataStart() {
+    return (0);
+  }
+
+  /** Writes the IdIndex, if any. Call after closing the file. */
+  protected void closeIdIndex() throws IOException {
+    if (idIndex != null) idIndex.write();
+    idIndex = null;
+  }
+
+  /** Returns the number of bytes written so far (UTF-8, before buffering), or -1 if unknown */
+  public long bytesWritten() {
+    return (counter == null ? -1 : counter.count);
+  }
+
   public FactWriter(File f) {
     file = f;
 
@@ -52,6 +110,46 @@ public abstract class FactWriter implements Closeable {
     f.getAbsoluteFile().getParentFile().mkdirs();
   }
 
+  /**
+   * Opens a buffered UTF-8 writer to the file that keeps track of the bytes
+   * written. Files that end in .gz are compressed, and the bytes are counted
+   * before compression.
+   */
+  protected Writer openWriter(File f) throws IOException {
+    if (isCompressed(f)) {
+      counter = new CountingWriter(
+          new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(f), 1 << 16), StandardCharsets.UTF_8), 1 << 16));
+    } else {
+      counter = new CountingWriter(FileUtils.getBufferedUTF8Writer(f));
+    }
+    return (counter);
+  }
+
+  /** TRUE if the file name ends in .gz */
+  public static boolean isCompressed(File f) {
+    return (f.getName().toLowerCase().endsWith(".gz"));
+  }
+
+  /** Returns the extension of the format of the file (e.g. ".ttl" for x.ttl and x.ttl.gz) */
+  public static String formatExtension(File f) {
+    String name = f.getName();
+    if (isCompressed(f)) name = FileSet.noExtension(name);
+    return (FileSet.extension(name).toLowerCase());
+  }
+
+  /** Returns the name of the theme that is stored in a file */
+  public static String themeName(File f) {
+    String name = f.getName();
+    if (isCompressed(f)) name = FileSet.noExtension(name);
+    return (FileSet.newExtension(name, null));
+  }
+
+  /** Returns the fact that attaches the header as gloss to the theme */
+  public static Fact themeGloss(String theme, String header) {
+    header = header.replaceAll("\\s+", " ");
+    return (new Fact(FactComponent.forYagoEntity("yagoTheme_" + theme), YAGO.hasGloss, FactComponent.forString(header)));
+  }
+
   /** Returns a fact writer for a file */
   public static FactWriter from(File f) throws Exception {
     return (FactWriter.from(f, null));
@@ -59,13 +157,65 @@ public abstract class FactWriter implements Closeable {
 
   /** Returns a fact writer for a file */
   public static FactWriter from(File f, String header) throws Exception {
-    switch (FileSet.extension(f).toLowerCase()) {
+    return (FactWriter.from(f, header, themeName(f)));
+  }
+
+  /** Returns a fact writer for a file, the header will be attached to the given theme */
+  public static FactWriter from(File f, String header, String theme) throws Exception {
+    switch (formatExtension(f)) {
       case ".ttl":
-        return (new N4Writer(f, header));
+        return (new N4Writer(f, header, theme));
       case ".tsv":
-        return (new TsvWriter(f, header));
+        return (new TsvWriter(f, true, header, theme));
+      case PartitionedFactWriter.EXTENSION:
+        return (new PartitionedFactWriter(f, header, theme));
     }
     throw new RuntimeException("Unsupported output file format for writing to: " + f);
   }
 
+  /** Writer that counts the number of UTF-8 bytes that pass through it */
+  public static class CountingWriter extends FilterWriter {
+
+    /** Bytes written so far */
+    protected long count = 0;
+
+    public CountingWriter(Writer out) {
+      super(out);
+    }
+
+    /** Returns the number of UTF-8 bytes of a character (surrogates count 2 each) */
+    protected static int utf8Length(char c) {
+      if (c < 0x80) return (1);
+      if (c < 0x800 || Character.isSurrogate(c)) return (2);
+      return (3);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      count += utf8Length((char) c);
+      out.write(c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      for (int i = off; i < off + len; i++) {
+        count += utf8Length(cbuf[i]);
+      }
+      out.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      for (int i = off; i < off + len; i++) {
+        count += utf8Length(str.charAt(i));
+      }
+      out.write(str, off, len);
+    }
+
+    /** Returns the number of bytes written so far */
+    public long count() {
+      return (count);
+    }
+  }
+
 }
@@ -0,0 +1,304 @@
+package basics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javatools.administrative.Announce;
+import javatools.filehandlers.FileUtils;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class finds subjects that have more than one object for a functional
+relation. The facts of the functional relations are spilled to partition
+files by the hash of their subject, and the partitions are grouped in
+parallel. A partition with more facts than the memory cap is split again.
+
+Two objects are compatible if one is more specific than the other
+(FactComponent.isMoreSpecific, e.g. 1935-##-## and 1935-01-08). A group of
+compatible objects can be resolved to the most specific one.
+
+Example:
+  Set&lt;String&gt; functional = FunctionalityChecker.functionalRelations(schema, false);
+  new FunctionalityChecker(functional).check(theme, 8, tmp, c -&gt; { if (!c.isCompatible()) System.out.println(c); });
+ */
+public class FunctionalityChecker {
+
+  /** Maximal recursion depth for partitions that are too large */
+  public static final int MAXLEVEL = 3;
+
+  /** The functional relations */
+  protected final Set<String> relations;
+
+  /** Number of partitions */
+  protected int partitions = 64;
+
+  /** Maximal number of facts of a partition in memory */
+  protected long maxFacts = 10000000;
+
+  /** Facts with the same subject and functional relation, but different objects */
+  public static class Conflict {
+
+    public final String subject;
+
+    public final String relation;
+
+    /** The facts, one per object */
+    public final List<Fact> facts;
+
+    /** The most specific fact, or NULL if the objects are not compatible */
+    protected final Fact mostSpecific;
+
+    public Conflict(String subject, String relation, List<Fact> facts) {
+      this.subject = subject;
+      this.relation = relation;
+      this.facts = facts;
+      this.mostSpecific = mostSpecific(facts);
+    }
+
+    /** Returns the fact whose object is more specific than all others, or NULL */
+    protected static Fact mostSpecific(List<Fact> facts) {
+      Fact best = facts.get(0);
+      for (Fact f : facts) {
+        if (FactComponent.isMoreSpecific(f.getObject(), best.getObject())) best = f;
+      }
+      for (Fact f : facts) {
+        if (f != best && !FactComponent.isMoreSpecific(best.getObject(), f.getObject())) return (null);
+      }
+      return (best);
+    }
+
+    /** TRUE if one object is more specific than all others */
+    public boolean isCompatible() {
+      return (mostSpecific != null);
+    }
+
+    /** Returns the most specific fact, or NULL if the objects are not compatible */
+    public Fact resolve() {
+      return (mostSpecific);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder(subject).append(' ').append(relation).append(isCompatible() ? " (compatible):" : " (conflict):");
+      for (Fact f : facts) {
+        result.append(' ').append(f.getObject());
+      }
+      return (result.toString());
+    }
+  }
+
+  /** Checks the given relations */
+  public FunctionalityChecker(Collection<String> relations) {
+    this.relations = new HashSet<>(relations);
+  }
+
+  /**
+   * Returns the relations that are declared as YAGO.function (and
+   * YAGO.functionInTime, if asked for) in the schema facts
+   */
+  public static Set<String> functionalRelations(Iterable<Fact> schema, boolean inTime) {
+    Set<String> result = new HashSet<>();
+    for (Fact f : schema) {
+      if (!f.getRelation().equals(RDFS.type)) continue;
+      if (f.getObject().equals(YAGO.function) || inTime && f.getObject().equals(YAGO.functionInTime)) result.add(f.getSubject());
+    }
+    return (result);
+  }
+
+  /** Sets the number of partitions */
+  public FunctionalityChecker setPartitions(int partitions) {
+    this.partitions = Math.max(1, partitions);
+    return (this);
+  }
+
+  /** Sets the maximal number of facts that are grouped in memory at the same time (per thread) */
+  public FunctionalityChecker setMaxFacts(long maxFacts) {
+    this.maxFacts = Math.max(1, maxFacts);
+    return (this);
+  }
+
+  /** Returns the partition of a subject */
+  protected int partition(String subject, int level) {
+    int h = subject.hashCode() * (2 * level + 1);
+    h ^= (h >>> 16) ^ (h >>> (8 + level));
+    return ((h & 0x7FFFFFFF) % partitions);
+  }
+
+  /**
+   * Calls the consumer for every subject and functional relation with more
+   * than one object, including compatible ones. The consumer has to be
+   * thread-safe. Returns the number of incompatible conflicts.
+   */
+  public long check(FactSource theme, int threads, File tmpDir, Consumer<Conflict> consumer) throws IOException, InterruptedException {
+    Partitioning partitioning = new Partitioning(tmpDir, 0);
+    try {
+      theme.parallelForEach(f -> {
+        if (!relations.contains(f.getRelation())) return;
+        try {
+          partitioning.add(f);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }, threads);
+      partitioning.close();
+      AtomicLong conflicts = new AtomicLong();
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+      try {
+        List<Future<?>> results = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+          final int partition = p;
+          results.add(executor.submit(() -> {
+            conflicts.addAndGet(group(partitioning, partition, consumer));
+            return (null);
+          }));
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+      } catch (ExecutionException e) {
+        throw new IOException("Error while checking " + theme, e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+      return (conflicts.get());
+    } finally {
+      partitioning.delete();
+    }
+  }
+
+  /** Groups one partition (splits it if it is too large), returns the number of incompatible conflicts */
+  protected long group(Partitioning partitioning, int p, Consumer<Conflict> consumer) throws IOException {
+    File file = partitioning.files[p];
+    if (partitioning.counts[p].get() > maxFacts && partitioning.level < MAXLEVEL) {
+      Partitioning split = new Partitioning(partitioning.tmpDir, partitioning.level + 1);
+      try {
+        try (BufferedReader in = FileUtils.getBufferedUTF8Reader(file)) {
+          for (String line = in.readLine(); line != null; line = in.readLine()) {
+            split.add(TsvReader.parseLine(line));
+          }
+        }
+        split.close();
+        file.delete();
+        long result = 0;
+        for (int q = 0; q < partitions; q++) {
+          result += group(split, q, consumer);
+        }
+        return (result);
+      } finally {
+        split.delete();
+      }
+    }
+    // Subject and relation -> object -> fact
+    Map<String, Map<String, Fact>> groups = new LinkedHashMap<>();
+    try (BufferedReader in = FileUtils.getBufferedUTF8Reader(file)) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        Fact f = TsvReader.parseLine(line);
+        groups.computeIfAbsent(f.getSubject() + "\t" + f.getRelation(), k -> new LinkedHashMap<>()).putIfAbsent(f.getObject(), f);
+      }
+    }
+    file.delete();
+    long result = 0;
+    for (Map<String, Fact> group : groups.values()) {
+      if (group.size() < 2) continue;
+      List<Fact> facts = new ArrayList<>(group.values());
+      Conflict conflict = new Conflict(facts.get(0).getSubject(), facts.get(0).getRelation(), facts);
+      if (!conflict.isCompatible()) result++;
+      consumer.accept(conflict);
+    }
+    return (result);
+  }
+
+  /** Partition files of one level */
+  protected class Partitioning {
+
+    final File tmpDir;
+
+    final int level;
+
+    final File[] files = new File[partitions];
+
+    final Writer[] writers = new Writer[partitions];
+
+    final AtomicLong[] counts = new AtomicLong[partitions];
+
+    Partitioning(File tmpDir, int level) throws IOException {
+      this.tmpDir = tmpDir;
+      this.level = level;
+      for (int p = 0; p < partitions; p++) {
+        files[p] = File.createTempFile("functional", ".tsv", tmpDir);
+        writers[p] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files[p]), StandardCharsets.UTF_8), 1 << 14);
+        counts[p] = new AtomicLong();
+      }
+    }
+
+    /** Adds a fact to its partition */
+    void add(Fact f) throws IOException {
+      int p = partition(f.getSubject(), level);
+      String line = f.toTsvLine();
+      synchronized (writers[p]) {
+        writers[p].write(line);
+      }
+      counts[p].incrementAndGet();
+    }
+
+    void close() throws IOException {
+      for (Writer w : writers) {
+        w.close();
+      }
+    }
+
+    void delete() {
+      for (int p = 0; p < partitions; p++) {
+        try {
+          writers[p].close();
+        } catch (IOException e) {
+          Announce.warning(e);
+        }
+        files[p].delete();
+      }
+    }
+  }
+
+  /** Test: schema file, theme file */
+  public static void main(String[] args) throws Exception {
+    Set<String> functional = functionalRelations(FactSource.from(args[0]), false);
+    Announce.doing("Checking", functional.size(), "functional relations");
+    long n = new FunctionalityChecker(functional).check(FactSource.from(args[1]), Runtime.getRuntime().availableProcessors(),
+        new File(System.getProperty("java.io.tmpdir")), c -> {
+          if (!c.isCompatible()) Announce.message(c);
+        });
+    Announce.done(n + " conflicts");
+  }
+}
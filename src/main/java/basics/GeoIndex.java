@@ -0,0 +1,409 @@
+package basics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class is a spatial index of the entities with YAGO.hasLatitude and
+YAGO.hasLongitude. The earth is cut into a grid of cells of equal degrees;
+the entities are sorted by cell, with the coordinates in primitive arrays.
+An entity without coordinates of its own gets those of its
+YAGO.hasGeoLocation (e.g. a GeoNames entity).
+
+The index lives in a file that is memory-mapped, so that it is ready as soon
+as it is opened. The file is:
+  int MAGIC, int rows, int columns, double cell size, int entities, int name bytes
+  int[rows*columns+1] first entity of each cell
+  double[entities] latitudes, double[entities] longitudes
+  int[entities+1] start of each name, byte[] names (UTF-8)
+
+Example:
+  GeoIndex index = GeoIndex.build(FactSource.from("yagoGeonamesData.tsv"), new File("geo.index"));
+  index.nearest(48.8566, 2.3522, 10);
+ */
+public class GeoIndex {
+
+  /** Marks geo index files */
+  public static final int MAGIC = 0x59474931;
+
+  /** Mean radius of the earth in km */
+  public static final double EARTHRADIUS = 6371.0088;
+
+  /** Default cell size in degrees */
+  public static final double CELLSIZE = 0.5;
+
+  /** Grid size */
+  protected final int rows, columns;
+
+  /** Cell size in degrees */
+  protected final double cellSize;
+
+  /** Number of entities */
+  protected final int size;
+
+  /** First entity of each cell */
+  protected final IntBuffer cells;
+
+  /** Coordinates of the entities */
+  protected final DoubleBuffer latitudes, longitudes;
+
+  /** Start of each name in the names */
+  protected final IntBuffer nameStarts;
+
+  /** Entity names, UTF-8 */
+  protected final ByteBuffer names;
+
+  /** Maps an index file */
+  protected GeoIndex(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 28);
+      if (header.getInt() != MAGIC) throw new IOException("Not a geo index: " + file);
+      rows = header.getInt();
+      columns = header.getInt();
+      cellSize = header.getDouble();
+      size = header.getInt();
+      int nameBytes = header.getInt();
+      long arrayBytes = 4L * (rows * columns + 1) + 16L * size + 4L * (size + 1);
+      if (arrayBytes > Integer.MAX_VALUE) throw new IOException("Geo index too large to map: " + file);
+      ByteBuffer arrays = channel.map(FileChannel.MapMode.READ_ONLY, 28, arrayBytes);
+      cells = Buffers.slice(arrays, 0, 4 * (rows * columns + 1)).asIntBuffer();
+      int pos = 4 * (rows * columns + 1);
+      latitudes = Buffers.slice(arrays, pos, 8 * size).asDoubleBuffer();
+      pos += 8 * size;
+      longitudes = Buffers.slice(arrays, pos, 8 * size).asDoubleBuffer();
+      pos += 8 * size;
+      nameStarts = Buffers.slice(arrays, pos, 4 * (size + 1)).asIntBuffer();
+      names = channel.map(FileChannel.MapMode.READ_ONLY, 28 + arrayBytes, nameBytes);
+    }
+  }
+
+  /** Opens an index file */
+  public static GeoIndex load(File file) throws IOException {
+    return (new GeoIndex(file));
+  }
+
+  /** Builds the index of the facts with the default cell size, writes it to the file, and opens it */
+  public static GeoIndex build(Iterable<Fact> facts, File file) throws IOException {
+    return (build(facts, file, CELLSIZE));
+  }
+
+  /** Builds the index of the facts, writes it to the file, and opens it */
+  public static GeoIndex build(Iterable<Fact> facts, File file, double cellSize) throws IOException {
+    Dictionary entities = new Dictionary();
+    double[] lat = new double[16], lon = new double[16];
+    Arrays.fill(lat, Double.NaN);
+    Arrays.fill(lon, Double.NaN);
+    List<String[]> locations = new ArrayList<>();
+    for (Fact f : facts) {
+      boolean isLatitude = f.getRelation().equals(YAGO.hasLatitude);
+      if (isLatitude || f.getRelation().equals(YAGO.hasLongitude)) {
+        double value = f.getDoubleValue();
+        if (Double.isNaN(value)) continue;
+        int id = entities.add(f.getSubject());
+        if (id >= lat.length) {
+          int old = lat.length;
+          lat = Arrays.copyOf(lat, old * 2);
+          lon = Arrays.copyOf(lon, old * 2);
+          Arrays.fill(lat, old, lat.length, Double.NaN);
+          Arrays.fill(lon, old, lon.length, Double.NaN);
+        }
+        if (isLatitude) lat[id] = value;
+        else lon[id] = value;
+      } else if (f.getRelation().equals(YAGO.hasGeoLocation) && !FactComponent.isLiteral(f.getObject())) {
+        locations.add(new String[] { f.getSubject(), f.getObject() });
+      }
+    }
+    // Entities that have only a location take its coordinates
+    List<String> names = new ArrayList<>();
+    List<double[]> coordinates = new ArrayList<>();
+    for (int id = 0; id < entities.size(); id++) {
+      names.add(entities.get(id));
+      coordinates.add(new double[] { lat[id], lon[id] });
+    }
+    for (String[] location : locations) {
+      int from = entities.id(location[1]);
+      if (from == -1 || entities.id(location[0]) != -1) continue;
+      entities.add(location[0]);
+      names.add(location[0]);
+      coordinates.add(new double[] { lat[from], lon[from] });
+    }
+    write(names, coordinates, file, cellSize);
+    return (load(file));
+  }
+
+  /** Writes the entities with valid coordinates to an index file */
+  protected static void write(List<String> names, List<double[]> coordinates, File file, double cellSize) throws IOException {
+    int rows = (int) Math.ceil(180 / cellSize);
+    int columns = (int) Math.ceil(360 / cellSize);
+    // Counting sort by cell
+    int[] cellOf = new int[names.size()];
+    int[] starts = new int[rows * columns + 1];
+    int n = 0;
+    for (int i = 0; i < names.size(); i++) {
+      double[] c = coordinates.get(i);
+      if (!(c[0] >= -90 && c[0] <= 90 && c[1] >= -180 && c[1] <= 180)) {
+        cellOf[i] = -1;
+        continue;
+      }
+      cellOf[i] = row(c[0], cellSize, rows) * columns + column(c[1], cellSize, columns);
+      starts[cellOf[i] + 1]++;
+      n++;
+    }
+    for (int c = 0; c < rows * columns; c++) {
+      starts[c + 1] += starts[c];
+    }
+    int[] order = new int[n];
+    int[] next = Arrays.copyOf(starts, rows * columns);
+    for (int i = 0; i < names.size(); i++) {
+      if (cellOf[i] != -1) order[next[cellOf[i]]++] = i;
+    }
+    byte[][] bytes = new byte[n][];
+    long nameBytes = 0;
+    for (int j = 0; j < n; j++) {
+      bytes[j] = names.get(order[j]).getBytes(StandardCharsets.UTF_8);
+      nameBytes += bytes[j].length;
+    }
+    if (nameBytes > Integer.MAX_VALUE) throw new IOException("Too many entity names for a geo index: " + nameBytes + " bytes");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(rows);
+      out.writeInt(columns);
+      out.writeDouble(cellSize);
+      out.writeInt(n);
+      out.writeInt((int) nameBytes);
+      for (int start : starts) {
+        out.writeInt(start);
+      }
+      for (int j = 0; j < n; j++) {
+        out.writeDouble(coordinates.get(order[j])[0]);
+      }
+      for (int j = 0; j < n; j++) {
+        out.writeDouble(coordinates.get(order[j])[1]);
+      }
+      int start = 0;
+      for (int j = 0; j < n; j++) {
+        out.writeInt(start);
+        start += bytes[j].length;
+      }
+      out.writeInt(start);
+      for (int j = 0; j < n; j++) {
+        out.write(bytes[j]);
+      }
+    }
+  }
+
+  /** Returns the grid row of a latitude */
+  protected static int row(double lat, double cellSize, int rows) {
+    return (Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / cellSize))));
+  }
+
+  /** Returns the grid column of a longitude */
+  protected static int column(double lon, double cellSize, int columns) {
+    return (Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180) / cellSize))));
+  }
+
+  /** Returns the great-circle distance in km */
+  public static double distance(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    return (2 * EARTHRADIUS * Math.asin(Math.min(1, Math.sqrt(a))));
+  }
+
+  /** Returns the number of entities */
+  public int size() {
+    return (size);
+  }
+
+  /** Returns the name of the i-th entity */
+  public String entity(int i) {
+    int start = nameStarts.get(i);
+    byte[] bytes = new byte[nameStarts.get(i + 1) - start];
+    ByteBuffer b = names.duplicate();
+    b.position(start);
+    b.get(bytes);
+    return (new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  /** Returns the latitude of the i-th entity */
+  public double latitude(int i) {
+    return (latitudes.get(i));
+  }
+
+  /** Returns the longitude of the i-th entity */
+  public double longitude(int i) {
+    return (longitudes.get(i));
+  }
+
+  /** Adds the numbers of the entities in the box (longitudes without wrapping) to the list */
+  protected void box(double minLat, double minLon, double maxLat, double maxLon, IntList result) {
+    int r1 = row(minLat, cellSize, rows), r2 = row(maxLat, cellSize, rows);
+    int c1 = column(minLon, cellSize, columns), c2 = column(maxLon, cellSize, columns);
+    for (int r = r1; r <= r2; r++) {
+      // The cells of a row are consecutive
+      int end = cells.get(r * columns + c2 + 1);
+      for (int i = cells.get(r * columns + c1); i < end; i++) {
+        double lat = latitudes.get(i), lon = longitudes.get(i);
+        if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) result.add(i);
+      }
+    }
+  }
+
+  /**
+   * Returns the numbers of the entities in the bounding box. If minLon &gt;
+   * maxLon, the box crosses the 180th meridian.
+   */
+  public int[] boundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+    IntList result = new IntList();
+    if (minLat > maxLat) return (result.toArray());
+    if (minLon <= maxLon) {
+      box(minLat, minLon, maxLat, maxLon, result);
+    } else {
+      box(minLat, minLon, maxLat, 180, result);
+      box(minLat, -180, maxLat, maxLon, result);
+    }
+    return (result.toArray());
+  }
+
+  /** Returns the names of the entities in the bounding box */
+  public List<String> entitiesInBox(double minLat, double minLon, double maxLat, double maxLon) {
+    return (entities(boundingBox(minLat, minLon, maxLat, maxLon)));
+  }
+
+  /** Returns the numbers of the entities within the radius (km), nearest first */
+  public int[] radius(double lat, double lon, double km) {
+    IntList candidates = new IntList();
+    double dLat = Math.toDegrees(km / EARTHRADIUS);
+    double minLat = lat - dLat, maxLat = lat + dLat;
+    if (minLat <= -90 || maxLat >= 90 || km >= Math.PI * EARTHRADIUS / 2) {
+      box(Math.max(-90, minLat), -180, Math.min(90, maxLat), 180, candidates);
+    } else {
+      // Longitude span of the circle (at its tangent points)
+      double dLon = Math.toDegrees(Math.asin(Math.min(1, Math.sin(km / EARTHRADIUS) / Math.cos(Math.toRadians(lat)))));
+      double minLon = lon - dLon, maxLon = lon + dLon;
+      if (dLon >= 180) box(minLat, -180, maxLat, 180, candidates);
+      else if (minLon < -180) {
+        box(minLat, minLon + 360, maxLat, 180, candidates);
+        box(minLat, -180, maxLat, maxLon, candidates);
+      } else if (maxLon > 180) {
+        box(minLat, minLon, maxLat, 180, candidates);
+        box(minLat, -180, maxLat, maxLon - 360, candidates);
+      } else box(minLat, minLon, maxLat, maxLon, candidates);
+    }
+    int n = 0;
+    int[] ids = new int[candidates.size];
+    double[] distances = new double[candidates.size];
+    for (int j = 0; j < candidates.size; j++) {
+      int i = candidates.values[j];
+      double d = distance(lat, lon, latitudes.get(i), longitudes.get(i));
+      if (d > km) continue;
+      ids[n] = i;
+      distances[n++] = d;
+    }
+    return (sortByDistance(ids, distances, n));
+  }
+
+  /** Returns the names of the entities within the radius (km), nearest first */
+  public List<String> entitiesInRadius(double lat, double lon, double km) {
+    return (entities(radius(lat, lon, km)));
+  }
+
+  /** Returns the numbers of the k entities nearest to the point, nearest first */
+  public int[] nearest(double lat, double lon, int k) {
+    if (k <= 0 || size == 0) return (new int[0]);
+    double km = Math.toRadians(cellSize) * EARTHRADIUS;
+    while (true) {
+      int[] result = radius(lat, lon, km);
+      if (result.length >= k || km >= Math.PI * EARTHRADIUS) return (result.length > k ? Arrays.copyOf(result, k) : result);
+      km *= 2;
+    }
+  }
+
+  /** Returns the names of the k entities nearest to the point, nearest first */
+  public List<String> nearestEntities(double lat, double lon, int k) {
+    return (entities(nearest(lat, lon, k)));
+  }
+
+  /** Returns the names of entity numbers */
+  public List<String> entities(int[] ids) {
+    List<String> result = new ArrayList<>(ids.length);
+    for (int i : ids) {
+      result.add(entity(i));
+    }
+    return (result);
+  }
+
+  /** Returns the first n ids, sorted by distance (and then by id) */
+  protected static int[] sortByDistance(int[] ids, double[] distances, int n) {
+    Integer[] order = new Integer[n];
+    for (int j = 0; j < n; j++) {
+      order[j] = j;
+    }
+    Arrays.sort(order, (a, b) -> distances[a] != distances[b] ? Double.compare(distances[a], distances[b]) : Integer.compare(ids[a], ids[b]));
+    int[] result = new int[n];
+    for (int j = 0; j < n; j++) {
+      result[j] = ids[order[j]];
+    }
+    return (result);
+  }
+
+  /** Growable int array */
+  protected static class IntList {
+
+    int[] values = new int[16];
+
+    int size = 0;
+
+    void add(int value) {
+      if (size == values.length) values = Arrays.copyOf(values, size * 2);
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      return (Arrays.copyOf(values, size));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return ("GeoIndex with " + size + " entities in " + rows + "x" + columns + " cells");
+  }
+
+  /** Test: fact file, index file */
+  public static void main(String[] args) throws Exception {
+    Announce.doing("Building geo index");
+    GeoIndex index = build(FactSource.from(args[0]), new File(args[1]));
+    Announce.done();
+    Announce.message(index);
+    Announce.message("Near Paris:", index.nearestEntities(48.8566, 2.3522, 10));
+  }
+}
@@ -0,0 +1,114 @@
+package basics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class estimates the number of distinct strings in fixed memory
+(HyperLogLog). With 2^p registers of one byte, the standard error is about
+1.04/sqrt(2^p), i.e. 0.8% for the default p=14 (16 KB). Small cardinalities
+are counted by linear counting. Sketches with the same p can be merged.
+ */
+public class HyperLogLog {
+
+  /** Default number of index bits */
+  public static final int DEFAULTBITS = 14;
+
+  /** Number of index bits */
+  protected final int bits;
+
+  /** Registers: maximal rank seen per bucket */
+  protected final byte[] registers;
+
+  /** Uses 2^14 registers */
+  public HyperLogLog() {
+    this(DEFAULTBITS);
+  }
+
+  /** Uses 2^bits registers (4 &lt;= bits &lt;= 18) */
+  public HyperLogLog(int bits) {
+    if (bits < 4 || bits > 18) throw new IllegalArgumentException("HyperLogLog needs 4 to 18 bits: " + bits);
+    this.bits = bits;
+    this.registers = new byte[1 << bits];
+  }
+
+  /** Returns a 64-bit hash of a string (FNV-1a with a final mix) */
+  public static long hash(CharSequence s) {
+    long h = IdIndex.hash(s);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (h);
+  }
+
+  /** Adds a string */
+  public void add(CharSequence s) {
+    addHash(hash(s));
+  }
+
+  /** Adds a 64-bit hash */
+  public void addHash(long hash) {
+    int bucket = (int) (hash >>> (64 - bits));
+    // Rank of the first 1 in the remaining bits
+    int rank = Long.numberOfLeadingZeros((hash << bits) | (1L << (bits - 1))) + 1;
+    if (rank > registers[bucket]) registers[bucket] = (byte) rank;
+  }
+
+  /** Adds the registers of another sketch */
+  public void merge(HyperLogLog other) {
+    if (other.bits != bits) throw new IllegalArgumentException("Cannot merge HyperLogLogs with " + bits + " and " + other.bits + " bits");
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+    }
+  }
+
+  /** Returns the estimated number of distinct strings */
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += 1.0 / (1L << r);
+      if (r == 0) zeros++;
+    }
+    double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+    double estimate = alpha * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double) m / zeros);
+    return (Math.round(estimate));
+  }
+
+  /** Writes the sketch */
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(bits);
+    out.write(registers);
+  }
+
+  /** Reads a sketch */
+  public static HyperLogLog read(DataInput in) throws IOException {
+    HyperLogLog result = new HyperLogLog(in.readByte());
+    in.readFully(result.registers);
+    return (result);
+  }
+
+  @Override
+  public String toString() {
+    return ("HyperLogLog ~" + estimate());
+  }
+}
@@ -0,0 +1,251 @@
+package basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class maps fact ids to the positions of the facts in a TTL or TSV
+file, so that the base fact of a meta-fact can be found without scanning the
+theme. A FactWriter builds the index while writing if indexIds() is called,
+and stores it next to the file (yagoFacts.ttl.ids). The index stores a 64-bit
+hash of each id and the byte offset of the fact, sorted by hash; lookups do
+a binary search and check the id of the fact at the offset.
+
+Only uncompressed files can be indexed.
+ */
+public class IdIndex {
+
+  /** Extension of index files */
+  public static final String EXTENSION = ".ids";
+
+  /** Marks index files */
+  public static final int MAGIC = 0x59494431;
+
+  /** The indexed file */
+  protected final File file;
+
+  /** Start of the facts in the file (after the TTL preamble) */
+  protected final long dataStart;
+
+  /** Hashes of the ids, sorted */
+  protected final long[] hashes;
+
+  /** Offsets of the facts, parallel to hashes */
+  protected final long[] offsets;
+
+  /** Prefix declarations of a TTL file, read on demand */
+  protected String preamble;
+
+  /** Returns the index file of a theme file */
+  public static File indexFor(File f) {
+    return (new File(f.getPath() + EXTENSION));
+  }
+
+  /** 64-bit FNV-1a hash of an id */
+  public static long hash(CharSequence id) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < id.length(); i++) {
+      h ^= id.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return (h);
+  }
+
+  protected IdIndex(File file, long dataStart, long[] hashes, long[] offsets) {
+    this.file = file;
+    this.dataStart = dataStart;
+    this.hashes = hashes;
+    this.offsets = offsets;
+  }
+
+  /** Loads the index of a theme file, returns NULL if there is none or if it is older than the file */
+  public static IdIndex load(File f) throws IOException {
+    File indexFile = indexFor(f);
+    if (!indexFile.exists() || indexFile.lastModified() < f.lastModified()) return (null);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+      if (in.readInt() != MAGIC) throw new IOException("Not an id index: " + indexFile);
+      long dataStart = in.readLong();
+      int size = in.readInt();
+      long[] hashes = new long[size];
+      long[] offsets = new long[size];
+      for (int i = 0; i < size; i++) {
+        hashes[i] = in.readLong();
+        offsets[i] = in.readLong();
+      }
+      return (new IdIndex(f, dataStart, hashes, offsets));
+    }
+  }
+
+  /** Returns the number of ids */
+  public int size() {
+    return (hashes.length);
+  }
+
+  /** Returns the candidate offsets of an id (there can be hash collisions) */
+  public long[] offsets(String id) {
+    long h = hash(id);
+    int low = 0, high = hashes.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (hashes[mid] < h) low = mid + 1;
+      else high = mid;
+    }
+    int end = low;
+    while (end < hashes.length && hashes[end] == h) {
+      end++;
+    }
+    return (Arrays.copyOfRange(offsets, low, end));
+  }
+
+  /** Returns the fact with the id, or NULL. Opens the file for each lookup. */
+  public synchronized Fact getFact(String id) throws IOException {
+    long[] candidates = offsets(id);
+    if (candidates.length == 0) return (null);
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      return (getFact(in, id, candidates));
+    }
+  }
+
+  /** Returns the fact with the id at one of the offsets, or NULL */
+  protected Fact getFact(RandomAccessFile in, String id, long[] candidates) throws IOException {
+    boolean ttl = FactWriter.formatExtension(file).equals(".ttl");
+    if (ttl && preamble == null) preamble = new String(read(in, 0, dataStart, 0), StandardCharsets.UTF_8);
+    for (long offset : candidates) {
+      // TTL: "#@ id" line and fact line. TSV: one line.
+      String text = new String(read(in, offset, Long.MAX_VALUE, ttl ? 2 : 1), StandardCharsets.UTF_8);
+      Fact f;
+      try {
+        f = ttl ? new N4Reader(new StringReader(preamble + text), file.toString()).next() : TsvReader.parseLine(text.trim());
+      } catch (Exception e) {
+        throw new IOException("Cannot parse the fact at " + offset + " in " + file, e);
+      }
+      if (f != null && id.equals(f.getId())) return (f);
+    }
+    return (null);
+  }
+
+  /** Reads from the offset until the end or until the given number of lines */
+  protected static byte[] read(RandomAccessFile in, long offset, long end, int lines) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    in.seek(offset);
+    long pos = offset;
+    while (pos < end) {
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, end - pos));
+      if (n <= 0) break;
+      for (int i = 0; i < n; i++) {
+        if (buffer[i] == '\n' && lines > 0 && --lines == 0) {
+          result.write(buffer, 0, i + 1);
+          return (result.toByteArray());
+        }
+      }
+      result.write(buffer, 0, n);
+      pos += n;
+    }
+    return (result.toByteArray());
+  }
+
+  /** Collects ids and offsets while a file is written */
+  public static class Builder {
+
+    /** The indexed file */
+    protected final File file;
+
+    /** Start of the facts in the file */
+    protected final long dataStart;
+
+    protected long[] hashes = new long[1024];
+
+    protected long[] offsets = new long[1024];
+
+    protected int size = 0;
+
+    public Builder(File file, long dataStart) {
+      this.file = file;
+      this.dataStart = dataStart;
+    }
+
+    /** Adds an id with the offset of its fact */
+    public void add(String id, long offset) {
+      if (size == hashes.length) {
+        hashes = Arrays.copyOf(hashes, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      hashes[size] = hash(id);
+      offsets[size++] = offset;
+    }
+
+    /**
+     * Adds the ids of text that was produced by FactFormatter.format() and that
+     * will be written at the offset
+     */
+    public void addFormatted(CharSequence formatted, long offset, boolean ttl) {
+      int lineStart = 0;
+      for (int i = 0; i <= formatted.length(); i++) {
+        if (i < formatted.length() && formatted.charAt(i) != '\n') continue;
+        if (ttl) {
+          if (i - lineStart > 3 && formatted.charAt(lineStart) == '#' && formatted.charAt(lineStart + 1) == '@' && formatted.charAt(lineStart + 2) == ' ')
+            add(formatted.subSequence(lineStart + 3, i).toString(), offset);
+        } else {
+          int tab = lineStart;
+          while (tab < i && formatted.charAt(tab) != '\t') {
+            tab++;
+          }
+          if (tab > lineStart && tab < i) add(formatted.subSequence(lineStart, tab).toString(), offset);
+        }
+        for (int j = lineStart; j <= i && j < formatted.length(); j++) {
+          offset += FactWriter.CountingWriter.utf8Length(formatted.charAt(j));
+        }
+        lineStart = i + 1;
+      }
+    }
+
+    /** Sorts the entries and writes the index file */
+    public void write() throws IOException {
+      ParallelSort.sort(hashes, offsets, 0, size - 1, this::swap);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFor(file)), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeLong(dataStart);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+          out.writeLong(hashes[i]);
+          out.writeLong(offsets[i]);
+        }
+      }
+    }
+
+    protected void swap(int i, int j) {
+      long h = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = h;
+      long o = offsets[i];
+      offsets[i] = offsets[j];
+      offsets[j] = o;
+    }
+  }
+}
@@ -0,0 +1,382 @@
+package basics;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class maps labels (the Java strings of the label literals, with their
+language) to entities, for exact and prefix lookups. It is an immutable,
+memory-mapped file. The labels and the entities are sorted by their UTF-8
+bytes and front-coded: in each block of 16, the first string is stored in
+full, and every other string only as the length of the prefix it shares with
+its predecessor plus the rest. Each label points to its entity numbers.
+
+The file is:
+  int MAGIC, int labels, int entities, int pairs
+  labels (front-coded), entities (front-coded)
+  int[labels+1] first pair of each label, int[pairs] entity numbers
+Front-coded strings are:
+  int blocks, int bytes, int[blocks] start of each block, byte[] blocks
+
+Example:
+  LabelIndex index = LabelIndex.build(FactSource.from("yagoLabels.tsv"), new File("labels.index"));
+  index.exact("Elvis Presley");
+  index.prefix("Elvis", 10);
+ */
+public class LabelIndex {
+
+  /** Marks label index files */
+  public static final int MAGIC = 0x594c4931;
+
+  /** Strings per block */
+  public static final int BLOCKSIZE = 16;
+
+  /** The default label relations */
+  public static final List<String> LABELRELATIONS = Arrays.asList(YAGO.hasPreferredName, RDFS.label, YAGO.hasName, YAGO.isPreferredMeaningOf);
+
+  /** Keys: label, character 0, language */
+  protected final FrontCoded keys;
+
+  /** Entity names */
+  protected final FrontCoded entities;
+
+  /** First pair of each key */
+  protected final IntBuffer pairStarts;
+
+  /** Entity numbers of the pairs */
+  protected final IntBuffer pairs;
+
+  /** Sorted strings, front-coded in blocks */
+  protected static class FrontCoded {
+
+    /** Number of strings */
+    final int size;
+
+    /** Start of each block */
+    final IntBuffer blockStarts;
+
+    /** The blocks */
+    final ByteBuffer data;
+
+    /** Reads the strings at the position of the buffer, moves the position behind them */
+    FrontCoded(ByteBuffer buffer, int size) {
+      this.size = size;
+      int blocks = buffer.getInt();
+      int bytes = buffer.getInt();
+      blockStarts = Buffers.slice(buffer, buffer.position(), 4 * blocks).asIntBuffer();
+      data = Buffers.slice(buffer, buffer.position() + 4 * blocks, bytes);
+      buffer.position(buffer.position() + 4 * blocks + bytes);
+    }
+
+    /** Writes sorted strings */
+    static void write(DataOutputStream out, byte[][] strings) throws IOException {
+      int blocks = (strings.length + BLOCKSIZE - 1) / BLOCKSIZE;
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      int[] starts = new int[blocks];
+      for (int i = 0; i < strings.length; i++) {
+        if (i % BLOCKSIZE == 0) {
+          starts[i / BLOCKSIZE] = bytes.size();
+          writeVarint(bytes, strings[i].length);
+          bytes.write(strings[i], 0, strings[i].length);
+        } else {
+          int shared = commonPrefix(strings[i - 1], strings[i]);
+          writeVarint(bytes, shared);
+          writeVarint(bytes, strings[i].length - shared);
+          bytes.write(strings[i], shared, strings[i].length - shared);
+        }
+      }
+      out.writeInt(blocks);
+      out.writeInt(bytes.size());
+      for (int s : starts) {
+        out.writeInt(s);
+      }
+      bytes.writeTo(out);
+    }
+
+    /** Returns the i-th string */
+    byte[] get(int i) {
+      ByteBuffer b = data.duplicate();
+      b.position(blockStarts.get(i / BLOCKSIZE));
+      byte[] current = new byte[readVarint(b)];
+      b.get(current);
+      for (int j = i - i % BLOCKSIZE; j < i; j++) {
+        int shared = readVarint(b);
+        byte[] next = new byte[shared + readVarint(b)];
+        System.arraycopy(current, 0, next, 0, shared);
+        b.get(next, shared, next.length - shared);
+        current = next;
+      }
+      return (current);
+    }
+
+    /** Returns the first position whose string is &gt;= key */
+    int lowerBound(byte[] key) {
+      // Last block whose first string is < key
+      int lo = 0, hi = blockStarts.limit() - 1, block = -1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (compare(get(mid * BLOCKSIZE), key) < 0) {
+          block = mid;
+          lo = mid + 1;
+        } else hi = mid - 1;
+      }
+      if (block == -1) return (0);
+      int i = block * BLOCKSIZE;
+      int end = Math.min(size, i + BLOCKSIZE);
+      while (i < end && compare(get(i), key) < 0) {
+        i++;
+      }
+      return (i);
+    }
+
+    /** Returns the position of a string, or -1 */
+    int indexOf(byte[] key) {
+      int i = lowerBound(key);
+      return (i < size && compare(get(i), key) == 0 ? i : -1);
+    }
+  }
+
+  /** Maps an index file */
+  protected LabelIndex(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) throw new IOException("Label index too large to map: " + file);
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC) throw new IOException("Not a label index: " + file);
+      int numKeys = buffer.getInt();
+      int numEntities = buffer.getInt();
+      int numPairs = buffer.getInt();
+      keys = new FrontCoded(buffer, numKeys);
+      entities = new FrontCoded(buffer, numEntities);
+      pairStarts = Buffers.slice(buffer, buffer.position(), 4 * (numKeys + 1)).asIntBuffer();
+      pairs = Buffers.slice(buffer, buffer.position() + 4 * (numKeys + 1), 4 * numPairs).asIntBuffer();
+    }
+  }
+
+  /** Opens an index file */
+  public static LabelIndex load(File file) throws IOException {
+    return (new LabelIndex(file));
+  }
+
+  /** Builds the index of the default label relations, writes it to the file, and opens it */
+  public static LabelIndex build(Iterable<Fact> facts, File file) throws IOException {
+    return (build(facts, LABELRELATIONS, file));
+  }
+
+  /** Builds the index of the given label relations, writes it to the file, and opens it */
+  public static LabelIndex build(Iterable<Fact> facts, Collection<String> relations, File file) throws IOException {
+    Set<String> labelRelations = new HashSet<>(relations);
+    Dictionary keyIds = new Dictionary();
+    Dictionary entityIds = new Dictionary();
+    long[] pairs = new long[16];
+    int numPairs = 0;
+    for (Fact f : facts) {
+      if (!labelRelations.contains(f.getRelation()) || !FactComponent.isLiteral(f.getObject())) continue;
+      LiteralView view = f.getObjectView();
+      String language = view.getLanguage();
+      String key = view.getJavaString().replace("\u0000", "") + "\u0000" + (language == null ? "" : language);
+      if (numPairs == pairs.length) pairs = Arrays.copyOf(pairs, numPairs * 2);
+      pairs[numPairs++] = ((long) keyIds.add(key) << 32) | entityIds.add(f.getSubject());
+    }
+    // Number labels and entities in the order of their bytes
+    int[] keyRanks = new int[keyIds.size()];
+    byte[][] keyBytes = sort(keyIds, keyRanks);
+    int[] entityRanks = new int[entityIds.size()];
+    byte[][] entityBytes = sort(entityIds, entityRanks);
+    for (int i = 0; i < numPairs; i++) {
+      pairs[i] = ((long) keyRanks[(int) (pairs[i] >>> 32)] << 32) | entityRanks[(int) pairs[i]];
+    }
+    Arrays.sort(pairs, 0, numPairs);
+    int distinct = 0;
+    for (int i = 0; i < numPairs; i++) {
+      if (i == 0 || pairs[i] != pairs[i - 1]) pairs[distinct++] = pairs[i];
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(keyBytes.length);
+      out.writeInt(entityBytes.length);
+      out.writeInt(distinct);
+      FrontCoded.write(out, keyBytes);
+      FrontCoded.write(out, entityBytes);
+      int p = 0;
+      for (int key = 0; key <= keyBytes.length; key++) {
+        out.writeInt(p);
+        while (p < distinct && (pairs[p] >>> 32) == key) {
+          p++;
+        }
+      }
+      for (int i = 0; i < distinct; i++) {
+        out.writeInt((int) pairs[i]);
+      }
+    }
+    return (load(file));
+  }
+
+  /** Returns the strings of a dictionary sorted by their UTF-8 bytes, and the rank of each id */
+  protected static byte[][] sort(Dictionary dictionary, int[] ranks) {
+    byte[][] bytes = new byte[dictionary.size()][];
+    Integer[] order = new Integer[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> compare(bytes[a], bytes[b]));
+    byte[][] result = new byte[bytes.length][];
+    for (int r = 0; r < order.length; r++) {
+      ranks[order[r]] = r;
+      result[r] = bytes[order[r]];
+    }
+    return (result);
+  }
+
+  /** Compares byte arrays lexicographically (unsigned) */
+  protected static int compare(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if (a[i] != b[i]) return ((a[i] & 0xFF) - (b[i] & 0xFF));
+    }
+    return (a.length - b.length);
+  }
+
+  /** Returns the length of the common prefix */
+  protected static int commonPrefix(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    int i = 0;
+    while (i < n && a[i] == b[i]) {
+      i++;
+    }
+    return (i);
+  }
+
+  /** TRUE if a starts with the prefix */
+  protected static boolean startsWith(byte[] a, byte[] prefix) {
+    return (a.length >= prefix.length && commonPrefix(a, prefix) == prefix.length);
+  }
+
+  /** Writes an unsigned varint */
+  protected static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /** Reads an unsigned varint */
+  protected static int readVarint(ByteBuffer in) {
+    int result = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = in.get();
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) return (result);
+    }
+  }
+
+  /** Returns the entities of the i-th key */
+  protected void entitiesOf(int key, Collection<String> result) {
+    for (int p = pairStarts.get(key); p < pairStarts.get(key + 1); p++) {
+      result.add(new String(entities.get(pairs.get(p)), StandardCharsets.UTF_8));
+    }
+  }
+
+  /** Returns the entities with this label in this language (any language if NULL) */
+  public Set<String> exact(String label, String language) {
+    Set<String> result = new LinkedHashSet<>();
+    if (language != null) {
+      int key = keys.indexOf((label + "\u0000" + language).getBytes(StandardCharsets.UTF_8));
+      if (key != -1) entitiesOf(key, result);
+      return (result);
+    }
+    byte[] prefix = (label + "\u0000").getBytes(StandardCharsets.UTF_8);
+    for (int key = keys.lowerBound(prefix); key < keys.size && startsWith(keys.get(key), prefix); key++) {
+      entitiesOf(key, result);
+    }
+    return (result);
+  }
+
+  /** Returns the entities with this label in any language */
+  public Set<String> exact(String label) {
+    return (exact(label, null));
+  }
+
+  /**
+   * Returns at most limit label facts (entity, rdfs:label, label) whose label
+   * starts with the prefix, in the order of the labels
+   */
+  public List<Fact> prefix(String prefix, int limit) {
+    List<Fact> result = new ArrayList<>();
+    byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+    List<String> entitiesOfKey = new ArrayList<>();
+    for (int key = keys.lowerBound(bytes); key < keys.size && result.size() < limit; key++) {
+      byte[] k = keys.get(key);
+      if (!startsWith(k, bytes)) break;
+      String s = new String(k, StandardCharsets.UTF_8);
+      int sep = s.indexOf('\u0000');
+      String literal = FactComponent.forStringWithLanguage(s.substring(0, sep), s.substring(sep + 1));
+      entitiesOfKey.clear();
+      entitiesOf(key, entitiesOfKey);
+      for (String entity : entitiesOfKey) {
+        if (result.size() >= limit) break;
+        result.add(new Fact(entity, RDFS.label, literal));
+      }
+    }
+    return (result);
+  }
+
+  /** Returns the number of distinct labels (with language) */
+  public int numLabels() {
+    return (keys.size);
+  }
+
+  /** Returns the number of entities */
+  public int numEntities() {
+    return (entities.size);
+  }
+
+  @Override
+  public String toString() {
+    return ("LabelIndex with " + keys.size + " labels of " + entities.size + " entities");
+  }
+
+  /** Test: label file, index file, prefix */
+  public static void main(String[] args) throws Exception {
+    Announce.doing("Building label index");
+    LabelIndex index = build(FactSource.from(args[0]), new File(args[1]));
+    Announce.done();
+    Announce.message(index);
+    for (Fact f : index.prefix(args[2], 20)) {
+      Announce.message(f);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package basics;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class is a parsed view on a fact component. It finds the kind of the
+component and the offsets of the string part, the datatype and the language
+in one backward scan, with the same results as
+FactComponent.literalAndDatatypeAndLanguage. The parts are cut out only when
+they are asked for, and then kept. Fact keeps one view for its object.
+ */
+public class LiteralView {
+
+  /** Kinds of components */
+  public enum Kind {
+    /** <Elvis> */
+    URI,
+    /** rdf:type, and anything else that is neither a URI nor a literal */
+    QNAME,
+    /** "Elvis" */
+    PLAIN,
+    /** "Elvis"@eng */
+    LANGUAGE,
+    /** "42"^^xsd:integer */
+    TYPED
+  }
+
+  /** The component */
+  public final String component;
+
+  /** The kind */
+  public final Kind kind;
+
+  /** End of the string part with quotes (for literals) */
+  protected final int stringEnd;
+
+  /** Start of the datatype or of the language (for typed and language literals) */
+  protected final int suffixStart;
+
+  /** String part with quotes, cut out on demand */
+  protected String string;
+
+  /** Datatype or language, cut out on demand */
+  protected String suffix;
+
+  /** Java string, decoded on demand */
+  protected String javaString;
+
+  /** Parses a component */
+  public LiteralView(String component) {
+    this.component = component;
+    int length = component.length();
+    if (length == 0 || component.charAt(0) != '"') {
+      kind = length > 0 && component.charAt(0) == '<' ? Kind.URI : Kind.QNAME;
+      stringEnd = suffixStart = -1;
+      return;
+    }
+    // Scan backwards to the last quote, remember the last @ after it
+    int at = -1;
+    int quote = length - 1;
+    for (; quote > 0; quote--) {
+      char c = component.charAt(quote);
+      if (c == '"') break;
+      if (c == '@' && at == -1) at = quote;
+    }
+    if (at > 0) {
+      kind = Kind.LANGUAGE;
+      stringEnd = at;
+      suffixStart = at + 1;
+    } else if (quote > 0 && quote + 2 < length && component.charAt(quote + 1) == '^' && component.charAt(quote + 2) == '^') {
+      kind = Kind.TYPED;
+      stringEnd = quote + 1;
+      suffixStart = quote + 3;
+    } else {
+      kind = Kind.PLAIN;
+      stringEnd = length;
+      suffixStart = -1;
+    }
+  }
+
+  /** TRUE for literals */
+  public boolean isLiteral() {
+    return (kind == Kind.PLAIN || kind == Kind.LANGUAGE || kind == Kind.TYPED);
+  }
+
+  /** Returns the string part with quotes, or NULL if this is not a literal */
+  public String getString() {
+    if (!isLiteral()) return (null);
+    if (string == null) string = stringEnd == component.length() ? component : component.substring(0, stringEnd);
+    return (string);
+  }
+
+  /** Returns the datatype, or NULL */
+  public String getDatatype() {
+    if (kind != Kind.TYPED) return (null);
+    if (suffix == null) suffix = component.substring(suffixStart);
+    return (suffix);
+  }
+
+  /** Returns the language, or NULL */
+  public String getLanguage() {
+    if (kind != Kind.LANGUAGE) return (null);
+    if (suffix == null) suffix = component.substring(suffixStart);
+    return (suffix);
+  }
+
+  /** Returns the string part as a Java string (as FactComponent.asJavaString does) */
+  public String getJavaString() {
+    if (!isLiteral()) return (null);
+    if (javaString == null) javaString = Escaper.decode(component.substring(1, lexicalEnd()));
+    return (javaString);
+  }
+
+  /** Returns the length of the lexical form (between the quotes), or -1 */
+  public int lexicalLength() {
+    return (isLiteral() ? lexicalEnd() - 1 : -1);
+  }
+
+  /** Returns the end of the lexical form in the component (the position of the closing quote), or -1 */
+  public int lexicalEnd() {
+    if (!isLiteral()) return (-1);
+    return (stringEnd > 1 && component.charAt(stringEnd - 1) == '"' ? stringEnd - 1 : stringEnd);
+  }
+
+  @Override
+  public String toString() {
+    return (kind + " " + component);
+  }
+}
@@ -0,0 +1,169 @@
+package basics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class is a thread-safe cache of bounded size for the results of a pure
+function. It is split into segments with their own locks, so that threads
+rarely wait for each other. A result is computed outside of the lock; if two
+threads compute the same result at the same time, one of them wins. The
+cache counts hits, misses and evictions.
+
+Example:
+  MemoCache<String,String> cache = new MemoCache<>(100000, MemoCache.Policy.LRU);
+  String entity = cache.get(title, FactComponent::forWikipediaTitle);
+ */
+public class MemoCache<K, V> {
+
+  /** Eviction policies */
+  public enum Policy {
+    /** Evicts the entry that was used least recently */
+    LRU,
+    /** Evicts the entry that was added first */
+    FIFO
+  }
+
+  /** Marks NULL results */
+  protected static final Object NULL = new Object();
+
+  /** Segments */
+  protected final List<Segment> segments = new ArrayList<>();
+
+  /** Policy */
+  public final Policy policy;
+
+  /** Maximal number of entries */
+  public final int capacity;
+
+  protected final LongAdder hits = new LongAdder();
+
+  protected final LongAdder misses = new LongAdder();
+
+  protected final LongAdder evictions = new LongAdder();
+
+  /** One segment of the cache */
+  protected class Segment extends LinkedHashMap<Object, Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    final int maxSize;
+
+    Segment(int maxSize) {
+      super(16, 0.75f, policy == Policy.LRU);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+      if (size() <= maxSize) return (false);
+      evictions.increment();
+      return (true);
+    }
+  }
+
+  /** Creates a cache with at most capacity entries */
+  public MemoCache(int capacity, Policy policy) {
+    this.capacity = Math.max(1, capacity);
+    this.policy = policy;
+    // Power of 2, at most one segment per 16 entries
+    int n = 1;
+    while (n < 64 && n * 2 * 16 <= this.capacity) {
+      n *= 2;
+    }
+    // The first segments get one entry more, so that the sizes add up to the capacity
+    for (int i = 0; i < n; i++) {
+      segments.add(new Segment(this.capacity / n + (i < this.capacity % n ? 1 : 0)));
+    }
+  }
+
+  /** Returns the segment of a key */
+  protected Segment segment(Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return (segments.get(h & (segments.size() - 1)));
+  }
+
+  /** Returns the result of the function for the key, from the cache if possible */
+  @SuppressWarnings("unchecked")
+  public V get(K key, Function<? super K, ? extends V> function) {
+    Segment segment = segment(key);
+    Object result;
+    synchronized (segment) {
+      result = segment.get(key);
+    }
+    if (result != null) {
+      hits.increment();
+      return (result == NULL ? null : (V) result);
+    }
+    misses.increment();
+    V value = function.apply(key);
+    synchronized (segment) {
+      segment.put(key, value == null ? NULL : value);
+    }
+    return (value);
+  }
+
+  /** Returns the number of hits */
+  public long hits() {
+    return (hits.sum());
+  }
+
+  /** Returns the number of misses */
+  public long misses() {
+    return (misses.sum());
+  }
+
+  /** Returns the number of evictions */
+  public long evictions() {
+    return (evictions.sum());
+  }
+
+  /** Returns the number of entries */
+  public int size() {
+    int result = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        result += segment.size();
+      }
+    }
+    return (result);
+  }
+
+  /** Removes all entries and resets the counters */
+  public void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public String toString() {
+    long h = hits(), m = misses();
+    return (String.format("%s cache: %,d entries of %,d, %,d hits, %,d misses (%.1f%% hits), %,d evictions", policy, size(), capacity, h, m,
+        h + m == 0 ? 0.0 : 100.0 * h / (h + m), evictions()));
+  }
+}
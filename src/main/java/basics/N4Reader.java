@@ -5,8 +5,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 
 import javatools.administrative.Announce;
 import javatools.administrative.D;
@@ -40,7 +38,7 @@ Passes all tests from
 http://www.w3.org/TeamSubmission/turtle/#sec-conformance except 23
 http://www.w3.org/2000/10/rdf-tests/rdfcore/ntriples/test.nt
  */
-public class N4Reader implements Iterator<Fact>, Closeable {
+public class N4Reader implements Iterator<Fact>, FactSource.BatchReader, Closeable {
 
   /** Reads the file */
   protected Reader reader;
@@ -49,7 +47,7 @@ public class N4Reader implements Iterator<Fact>, Closeable {
   protected String info = "<unknown source>";
 
   /** Maps custom prefixes */
-  protected Map<String, String> prefixes = new TreeMap<String, String>();
+  protected Namespaces prefixes = new Namespaces();
 
   /** Custom base */
   protected String base = null;
@@ -66,6 +64,17 @@ public class N4Reader implements Iterator<Fact>, Closeable {
     this.info = info;
   }
 
+  /**
+   * Creates a N4 reader that continues the numbering of blank nodes of
+   * another reader (for reading a file piece by piece)
+   */
+  public N4Reader(Reader r, String info, int blankCounter) throws IOException {
+    reader = r;
+    this.info = info;
+    this.blankCounter = blankCounter;
+    next();
+  }
+
   /** Creates a N4 reader */
   public N4Reader(File f) throws IOException {
     this(FileUtils.getBufferedUTF8Reader(f));
@@ -107,7 +116,7 @@ public class N4Reader implements Iterator<Fact>, Closeable {
       case '<':
         c = READNEW;
         String uri = FileLines.readTo(reader, '>').toString();
-        if (base != null && !uri.startsWith("http://")) uri = base + uri;
+        if (base != null && !uri.startsWith("http://")) return (Namespaces.STANDARD.forUri(base, uri, 0, uri.length(), false));
         return (FactComponent.forEncodedUri(uri));
       case '"':
         String language = null;
@@ -151,8 +160,8 @@ public class N4Reader implements Iterator<Fact>, Closeable {
             break;
         }
         if (Character.isWhitespace(c)) c = READNEW;
-        if (language == null) return (FactComponent.forStringWithDatatype(Char17.decodeBackslash(string), datatype));
-        else return (FactComponent.forStringWithLanguage(Char17.decodeBackslash(string), language));
+        if (language == null) return (FactComponent.forStringWithDatatype(Escaper.decode(string), datatype));
+        else return (FactComponent.forStringWithLanguage(Escaper.decode(string), language));
       case '[':
         String blank = FileLines.readTo(reader, ']').toString().trim();
         if (blank.length() != 0) {
@@ -216,13 +225,13 @@ public class N4Reader implements Iterator<Fact>, Closeable {
           c = READNEW;
           return (".");*/
         }
-        String prefix = name.substring(0, colon + 1);
-        name = name.substring(colon + 1);
-        if (prefixes.containsKey(prefix)) {
-          return (FactComponent.forEncodedUri(prefixes.get(prefix) + name));
+        String namespace = prefixes.namespace(name, 0, colon + 1);
+        if (namespace != null) {
+          return (Namespaces.STANDARD.forUri(namespace, name, colon + 1, name.length(), false));
         }
         // Other
-        return (FactComponent.forQname(prefix, name));
+        if (colon == 1 && name.charAt(0) == 'y') return (FactComponent.forQname("y:", name.substring(2)));
+        return (name);
     }
   }
 
@@ -250,12 +259,28 @@ public class N4Reader implements Iterator<Fact>, Closeable {
     return nextFact != null;
   }
 
+  @Override
+  public int nextBatch(Fact[] buf) {
+    if (nextFact == null || buf.length == 0) return (0);
+    buf[0] = nextFact;
+    int size = parse(buf, 1);
+    nextFact = size == buf.length && parse(single, 0) == 1 ? single[0] : null;
+    if (nextFact == null) close();
+    return (size);
+  }
+
+  /** Buffer for a single fact */
+  protected final Fact[] single = new Fact[1];
+
   /** Holds the previous subject, predicate and object (in this order) */
   protected String[] state = new String[3];
 
   /** Save the next item at this index of state */
   protected int stateIdx = 0;
 
+  /** Fact identifier of the statement that is being read (or null) */
+  protected String factId = null;
+
   protected int delimToIndex(char c) {
     switch (c) {
       case '.':
@@ -270,79 +295,91 @@ public class N4Reader implements Iterator<Fact>, Closeable {
 
   /** returns the next fact */
   protected Fact internalNext() throws Exception {
-    while (true) {
-      String item = nextItem();
-      if (item.equals("EOF")) return (null);
-      // Prefix
-      if (item.equalsIgnoreCase("@PREFIX")) {
-        String prefix = FileLines.readTo(reader, ':').toString().trim() + ':';
-        FileLines.scrollTo(reader, '<');
-        String dest = FileLines.readTo(reader, '>').toString().trim();
-        if (base != null && !dest.startsWith("http://")) dest = base + dest;
-        FileLines.scrollTo(reader, '.');
-        if (FactComponent.standardPrefixes.containsKey(prefix)) {
-          if (dest.equals(FactComponent.standardPrefixes.get(prefix))) continue;
-          else Announce.warning("Redefining standard prefix", prefix, "from", FactComponent.standardPrefixes.get(prefix), "to", dest, "(", info, ")");
-        }
-        prefixes.put(prefix, dest);
-        continue;
-      }
-
-      // Base
-      if (item.equalsIgnoreCase("@BASE")) {
-        FileLines.scrollTo(reader, '<');
-        String uri = FileLines.readTo(reader, '>').toString().trim();
-        if (uri.startsWith("http://")) base = uri;
-        else base = base + uri;
-        FileLines.scrollTo(reader, '.');
-        continue;
-      }
+    return (parse(single, 0) == 1 ? single[0] : null);
+  }
 
-      // Unknown
-      if (item.startsWith("@")) {
-        Announce.warning("Unknown directive:", item, "(", info, ")");
-        FileLines.scrollTo(reader, '.');
-        continue;
-      }
+  /**
+   * Parses facts into the buffer from index size on, until the buffer is full
+   * or the file ends. Returns the new size, which is below buf.length only at
+   * the end (or after an error, which is printed).
+   */
+  protected int parse(Fact[] buf, int size) {
+    try {
+      while (size < buf.length) {
+        String item = nextItem();
+        if (item.equals("EOF")) break;
+        // Prefix
+        if (item.equalsIgnoreCase("@PREFIX")) {
+          String prefix = FileLines.readTo(reader, ':').toString().trim() + ':';
+          FileLines.scrollTo(reader, '<');
+          String dest = FileLines.readTo(reader, '>').toString().trim();
+          if (base != null && !dest.startsWith("http://")) dest = base + dest;
+          FileLines.scrollTo(reader, '.');
+          if (FactComponent.standardPrefixes.containsKey(prefix)) {
+            if (dest.equals(FactComponent.standardPrefixes.get(prefix))) continue;
+            else Announce.warning("Redefining standard prefix", prefix, "from", FactComponent.standardPrefixes.get(prefix), "to", dest, "(", info, ")");
+          }
+          prefixes.put(prefix, dest);
+          continue;
+        }
 
-      // Fact identifier
-      // TODO: where is this used?
-      String factId = null;
-      if (item.startsWith("&")) {
-        factId = item.substring(1);
-        item = nextItem();
-      }
+        // Base
+        if (item.equalsIgnoreCase("@BASE")) {
+          FileLines.scrollTo(reader, '<');
+          String uri = FileLines.readTo(reader, '>').toString().trim();
+          if (uri.startsWith("http://")) base = uri;
+          else base = base + uri;
+          FileLines.scrollTo(reader, '.');
+          continue;
+        }
 
-      // check for . ; ,
-      int idx = -1;
-      if (item.length() == 1 && (idx = delimToIndex(item.charAt(0))) >= 0) {
-        stateIdx = idx;
-        continue;
-      }
-      // sanity check
-      if (stateIdx > 2) {
-        Announce.warning("More than three items on line", factId, " state ", state[0], state[1], state[2], item, " state index ", stateIdx, "(", info,
-            ")");
-        FileLines.scrollTo(reader, '.');
-        continue;
-      }
+        // Unknown
+        if (item.startsWith("@")) {
+          Announce.warning("Unknown directive:", item, "(", info, ")");
+          FileLines.scrollTo(reader, '.');
+          continue;
+        }
 
-      // save item
-      state[stateIdx++] = item;
+        // Fact identifier
+        if (item.startsWith("&")) {
+          factId = item.substring(1);
+          item = nextItem();
+        }
 
-      // we now have all three parts
-      if (stateIdx == 3) {
-        char lastChar = Char17.last(state[2]);
-        idx = delimToIndex(lastChar);
-        if (idx >= 0) {
-          state[2] = Char17.cutLast(state[2]);
+        // check for . ; ,
+        int idx = -1;
+        if (item.length() == 1 && (idx = delimToIndex(item.charAt(0))) >= 0) {
           stateIdx = idx;
+          continue;
+        }
+        // sanity check
+        if (stateIdx > 2) {
+          Announce.warning("More than three items on line", factId, " state ", state[0], state[1], state[2], item, " state index ", stateIdx, "(", info,
+              ")");
+          FileLines.scrollTo(reader, '.');
+          continue;
         }
 
-        return new Fact(factId, state[0], state[1], state[2]);
-      }
+        // save item
+        state[stateIdx++] = item;
 
+        // we now have all three parts
+        if (stateIdx == 3) {
+          char lastChar = Char17.last(state[2]);
+          idx = delimToIndex(lastChar);
+          if (idx >= 0) {
+            state[2] = Char17.cutLast(state[2]);
+            stateIdx = idx;
+          }
+
+          buf[size++] = new Fact(factId, state[0], state[1], state[2]);
+          factId = null;
+        }
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
     }
+    return (size);
   }
 
   @Override
@@ -6,9 +6,6 @@ import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
-import javatools.filehandlers.FileSet;
-import javatools.filehandlers.FileUtils;
-
 /**
 Copyright 2016 Fabian M. Suchanek
 
@@ -27,56 +24,118 @@ limitations under the License.
 This class writes YAGO facts into a Turtle-compatible output format.
 Output validates with http://www.rdfabout.com/demo/validator
  */
-public class N4Writer extends FactWriter {
+public class N4Writer extends FactWriter implements FactFormatter {
 
   /** Writes the file */
   protected Writer writer;
 
+  /** Custom prefixes that shorten URIs in the output (or NULL) */
+  protected Namespaces namespaces;
+
+  /** Number of bytes of the preamble */
+  protected long preambleBytes;
+
   /** Starts a writer to this file */
   public N4Writer(File f, String header, String base, Map<String, String> prefixes) throws Exception {
+    this(f, header, base, prefixes, themeName(f));
+  }
+
+  /** Starts a writer to this file, the header is attached as gloss to the given theme */
+  public N4Writer(File f, String header, String base, Map<String, String> prefixes, String theme) throws Exception {
     super(f);
-    writer = FileUtils.getBufferedUTF8Writer(f);
+    writer = openWriter(f);
+    writer.write(preamble(header, base, prefixes));
+    preambleBytes = bytesWritten();
+    if (prefixes != null && !prefixes.isEmpty()) {
+      // format() runs in several threads
+      namespaces = new Namespaces(prefixes);
+      namespaces.freeze();
+    }
+    if (header != null) {
+      write(themeGloss(theme, header));
+    }
+  }
+
+  /** Returns the header comments, the base and the prefix declarations that start a TTL file */
+  public static String preamble(String header, String base, Map<String, String> prefixes) {
+    StringBuilder result = new StringBuilder();
     if (header != null) {
       for (String line : header.split("\n")) {
-        writer.write("# " + line + "\n");
+        result.append("# ").append(line).append("\n");
       }
     }
-    writer.write("\n@base <" + base + "> .\n");
+    result.append("\n@base <").append(base).append("> .\n");
     for (String prefix : FactComponent.standardPrefixes.keySet()) {
-      writer.write("@prefix " + prefix + " <" + FactComponent.standardPrefixes.get(prefix) + "> .\n");
+      result.append("@prefix ").append(prefix).append(" <").append(FactComponent.standardPrefixes.get(prefix)).append("> .\n");
     }
     if (prefixes != null) for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
-      writer.write("@prefix " + prefix.getKey() + " <" + FactComponent.standardPrefixes.get(prefix.getValue()) + "> .\n");
-    }
-    writer.write("\n");
-    if (header != null) {
-      header = header.replaceAll("\\s+", " ");
-      Fact comment = new Fact(FactComponent.forYagoEntity("yagoTheme_" + FileSet.newExtension(f.getName(), null)), YAGO.hasGloss,
-          FactComponent.forString(header));
-      write(comment);
+      result.append("@prefix ").append(prefix.getKey()).append(" <").append(prefix.getValue()).append("> .\n");
     }
+    result.append("\n");
+    return (result.toString());
   }
 
   /** Starts a writer to this file */
   public N4Writer(File f, String header) throws Exception {
-    this(f, header, "http://yago-knowledge.org/resource/", new HashMap<String, String>());
+    this(f, header, themeName(f));
+  }
+
+  /** Starts a writer to this file, the header is attached as gloss to the given theme */
+  public N4Writer(File f, String header, String theme) throws Exception {
+    this(f, header, "http://yago-knowledge.org/resource/", new HashMap<String, String>(), theme);
   }
 
   /** Writes a fact */
   @Override
   public synchronized void write(Fact f) throws IOException {
-    if (f.getId() != null) writer.write("#@ " + f.getId() + "\n");
-    writer.write(f.subject);
+    if (f.getId() != null) {
+      if (idIndex != null) idIndex.add(f.getId(), bytesWritten());
+      writer.write("#@ " + f.getId() + "\n");
+    }
+    writer.write(component(f.subject));
     writer.write("\t");
-    writer.write(f.relation);
+    writer.write(component(f.relation));
     writer.write("\t");
-    writer.write(f.object);
+    writer.write(component(f.object));
     writer.write(" .\n");
   }
 
+  @Override
+  public void format(Fact f, StringBuilder out) {
+    if (f.getId() != null) out.append("#@ ").append(f.getId()).append('\n');
+    out.append(component(f.subject)).append('\t').append(component(f.relation)).append('\t').append(component(f.object)).append(" .\n");
+  }
+
+  /** Formats the facts into one buffer, and writes it in one go */
+  @Override
+  public synchronized void write(Fact[] facts, int offset, int length) throws IOException {
+    StringBuilder batch = new StringBuilder(length * 100);
+    for (int i = offset; i < offset + length; i++) {
+      format(facts[i], batch);
+    }
+    writeFormatted(batch);
+  }
+
+  /** Shortens the component with the custom prefixes */
+  protected String component(String component) {
+    return (namespaces == null ? component : namespaces.compress(component));
+  }
+
+  @Override
+  public synchronized void writeFormatted(CharSequence formatted) throws IOException {
+    if (idIndex != null) idIndex.addFormatted(formatted, bytesWritten(), true);
+    writer.append(formatted);
+  }
+
+  @Override
+  protected long dataStart() {
+    return (preambleBytes);
+  }
+
   @Override
   public void close() throws IOException {
     writer.close();
+    closeIdIndex();
   }
 
   @Override
@@ -93,7 +152,7 @@ public class N4Writer extends FactWriter {
   }
 
   @Override
-  public void writeComment(String comment) throws IOException {
+  public synchronized void writeComment(String comment) throws IOException {
     writer.write("# ");
     writer.write(comment);
     writer.write("\n");
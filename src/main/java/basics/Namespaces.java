@@ -0,0 +1,389 @@
+package basics;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class maps namespace prefixes (such as "rdf:") to namespaces (such as
+"http://www.w3.org/1999/02/22-rdf-syntax-ns#") and back. It keeps two tries:
+one over the prefixes, to expand qnames, and one over the namespaces, to find
+the longest namespace that starts a URI. Both lookups take time linear in the
+length of the key and work on regions of CharSequences, so that no substrings
+have to be created.
+
+The STANDARD instance holds FactComponent.standardPrefixes and the YAGO
+namespace. The YAGO namespace has the empty prefix, URIs in that namespace
+become <local name>. STANDARD is frozen, so that threads can share it without
+locks; readers and writers keep their own instances for custom prefixes.
+ */
+public class Namespaces {
+
+  /** A prefix with its namespace */
+  public static class Entry {
+
+    /** Prefix with colon, e.g. "rdf:", or "" for the YAGO namespace */
+    public final String prefix;
+
+    /** Namespace, e.g. "http://www.w3.org/1999/02/22-rdf-syntax-ns#" */
+    public final String namespace;
+
+    public Entry(String prefix, String namespace) {
+      this.prefix = prefix;
+      this.namespace = namespace;
+    }
+
+    @Override
+    public String toString() {
+      return (prefix + " " + namespace);
+    }
+  }
+
+  /**
+   * A node of a radix trie. Every edge is labeled with a string, the edges
+   * are sorted by their first character.
+   */
+  protected static class Node {
+
+    char[] firstChars = new char[0];
+
+    String[] labels = new String[0];
+
+    Node[] children = new Node[0];
+
+    /** Entry that ends here, or NULL */
+    Entry entry;
+
+    /** Returns the index of the edge that starts with c, or a negative number */
+    int edge(char c) {
+      char[] f = firstChars;
+      // Nodes have few edges, a linear scan is faster than a binary search
+      for (int i = 0; i < f.length; i++) {
+        if (f[i] == c) return (i);
+        if (f[i] > c) return (-i - 1);
+      }
+      return (-f.length - 1);
+    }
+
+    /** Inserts key[pos...] below this node, returns the node of the key */
+    Node insert(String key, int pos) {
+      if (pos == key.length()) return (this);
+      int i = edge(key.charAt(pos));
+      if (i < 0) {
+        Node child = new Node();
+        addEdge(-i - 1, key.substring(pos), child);
+        return (child);
+      }
+      String label = labels[i];
+      int common = 0;
+      while (common < label.length() && pos + common < key.length() && label.charAt(common) == key.charAt(pos + common)) {
+        common++;
+      }
+      if (common < label.length()) {
+        // Split the edge
+        Node middle = new Node();
+        middle.addEdge(0, label.substring(common), children[i]);
+        labels[i] = label.substring(0, common);
+        children[i] = middle;
+      }
+      return (children[i].insert(key, pos + common));
+    }
+
+    /** Adds an edge at index i */
+    void addEdge(int i, String label, Node child) {
+      int n = firstChars.length;
+      char[] newFirstChars = Arrays.copyOf(firstChars, n + 1);
+      String[] newLabels = Arrays.copyOf(labels, n + 1);
+      Node[] newChildren = Arrays.copyOf(children, n + 1);
+      System.arraycopy(firstChars, i, newFirstChars, i + 1, n - i);
+      System.arraycopy(labels, i, newLabels, i + 1, n - i);
+      System.arraycopy(children, i, newChildren, i + 1, n - i);
+      newFirstChars[i] = label.charAt(0);
+      newLabels[i] = label;
+      newChildren[i] = child;
+      firstChars = newFirstChars;
+      labels = newLabels;
+      children = newChildren;
+    }
+  }
+
+  /** Trie over the prefixes */
+  protected final Node prefixes = new Node();
+
+  /** Trie over the namespaces */
+  protected final Node namespaces = new Node();
+
+  /** Number of prefixes */
+  protected int size = 0;
+
+  /** TRUE after freeze() */
+  protected volatile boolean frozen = false;
+
+  /** Standard prefixes and the YAGO namespace (frozen) */
+  public static final Namespaces STANDARD = new Namespaces(FactComponent.standardPrefixes);
+
+  static {
+    STANDARD.put("", FactComponent.YAGONAMESPACE);
+    STANDARD.freeze();
+  }
+
+  /** Creates an empty mapping */
+  public Namespaces() {
+  }
+
+  /** Creates a mapping from prefixes (with colon) to namespaces */
+  public Namespaces(Map<String, String> prefixes) {
+    if (prefixes != null) for (Map.Entry<String, String> e : prefixes.entrySet()) {
+      put(e.getKey(), e.getValue());
+    }
+  }
+
+  /** Adds or replaces a prefix (with colon) */
+  public synchronized void put(String prefix, String namespace) {
+    if (frozen) throw new IllegalStateException("Namespaces are frozen");
+    Node node = prefixes.insert(prefix, 0);
+    if (node.entry == null) size++;
+    // Remove the old namespace of the prefix
+    else if (!node.entry.namespace.equals(namespace)) {
+      Node old = find(namespaces, node.entry.namespace, 0, node.entry.namespace.length());
+      if (old != null && old.entry == node.entry) old.entry = null;
+    }
+    Entry entry = new Entry(prefix, namespace);
+    node.entry = entry;
+    namespaces.insert(namespace, 0).entry = entry;
+  }
+
+  /**
+   * Forbids further changes. Lookups do not lock, so an instance that is
+   * shared by several threads has to be frozen.
+   */
+  public synchronized void freeze() {
+    frozen = true;
+  }
+
+  /** TRUE if the mapping is frozen */
+  public boolean isFrozen() {
+    return (frozen);
+  }
+
+  /** Returns the number of prefixes */
+  public int size() {
+    return (size);
+  }
+
+  /** Returns the node for exactly s[start,end), or NULL */
+  protected static Node find(Node node, CharSequence s, int start, int end) {
+    int pos = start;
+    while (pos < end) {
+      int i = node.edge(s.charAt(pos));
+      if (i < 0) return (null);
+      String label = node.labels[i];
+      if (end - pos < label.length()) return (null);
+      for (int j = 1; j < label.length(); j++) {
+        if (label.charAt(j) != s.charAt(pos + j)) return (null);
+      }
+      pos += label.length();
+      node = node.children[i];
+    }
+    return (node);
+  }
+
+  /** Returns the namespace of the prefix s[start,end) (with colon), or NULL */
+  public String namespace(CharSequence s, int start, int end) {
+    Node node = find(prefixes, s, start, end);
+    return (node == null || node.entry == null ? null : node.entry.namespace);
+  }
+
+  /** Returns the namespace of the prefix (with colon), or NULL */
+  public String namespace(String prefix) {
+    return (namespace(prefix, 0, prefix.length()));
+  }
+
+  /** Returns the prefix of the namespace, or NULL */
+  public String prefix(String namespace) {
+    Node node = find(namespaces, namespace, 0, namespace.length());
+    return (node == null || node.entry == null ? null : node.entry.prefix);
+  }
+
+  /** Returns the entry with the longest namespace that starts s[start,end), or NULL */
+  public Entry longestMatch(CharSequence s, int start, int end) {
+    Node node = namespaces;
+    Entry result = null;
+    int pos = start;
+    while (pos < end) {
+      int i = node.edge(s.charAt(pos));
+      if (i < 0) break;
+      String label = node.labels[i];
+      if (end - pos < label.length()) break;
+      for (int j = 1; j < label.length(); j++) {
+        if (label.charAt(j) != s.charAt(pos + j)) return (result);
+      }
+      pos += label.length();
+      node = node.children[i];
+      if (node.entry != null) result = node.entry;
+    }
+    return (result);
+  }
+
+  /**
+   * Returns the entry with the longest namespace that starts the
+   * concatenation of head and tail[tailStart,tailEnd), or NULL
+   */
+  public Entry longestMatch(CharSequence head, CharSequence tail, int tailStart, int tailEnd) {
+    if (head.length() == 0) return (longestMatch(tail, tailStart, tailEnd));
+    Node node = namespaces;
+    Entry result = null;
+    int headLength = head.length();
+    int length = headLength + tailEnd - tailStart;
+    int pos = 0;
+    while (pos < length) {
+      int i = node.edge(charAt(head, tail, tailStart, pos));
+      if (i < 0) break;
+      String label = node.labels[i];
+      if (length - pos < label.length()) break;
+      for (int j = 1; j < label.length(); j++) {
+        if (label.charAt(j) != charAt(head, tail, tailStart, pos + j)) return (result);
+      }
+      pos += label.length();
+      node = node.children[i];
+      if (node.entry != null) result = node.entry;
+    }
+    return (result);
+  }
+
+  /** Returns the i-th character of the concatenation of head and tail[tailStart...] */
+  protected static char charAt(CharSequence head, CharSequence tail, int tailStart, int i) {
+    return (i < head.length() ? head.charAt(i) : tail.charAt(tailStart + i - head.length()));
+  }
+
+  /** Returns the entry with the longest namespace that starts the ASCII bytes b[start,end), or NULL */
+  public Entry longestMatch(byte[] b, int start, int end) {
+    Node node = namespaces;
+    Entry result = null;
+    int pos = start;
+    while (pos < end) {
+      int i = node.edge((char) (b[pos] & 0xFF));
+      if (i < 0) break;
+      String label = node.labels[i];
+      if (end - pos < label.length()) break;
+      for (int j = 1; j < label.length(); j++) {
+        if (label.charAt(j) != (b[pos + j] & 0xFF)) return (result);
+      }
+      pos += label.length();
+      node = node.children[i];
+      if (node.entry != null) result = node.entry;
+    }
+    return (result);
+  }
+
+  /** Returns the namespace of the prefix in the ASCII bytes b[start,end) (with colon), or NULL */
+  public String namespace(byte[] b, int start, int end) {
+    Node node = prefixes;
+    int pos = start;
+    while (pos < end) {
+      int i = node.edge((char) (b[pos] & 0xFF));
+      if (i < 0) return (null);
+      String label = node.labels[i];
+      if (end - pos < label.length()) return (null);
+      for (int j = 1; j < label.length(); j++) {
+        if (label.charAt(j) != (b[pos + j] & 0xFF)) return (null);
+      }
+      pos += label.length();
+      node = node.children[i];
+    }
+    return (node.entry == null ? null : node.entry.namespace);
+  }
+
+  /**
+   * Creates a fact component for the URI that is the concatenation of head
+   * and tail[tailStart,tailEnd). Shortens the URI to a qname or to a YAGO
+   * entity if possible. If encode is true, the characters of URIs in angle
+   * brackets are backslash-encoded.
+   */
+  public String forUri(CharSequence head, CharSequence tail, int tailStart, int tailEnd, boolean encode) {
+    Entry entry = longestMatch(head, tail, tailStart, tailEnd);
+    int from = entry == null ? 0 : entry.namespace.length();
+    int length = head.length() + tailEnd - tailStart;
+    StringBuilder result = new StringBuilder(length - from + 8);
+    if (entry != null && !entry.prefix.isEmpty()) {
+      result.append(entry.prefix);
+      append(result, head, tail, tailStart, from, length, false);
+      return (result.toString());
+    }
+    result.append('<');
+    append(result, head, tail, tailStart, from, length, encode);
+    result.append('>');
+    return (result.toString());
+  }
+
+  /** Creates a fact component for a URI, see forUri(head, tail, tailStart, tailEnd, encode) */
+  public String forUri(String uri, boolean encode) {
+    return (forUri("", uri, 0, uri.length(), encode));
+  }
+
+  /** Appends the characters [from,to) of the concatenation of head and tail[tailStart...] */
+  protected static void append(StringBuilder result, CharSequence head, CharSequence tail, int tailStart, int from, int to, boolean encode) {
+    int headLength = head.length();
+    if (from < headLength) {
+      if (encode) Escaper.TURTLEURI.encode(head, from, headLength, result);
+      else result.append(head, from, headLength);
+    }
+    int tailFrom = tailStart + Math.max(0, from - headLength);
+    if (encode) Escaper.TURTLEURI.encode(tail, tailFrom, tailStart + to - headLength, result);
+    else result.append(tail, tailFrom, tailStart + to - headLength);
+  }
+
+  /** TRUE if c may appear in the local name of a qname that we write */
+  protected static boolean isSafeLocalChar(char c) {
+    return (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '-');
+  }
+
+  /**
+   * Shortens a component of the form <namespace+name> to prefix:name if the
+   * namespace is known and the name is a simple local name. Returns the
+   * component unchanged otherwise.
+   */
+  public String compress(String component) {
+    int end = component.length() - 1;
+    if (end < 2 || component.charAt(0) != '<' || component.charAt(end) != '>') return (component);
+    Entry entry = longestMatch(component, 1, end);
+    if (entry == null || entry.prefix.isEmpty()) return (component);
+    int start = 1 + entry.namespace.length();
+    if (start == end || component.charAt(start) == '-') return (component);
+    for (int i = start; i < end; i++) {
+      if (!isSafeLocalChar(component.charAt(i))) return (component);
+    }
+    return (new StringBuilder(entry.prefix.length() + end - start).append(entry.prefix).append(component, start, end).toString());
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    String[] uris = { "http://www.w3.org/2000/01/rdf-schema#label", "http://yago-knowledge.org/resource/Elvis_Presley", "http://example.org/x y",
+        "http://dbpedia.org/ontology/birthPlace" };
+    for (String uri : uris) {
+      System.out.println(uri + " -> " + STANDARD.forUri(uri, true));
+    }
+    int n = 1000000;
+    for (int round = 0; round < 3; round++) {
+      long time = System.nanoTime();
+      int sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += FactComponent.forUri(uris[i % uris.length]).length();
+      }
+      System.out.println("Trie:   " + (System.nanoTime() - time) / n + " ns per URI (" + sum + ")");
+    }
+  }
+}
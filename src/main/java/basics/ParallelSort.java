@@ -0,0 +1,72 @@
+package basics;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class sorts parallel primitive arrays in place, by a long key (and a
+second long key for ties), without creating objects per entry. The caller
+swaps the entries of all its arrays, including the keys.
+
+Example:
+  ParallelSort.sort(starts, null, 0, size - 1, this::swap);
+ */
+public class ParallelSort {
+
+  /** Swaps the entries i and j of all arrays */
+  public interface Swapper {
+
+    public void swap(int i, int j);
+  }
+
+  /** Compares entry i with the key (and tie) */
+  protected static int compare(long[] keys, long[] ties, int i, long key, long tie) {
+    int c = Long.compare(keys[i], key);
+    return (c != 0 || ties == null ? c : Long.compare(ties[i], tie));
+  }
+
+  /**
+   * Sorts the entries from ... to (inclusive) by keys, then by ties (can be
+   * NULL). Quicksort, insertion sort for small ranges.
+   */
+  public static void sort(long[] keys, long[] ties, int from, int to, Swapper swapper) {
+    while (to - from > 16) {
+      int mid = (from + to) >>> 1;
+      long pivot = keys[mid], pivotTie = ties == null ? 0 : ties[mid];
+      int i = from, j = to;
+      while (i <= j) {
+        while (compare(keys, ties, i, pivot, pivotTie) < 0) {
+          i++;
+        }
+        while (compare(keys, ties, j, pivot, pivotTie) > 0) {
+          j--;
+        }
+        if (i <= j) swapper.swap(i++, j--);
+      }
+      // Recurse into the smaller half
+      if (j - from < to - i) {
+        sort(keys, ties, from, j, swapper);
+        from = i;
+      } else {
+        sort(keys, ties, i, to, swapper);
+        to = j;
+      }
+    }
+    for (int i = from + 1; i <= to; i++) {
+      for (int j = i; j > from && compare(keys, ties, j - 1, keys[j], ties == null ? 0 : ties[j]) > 0; j--) {
+        swapper.swap(j, j - 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package basics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javatools.datatypes.PeekIterator;
+import javatools.filehandlers.FileLines;
+import javatools.filehandlers.FileUtils;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class reads a theme that was written by PartitionedFactWriter, i.e., a
+directory with one table per relation. The table of a relation is loaded
+when it is first accessed, so that reading one relation reads only the file
+of that relation. The segments of this source are the relations, so that
+parallelForEach() reads the relations in parallel.
+
+Example:
+  PartitionedFactSource source = new PartitionedFactSource(new File("yagoFacts.relations"));
+  for (Fact f : source.relation("<hasCapital>")) ...
+  List<Fact> capitals = source.getFacts("<hasCapital>", "<Germany>");
+ */
+public class PartitionedFactSource extends FactSource {
+
+  /** The directory */
+  protected final File dir;
+
+  /** Relations by name, in the order of the index, loaded on demand */
+  protected Map<String, PartitionedFactWriter.Relation> index;
+
+  /** Tables that have been loaded */
+  protected final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+  /** The facts of one relation, sorted by subject */
+  public static class Table implements Iterable<Fact> {
+
+    /** The relation */
+    public final String relation;
+
+    /** Ids (or NULL) */
+    protected final String[] ids;
+
+    /** Subjects, sorted */
+    protected final String[] subjects;
+
+    /** Objects */
+    protected final String[] objects;
+
+    protected Table(String relation, int size) {
+      this.relation = relation;
+      ids = new String[size];
+      subjects = new String[size];
+      objects = new String[size];
+    }
+
+    /** Returns the number of facts */
+    public int size() {
+      return (subjects.length);
+    }
+
+    /** Returns the i-th fact */
+    public Fact get(int i) {
+      return (new Fact(ids[i], subjects[i], relation, objects[i]));
+    }
+
+    /** Returns the position of the first fact with the subject or a larger one */
+    protected int first(String subject) {
+      int low = 0, high = subjects.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (subjects[mid].compareTo(subject) < 0) low = mid + 1;
+        else high = mid;
+      }
+      return (low);
+    }
+
+    /** Returns the facts with the subject */
+    public List<Fact> getFacts(String subject) {
+      List<Fact> result = new ArrayList<>();
+      for (int i = first(subject); i < subjects.length && subjects[i].equals(subject); i++) {
+        result.add(get(i));
+      }
+      return (result);
+    }
+
+    /** Returns the object of the first fact with the subject, or NULL */
+    public String getObject(String subject) {
+      int i = first(subject);
+      return (i < subjects.length && subjects[i].equals(subject) ? objects[i] : null);
+    }
+
+    @Override
+    public Iterator<Fact> iterator() {
+      return (new Iterator<Fact>() {
+
+        int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return (next < subjects.length);
+        }
+
+        @Override
+        public Fact next() {
+          if (next >= subjects.length) throw new NoSuchElementException();
+          return (get(next++));
+        }
+      });
+    }
+
+    /** Reads a table file */
+    protected static Table read(File file, String relation) throws IOException {
+      try (TableReader reader = new TableReader(file, relation)) {
+        Table table = new Table(relation, reader.size);
+        for (int i = 0; i < table.size(); i++) {
+          table.ids[i] = reader.readComponent();
+          table.subjects[i] = reader.readComponent();
+          table.objects[i] = reader.readObject();
+        }
+        return (table);
+      }
+    }
+  }
+
+  /**
+   * Reads the facts of a table file one by one, without keeping them. Only
+   * the dictionary of the table is in memory. Closes the file at the end.
+   */
+  public static class TableReader extends PeekIterator<Fact> {
+
+    /** The relation */
+    protected final String relation;
+
+    protected final DataInputStream in;
+
+    protected final int flags;
+
+    /** Number of facts */
+    protected final int size;
+
+    /** The dictionary, or NULL */
+    protected String[] dictionary;
+
+    /** Number of facts read so far */
+    protected int read = 0;
+
+    public TableReader(File file, String relation) throws IOException {
+      this.relation = relation;
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      try {
+        if (in.readInt() != PartitionedFactWriter.MAGIC) throw new IOException("Not a relation table: " + file);
+        flags = in.readInt();
+        size = in.readInt();
+        if ((flags & PartitionedFactWriter.DICTIONARY) != 0) {
+          dictionary = new String[in.readInt()];
+          for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = PartitionedFactWriter.readString(in);
+          }
+        }
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    /** Reads a component that was written by PartitionedFactWriter.writeComponent() */
+    protected String readComponent() throws IOException {
+      if (dictionary == null) return (PartitionedFactWriter.readString(in));
+      int id = in.readInt();
+      return (id == -1 ? null : dictionary[id]);
+    }
+
+    /** Reads an object, which can be a number in typed tables */
+    protected String readObject() throws IOException {
+      if ((flags & PartitionedFactWriter.TYPED) == 0) return (readComponent());
+      switch (in.readByte()) {
+        case PartitionedFactWriter.LONG:
+          String datatype = readComponent();
+          return (PartitionedFactWriter.typedLong(in.readLong(), datatype));
+        case PartitionedFactWriter.DATE:
+          return (PartitionedFactWriter.typedDate(in.readLong()));
+        default:
+          return (readComponent());
+      }
+    }
+
+    @Override
+    protected Fact internalNext() throws Exception {
+      if (read == size) {
+        close();
+        return (null);
+      }
+      read++;
+      String id = readComponent();
+      String subject = readComponent();
+      return (new Fact(id, subject, relation, readObject()));
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  public PartitionedFactSource(File dir) {
+    super();
+    this.dir = dir;
+    this.name = dir.toString();
+  }
+
+  /** Returns the index */
+  protected synchronized Map<String, PartitionedFactWriter.Relation> index() {
+    if (index == null) {
+      try {
+        Map<String, PartitionedFactWriter.Relation> result = new LinkedHashMap<>();
+        for (String line : new FileLines(FileUtils.getBufferedUTF8Reader(new File(dir, PartitionedFactWriter.INDEX)))) {
+          PartitionedFactWriter.Relation r = PartitionedFactWriter.Relation.fromTsvLine(line);
+          if (r != null) result.put(r.relation, r);
+        }
+        index = Collections.unmodifiableMap(result);
+      } catch (IOException e) {
+        System.err.println("Error while opening relation index " + dir);
+        throw new RuntimeException(e);
+      }
+    }
+    return (index);
+  }
+
+  /** Returns the relations */
+  public List<String> relations() {
+    return (new ArrayList<>(index().keySet()));
+  }
+
+  /** Returns the number of facts with the relation, without loading it */
+  public long count(String relation) {
+    PartitionedFactWriter.Relation r = index().get(relation);
+    return (r == null ? 0 : r.facts);
+  }
+
+  /** Returns the table of a relation (loads it if necessary), or NULL */
+  public Table table(String relation) {
+    PartitionedFactWriter.Relation r = index().get(relation);
+    if (r == null) return (null);
+    return (tables.computeIfAbsent(relation, k -> {
+      try {
+        return (Table.read(new File(dir, r.name), relation));
+      } catch (IOException e) {
+        System.err.println("Error while reading " + r.name + " in " + dir);
+        throw new RuntimeException(e);
+      }
+    }));
+  }
+
+  /** Returns the facts of a relation from its table if it is loaded, else streams them from the file */
+  protected Iterator<Fact> scan(String relation) {
+    Table table = tables.get(relation);
+    if (table != null) return (table.iterator());
+    PartitionedFactWriter.Relation r = index().get(relation);
+    if (r == null) return (Collections.<Fact> emptyIterator());
+    try {
+      return (new TableReader(new File(dir, r.name), relation));
+    } catch (IOException e) {
+      System.err.println("Error while reading " + r.name + " in " + dir);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Forgets the table of a relation, it will be read again on the next access */
+  public void unload(String relation) {
+    tables.remove(relation);
+  }
+
+  /** Returns the facts with the relation and subject */
+  public List<Fact> getFacts(String relation, String subject) {
+    Table table = table(relation);
+    if (table == null) return (Collections.emptyList());
+    return (table.getFacts(subject));
+  }
+
+  /**
+   * Returns the facts of one relation as a source. Iterating over it streams
+   * the table from its file, without keeping it in memory (unless it was
+   * already loaded).
+   */
+  public FactSource relation(String relation) {
+    PartitionedFactSource parent = this;
+    return (new FactSource() {
+
+      {
+        this.name = parent.name + "/" + relation;
+      }
+
+      @Override
+      public Iterator<Fact> iterator() {
+        return (scan(relation));
+      }
+
+      @Override
+      public String toString() {
+        return (name);
+      }
+    });
+  }
+
+  @Override
+  public List<FactSource> segments() {
+    List<FactSource> result = new ArrayList<>();
+    for (String relation : index().keySet()) {
+      result.add(relation(relation));
+    }
+    return (result);
+  }
+
+  @Override
+  public Iterator<Fact> iterator() {
+    final Iterator<String> relationIterator = index().keySet().iterator();
+    return (new PeekIterator<Fact>() {
+
+      Iterator<Fact> current = null;
+
+      @Override
+      protected Fact internalNext() throws Exception {
+        while (current == null || !current.hasNext()) {
+          if (!relationIterator.hasNext()) return (null);
+          current = relation(relationIterator.next()).iterator();
+        }
+        return (current.next());
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    return (dir.toString());
+  }
+}
@@ -0,0 +1,444 @@
+package basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javatools.filehandlers.FileUtils;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class writes a theme as one table per relation ("vertical
+partitioning"). The target is a directory with the extension .relations.
+Every relation goes to a binary file with the (id, subject, object) of its
+facts, sorted by subject. The file relations.tsv lists the relations and
+their files. PartitionedFactSource reads the directory.
+
+While writing, the facts of each relation are appended to a temporary file.
+close() sorts the relations one by one: it cuts a relation into sorted runs
+of at most maxFacts facts, and merges the runs into the table. So at most
+one run is in memory at a time (plus, with DICTIONARY, the distinct
+components of one relation). Optionally, each table stores its components
+in a dictionary, and integer and date literals as numbers. Tables of an
+earlier theme in the same directory are removed.
+
+Example: FactWriter.from(new File("yagoFacts.relations")) writes
+yagoFacts.relations/relations.tsv, yagoFacts.relations/r00000.bin, ...
+ */
+public class PartitionedFactWriter extends FactWriter {
+
+  /** Extension of partitioned themes */
+  public static final String EXTENSION = ".relations";
+
+  /** Name of the index file in the directory */
+  public static final String INDEX = "relations.tsv";
+
+  /** Marks relation files */
+  public static final int MAGIC = 0x59524C31;
+
+  /** Flag: components are stored in a dictionary */
+  public static final int DICTIONARY = 1;
+
+  /** Flag: integer and date literals are stored as numbers */
+  public static final int TYPED = 2;
+
+  /** Tags of objects in typed tables */
+  protected static final byte PLAIN = 0, LONG = 1, DATE = 2;
+
+  /** Flags for the tables */
+  protected final int flags;
+
+  /** Maximal number of facts that are sorted in memory */
+  protected int maxFacts = 1 << 20;
+
+  /** Temporary files of the relations, in the order of appearance */
+  protected final Map<String, DataOutputStream> temporary = new LinkedHashMap<>();
+
+  /** TRUE after close(), so that a second close() does not overwrite the index */
+  protected boolean closed = false;
+
+  /** Describes one relation in the index */
+  public static class Relation {
+
+    /** The relation */
+    public final String relation;
+
+    /** File name, relative to the directory */
+    public final String name;
+
+    /** Number of facts */
+    public final long facts;
+
+    /** Size of the file */
+    public final long bytes;
+
+    public Relation(String relation, String name, long facts, long bytes) {
+      this.relation = relation;
+      this.name = name;
+      this.facts = facts;
+      this.bytes = bytes;
+    }
+
+    /** returns an index line */
+    public String toTsvLine() {
+      return (relation + "\t" + name + "\t" + facts + "\t" + bytes + "\n");
+    }
+
+    /** Parses an index line, returns NULL for comments */
+    public static Relation fromTsvLine(String line) {
+      if (line.isEmpty() || line.startsWith("#")) return (null);
+      String[] split = line.split("\t");
+      return (new Relation(split[0], split[1], Long.parseLong(split[2]), Long.parseLong(split[3])));
+    }
+
+    @Override
+    public String toString() {
+      return (relation + " (" + facts + " facts, " + bytes + " bytes)");
+    }
+  }
+
+  /** Starts a writer with dictionary and typed-literal encoding */
+  public PartitionedFactWriter(File dir, String header, String theme) throws IOException {
+    this(dir, header, theme, DICTIONARY | TYPED);
+  }
+
+  /** Starts a writer, the flags are DICTIONARY and/or TYPED */
+  public PartitionedFactWriter(File dir, String header, String theme, int flags) throws IOException {
+    super(dir);
+    this.flags = flags;
+    dir.mkdirs();
+    // Remove the tables of an earlier theme, so that they do not mix with ours
+    File[] old = dir.listFiles((d, name) -> name.equals(INDEX) || name.matches("r\\d{5}\\..*"));
+    if (old != null) for (File f : old) {
+      if (!f.delete()) throw new IOException("Cannot remove " + f);
+    }
+    if (header != null) write(themeGloss(theme, header));
+  }
+
+  /** Sets the maximal number of facts that are sorted in memory at the same time */
+  public PartitionedFactWriter setMaxFacts(int maxFacts) {
+    this.maxFacts = Math.max(1, maxFacts);
+    return (this);
+  }
+
+  /** Returns the file of the n-th relation */
+  protected File relationFile(int n, String extension) {
+    return (new File(file, String.format("r%05d%s", n, extension)));
+  }
+
+  @Override
+  public synchronized void write(Fact f) throws IOException {
+    DataOutputStream out = temporary.get(f.getRelation());
+    if (out == null) {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(relationFile(temporary.size(), ".tmp")), 1 << 16));
+      temporary.put(f.getRelation(), out);
+    }
+    writeString(out, f.getId());
+    writeString(out, f.getSubject());
+    writeString(out, f.getObject());
+  }
+
+  /** Comments are not stored */
+  @Override
+  public void writeComment(String comment) throws IOException {
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    for (DataOutputStream out : temporary.values()) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public synchronized long bytesWritten() {
+    long result = 0;
+    for (DataOutputStream out : temporary.values()) {
+      result += out.size();
+    }
+    return (result);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    List<Relation> relations = new ArrayList<>();
+    int n = 0;
+    for (Map.Entry<String, DataOutputStream> entry : temporary.entrySet()) {
+      entry.getValue().close();
+      File bin = relationFile(n, ".bin");
+      long facts = sort(n++, bin);
+      relations.add(new Relation(entry.getKey(), bin.getName(), facts, bin.length()));
+    }
+    temporary.clear();
+    try (Writer out = FileUtils.getBufferedUTF8Writer(new File(file, INDEX))) {
+      out.write("# relation\tfile\tfacts\tbytes\n");
+      for (Relation r : relations) {
+        out.write(r.toTsvLine());
+      }
+    }
+  }
+
+  /** Orders rows by subject */
+  protected static final Comparator<String[]> BYSUBJECT = Comparator.comparing(row -> row[1]);
+
+  /** Reads an (id, subject, object) row, returns NULL at the end */
+  protected static String[] readRow(DataInputStream in) throws IOException {
+    String id;
+    try {
+      id = readString(in);
+    } catch (EOFException e) {
+      return (null);
+    }
+    return (new String[] { id, readString(in), readString(in) });
+  }
+
+  /** Writes an (id, subject, object) row in the format of the temporary files */
+  protected static void writeRow(DataOutputStream out, String[] row) throws IOException {
+    writeString(out, row[0]);
+    writeString(out, row[1]);
+    writeString(out, row[2]);
+  }
+
+  /** Sorts rows and writes them to a run file */
+  protected File writeRun(List<String[]> rows, int relation, int run) throws IOException {
+    // Stable, so that facts with the same subject stay in the order of writing
+    rows.sort(BYSUBJECT);
+    File result = relationFile(relation, ".run" + run);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(result), 1 << 16))) {
+      for (String[] row : rows) {
+        writeRow(out, row);
+      }
+    }
+    return (result);
+  }
+
+  /** A sorted run during the merge */
+  protected static class Run {
+
+    final DataInputStream in;
+
+    final int number;
+
+    String[] row;
+
+    Run(File file, int number) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      this.number = number;
+      this.row = readRow(in);
+    }
+  }
+
+  /**
+   * Sorts the temporary file of the n-th relation by subject into a table.
+   * Returns the number of facts.
+   */
+  protected long sort(int n, File bin) throws IOException {
+    File tmp = relationFile(n, ".tmp");
+    Dictionary dictionary = (flags & DICTIONARY) != 0 ? new Dictionary() : null;
+    List<File> runFiles = new ArrayList<>();
+    List<String[]> rows = new ArrayList<>();
+    long facts = 0;
+    try {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tmp), 1 << 16))) {
+        String[] row;
+        while ((row = readRow(in)) != null) {
+          if (dictionary != null) addToDictionary(row, dictionary);
+          rows.add(row);
+          facts++;
+          if (rows.size() >= maxFacts) {
+            runFiles.add(writeRun(rows, n, runFiles.size()));
+            rows.clear();
+          }
+        }
+      }
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bin), 1 << 16))) {
+        writeHeader(out, facts, dictionary);
+        if (runFiles.isEmpty()) {
+          rows.sort(BYSUBJECT);
+          for (String[] row : rows) {
+            writeTableRow(out, row, dictionary);
+          }
+          return (facts);
+        }
+        if (!rows.isEmpty()) runFiles.add(writeRun(rows, n, runFiles.size()));
+        rows = null;
+        merge(runFiles, out, dictionary);
+      }
+      return (facts);
+    } finally {
+      tmp.delete();
+      for (File run : runFiles) {
+        run.delete();
+      }
+    }
+  }
+
+  /** Merges sorted runs into the rows of a table. Ties go to the earlier run, so the order of writing is kept. */
+  protected void merge(List<File> runFiles, DataOutputStream out, Dictionary dictionary) throws IOException {
+    PriorityQueue<Run> queue = new PriorityQueue<>(runFiles.size(), (a, b) -> {
+      int c = BYSUBJECT.compare(a.row, b.row);
+      return (c != 0 ? c : Integer.compare(a.number, b.number));
+    });
+    try {
+      for (int i = 0; i < runFiles.size(); i++) {
+        Run run = new Run(runFiles.get(i), i);
+        if (run.row == null) run.in.close();
+        else queue.add(run);
+      }
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        writeTableRow(out, run.row, dictionary);
+        run.row = readRow(run.in);
+        if (run.row == null) run.in.close();
+        else queue.add(run);
+      }
+    } finally {
+      for (Run run : queue) {
+        run.in.close();
+      }
+    }
+  }
+
+  /** Adds the components of a row to the dictionary */
+  protected void addToDictionary(String[] row, Dictionary dictionary) throws IOException {
+    if (row[0] != null) dictionary.add(row[0]);
+    dictionary.add(row[1]);
+    if ((flags & TYPED) == 0 || !writeTyped(null, row[2], dictionary)) dictionary.add(row[2]);
+  }
+
+  /** Writes the start of a table: magic, flags, number of rows and the dictionary (if any) */
+  protected void writeHeader(DataOutputStream out, long facts, Dictionary dictionary) throws IOException {
+    if (facts > Integer.MAX_VALUE) throw new IOException("Too many facts for one relation table: " + facts);
+    out.writeInt(MAGIC);
+    out.writeInt(flags);
+    out.writeInt((int) facts);
+    if (dictionary != null) {
+      out.writeInt(dictionary.size());
+      for (int i = 0; i < dictionary.size(); i++) {
+        writeString(out, dictionary.get(i));
+      }
+    }
+  }
+
+  /** Writes one (id, subject, object) row of a table */
+  protected void writeTableRow(DataOutputStream out, String[] row, Dictionary dictionary) throws IOException {
+    writeComponent(out, row[0], dictionary);
+    writeComponent(out, row[1], dictionary);
+    if ((flags & TYPED) == 0) writeComponent(out, row[2], dictionary);
+    else if (!writeTyped(out, row[2], dictionary)) {
+      out.writeByte(PLAIN);
+      writeComponent(out, row[2], dictionary);
+    }
+  }
+
+  /**
+   * Writes an integer or date literal as a number, if this gives back exactly
+   * the same component. Returns FALSE if the literal cannot be written as a
+   * number. With out==NULL, only checks, and adds the datatype to the
+   * dictionary (if any).
+   */
+  protected static boolean writeTyped(DataOutput out, String object, Dictionary dictionary) throws IOException {
+    if (!object.startsWith("\"")) return (false);
+    LiteralView view = new LiteralView(object);
+    String datatype = view.getDatatype();
+    if (datatype == null || !view.isLiteral() || object.indexOf('\\') != -1) return (false);
+    if (datatype.equals(YAGO.date)) {
+      long date = TypedLiterals.dateValue(view);
+      if (date == TypedLiterals.NODATE || !object.equals(typedDate(date))) return (false);
+      if (out == null) return (true);
+      out.writeByte(DATE);
+      out.writeLong(date);
+      return (true);
+    }
+    long value = TypedLiterals.longValue(view);
+    if (value == TypedLiterals.NOLONG || !object.equals(typedLong(value, datatype))) return (false);
+    if (out == null) {
+      if (dictionary != null) dictionary.add(datatype);
+      return (true);
+    }
+    out.writeByte(LONG);
+    writeComponent(out, datatype, dictionary);
+    out.writeLong(value);
+    return (true);
+  }
+
+  /** Returns the component of a date code */
+  protected static String typedDate(long date) {
+    return ("\"" + TypedLiterals.formatDate(date) + "\"^^" + YAGO.date);
+  }
+
+  /** Returns the component of an integer with a datatype */
+  protected static String typedLong(long value, String datatype) {
+    return ("\"" + value + "\"^^" + datatype);
+  }
+
+  /** Writes a component (or NULL), as a dictionary id if there is a dictionary */
+  protected static void writeComponent(DataOutput out, String s, Dictionary dictionary) throws IOException {
+    if (dictionary == null) writeString(out, s);
+    else out.writeInt(s == null ? -1 : dictionary.id(s));
+  }
+
+  /** Writes a string (or NULL) as length and UTF-8 bytes */
+  protected static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** Reads a string (or NULL) that was written by writeString */
+  protected static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) return (null);
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return (new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    try (FactWriter w = FactWriter.from(new File("c:/fabian/temp/t.relations"), "Blah blah")) {
+      for (int i = 0; i < 5; i++) {
+        w.write(new Fact("<Elvis" + i + ">", "rdf:type", "<livingPerson>"));
+        w.write(new Fact("<Elvis" + i + ">", "<wasBornOnDate>", "\"193" + i + "-01-08\"^^xsd:date"));
+      }
+    }
+    for (Fact f : FactSource.from(new File("c:/fabian/temp/t.relations"))) {
+      System.out.println(f);
+    }
+  }
+}
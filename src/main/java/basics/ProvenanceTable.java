@@ -0,0 +1,219 @@
+package basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javatools.administrative.Announce;
+import javatools.datatypes.PeekIterator;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class stores the provenance of facts, i.e., the objects of the
+meta-facts YAGO.extractionSource and YAGO.extractionTechnique, in a compact
+table: one row per fact id with the numbers of its source and technique.
+Sources and techniques are stored once each in a dictionary. The table
+gives back the meta-facts on demand (metaFacts(), iterator()).
+
+add(Fact) takes only meta-facts that can be given back exactly: meta-facts
+without an id of their own, and at most one source and one technique per
+fact. ProvenanceWriter uses this to keep provenance out of the theme files.
+ */
+public class ProvenanceTable implements Iterable<Fact> {
+
+  /** Extension of provenance files */
+  public static final String EXTENSION = ".provenance";
+
+  /** Marks provenance files */
+  public static final int MAGIC = 0x59505231;
+
+  /** Fact ids, the dictionary id is the row */
+  protected Dictionary factIds = new Dictionary();
+
+  /** Sources and techniques */
+  protected Dictionary values = new Dictionary();
+
+  /** Source of each row, or -1 */
+  protected int[] sources = empty(16);
+
+  /** Technique of each row, or -1 */
+  protected int[] techniques = empty(16);
+
+  /** Returns an array filled with -1 */
+  protected static int[] empty(int size) {
+    int[] result = new int[size];
+    Arrays.fill(result, -1);
+    return (result);
+  }
+
+  /** Returns the provenance file of a theme file */
+  public static File provenanceFor(File f) {
+    return (new File(f.getPath() + EXTENSION));
+  }
+
+  /** Returns the row of a fact id, adds it if necessary */
+  protected int row(String factId) {
+    int row = factIds.add(factId);
+    if (row >= sources.length) {
+      int old = sources.length;
+      sources = Arrays.copyOf(sources, Math.max(row + 1, old * 2));
+      techniques = Arrays.copyOf(techniques, sources.length);
+      Arrays.fill(sources, old, sources.length, -1);
+      Arrays.fill(techniques, old, techniques.length, -1);
+    }
+    return (row);
+  }
+
+  /** Sets the source and the technique of a fact (each can be NULL) */
+  public synchronized void add(String factId, String source, String technique) {
+    int row = row(factId);
+    if (source != null) sources[row] = values.add(source);
+    if (technique != null) techniques[row] = values.add(technique);
+  }
+
+  /**
+   * Stores a meta-fact about the source or technique of a fact. Returns
+   * FALSE (and does not store it) if it is another meta-fact, if it has an id
+   * of its own, or if the fact already has a different source or technique.
+   */
+  public synchronized boolean add(Fact metaFact) {
+    if (metaFact.getId() != null) return (false);
+    boolean isSource = metaFact.getRelation().equals(YAGO.extractionSource);
+    if (!isSource && !metaFact.getRelation().equals(YAGO.extractionTechnique)) return (false);
+    int[] column = isSource ? sources : techniques;
+    int row = factIds.id(metaFact.getSubject());
+    if (row != -1 && column[row] != -1) return (column[row] == values.id(metaFact.getObject()));
+    row = row(metaFact.getSubject());
+    column = isSource ? sources : techniques;
+    column[row] = values.add(metaFact.getObject());
+    return (true);
+  }
+
+  /** Returns the number of fact ids */
+  public synchronized int size() {
+    return (factIds.size());
+  }
+
+  /** Returns the source of a fact, or NULL */
+  public synchronized String getSource(String factId) {
+    int row = factIds.id(factId);
+    return (row == -1 || sources[row] == -1 ? null : values.get(sources[row]));
+  }
+
+  /** Returns the technique of a fact, or NULL */
+  public synchronized String getTechnique(String factId) {
+    int row = factIds.id(factId);
+    return (row == -1 || techniques[row] == -1 ? null : values.get(techniques[row]));
+  }
+
+  /** Returns the meta-facts of a row */
+  protected void metaFacts(int row, List<Fact> result) {
+    String factId = factIds.get(row);
+    if (sources[row] != -1) result.add(new Fact(factId, YAGO.extractionSource, values.get(sources[row])));
+    if (techniques[row] != -1) result.add(new Fact(factId, YAGO.extractionTechnique, values.get(techniques[row])));
+  }
+
+  /** Returns the source and technique meta-facts of a fact */
+  public synchronized List<Fact> metaFacts(String factId) {
+    List<Fact> result = new ArrayList<>(2);
+    int row = factIds.id(factId);
+    if (row != -1) metaFacts(row, result);
+    return (result);
+  }
+
+  /** Returns all meta-facts, in the order in which the fact ids were added */
+  @Override
+  public Iterator<Fact> iterator() {
+    return (new PeekIterator<Fact>() {
+
+      int row = 0;
+
+      List<Fact> pending = new ArrayList<>(2);
+
+      @Override
+      protected Fact internalNext() throws Exception {
+        synchronized (ProvenanceTable.this) {
+          while (pending.isEmpty()) {
+            if (row >= factIds.size()) return (null);
+            metaFacts(row++, pending);
+          }
+        }
+        return (pending.remove(0));
+      }
+    });
+  }
+
+  /** Writes the table to a file */
+  public synchronized void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(values.size());
+      for (int i = 0; i < values.size(); i++) {
+        PartitionedFactWriter.writeString(out, values.get(i));
+      }
+      out.writeInt(factIds.size());
+      for (int i = 0; i < factIds.size(); i++) {
+        PartitionedFactWriter.writeString(out, factIds.get(i));
+        out.writeInt(sources[i]);
+        out.writeInt(techniques[i]);
+      }
+    }
+  }
+
+  /** Reads a table from a file */
+  public static ProvenanceTable read(File file) throws IOException {
+    ProvenanceTable table = new ProvenanceTable();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC) throw new IOException("Not a provenance table: " + file);
+      int numValues = in.readInt();
+      for (int i = 0; i < numValues; i++) {
+        table.values.add(PartitionedFactWriter.readString(in));
+      }
+      int rows = in.readInt();
+      for (int i = 0; i < rows; i++) {
+        int row = table.row(PartitionedFactWriter.readString(in));
+        table.sources[row] = in.readInt();
+        table.techniques[row] = in.readInt();
+      }
+    }
+    return (table);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return ("ProvenanceTable with " + factIds.size() + " facts, " + values.size() + " sources and techniques");
+  }
+
+  /** Test: collects the provenance of a theme and writes it */
+  public static void main(String[] args) throws Exception {
+    ProvenanceTable table = new ProvenanceTable();
+    long other = 0;
+    for (Fact f : FactSource.from(args[0])) {
+      if (!table.add(f)) other++;
+    }
+    table.write(new File(args[1]));
+    Announce.message(table, "and", other, "other facts");
+  }
+}
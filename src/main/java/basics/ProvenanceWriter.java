@@ -0,0 +1,110 @@
+package basics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class wraps a FactWriter and keeps the extractionSource and
+extractionTechnique meta-facts out of the output. They go to a
+ProvenanceTable instead, which is written next to the output file when the
+writer is closed (yagoFacts.ttl.provenance). All other facts are passed on.
+ProvenanceWriter.expand() gives back a theme with all meta-facts.
+
+Example:
+  try (FactWriter w = new ProvenanceWriter(FactWriter.from(file, header))) {
+    w.write(fact);
+    w.write(fact.metaFact(YAGO.extractionSource, source));
+  }
+ */
+public class ProvenanceWriter extends DelegatingFactWriter {
+
+  /** The provenance */
+  protected final ProvenanceTable table;
+
+  /** Wraps a writer, the provenance goes to a new table */
+  public ProvenanceWriter(FactWriter out) {
+    this(out, new ProvenanceTable());
+  }
+
+  /** Wraps a writer, the provenance goes to the given table */
+  public ProvenanceWriter(FactWriter out, ProvenanceTable table) {
+    super(out);
+    this.table = table;
+  }
+
+  /** Returns the provenance that has been collected so far */
+  public ProvenanceTable getTable() {
+    return (table);
+  }
+
+  @Override
+  public void write(Fact f) throws IOException {
+    if (!table.add(f)) out.write(f);
+  }
+
+  @Override
+  public void write(Fact[] facts, int offset, int length) throws IOException {
+    Fact[] batch = new Fact[length];
+    int size = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (!table.add(facts[i])) batch[size++] = facts[i];
+    }
+    out.write(batch, 0, size);
+  }
+
+  /** NULL, because the meta-facts have to be taken out of the facts */
+  @Override
+  public FactFormatter formatter() {
+    return (null);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+    table.write(ProvenanceTable.provenanceFor(file));
+  }
+
+  /**
+   * Writes the facts of a theme file and its provenance table (if any) to
+   * another writer
+   */
+  public static void expand(File themeFile, FactWriter target) throws IOException {
+    for (Fact f : FactSource.from(themeFile)) {
+      target.write(f);
+    }
+    File provenance = ProvenanceTable.provenanceFor(themeFile);
+    if (!provenance.exists()) return;
+    for (Fact f : ProvenanceTable.read(provenance)) {
+      target.write(f);
+    }
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    try (FactWriter w = new ProvenanceWriter(FactWriter.from(new File("c:/fabian/temp/t.ttl"), "Blah blah"))) {
+      for (int i = 0; i < 5; i++) {
+        Fact f = new Fact("<Elvis" + i + ">", "rdf:type", "<livingPerson>");
+        w.write(f);
+        w.write(f.metaFact(YAGO.extractionSource, "<http://en.wikipedia.org/wiki/Elvis>"));
+        w.write(f.metaFact(YAGO.extractionTechnique, FactComponent.forString("Infobox")));
+      }
+    }
+    try (FactWriter w = FactWriter.from(new File("c:/fabian/temp/t-expanded.ttl"))) {
+      expand(new File("c:/fabian/temp/t.ttl"), w);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package basics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class materializes the RDFS entailments of instance facts:
+  (s p o), p subPropertyOf q      =&gt; (s q o)
+  (s p o), p domain C             =&gt; (s rdf:type C)
+  (s p o), p range C              =&gt; (o rdf:type C), if o is not a literal
+  (s rdf:type C), C subClassOf D  =&gt; (s rdf:type D)
+
+The schema (RDFS.subclassOf, RDFS.subpropertyOf, RDFS.domain, RDFS.range)
+is loaded first and closed transitively. With the closed schema, all
+entailments of a fact follow from that fact alone, so that a single pass over
+the instances reaches the fixpoint. The memory for the inference is that of
+the schema.
+
+The instances are read in parallel. To remove duplicates, the inferred facts
+(and the existing facts that could be inferred) are spilled into partitions
+on disk by hash; each partition is then deduplicated on its own. A partition
+that does not fit into its share of the memory budget is split again on disk,
+so that the number of partitions follows from the budget and the memory for
+duplicate removal does not depend on the number of instances. Only facts
+that are new are written.
+ */
+public class RdfsMaterializer {
+
+  /** Class hierarchy */
+  protected final Taxonomy classes;
+
+  /** Property hierarchy */
+  protected final Taxonomy properties;
+
+  /** Properties that have subproperties */
+  protected final Set<String> superproperties = new HashSet<>();
+
+  /** Domains and ranges of properties (as given) */
+  protected final Map<String, List<String>> domains = new HashMap<>(), ranges = new HashMap<>();
+
+  /** Per property: the superproperties, the types of subjects and the types of objects */
+  protected final Map<String, String[][]> rules = new ConcurrentHashMap<>();
+
+  /** Per class: the class and its superclasses */
+  protected final Map<String, String[]> superclasses = new ConcurrentHashMap<>();
+
+  /** Number of partitions for duplicate removal (and the fan-out when a partition is split) */
+  protected int partitions = 64;
+
+  /** Memory for duplicate removal, shared by the threads, in bytes */
+  protected long memory = Runtime.getRuntime().maxMemory() / 2;
+
+  /** Estimated heap bytes per byte of a partition file during duplicate removal */
+  protected static final int HEAPPERBYTE = 6;
+
+  /** Maximal number of times that a partition is split */
+  protected static final int MAXSPLITS = 4;
+
+  /** Loads the schema */
+  @SafeVarargs
+  public RdfsMaterializer(Iterable<Fact>... schema) {
+    List<Fact> schemaFacts = new ArrayList<>();
+    for (Iterable<Fact> source : schema) {
+      for (Fact f : source) {
+        switch (f.getRelation()) {
+          case RDFS.domain:
+            domains.computeIfAbsent(f.getSubject(), k -> new ArrayList<>()).add(f.getObject());
+            break;
+          case RDFS.range:
+            ranges.computeIfAbsent(f.getSubject(), k -> new ArrayList<>()).add(f.getObject());
+            break;
+          case RDFS.subclassOf:
+          case RDFS.subpropertyOf:
+            schemaFacts.add(f);
+            break;
+          default:
+        }
+      }
+    }
+    classes = new Taxonomy(RDFS.subclassOf, null, schemaFacts);
+    properties = new Taxonomy(RDFS.subpropertyOf, null, schemaFacts);
+    for (Fact f : schemaFacts) {
+      if (f.getRelation().equals(RDFS.subpropertyOf)) superproperties.addAll(properties.parents(f.getSubject()));
+    }
+  }
+
+  /** Sets the number of partitions for duplicate removal */
+  public RdfsMaterializer setPartitions(int partitions) {
+    this.partitions = Math.max(1, partitions);
+    return (this);
+  }
+
+  /** Sets the memory for duplicate removal, in bytes */
+  public RdfsMaterializer setMemory(long bytes) {
+    this.memory = Math.max(1, bytes);
+    return (this);
+  }
+
+  /** Returns the class and its superclasses */
+  protected String[] superclasses(String cls) {
+    return (superclasses.computeIfAbsent(cls, c -> {
+      List<String> result = new ArrayList<>();
+      result.add(c);
+      result.addAll(classes.superclasses(c));
+      return (result.toArray(new String[result.size()]));
+    }));
+  }
+
+  /** Returns the superproperties, the subject types and the object types of a property */
+  protected String[][] rules(String property) {
+    return (rules.computeIfAbsent(property, p -> {
+      List<String> all = new ArrayList<>();
+      all.add(p);
+      all.addAll(properties.superclasses(p));
+      Set<String> subjectTypes = new LinkedHashSet<>();
+      Set<String> objectTypes = new LinkedHashSet<>();
+      for (String q : all) {
+        for (String c : domains.getOrDefault(q, Collections.emptyList())) {
+          Collections.addAll(subjectTypes, superclasses(c));
+        }
+        for (String c : ranges.getOrDefault(q, Collections.emptyList())) {
+          Collections.addAll(objectTypes, superclasses(c));
+        }
+      }
+      return (new String[][] { all.subList(1, all.size()).toArray(new String[0]), subjectTypes.toArray(new String[0]),
+          objectTypes.toArray(new String[0]) });
+    }));
+  }
+
+  /** TRUE if facts with this relation can be inferred */
+  protected boolean isInferable(String relation) {
+    return (relation.equals(RDFS.type) || superproperties.contains(relation));
+  }
+
+  /** Returns the facts that follow from one fact (can contain the fact itself and duplicates) */
+  public List<Fact> infer(Fact f) {
+    List<Fact> result = new ArrayList<>();
+    String[][] r = rules(f.getRelation());
+    for (String q : r[0]) {
+      result.add(new Fact(f.getSubject(), q, f.getObject()));
+    }
+    for (String c : r[1]) {
+      result.add(new Fact(f.getSubject(), RDFS.type, c));
+    }
+    if (!FactComponent.isLiteral(f.getObject())) {
+      for (String c : r[2]) {
+        result.add(new Fact(f.getObject(), RDFS.type, c));
+      }
+    }
+    if (f.getRelation().equals(RDFS.type) || Arrays.asList(r[0]).contains(RDFS.type)) {
+      for (String c : superclasses(f.getObject())) {
+        result.add(new Fact(f.getSubject(), RDFS.type, c));
+      }
+    }
+    return (result);
+  }
+
+  /** Returns the line of a fact in a partition file */
+  protected static String line(char kind, Fact f) {
+    return (kind + "\t" + f.getSubject() + "\t" + f.getRelation() + "\t" + f.getObject() + "\n");
+  }
+
+  /** Returns the partition of a fact */
+  protected int partition(Fact f) {
+    int h = f.hashCode();
+    h ^= (h >>> 16);
+    return ((h & 0x7FFFFFFF) % partitions);
+  }
+
+  /**
+   * Writes the new facts that follow from the instances to the writer.
+   * Returns the number of new facts.
+   */
+  public long materialize(FactSource instances, FactWriter out, int threads, File tmpDir) throws IOException, InterruptedException {
+    Writer[] writers = new Writer[partitions];
+    File[] files = new File[partitions];
+    try {
+      for (int p = 0; p < partitions; p++) {
+        files[p] = File.createTempFile("rdfs", ".tsv", tmpDir);
+        writers[p] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files[p]), StandardCharsets.UTF_8), 1 << 14);
+      }
+      // Phase 1: spill existing and inferred facts into partitions
+      instances.parallelForEach(f -> {
+        try {
+          if (isInferable(f.getRelation())) spill(writers, 'E', f);
+          for (Fact g : infer(f)) {
+            spill(writers, 'I', g);
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }, threads);
+      for (Writer w : writers) {
+        w.close();
+      }
+      // Phase 2: remove duplicates in every partition
+      AtomicLong count = new AtomicLong();
+      long budget = Math.max(1, memory / Math.max(1, threads));
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+      try {
+        List<Future<?>> results = new ArrayList<>();
+        for (File file : files) {
+          results.add(executor.submit(() -> {
+            count.addAndGet(dedup(file, budget, 0, tmpDir, out));
+            file.delete();
+            return (null);
+          }));
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+      } catch (ExecutionException e) {
+        throw new IOException("Error while materializing " + instances, e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+      return (count.get());
+    } finally {
+      for (int p = 0; p < partitions; p++) {
+        if (writers[p] != null) writers[p].close();
+        if (files[p] != null) files[p].delete();
+      }
+    }
+  }
+
+  /** Returns a reader for a partition file (with a small buffer, unlike FileUtils) */
+  protected static BufferedReader reader(File file) throws IOException {
+    return (new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 14));
+  }
+
+  /** Appends a fact to its partition */
+  protected void spill(Writer[] writers, char kind, Fact f) throws IOException {
+    Writer w = writers[partition(f)];
+    String line = line(kind, f);
+    synchronized (w) {
+      w.write(line);
+    }
+  }
+
+  /**
+   * Writes the inferred facts of a partition that are not existing facts to
+   * the writer, without duplicates. Splits the partition if it does not fit
+   * into the budget. Returns the number of facts written.
+   */
+  protected long dedup(File file, long budget, int level, File tmpDir, FactWriter out) throws IOException {
+    long splits = Math.min(partitions, file.length() * HEAPPERBYTE / budget + 1);
+    if (splits <= 1 || level >= MAXSPLITS) {
+      List<Fact> result = dedup(file);
+      synchronized (out) {
+        for (Fact f : result) {
+          out.write(f);
+        }
+      }
+      return (result.size());
+    }
+    Writer[] writers = new Writer[(int) splits];
+    File[] files = new File[writers.length];
+    try {
+      for (int p = 0; p < files.length; p++) {
+        files[p] = File.createTempFile("rdfs", ".tsv", tmpDir);
+        writers[p] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files[p]), StandardCharsets.UTF_8), 1 << 14);
+      }
+      try (BufferedReader in = reader(file)) {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+          // The kind does not count, so that existing and inferred facts meet
+          int h = (line.substring(2).hashCode() + level) * 0x9E3779B9;
+          h ^= (h >>> 16);
+          Writer w = writers[(h & 0x7FFFFFFF) % writers.length];
+          w.write(line);
+          w.write('\n');
+        }
+      }
+      for (Writer w : writers) {
+        w.close();
+      }
+      long count = 0;
+      for (File f : files) {
+        count += dedup(f, budget, level + 1, tmpDir, out);
+        f.delete();
+      }
+      return (count);
+    } finally {
+      for (int p = 0; p < files.length; p++) {
+        if (writers[p] != null) writers[p].close();
+        if (files[p] != null) files[p].delete();
+      }
+    }
+  }
+
+  /** Returns the inferred facts of a partition that are not existing facts, without duplicates */
+  protected static List<Fact> dedup(File file) throws IOException {
+    Set<String> existing = new HashSet<>();
+    Set<String> inferred = new LinkedHashSet<>();
+    try (BufferedReader in = reader(file)) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (line.charAt(0) == 'E') existing.add(line.substring(2));
+        else inferred.add(line.substring(2));
+      }
+    }
+    List<Fact> result = new ArrayList<>();
+    for (String line : inferred) {
+      if (existing.contains(line)) continue;
+      String[] split = line.split("\t", 3);
+      result.add(new Fact(split[0], split[1], split[2]));
+    }
+    return (result);
+  }
+
+  @Override
+  public String toString() {
+    return ("RdfsMaterializer with " + classes.numClasses() + " classes, " + properties.numClasses() + " properties in the hierarchy, " + domains.size()
+        + " domains, " + ranges.size() + " ranges");
+  }
+
+  /** Test: schema file, instance file, output file */
+  public static void main(String[] args) throws Exception {
+    RdfsMaterializer materializer = new RdfsMaterializer(FactSource.from(args[0]));
+    Announce.message(materializer);
+    Announce.doing("Materializing");
+    try (FactWriter out = FactWriter.from(new File(args[2]))) {
+      long n = materializer.materialize(FactSource.from(args[1]), out, Runtime.getRuntime().availableProcessors(),
+          new File(System.getProperty("java.io.tmpdir")));
+      Announce.done(n + " new facts");
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package basics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class merges the entities that are linked by RDFS.sameas into
+equivalence classes, and rewrites facts to one canonical entity per class.
+The entities are numbered by a Dictionary, and the classes are kept in a
+union-find structure of int arrays (union by size, path halving), so that
+there are no objects per link.
+
+The canonical entity of a class is the smallest one by the preference. By
+default, YAGO entities (&lt;Elvis_Presley&gt;) come before prefixed names
+(dbp:Elvis_Presley), which come before full URIs; ties go to the shorter and
+then to the alphabetically first one.
+
+Example:
+  SameAsCanonicalizer c = new SameAsCanonicalizer();
+  c.addLinks(FactSource.from("yagoDBpediaInstances.ttl"));
+  c.addLinks(FactSource.from("yagoWikidataInstances.ttl"));
+  c.rewrite(FactSource.from("yagoFacts.ttl"), writer, 8);
+ */
+public class SameAsCanonicalizer {
+
+  /** Default preference for canonical entities */
+  public static final Comparator<String> YAGOFIRST = Comparator.comparingInt(SameAsCanonicalizer::rank).thenComparingInt(String::length)
+      .thenComparing(Comparator.naturalOrder());
+
+  /** The entities that appear in links */
+  protected final Dictionary entities = new Dictionary();
+
+  /** Parent of each entity in the union-find forest */
+  protected int[] parents = new int[16];
+
+  /** Size of the class of each root */
+  protected int[] sizes = new int[16];
+
+  /** Canonical entity of each entity, computed on demand */
+  protected int[] canonical;
+
+  /** Preference for canonical entities */
+  protected final Comparator<String> preference;
+
+  /** Number of links that merged two classes */
+  protected long merges = 0;
+
+  /** Uses the default preference */
+  public SameAsCanonicalizer() {
+    this(YAGOFIRST);
+  }
+
+  /** Uses the given preference, the smallest entity of a class becomes the canonical one */
+  public SameAsCanonicalizer(Comparator<String> preference) {
+    this.preference = preference;
+  }
+
+  /** 0 for YAGO entities, 1 for prefixed names, 2 for full URIs */
+  protected static int rank(String entity) {
+    if (!FactComponent.isUri(entity)) return (1);
+    return (entity.contains("://") ? 2 : 0);
+  }
+
+  /** Returns the number of an entity, adds it if necessary */
+  protected int node(String entity) {
+    int id = entities.add(entity);
+    if (id >= parents.length) {
+      parents = Arrays.copyOf(parents, Math.max(id + 1, parents.length * 2));
+      sizes = Arrays.copyOf(sizes, parents.length);
+    }
+    if (sizes[id] == 0) {
+      parents[id] = id;
+      sizes[id] = 1;
+    }
+    return (id);
+  }
+
+  /** Returns the root of an entity */
+  protected int find(int id) {
+    while (parents[id] != id) {
+      parents[id] = parents[parents[id]];
+      id = parents[id];
+    }
+    return (id);
+  }
+
+  /** Declares two entities equivalent */
+  public synchronized void union(String first, String second) {
+    int a = find(node(first));
+    int b = find(node(second));
+    if (a == b) return;
+    if (sizes[a] < sizes[b]) {
+      int t = a;
+      a = b;
+      b = t;
+    }
+    parents[b] = a;
+    sizes[a] += sizes[b];
+    canonical = null;
+    merges++;
+  }
+
+  /** Adds the RDFS.sameas facts of a source, returns the number of links */
+  public long addLinks(Iterable<Fact> facts) {
+    long links = 0;
+    for (Fact f : facts) {
+      if (!f.getRelation().equals(RDFS.sameas) || FactComponent.isLiteral(f.getObject())) continue;
+      union(f.getSubject(), f.getObject());
+      links++;
+    }
+    return (links);
+  }
+
+  /** Computes the canonical entity of every class */
+  protected synchronized int[] canonical() {
+    if (canonical != null) return (canonical);
+    int n = entities.size();
+    int[] best = new int[n];
+    Arrays.fill(best, -1);
+    for (int id = 0; id < n; id++) {
+      int root = find(id);
+      if (best[root] == -1 || preference.compare(entities.get(id), entities.get(best[root])) < 0) best[root] = id;
+    }
+    int[] result = new int[n];
+    for (int id = 0; id < n; id++) {
+      result[id] = best[find(id)];
+    }
+    canonical = result;
+    return (result);
+  }
+
+  /** Returns the canonical entity for an entity (the entity itself if it has no links) */
+  public synchronized String canonical(String entity) {
+    return (canonical(canonical(), entity));
+  }
+
+  /**
+   * Returns the canonical entity for an entity, given the canonical ids. Does
+   * not take the lock: the caller holds it, or runs in a worker thread of
+   * rewrite(FactSource), which holds it for the workers.
+   */
+  protected String canonical(int[] c, String entity) {
+    int id = entities.id(entity);
+    return (id == -1 ? entity : entities.get(c[id]));
+  }
+
+  /** TRUE if the two entities are in the same class */
+  public synchronized boolean isSame(String first, String second) {
+    if (first.equals(second)) return (true);
+    int a = entities.id(first);
+    int b = entities.id(second);
+    return (a != -1 && b != -1 && find(a) == find(b));
+  }
+
+  /** Returns the number of entities that appear in links */
+  public synchronized int numEntities() {
+    return (entities.size());
+  }
+
+  /** Returns the number of equivalence classes */
+  public synchronized long numClasses() {
+    return (entities.size() - merges);
+  }
+
+  /**
+   * Returns the fact with canonical subject and object (the fact itself if
+   * nothing changes). Keeps the id, so that meta-facts stay attached.
+   */
+  public synchronized Fact rewrite(Fact f) {
+    return (rewrite(canonical(), f));
+  }
+
+  /** Returns the fact with canonical subject and object, given the canonical ids */
+  protected Fact rewrite(int[] c, Fact f) {
+    String subject = canonical(c, f.getSubject());
+    String object = FactComponent.isLiteral(f.getObject()) ? f.getObject() : canonical(c, f.getObject());
+    if (subject.equals(f.getSubject()) && object.equals(f.getObject())) return (f);
+    return (new Fact(f.getId(), subject, f.getRelation(), object));
+  }
+
+  /**
+   * Writes all facts of the source with canonical entities, reading in
+   * parallel. The RDFS.sameas links themselves are dropped. Returns the
+   * number of facts that were changed. Holds the lock while the threads run,
+   * so that no links can be added during the rewrite.
+   */
+  public synchronized long rewrite(FactSource in, FactWriter out, int threads) throws IOException, InterruptedException {
+    int[] c = canonical();
+    long[] changed = new long[1];
+    in.parallelForEach(f -> {
+      if (f.getRelation().equals(RDFS.sameas)) return;
+      Fact g = rewrite(c, f);
+      try {
+        synchronized (out) {
+          out.write(g);
+          if (g != f) changed[0]++;
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }, threads);
+    return (changed[0]);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return ("SameAsCanonicalizer with " + entities.size() + " entities in " + numClasses() + " classes");
+  }
+
+  /** Test: link file, fact file, output file */
+  public static void main(String[] args) throws Exception {
+    SameAsCanonicalizer c = new SameAsCanonicalizer();
+    c.addLinks(FactSource.from(args[0]));
+    Announce.message(c);
+    Announce.doing("Rewriting");
+    try (FactWriter out = FactWriter.from(new File(args[2]))) {
+      Announce.done(c.rewrite(FactSource.from(args[1]), out, Runtime.getRuntime().availableProcessors()) + " facts changed");
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package basics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javatools.filehandlers.FileLines;
+import javatools.filehandlers.FileSet;
+import javatools.filehandlers.FileUtils;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class writes a theme into several segment files. It rolls over to a new
+segment when the current one reaches a given number of bytes or facts. Every
+segment is a complete TTL or TSV file with the prefixes. Only the first
+segment has the header and the gloss of the theme, so that the manifest
+contains the gloss once. When the writer is closed, it writes a manifest file
+that lists the segments. FactSource.from() reads the manifest as one source.
+
+Example: writing to yagoTypes.ttl produces yagoTypes-00000.ttl,
+yagoTypes-00001.ttl, ... and yagoTypes.manifest
+ */
+public class SegmentedFactWriter extends FactWriter {
+
+  /** Extension of manifest files */
+  public static final String MANIFEST_EXTENSION = ".manifest";
+
+  /** Header of the first segment */
+  protected final String header;
+
+  /** Name of the theme */
+  protected final String theme;
+
+  /** Name of the segments without extension (e.g. "yagoTypes") */
+  protected final String baseName;
+
+  /** Extension of the segments (e.g. ".ttl") */
+  protected final String extension;
+
+  /** Maximal number of bytes per segment (or 0 for no limit) */
+  protected final long maxBytes;
+
+  /** Maximal number of facts per segment (or 0 for no limit) */
+  protected final long maxFacts;
+
+  /** Segment that we are currently writing (or null) */
+  protected FactWriter current;
+
+  /** Number of facts in the current segment */
+  protected long currentFacts;
+
+  /** Segments written so far */
+  protected final List<Segment> segments = new ArrayList<>();
+
+  /** TRUE if every segment gets an IdIndex */
+  protected boolean indexIds = false;
+
+  /** Describes one segment in the manifest */
+  public static class Segment {
+
+    /** File name of the segment, relative to the manifest */
+    public final String name;
+
+    /** Number of facts */
+    public final long facts;
+
+    /** Start of the segment in the concatenation of all segments */
+    public final long offset;
+
+    /** Size of the segment file */
+    public final long bytes;
+
+    public Segment(String name, long facts, long offset, long bytes) {
+      this.name = name;
+      this.facts = facts;
+      this.offset = offset;
+      this.bytes = bytes;
+    }
+
+    /** returns a manifest line */
+    public String toTsvLine() {
+      return (name + "\t" + facts + "\t" + offset + "\t" + bytes + "\n");
+    }
+
+    /** Parses a manifest line, returns NULL for comments */
+    public static Segment fromTsvLine(String line) {
+      if (line.isEmpty() || line.startsWith("#")) return (null);
+      String[] split = line.split("\t");
+      return (new Segment(split[0], Long.parseLong(split[1]), Long.parseLong(split[2]), Long.parseLong(split[3])));
+    }
+
+    @Override
+    public String toString() {
+      return (name + " (" + facts + " facts, " + bytes + " bytes)");
+    }
+  }
+
+  /**
+   * Starts a segmented writer. The file determines the format and the theme
+   * name (e.g. yagoTypes.ttl). maxBytes and maxFacts can be 0 for "no limit".
+   */
+  public SegmentedFactWriter(File f, String header, long maxBytes, long maxFacts) throws Exception {
+    super(manifestFor(f));
+    this.header = header;
+    this.theme = themeName(f);
+    this.baseName = FileSet.noExtension(f).getName();
+    this.extension = FileSet.extension(f);
+    this.maxBytes = maxBytes;
+    this.maxFacts = maxFacts;
+    openSegment();
+  }
+
+  /** Returns the manifest file for a theme file */
+  public static File manifestFor(File f) {
+    return (FileSet.newExtension(f, MANIFEST_EXTENSION));
+  }
+
+  /** Returns the file of the n-th segment */
+  protected File segmentFile(int n) {
+    return (new File(file.getAbsoluteFile().getParentFile(), String.format("%s-%05d%s", baseName, n, extension)));
+  }
+
+  /** Opens the next segment */
+  protected void openSegment() throws IOException {
+    try {
+      current = FactWriter.from(segmentFile(segments.size()), segments.isEmpty() ? header : null, theme);
+      if (indexIds) current.indexIds();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    currentFacts = 0;
+  }
+
+  /** Closes the current segment and records it */
+  protected void closeSegment() throws IOException {
+    current.close();
+    File f = segmentFile(segments.size());
+    long offset = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).offset + segments.get(segments.size() - 1).bytes;
+    segments.add(new Segment(f.getName(), currentFacts, offset, f.length()));
+    current = null;
+  }
+
+  /** TRUE if the current segment is full */
+  protected boolean segmentIsFull() {
+    if (maxFacts > 0 && currentFacts >= maxFacts) return (true);
+    if (maxBytes > 0 && current.bytesWritten() >= maxBytes) return (true);
+    return (false);
+  }
+
+  /** Builds an IdIndex for every segment */
+  @Override
+  public synchronized void indexIds() {
+    indexIds = true;
+    if (current != null) current.indexIds();
+  }
+
+  @Override
+  public synchronized void write(Fact f) throws IOException {
+    if (current == null) openSegment();
+    current.write(f);
+    currentFacts++;
+    // We close full segments right away, but open the next one only on demand
+    if (segmentIsFull()) closeSegment();
+  }
+
+  @Override
+  public synchronized void writeComment(String comment) throws IOException {
+    if (current == null) openSegment();
+    current.writeComment(comment);
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    if (current != null) current.flush();
+  }
+
+  @Override
+  public synchronized long bytesWritten() {
+    long result = current == null ? 0 : current.bytesWritten();
+    for (Segment s : segments) {
+      result += s.bytes;
+    }
+    return (result);
+  }
+
+  /** Returns the segments written so far */
+  public synchronized List<Segment> segments() {
+    return (new ArrayList<>(segments));
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (current != null) closeSegment();
+    try (Writer out = FileUtils.getBufferedUTF8Writer(file)) {
+      out.write("# segment\tfacts\toffset\tbytes\n");
+      for (Segment s : segments) {
+        out.write(s.toTsvLine());
+      }
+    }
+  }
+
+  /** Reads the segments of a manifest file */
+  public static List<Segment> readManifest(File manifest) throws IOException {
+    List<Segment> result = new ArrayList<>();
+    for (String line : new FileLines(FileUtils.getBufferedUTF8Reader(manifest))) {
+      Segment s = Segment.fromTsvLine(line);
+      if (s != null) result.add(s);
+    }
+    return (result);
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    try (FactWriter w = new SegmentedFactWriter(new File("c:/fabian/temp/t.ttl"), "Blah blah", 0, 2)) {
+      for (int i = 0; i < 5; i++) {
+        w.write(new Fact("<Elvis" + i + ">", "rdf:type", "<livingPerson>"));
+      }
+    }
+    for (Fact f : FactSource.from(new File("c:/fabian/temp/t.manifest"))) {
+      System.out.println(f);
+    }
+  }
+}
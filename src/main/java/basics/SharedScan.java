@@ -0,0 +1,175 @@
+package basics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class reads a FactSource once and hands every fact to several
+consumers. The reader cuts the facts into batches; every consumer runs in
+a thread of its own and receives the batches through a bounded queue. A
+slow consumer makes the reader wait once its queue is full, so that memory
+stays bounded. The batches are shared, so consumers must not modify the
+facts.
+
+If a consumer fails, it gets no more batches, and run() throws the error
+after the scan.
+
+Example:
+  new SharedScan(FactSource.from("yagoFacts.ttl"))
+    .register(f -&gt; extractor1.process(f))
+    .register(f -&gt; extractor2.process(f))
+    .run();
+ */
+public class SharedScan {
+
+  /** Number of facts per batch */
+  public static final int BATCHSIZE = 1000;
+
+  /** Marks the end of the scan */
+  protected static final List<Fact> END = Collections.emptyList();
+
+  /** The source */
+  protected final FactSource source;
+
+  /** The consumers */
+  protected final List<Stage> stages = new ArrayList<>();
+
+  /** Batches per queue */
+  protected int capacity = 16;
+
+  public SharedScan(FactSource source) {
+    this.source = source;
+  }
+
+  /** Sets the number of batches that can wait for a consumer */
+  public SharedScan setCapacity(int batches) {
+    this.capacity = Math.max(1, batches);
+    return (this);
+  }
+
+  /** Adds a consumer that receives the facts one by one */
+  public SharedScan register(Consumer<Fact> consumer) {
+    return (registerBatches(batch -> {
+      for (Fact f : batch) {
+        consumer.accept(f);
+      }
+    }));
+  }
+
+  /** Adds a consumer that receives the facts in batches */
+  public SharedScan registerBatches(Consumer<List<Fact>> consumer) {
+    stages.add(new Stage(consumer, stages.size()));
+    return (this);
+  }
+
+  /** A consumer with its queue */
+  protected class Stage implements Runnable {
+
+    final Consumer<List<Fact>> consumer;
+
+    final int number;
+
+    BlockingQueue<List<Fact>> queue;
+
+    /** Error of the consumer, or NULL */
+    volatile Throwable error;
+
+    Stage(Consumer<List<Fact>> consumer, int number) {
+      this.consumer = consumer;
+      this.number = number;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          List<Fact> batch = queue.take();
+          if (batch == END) return;
+          if (error != null) continue;
+          consumer.accept(batch);
+        } catch (InterruptedException e) {
+          error = e;
+          return;
+        } catch (RuntimeException | Error e) {
+          // Keep on draining the queue so that the reader does not block
+          error = e;
+        }
+      }
+    }
+  }
+
+  /** Reads the source once and feeds all consumers, returns the number of facts */
+  public long run() throws IOException, InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (Stage stage : stages) {
+      stage.queue = new ArrayBlockingQueue<>(capacity);
+      stage.error = null;
+      Thread thread = new Thread(stage, "SharedScan consumer " + stage.number);
+      thread.start();
+      threads.add(thread);
+    }
+    long count = 0;
+    try {
+      Iterator<Fact> it = source.iterator();
+      Fact[] batch = new Fact[BATCHSIZE];
+      int size;
+      while ((size = FactSource.nextBatch(it, batch)) > 0) {
+        publish(Arrays.asList(batch).subList(0, size));
+        count += size;
+        batch = new Fact[BATCHSIZE];
+      }
+    } finally {
+      for (Stage stage : stages) {
+        // An interrupted consumer does not drain its queue any more
+        if (!(stage.error instanceof InterruptedException)) stage.queue.put(END);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    }
+    for (Stage stage : stages) {
+      if (stage.error != null) throw new IOException("Error in consumer " + stage.number + " of the scan of " + source, stage.error);
+    }
+    return (count);
+  }
+
+  /** Hands a batch to all consumers that did not fail */
+  protected void publish(List<Fact> batch) throws InterruptedException {
+    List<Fact> shared = Collections.unmodifiableList(batch);
+    for (Stage stage : stages) {
+      if (stage.error == null) stage.queue.put(shared);
+    }
+  }
+
+  /** Test: counts the facts and the literals of a theme in one scan */
+  public static void main(String[] args) throws Exception {
+    long[] counts = new long[2];
+    long n = new SharedScan(FactSource.from(args[0])).register(f -> counts[0]++).register(f -> {
+      if (FactComponent.isLiteral(f.getObject())) counts[1]++;
+    }).run();
+    Announce.message(n, "facts scanned,", counts[0], "counted,", counts[1], "literals");
+  }
+}
@@ -0,0 +1,73 @@
+package basics;
+
+import java.io.IOException;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class wraps a FactWriter and collects the ThemeStatistics of the facts
+that it writes. The statistics are written next to the output file when the
+writer is closed (yagoFacts.ttl.stats).
+
+Example:
+  try (FactWriter w = new StatisticsWriter(FactWriter.from(file, header))) {
+    w.write(fact);
+  }
+  ThemeStatistics.of(file);
+ */
+public class StatisticsWriter extends DelegatingFactWriter {
+
+  /** The statistics */
+  protected final ThemeStatistics statistics = new ThemeStatistics();
+
+  public StatisticsWriter(FactWriter out) {
+    super(out);
+  }
+
+  /** Returns the statistics that have been collected so far */
+  public ThemeStatistics getStatistics() {
+    return (statistics);
+  }
+
+  @Override
+  public void write(Fact f) throws IOException {
+    out.write(f);
+    synchronized (statistics) {
+      statistics.add(f);
+    }
+  }
+
+  @Override
+  public void write(Fact[] facts, int offset, int length) throws IOException {
+    out.write(facts, offset, length);
+    synchronized (statistics) {
+      for (int i = offset; i < offset + length; i++) {
+        statistics.add(facts[i]);
+      }
+    }
+  }
+
+  /** NULL, because the statistics are collected from the facts */
+  @Override
+  public FactFormatter formatter() {
+    return (null);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+    statistics.write(ThemeStatistics.statisticsFor(file));
+  }
+}
@@ -0,0 +1,470 @@
+package basics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class holds the class hierarchy (RDFS.subclassOf) and the types of
+entities (RDFS.type) as integer arrays. Every class stores the sorted list of
+all of its superclasses (the transitive closure), so that isSubclassOf() is
+a binary search over a list of the length of the depth of the taxonomy.
+Types of entities are closed under superclasses on the fly.
+
+A taxonomy is built once from the facts and does not change afterwards, so
+that any number of threads can query it.
+
+subClassOf is reflexive here: every class is a subclass of itself. The
+classes of a cycle in the hierarchy are subclasses of each other, and the
+cycle is reported with a warning.
+
+Example:
+  Taxonomy taxonomy = new Taxonomy(FactSource.from("yagoTaxonomy.tsv"), FactSource.from("yagoTypes.tsv"));
+  taxonomy.isSubclassOf("&lt;wordnet_singer_110599806&gt;", "&lt;wordnet_person_100007846&gt;");
+ */
+public class Taxonomy {
+
+  /** The classes */
+  protected final Dictionary classes = new Dictionary();
+
+  /** The entities that have types */
+  protected final Dictionary entities = new Dictionary();
+
+  /** Superclasses of class c (including c, sorted) are ancestors[ancestorStart[c]...ancestorStart[c+1]] */
+  protected int[] ancestorStart;
+
+  protected int[] ancestors;
+
+  /** Direct superclasses of class c */
+  protected int[] parentStart, parents;
+
+  /** Direct subclasses of class c */
+  protected int[] childStart, children;
+
+  /** Direct types of entity e */
+  protected int[] typeStart, types;
+
+  /** Entities with direct type c */
+  protected int[] instanceStart, instances;
+
+  /** Length of the longest path from c to a root */
+  protected int[] depth;
+
+  /** Growable list of int pairs */
+  protected static class Pairs {
+
+    int[] first = new int[1024], second = new int[1024];
+
+    int size = 0;
+
+    void add(int a, int b) {
+      if (size == first.length) {
+        first = Arrays.copyOf(first, size * 2);
+        second = Arrays.copyOf(second, size * 2);
+      }
+      first[size] = a;
+      second[size++] = b;
+    }
+  }
+
+  /** Builds the taxonomy from facts with the relations RDFS.subclassOf and RDFS.type */
+  @SafeVarargs
+  public Taxonomy(Iterable<Fact>... sources) {
+    this(RDFS.subclassOf, RDFS.type, sources);
+  }
+
+  /**
+   * Builds a hierarchy from facts with other relations, e.g. RDFS.subpropertyOf
+   * (typeRelation can be NULL)
+   */
+  @SafeVarargs
+  public Taxonomy(String subclassRelation, String typeRelation, Iterable<Fact>... sources) {
+    Pairs subclassOf = new Pairs();
+    Pairs typeOf = new Pairs();
+    for (Iterable<Fact> source : sources) {
+      for (Fact f : source) {
+        if (f.getRelation().equals(subclassRelation)) {
+          subclassOf.add(classes.add(f.getSubject()), classes.add(f.getObject()));
+        } else if (f.getRelation().equals(typeRelation)) {
+          typeOf.add(entities.add(f.getSubject()), classes.add(f.getObject()));
+        }
+      }
+    }
+    int n = classes.size();
+    // Parents of each class
+    int[][] parentCsr = csr(n, subclassOf.first, subclassOf.second, subclassOf.size);
+    parentStart = parentCsr[0];
+    parents = parentCsr[1];
+    int[][] childCsr = csr(n, subclassOf.second, subclassOf.first, subclassOf.size);
+    childStart = childCsr[0];
+    children = childCsr[1];
+    int[][] typeCsr = csr(entities.size(), typeOf.first, typeOf.second, typeOf.size);
+    typeStart = typeCsr[0];
+    types = typeCsr[1];
+    int[][] instanceCsr = csr(n, typeOf.second, typeOf.first, typeOf.size);
+    instanceStart = instanceCsr[0];
+    instances = instanceCsr[1];
+    closure();
+  }
+
+  /**
+   * Builds a compressed adjacency list: the targets of node i are
+   * result[1][result[0][i]...result[0][i+1]], sorted and without duplicates
+   */
+  protected static int[][] csr(int nodes, int[] from, int[] to, int size) {
+    int[] start = new int[nodes + 1];
+    for (int i = 0; i < size; i++) {
+      start[from[i] + 1]++;
+    }
+    for (int i = 0; i < nodes; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] targets = new int[size];
+    int[] fill = Arrays.copyOf(start, nodes);
+    for (int i = 0; i < size; i++) {
+      targets[fill[from[i]]++] = to[i];
+    }
+    // Sort and remove duplicates
+    int[] newStart = new int[nodes + 1];
+    int pos = 0;
+    for (int i = 0; i < nodes; i++) {
+      Arrays.sort(targets, start[i], start[i + 1]);
+      for (int j = start[i]; j < start[i + 1]; j++) {
+        if (j > start[i] && targets[j] == targets[j - 1]) continue;
+        targets[pos++] = targets[j];
+      }
+      newStart[i + 1] = pos;
+    }
+    return (new int[][] { newStart, Arrays.copyOf(targets, pos) });
+  }
+
+  /**
+   * Numbers the strongly connected components of the hierarchy (Tarjan's
+   * algorithm, without recursion). Components are numbered parents first:
+   * the parents of a class are in its component or in one with a smaller
+   * number.
+   */
+  protected int[] components() {
+    int n = classes.size();
+    int[] index = new int[n];
+    Arrays.fill(index, -1);
+    int[] low = new int[n];
+    int[] component = new int[n];
+    Arrays.fill(component, -1);
+    // Classes that are not yet in a component
+    int[] stack = new int[n];
+    int stackSize = 0;
+    // Path of the depth-first search, and the next parent to visit per class
+    int[] path = new int[n];
+    int[] nextParent = new int[n];
+    int counter = 0, components = 0;
+    for (int root = 0; root < n; root++) {
+      if (index[root] != -1) continue;
+      int pathSize = 0;
+      index[root] = low[root] = counter++;
+      nextParent[root] = parentStart[root];
+      stack[stackSize++] = root;
+      path[pathSize++] = root;
+      while (pathSize > 0) {
+        int c = path[pathSize - 1];
+        if (nextParent[c] < parentStart[c + 1]) {
+          int p = parents[nextParent[c]++];
+          if (index[p] == -1) {
+            index[p] = low[p] = counter++;
+            nextParent[p] = parentStart[p];
+            stack[stackSize++] = p;
+            path[pathSize++] = p;
+          } else if (component[p] == -1) {
+            // p is on the stack, i.e., on a cycle with c
+            low[c] = Math.min(low[c], index[p]);
+          }
+          continue;
+        }
+        pathSize--;
+        if (pathSize > 0) low[path[pathSize - 1]] = Math.min(low[path[pathSize - 1]], low[c]);
+        if (low[c] == index[c]) {
+          int member;
+          do {
+            member = stack[--stackSize];
+            component[member] = components;
+          } while (member != c);
+          components++;
+        }
+      }
+    }
+    return (component);
+  }
+
+  /**
+   * Computes the superclasses and the depth of every class, parents first.
+   * The classes of a cycle are collapsed: they share their superclasses
+   * (among them each other) and their depth.
+   */
+  protected void closure() {
+    int n = classes.size();
+    int[] component = components();
+    int numComponents = 0;
+    for (int c = 0; c < n; c++) {
+      numComponents = Math.max(numComponents, component[c] + 1);
+    }
+    int[] ids = new int[n];
+    for (int c = 0; c < n; c++) {
+      ids[c] = c;
+    }
+    int[][] memberCsr = csr(numComponents, component, ids, n);
+    int[] memberStart = memberCsr[0], members = memberCsr[1];
+    int[][] closure = new int[numComponents][];
+    int[] componentDepth = new int[numComponents];
+    int[] buffer = new int[16];
+    for (int k = 0; k < numComponents; k++) {
+      // Union of the members and the superclasses of the parents outside the component
+      boolean cycle = memberStart[k + 1] - memberStart[k] > 1;
+      int size = 0;
+      for (int m = memberStart[k]; m < memberStart[k + 1]; m++) {
+        int c = members[m];
+        if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+        buffer[size++] = c;
+        for (int i = parentStart[c]; i < parentStart[c + 1]; i++) {
+          int p = component[parents[i]];
+          if (p == k) {
+            cycle = true;
+            continue;
+          }
+          int[] pc = closure[p];
+          if (size + pc.length >= buffer.length) buffer = Arrays.copyOf(buffer, (size + pc.length) * 2);
+          System.arraycopy(pc, 0, buffer, size, pc.length);
+          size += pc.length;
+          componentDepth[k] = Math.max(componentDepth[k], componentDepth[p] + 1);
+        }
+      }
+      if (cycle) Announce.warning("Cycle in the taxonomy at", classes.get(members[memberStart[k]]));
+      Arrays.sort(buffer, 0, size);
+      int unique = 0;
+      for (int i = 0; i < size; i++) {
+        if (i == 0 || buffer[i] != buffer[i - 1]) buffer[unique++] = buffer[i];
+      }
+      closure[k] = Arrays.copyOf(buffer, unique);
+    }
+    depth = new int[n];
+    ancestorStart = new int[n + 1];
+    for (int c = 0; c < n; c++) {
+      depth[c] = componentDepth[component[c]];
+      ancestorStart[c + 1] = ancestorStart[c] + closure[component[c]].length;
+    }
+    ancestors = new int[ancestorStart[n]];
+    for (int c = 0; c < n; c++) {
+      int[] cc = closure[component[c]];
+      System.arraycopy(cc, 0, ancestors, ancestorStart[c], cc.length);
+    }
+  }
+
+  /** Returns the number of classes */
+  public int numClasses() {
+    return (classes.size());
+  }
+
+  /** Returns the number of entities with types */
+  public int numEntities() {
+    return (entities.size());
+  }
+
+  /** TRUE if the class is known */
+  public boolean isClass(String cls) {
+    return (classes.id(cls) != -1);
+  }
+
+  /** TRUE if class sub is a subclass of class sup (or the same) */
+  public boolean isSubclassOf(String sub, String sup) {
+    int c = classes.id(sub);
+    int d = classes.id(sup);
+    if (c == -1 || d == -1) return (false);
+    return (isSubclassOf(c, d));
+  }
+
+  protected boolean isSubclassOf(int c, int d) {
+    return (Arrays.binarySearch(ancestors, ancestorStart[c], ancestorStart[c + 1], d) >= 0);
+  }
+
+  /** Returns the names of classes */
+  protected List<String> names(int[] ids, int from, int to, int except) {
+    List<String> result = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      if (ids[i] != except) result.add(classes.get(ids[i]));
+    }
+    return (result);
+  }
+
+  /** Returns all superclasses of a class (without the class itself) */
+  public List<String> superclasses(String cls) {
+    int c = classes.id(cls);
+    if (c == -1) return (Collections.emptyList());
+    return (names(ancestors, ancestorStart[c], ancestorStart[c + 1], c));
+  }
+
+  /** Returns the direct superclasses of a class */
+  public List<String> parents(String cls) {
+    int c = classes.id(cls);
+    if (c == -1) return (Collections.emptyList());
+    return (names(parents, parentStart[c], parentStart[c + 1], -1));
+  }
+
+  /** Returns the direct subclasses of a class */
+  public List<String> children(String cls) {
+    int c = classes.id(cls);
+    if (c == -1) return (Collections.emptyList());
+    return (names(children, childStart[c], childStart[c + 1], -1));
+  }
+
+  /** Returns the class and all of its subclasses, as ids */
+  protected int[] descendants(int c) {
+    int[] result = new int[16];
+    boolean[] seen = new boolean[classes.size()];
+    int size = 0;
+    result[size++] = c;
+    seen[c] = true;
+    for (int i = 0; i < size; i++) {
+      for (int j = childStart[result[i]]; j < childStart[result[i] + 1]; j++) {
+        int child = children[j];
+        // Classes with several parents and classes on cycles are reached more than once
+        if (seen[child]) continue;
+        seen[child] = true;
+        if (size == result.length) result = Arrays.copyOf(result, size * 2);
+        result[size++] = child;
+      }
+    }
+    return (Arrays.copyOf(result, size));
+  }
+
+  /** Returns all subclasses of a class (without the class itself) */
+  public List<String> subclasses(String cls) {
+    int c = classes.id(cls);
+    if (c == -1) return (Collections.emptyList());
+    int[] d = descendants(c);
+    return (names(d, 1, d.length, -1));
+  }
+
+  /** Returns the length of the longest path from the class to a root, or -1 */
+  public int depth(String cls) {
+    int c = classes.id(cls);
+    return (c == -1 ? -1 : depth[c]);
+  }
+
+  /** Returns the direct types of an entity */
+  public List<String> directTypes(String entity) {
+    int e = entities.id(entity);
+    if (e == -1) return (Collections.emptyList());
+    return (names(types, typeStart[e], typeStart[e + 1], -1));
+  }
+
+  /** Returns all types of an entity, i.e., its direct types and their superclasses */
+  public List<String> types(String entity) {
+    int e = entities.id(entity);
+    if (e == -1) return (Collections.emptyList());
+    int[] result = new int[16];
+    int size = 0;
+    for (int i = typeStart[e]; i < typeStart[e + 1]; i++) {
+      int t = types[i];
+      int length = ancestorStart[t + 1] - ancestorStart[t];
+      if (size + length > result.length) result = Arrays.copyOf(result, (size + length) * 2);
+      System.arraycopy(ancestors, ancestorStart[t], result, size, length);
+      size += length;
+    }
+    Arrays.sort(result, 0, size);
+    List<String> names = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || result[i] != result[i - 1]) names.add(classes.get(result[i]));
+    }
+    return (names);
+  }
+
+  /** TRUE if the entity has the class or one of its subclasses as type */
+  public boolean isInstanceOf(String entity, String cls) {
+    int e = entities.id(entity);
+    int c = classes.id(cls);
+    if (e == -1 || c == -1) return (false);
+    for (int i = typeStart[e]; i < typeStart[e + 1]; i++) {
+      if (isSubclassOf(types[i], c)) return (true);
+    }
+    return (false);
+  }
+
+  /** Returns the entities that have the class or one of its subclasses as type */
+  public List<String> instancesOf(String cls) {
+    int c = classes.id(cls);
+    if (c == -1) return (Collections.emptyList());
+    List<String> result = new ArrayList<>();
+    boolean[] seen = new boolean[entities.size()];
+    for (int d : descendants(c)) {
+      for (int i = instanceStart[d]; i < instanceStart[d + 1]; i++) {
+        if (seen[instances[i]]) continue;
+        seen[instances[i]] = true;
+        result.add(entities.get(instances[i]));
+      }
+    }
+    return (result);
+  }
+
+  /**
+   * Returns the deepest classes that are superclasses of both classes (there
+   * can be several, because a class can have several parents)
+   */
+  public List<String> lowestCommonAncestors(String cls1, String cls2) {
+    int c = classes.id(cls1);
+    int d = classes.id(cls2);
+    List<String> result = new ArrayList<>();
+    if (c == -1 || d == -1) return (result);
+    int maxDepth = -1;
+    int i = ancestorStart[c], j = ancestorStart[d];
+    // Intersection of the sorted superclass lists
+    while (i < ancestorStart[c + 1] && j < ancestorStart[d + 1]) {
+      if (ancestors[i] < ancestors[j]) i++;
+      else if (ancestors[i] > ancestors[j]) j++;
+      else {
+        int a = ancestors[i];
+        if (depth[a] > maxDepth) {
+          result.clear();
+          maxDepth = depth[a];
+        }
+        if (depth[a] == maxDepth) result.add(classes.get(a));
+        i++;
+        j++;
+      }
+    }
+    return (result);
+  }
+
+  @Override
+  public String toString() {
+    return ("Taxonomy with " + classes.size() + " classes, " + ancestors.length + " superclass links and " + entities.size() + " entities");
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    Announce.doing("Loading taxonomy");
+    List<FactSource> sources = new ArrayList<>();
+    for (String arg : args) {
+      sources.add(FactSource.from(arg));
+    }
+    Taxonomy taxonomy = new Taxonomy(sources.toArray(new FactSource[0]));
+    Announce.done(taxonomy.toString());
+    Announce.message(taxonomy.superclasses("<wordnet_singer_110599806>"));
+    Announce.message(taxonomy.lowestCommonAncestors("<wordnet_singer_110599806>", "<wordnet_physicist_110428004>"));
+  }
+}
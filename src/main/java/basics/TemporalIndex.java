@@ -0,0 +1,294 @@
+package basics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class indexes the xsd:date objects of chosen relations (e.g.
+&lt;wasBornOnDate&gt;) by time. A date with # stands for an interval of days:
+"1935-01-##" is 1935-01-01 to 1935-01-31, "19##-##-##" is 1900-01-01 to
+1999-12-31. Days are kept as longs yyyymmdd (a # day goes up to 31), so that
+the order of the numbers is the order of the days.
+
+The intervals of a relation are kept in primitive arrays, in one run per
+precision (day, month, year, decade, ...), sorted by start. Since the
+intervals of a run have about the same length, an overlap query is a binary
+search plus a scan over the matches.
+Queries return the facts with their ids, so that meta-facts can be attached.
+
+Example:
+  TemporalIndex index = new TemporalIndex(FactSource.from("yagoDateFacts.tsv"), "&lt;wasBornOnDate&gt;");
+  index.entitiesInYear("&lt;wasBornOnDate&gt;", 1935);
+ */
+public class TemporalIndex {
+
+  /** Subjects */
+  protected final Dictionary entities = new Dictionary();
+
+  /** Date literals */
+  protected final Dictionary dates = new Dictionary();
+
+  /** Fact ids */
+  protected final Dictionary ids = new Dictionary();
+
+  /** Per relation: the runs */
+  protected final Map<String, Run[]> runs = new HashMap<>();
+
+  /** Number of intervals */
+  protected int size = 0;
+
+  /** Dates with larger years (plus #) are not indexed, so that yyyymmdd fits into a long */
+  public static final long MAXYEAR = 100000000000000L;
+
+  /** Intervals of one relation and one precision */
+  protected static class Run {
+
+    long[] starts = new long[16], ends = new long[16];
+
+    int[] subjects = new int[16], objects = new int[16];
+
+    /** Fact ids, -1 for none */
+    int[] ids = new int[16];
+
+    int size = 0;
+
+    /** Largest end - start */
+    long maxLength = 0;
+
+    void add(long start, long end, int subject, int object, int id) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+        subjects = Arrays.copyOf(subjects, size * 2);
+        objects = Arrays.copyOf(objects, size * 2);
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      subjects[size] = subject;
+      objects[size] = object;
+      ids[size++] = id;
+      maxLength = Math.max(maxLength, end - start);
+    }
+
+    /** Returns the first position with start &gt;= key */
+    int lowerBound(long key) {
+      int lo = 0, hi = size;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (starts[mid] < key) lo = mid + 1;
+        else hi = mid;
+      }
+      return (lo);
+    }
+
+    void swap(int i, int j) {
+      long l = starts[i];
+      starts[i] = starts[j];
+      starts[j] = l;
+      l = ends[i];
+      ends[i] = ends[j];
+      ends[j] = l;
+      int k = subjects[i];
+      subjects[i] = subjects[j];
+      subjects[j] = k;
+      k = objects[i];
+      objects[i] = objects[j];
+      objects[j] = k;
+      k = ids[i];
+      ids[i] = ids[j];
+      ids[j] = k;
+    }
+  }
+
+  /** Indexes the date facts of the given relations */
+  public TemporalIndex(Iterable<Fact> facts, String... relations) {
+    this(facts, Arrays.asList(relations));
+  }
+
+  /** Indexes the date facts of the given relations */
+  public TemporalIndex(Iterable<Fact> facts, Collection<String> relations) {
+    Map<String, List<Run>> build = new HashMap<>();
+    for (String relation : relations) {
+      build.put(relation, new ArrayList<>());
+    }
+    for (Fact f : facts) {
+      List<Run> list = build.get(f.getRelation());
+      if (list == null) continue;
+      long date = f.getDateValue();
+      if (date == TypedLiterals.NODATE || Math.abs(TypedLiterals.year(date)) + pow10(TypedLiterals.yearWildcards(date)) > MAXYEAR) continue;
+      int precision = precision(date);
+      while (list.size() <= precision) {
+        list.add(new Run());
+      }
+      list.get(precision).add(start(date), end(date), entities.add(f.getSubject()), dates.add(f.getObject()),
+          f.getId() == null ? -1 : ids.add(f.getId()));
+      size++;
+    }
+    for (Map.Entry<String, List<Run>> e : build.entrySet()) {
+      for (Run run : e.getValue()) {
+        ParallelSort.sort(run.starts, null, 0, run.size - 1, run::swap);
+      }
+      runs.put(e.getKey(), e.getValue().toArray(new Run[0]));
+    }
+    entities.trim();
+    dates.trim();
+    ids.trim();
+  }
+
+  /** Returns 0 for days, 1 for months, 2 for years, 3 for decades etc. */
+  protected static int precision(long date) {
+    if (TypedLiterals.yearWildcards(date) > 0) return (2 + TypedLiterals.yearWildcards(date));
+    if (TypedLiterals.month(date) == -1) return (2);
+    return (TypedLiterals.day(date) == -1 ? 1 : 0);
+  }
+
+  /** Returns yyyymmdd */
+  protected static long day(long year, int month, int day) {
+    return (year * 10000 + month * 100 + day);
+  }
+
+  /** Returns the first day (yyyymmdd) of a date code */
+  public static long start(long date) {
+    long year = TypedLiterals.year(date);
+    int wildcards = TypedLiterals.yearWildcards(date);
+    // -19## is -1999 to -1900
+    if (year < 0 && wildcards > 0) year -= pow10(wildcards) - 1;
+    if (wildcards > 0 || TypedLiterals.month(date) == -1) return (day(year, 1, 1));
+    return (day(year, TypedLiterals.month(date), Math.max(1, TypedLiterals.day(date))));
+  }
+
+  /** Returns the last day (yyyymmdd) of a date code */
+  public static long end(long date) {
+    long year = TypedLiterals.year(date);
+    int wildcards = TypedLiterals.yearWildcards(date);
+    if (year >= 0 && wildcards > 0) year += pow10(wildcards) - 1;
+    if (wildcards > 0 || TypedLiterals.month(date) == -1) return (day(year, 12, 31));
+    return (day(year, TypedLiterals.month(date), TypedLiterals.day(date) == -1 ? 31 : TypedLiterals.day(date)));
+  }
+
+  /** Returns 10^n */
+  protected static long pow10(int n) {
+    long result = 1;
+    for (int i = 0; i < n; i++) {
+      result *= 10;
+    }
+    return (result);
+  }
+
+  /** Returns the first day (yyyymmdd) of a date string such as "1935-##-##", or throws an IllegalArgumentException */
+  public static long start(String date) {
+    return (start(parse(date)));
+  }
+
+  /** Returns the last day (yyyymmdd) of a date string such as "1935-##-##", or throws an IllegalArgumentException */
+  public static long end(String date) {
+    return (end(parse(date)));
+  }
+
+  /** Parses a date string */
+  protected static long parse(String date) {
+    long result = TypedLiterals.parseDate(date);
+    if (result == TypedLiterals.NODATE) throw new IllegalArgumentException("Not a date: " + date);
+    return (result);
+  }
+
+  /**
+   * Returns the facts of the relation (all indexed relations if NULL) whose
+   * interval overlaps the days [from, to] (yyyymmdd)
+   */
+  public List<Fact> overlapping(String relation, long from, long to) {
+    return (query(relation, from, to, false));
+  }
+
+  /**
+   * Returns the facts of the relation (all indexed relations if NULL) whose
+   * interval overlaps the interval of the dates, e.g. "1935-##-##" and
+   * "1940-##-##"
+   */
+  public List<Fact> overlapping(String relation, String from, String to) {
+    return (overlapping(relation, start(from), end(to)));
+  }
+
+  /**
+   * Returns the facts of the relation (all indexed relations if NULL) whose
+   * interval lies within the days [from, to] (yyyymmdd)
+   */
+  public List<Fact> within(String relation, long from, long to) {
+    return (query(relation, from, to, true));
+  }
+
+  /**
+   * Returns the facts of the relation (all indexed relations if NULL) whose
+   * interval lies within the interval of the dates
+   */
+  public List<Fact> within(String relation, String from, String to) {
+    return (within(relation, start(from), end(to)));
+  }
+
+  /** Returns the subjects whose date for the relation lies within the year */
+  public Set<String> entitiesInYear(String relation, long year) {
+    Set<String> result = new LinkedHashSet<>();
+    for (Fact f : within(relation, day(year, 1, 1), day(year, 12, 31))) {
+      result.add(f.getSubject());
+    }
+    return (result);
+  }
+
+  /** Runs a query, sorted by start within each run */
+  protected List<Fact> query(String relation, long from, long to, boolean within) {
+    List<Fact> result = new ArrayList<>();
+    if (from > to) return (result);
+    for (String r : relation == null ? runs.keySet() : Arrays.asList(relation)) {
+      for (Run run : runs.getOrDefault(r, new Run[0])) {
+        // An overlapping interval starts at most maxLength before from
+        int i = run.lowerBound(within ? from : from - run.maxLength);
+        for (; i < run.size && run.starts[i] <= to; i++) {
+          if (within ? run.ends[i] <= to : run.ends[i] >= from) {
+            result.add(new Fact(run.ids[i] == -1 ? null : ids.get(run.ids[i]), entities.get(run.subjects[i]), r, dates.get(run.objects[i])));
+          }
+        }
+      }
+    }
+    return (result);
+  }
+
+  /** Returns the number of intervals */
+  public int size() {
+    return (size);
+  }
+
+  @Override
+  public String toString() {
+    return ("TemporalIndex with " + size + " dates of " + runs.size() + " relations");
+  }
+
+  /** Test: date fact file, relation, year */
+  public static void main(String[] args) throws Exception {
+    TemporalIndex index = new TemporalIndex(FactSource.from(args[0]), args[1]);
+    Announce.message(index);
+    Announce.message(index.entitiesInYear(args[1], Long.parseLong(args[2])));
+  }
+}
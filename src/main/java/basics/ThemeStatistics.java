@@ -0,0 +1,329 @@
+package basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javatools.administrative.Announce;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class collects statistics of a theme in one pass: per relation the
+number of facts, their size in bytes (as TSV lines), and the number of
+distinct subjects and objects (HyperLogLog); for the theme the datatypes
+and languages of the literals, and the frequency of relation-object pairs
+(CountMinSketch). Statistics of parts of a theme can be merged.
+
+The statistics are saved next to the theme (yagoFacts.ttl.stats), either by
+collect() or by StatisticsWriter, so that tools can read them without
+scanning the theme.
+ */
+public class ThemeStatistics {
+
+  /** Extension of statistics files */
+  public static final String EXTENSION = ".stats";
+
+  /** Marks statistics files */
+  public static final int MAGIC = 0x59535431;
+
+  /** HyperLogLog bits per relation */
+  public static final int BITS = 12;
+
+  /** Statistics of one relation */
+  public static class RelationStatistics {
+
+    protected long facts = 0;
+
+    protected long bytes = 0;
+
+    protected long literals = 0;
+
+    protected HyperLogLog subjects = new HyperLogLog(BITS);
+
+    protected HyperLogLog objects = new HyperLogLog(BITS);
+
+    /** Number of facts */
+    public long facts() {
+      return (facts);
+    }
+
+    /** Size of the facts as TSV lines in bytes */
+    public long bytes() {
+      return (bytes);
+    }
+
+    /** Number of facts with a literal object */
+    public long literals() {
+      return (literals);
+    }
+
+    /** Estimated number of distinct subjects */
+    public long distinctSubjects() {
+      return (subjects.estimate());
+    }
+
+    /** Estimated number of distinct objects */
+    public long distinctObjects() {
+      return (objects.estimate());
+    }
+
+    protected void merge(RelationStatistics other) {
+      facts += other.facts;
+      bytes += other.bytes;
+      literals += other.literals;
+      subjects.merge(other.subjects);
+      objects.merge(other.objects);
+    }
+
+    @Override
+    public String toString() {
+      return (facts + " facts, " + bytes + " bytes, ~" + distinctSubjects() + " subjects, ~" + distinctObjects() + " objects, " + literals + " literals");
+    }
+  }
+
+  /** Statistics per relation */
+  protected final Map<String, RelationStatistics> relations = new TreeMap<>();
+
+  /** Number of literals per datatype */
+  protected final Map<String, Long> datatypes = new TreeMap<>();
+
+  /** Number of literals per language */
+  protected final Map<String, Long> languages = new TreeMap<>();
+
+  /** Frequencies of relation + TAB + object */
+  protected CountMinSketch objectFrequencies = new CountMinSketch();
+
+  /** Returns the size of a string in UTF-8 */
+  protected static long utf8Length(String s) {
+    if (s == null) return (0);
+    long result = 0;
+    for (int i = 0; i < s.length(); i++) {
+      result += FactWriter.CountingWriter.utf8Length(s.charAt(i));
+    }
+    return (result);
+  }
+
+  /** Adds a fact */
+  public void add(Fact f) {
+    RelationStatistics r = relations.computeIfAbsent(f.getRelation(), k -> new RelationStatistics());
+    r.facts++;
+    r.bytes += utf8Length(f.getId()) + utf8Length(f.getSubject()) + utf8Length(f.getRelation()) + utf8Length(f.getObject()) + 4;
+    r.subjects.add(f.getSubject());
+    r.objects.add(f.getObject());
+    objectFrequencies.add(f.getRelation() + "\t" + f.getObject());
+    if (FactComponent.isLiteral(f.getObject())) {
+      r.literals++;
+      LiteralView view = f.getObjectView();
+      if (view.getDatatype() != null) datatypes.merge(view.getDatatype(), 1L, Long::sum);
+      if (view.getLanguage() != null) languages.merge(view.getLanguage(), 1L, Long::sum);
+    }
+  }
+
+  /** Adds the statistics of another part of the theme */
+  public void merge(ThemeStatistics other) {
+    for (Map.Entry<String, RelationStatistics> e : other.relations.entrySet()) {
+      relations.computeIfAbsent(e.getKey(), k -> new RelationStatistics()).merge(e.getValue());
+    }
+    for (Map.Entry<String, Long> e : other.datatypes.entrySet()) {
+      datatypes.merge(e.getKey(), e.getValue(), Long::sum);
+    }
+    for (Map.Entry<String, Long> e : other.languages.entrySet()) {
+      languages.merge(e.getKey(), e.getValue(), Long::sum);
+    }
+    objectFrequencies.merge(other.objectFrequencies);
+  }
+
+  /** Returns the statistics per relation */
+  public Map<String, RelationStatistics> relations() {
+    return (relations);
+  }
+
+  /** Returns the statistics of a relation, or NULL */
+  public RelationStatistics relation(String relation) {
+    return (relations.get(relation));
+  }
+
+  /** Returns the number of literals per datatype */
+  public Map<String, Long> datatypes() {
+    return (datatypes);
+  }
+
+  /** Returns the number of literals per language */
+  public Map<String, Long> languages() {
+    return (languages);
+  }
+
+  /** Returns the estimated number of facts with this relation and object (never too small) */
+  public long objectFrequency(String relation, String object) {
+    return (objectFrequencies.estimate(relation + "\t" + object));
+  }
+
+  /** Returns the number of facts */
+  public long facts() {
+    long result = 0;
+    for (RelationStatistics r : relations.values()) {
+      result += r.facts;
+    }
+    return (result);
+  }
+
+  /** Returns the size of the facts as TSV lines in bytes */
+  public long bytes() {
+    long result = 0;
+    for (RelationStatistics r : relations.values()) {
+      result += r.bytes;
+    }
+    return (result);
+  }
+
+  /** Collects the statistics of a source, one segment per thread */
+  public static ThemeStatistics collect(FactSource source, int threads) throws IOException, InterruptedException {
+    List<FactSource> segments = source.segments();
+    ThemeStatistics result = new ThemeStatistics();
+    if (threads <= 1 || segments.size() == 1) {
+      for (Fact f : source) {
+        result.add(f);
+      }
+      return (result);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, segments.size()));
+    try {
+      List<Future<ThemeStatistics>> parts = new ArrayList<>();
+      for (FactSource segment : segments) {
+        parts.add(executor.submit(() -> {
+          ThemeStatistics part = new ThemeStatistics();
+          for (Fact f : segment) {
+            part.add(f);
+          }
+          return (part);
+        }));
+      }
+      for (Future<ThemeStatistics> part : parts) {
+        result.merge(part.get());
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Error while collecting statistics of " + source, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return (result);
+  }
+
+  /** Collects the statistics of a theme file and writes them next to it */
+  public static ThemeStatistics collect(File theme, int threads) throws IOException, InterruptedException {
+    ThemeStatistics result = collect(FactSource.from(theme), threads);
+    result.write(statisticsFor(theme));
+    return (result);
+  }
+
+  /** Returns the statistics file of a theme file */
+  public static File statisticsFor(File f) {
+    return (new File(f.getPath() + EXTENSION));
+  }
+
+  /** Reads the statistics of a theme file, or returns NULL if there are none */
+  public static ThemeStatistics of(File theme) throws IOException {
+    File file = statisticsFor(theme);
+    if (!file.exists()) return (null);
+    return (read(file));
+  }
+
+  /** Writes the statistics to a file */
+  public void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(relations.size());
+      for (Map.Entry<String, RelationStatistics> e : relations.entrySet()) {
+        RelationStatistics r = e.getValue();
+        PartitionedFactWriter.writeString(out, e.getKey());
+        out.writeLong(r.facts);
+        out.writeLong(r.bytes);
+        out.writeLong(r.literals);
+        r.subjects.write(out);
+        r.objects.write(out);
+      }
+      writeCounts(out, datatypes);
+      writeCounts(out, languages);
+      objectFrequencies.write(out);
+    }
+  }
+
+  protected static void writeCounts(DataOutputStream out, Map<String, Long> counts) throws IOException {
+    out.writeInt(counts.size());
+    for (Map.Entry<String, Long> e : counts.entrySet()) {
+      PartitionedFactWriter.writeString(out, e.getKey());
+      out.writeLong(e.getValue());
+    }
+  }
+
+  protected static void readCounts(DataInputStream in, Map<String, Long> counts) throws IOException {
+    int n = in.readInt();
+    for (int i = 0; i < n; i++) {
+      counts.put(PartitionedFactWriter.readString(in), in.readLong());
+    }
+  }
+
+  /** Reads statistics from a file */
+  public static ThemeStatistics read(File file) throws IOException {
+    ThemeStatistics result = new ThemeStatistics();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC) throw new IOException("Not a statistics file: " + file);
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        RelationStatistics r = new RelationStatistics();
+        result.relations.put(PartitionedFactWriter.readString(in), r);
+        r.facts = in.readLong();
+        r.bytes = in.readLong();
+        r.literals = in.readLong();
+        r.subjects = HyperLogLog.read(in);
+        r.objects = HyperLogLog.read(in);
+      }
+      readCounts(in, result.datatypes);
+      readCounts(in, result.languages);
+      result.objectFrequencies = CountMinSketch.read(in);
+    }
+    return (result);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder("ThemeStatistics: ").append(facts()).append(" facts, ").append(bytes()).append(" bytes\n");
+    for (Map.Entry<String, RelationStatistics> e : relations.entrySet()) {
+      result.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+    }
+    result.append("  Datatypes: ").append(datatypes).append('\n');
+    result.append("  Languages: ").append(languages).append('\n');
+    return (result.toString());
+  }
+
+  /** Test: collects the statistics of a theme and writes them next to it */
+  public static void main(String[] args) throws Exception {
+    Announce.message(collect(new File(args[0]), Runtime.getRuntime().availableProcessors()));
+  }
+}
@@ -0,0 +1,553 @@
+package basics;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javatools.filehandlers.FileUtils;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class transcodes TTL to TSV and vice versa without creating Fact objects.
+For the line-oriented files that N4Writer and TsvWriter produce, the two
+formats differ only in the separators, in the "#@ id" line versus the id
+column, and in the " ." terminator. The transcoder copies the bytes of the
+components directly from the input to the output.
+
+A TTL line is copied only if the full parser (N4Reader) would produce exactly
+the same components. Lines that use custom prefixes, full URIs, numbers,
+escapes that the parser would normalize, ";" or "," lists, or multi-line
+literals are handed to N4Reader instead. If the file sets another base, the
+rest of the file goes through one N4Reader. The output is thus the same as
+that of a conversion through Fact objects.
+ */
+public class Transcoder {
+
+  /** Size of the input buffer */
+  protected static final int BUFFERSIZE = 1 << 20;
+
+  /** Input */
+  protected final InputStream in;
+
+  /** Output */
+  protected final OutputStream out;
+
+  /** Input buffer */
+  protected byte[] buf = new byte[BUFFERSIZE];
+
+  /** Start of the current line in buf */
+  protected int lineStart = 0;
+
+  /** End of the current line in buf (exclusive, without line break) */
+  protected int lineEnd = 0;
+
+  /** End of the valid data in buf */
+  protected int bufEnd = 0;
+
+  /** TRUE if the input is exhausted */
+  protected boolean eof = false;
+
+  /** Number of facts that were copied byte by byte */
+  protected long fastFacts = 0;
+
+  /** Number of facts that went through the parser */
+  protected long parsedFacts = 0;
+
+  /** Number of bytes read */
+  protected long bytesRead = 0;
+
+  /** Creates a transcoder. Streams are closed by the caller */
+  public Transcoder(InputStream in, OutputStream out) {
+    this.in = in;
+    this.out = out;
+  }
+
+  /** Reads the next line into lineStart/lineEnd. Returns FALSE at the end of the input */
+  protected boolean nextLine() throws IOException {
+    int pos = lineEnd;
+    // skip the line break of the previous line
+    if (pos < bufEnd && buf[pos] == '\r') pos++;
+    if (pos < bufEnd && buf[pos] == '\n') pos++;
+    lineStart = pos;
+    while (true) {
+      for (; pos < bufEnd; pos++) {
+        if (buf[pos] == '\n') {
+          lineEnd = pos > lineStart && buf[pos - 1] == '\r' ? pos - 1 : pos;
+          return (true);
+        }
+      }
+      if (eof) {
+        lineEnd = bufEnd;
+        return (lineStart < bufEnd);
+      }
+      // Shift the current line to the start of the buffer and refill
+      int len = bufEnd - lineStart;
+      if (len == buf.length) {
+        byte[] bigger = new byte[buf.length * 2];
+        System.arraycopy(buf, lineStart, bigger, 0, len);
+        buf = bigger;
+      } else {
+        System.arraycopy(buf, lineStart, buf, 0, len);
+      }
+      pos -= lineStart;
+      lineStart = 0;
+      bufEnd = len;
+      int read = in.read(buf, bufEnd, buf.length - bufEnd);
+      if (read == -1) eof = true;
+      else {
+        bufEnd += read;
+        bytesRead += read;
+      }
+    }
+  }
+
+  /** Returns the current line as a string */
+  protected String line() {
+    return (new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+  }
+
+  /** TRUE if the current line starts with the ASCII string */
+  protected boolean lineStartsWith(String s) {
+    if (lineEnd - lineStart < s.length()) return (false);
+    for (int i = 0; i < s.length(); i++) {
+      if (buf[lineStart + i] != s.charAt(i)) return (false);
+    }
+    return (true);
+  }
+
+  /** Writes an ASCII or UTF-8 string */
+  protected void write(String s) throws IOException {
+    out.write(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // -------------------------------------------------------------------
+  // TSV -> TTL
+  // -------------------------------------------------------------------
+
+  /** Transcodes TSV to TTL, returns the number of facts */
+  public long tsvToTtl() throws IOException {
+    write(N4Writer.preamble(null, FactComponent.YAGONAMESPACE, null));
+    // Start and end of the fields of the line
+    int[] starts = new int[5];
+    int[] ends = new int[5];
+    while (nextLine()) {
+      if (lineStart == lineEnd || lineStartsWith("// ")) continue;
+      // Split at tabs as String.split() does: trailing empty fields are dropped
+      int numFields = 0;
+      int fieldIndex = 0;
+      int fieldStart = lineStart;
+      for (int i = lineStart; i <= lineEnd; i++) {
+        if (i == lineEnd || buf[i] == '\t') {
+          if (i > fieldStart) numFields = fieldIndex + 1;
+          if (fieldIndex < starts.length) {
+            starts[fieldIndex] = fieldStart;
+            ends[fieldIndex] = i;
+          }
+          fieldIndex++;
+          fieldStart = i + 1;
+        }
+      }
+      int id = -1, subject, relation = -1, object;
+      switch (numFields) {
+        case 2:
+          subject = 0;
+          object = 1;
+          break;
+        case 3:
+          if (buf[starts[0]] == '#') {
+            id = 0;
+            subject = 1;
+            object = 2;
+          } else {
+            subject = 0;
+            relation = 1;
+            object = 2;
+          }
+          break;
+        case 4:
+        case 5:
+          id = 0;
+          subject = 1;
+          relation = 2;
+          object = 3;
+          if (starts[0] == ends[0] || isNull(starts[0], ends[0])) id = -1;
+          break;
+        default:
+          continue;
+      }
+      if (id != -1) {
+        write("#@ ");
+        out.write(buf, starts[id], ends[id] - starts[id]);
+        out.write('\n');
+      }
+      out.write(buf, starts[subject], ends[subject] - starts[subject]);
+      out.write('\t');
+      if (relation == -1) write("<relation>");
+      else out.write(buf, starts[relation], ends[relation] - starts[relation]);
+      out.write('\t');
+      out.write(buf, starts[object], ends[object] - starts[object]);
+      out.write(' ');
+      out.write('.');
+      out.write('\n');
+      fastFacts++;
+    }
+    out.flush();
+    return (fastFacts);
+  }
+
+  /** TRUE if the bytes are "null" */
+  protected boolean isNull(int start, int end) {
+    return (end - start == 4 && buf[start] == 'n' && buf[start + 1] == 'u' && buf[start + 2] == 'l' && buf[start + 3] == 'l');
+  }
+
+  // -------------------------------------------------------------------
+  // TTL -> TSV
+  // -------------------------------------------------------------------
+
+  /** Directives seen so far, given to the parser for statements that it has to read */
+  protected StringBuilder directives = new StringBuilder();
+
+  /** Prefixes that have been (re)defined by the file */
+  protected Set<String> customPrefixes = new HashSet<>();
+
+  /** FALSE if the file sets a base that would change relative URIs */
+  protected boolean fastPathPossible = true;
+
+  /** Numbering of blank nodes, continued across parser calls */
+  protected int blankCounter = 0;
+
+  /** Write the value column? */
+  protected boolean withValue;
+
+  /** Transcodes TTL to TSV, returns the number of facts */
+  public long ttlToTsv(boolean withValue) throws IOException {
+    this.withValue = withValue;
+    // Id line that precedes the current statement, as start/end in buf
+    String pendingId = null;
+    // Statement text that the parser has to handle
+    StringBuilder slow = null;
+    int tripleQuotes = 0;
+    while (nextLine()) {
+      if (slow != null) {
+        String line = line();
+        slow.append(line).append('\n');
+        tripleQuotes += count(line, "\"\"\"");
+        if (tripleQuotes % 2 == 0 && statementEnds(line)) {
+          parse(slow);
+          slow = null;
+          tripleQuotes = 0;
+        }
+        continue;
+      }
+      int start = skipSpace(lineStart);
+      if (start == lineEnd) continue;
+      switch (buf[start]) {
+        case '#':
+          if (start + 1 < lineEnd && buf[start + 1] == '@') {
+            pendingId = line();
+          }
+          continue;
+        case '@':
+          String line = line();
+          directive(line);
+          if (!fastPathPossible) return (parseRest(pendingId, line));
+          continue;
+      }
+      if (fastPathPossible && copyStatement(start, pendingId)) {
+        pendingId = null;
+        continue;
+      }
+      // Hand the statement to the parser
+      slow = new StringBuilder();
+      if (pendingId != null) slow.append(pendingId).append('\n');
+      pendingId = null;
+      String line = line();
+      slow.append(line).append('\n');
+      tripleQuotes = count(line, "\"\"\"");
+      if (tripleQuotes % 2 == 0 && statementEnds(line)) {
+        parse(slow);
+        slow = null;
+        tripleQuotes = 0;
+      }
+    }
+    if (slow != null) parse(slow);
+    out.flush();
+    return (fastFacts + parsedFacts);
+  }
+
+  /** Returns the first non-space position of the current line */
+  protected int skipSpace(int pos) {
+    while (pos < lineEnd && (buf[pos] == ' ' || buf[pos] == '\t')) {
+      pos++;
+    }
+    return (pos);
+  }
+
+  /** Counts the occurrences of a string */
+  protected static int count(String s, String sub) {
+    int result = 0;
+    for (int pos = s.indexOf(sub); pos != -1; pos = s.indexOf(sub, pos + sub.length())) {
+      result++;
+    }
+    return (result);
+  }
+
+  /** TRUE if the line ends with a statement terminator */
+  protected static boolean statementEnds(String line) {
+    line = line.trim();
+    return (line.endsWith(".") && !line.startsWith("#"));
+  }
+
+  /** Handles a directive line */
+  protected void directive(String line) {
+    directives.append(line).append('\n');
+    String[] split = line.trim().split("\\s+");
+    if (split[0].equalsIgnoreCase("@prefix") && split.length >= 3) {
+      String prefix = split[1];
+      String uri = split[2];
+      if (!prefix.endsWith(":") || !uri.startsWith("<") || !uri.endsWith(">")) {
+        fastPathPossible = false;
+        return;
+      }
+      uri = uri.substring(1, uri.length() - 1);
+      if (!uri.equals(FactComponent.standardPrefixes.get(prefix))) customPrefixes.add(prefix);
+    } else if (split[0].equalsIgnoreCase("@base") && split.length >= 2) {
+      if (!split[1].equals("<" + FactComponent.YAGONAMESPACE + ">")) fastPathPossible = false;
+    } else {
+      fastPathPossible = false;
+    }
+  }
+
+  /**
+   * Parses the rest of the input with one N4Reader, once the fast path is
+   * impossible. The reader gets the earlier directives, the pending id line,
+   * the current directive and the unread input, so that no directive is
+   * parsed twice.
+   */
+  protected long parseRest(String pendingId, String directive) throws IOException {
+    StringBuilder start = new StringBuilder(directives);
+    start.setLength(start.length() - directive.length() - 1);
+    if (pendingId != null) start.append(pendingId).append('\n');
+    start.append(directive).append('\n');
+    InputStream counted = new FilterInputStream(in) {
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) bytesRead++;
+        return (b);
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) bytesRead += read;
+        return (read);
+      }
+    };
+    InputStream rest = new SequenceInputStream(Collections.enumeration(Arrays.asList(new ByteArrayInputStream(start.toString().getBytes(StandardCharsets.UTF_8)),
+        new ByteArrayInputStream(buf, lineEnd, bufEnd - lineEnd), eof ? new ByteArrayInputStream(new byte[0]) : counted)));
+    N4Reader reader = new N4Reader(FileUtils.getBufferedUTF8Reader(rest), "Transcoder", blankCounter);
+    while (reader.hasNext()) {
+      out.write(reader.next().toTsvLine(withValue).getBytes(StandardCharsets.UTF_8));
+      parsedFacts++;
+    }
+    blankCounter = reader.blankCounter;
+    out.flush();
+    return (fastFacts + parsedFacts);
+  }
+
+  /** Parses a statement with N4Reader and writes the facts */
+  protected void parse(StringBuilder statement) throws IOException {
+    N4Reader reader = new N4Reader(new StringReader(directives.toString() + statement), "Transcoder", blankCounter);
+    while (reader.hasNext()) {
+      out.write(reader.next().toTsvLine(withValue).getBytes(StandardCharsets.UTF_8));
+      parsedFacts++;
+    }
+    blankCounter = reader.blankCounter;
+  }
+
+  /**
+   * Copies the current line as a TSV line if the parser would not change any
+   * component. Returns FALSE if the statement needs the parser.
+   */
+  protected boolean copyStatement(int start, String idLine) throws IOException {
+    // Expect "subject TAB relation TAB object SPACE ."
+    int tab1 = -1, tab2 = -1;
+    for (int i = start; i < lineEnd; i++) {
+      if (buf[i] == '\t') {
+        if (tab1 == -1) tab1 = i;
+        else if (tab2 == -1) tab2 = i;
+        else return (false);
+      }
+    }
+    if (tab2 == -1) return (false);
+    int end = lineEnd;
+    while (end > tab2 && buf[end - 1] == ' ') {
+      end--;
+    }
+    if (end - tab2 < 4 || buf[end - 1] != '.' || buf[end - 2] != ' ') return (false);
+    int objectEnd = end - 2;
+    if (!isVerbatimEntity(start, tab1) || !isVerbatimEntity(tab1 + 1, tab2)) return (false);
+    boolean literal = buf[tab2 + 1] == '"';
+    if (literal ? !isVerbatimLiteral(tab2 + 1, objectEnd) : !isVerbatimEntity(tab2 + 1, objectEnd)) return (false);
+    String id = null;
+    if (idLine != null) {
+      id = idLine.trim().substring(2).trim();
+      if (id.isEmpty() || id.indexOf(' ') != -1 || id.indexOf('\t') != -1) return (false);
+      byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+      if (!isVerbatimEntity(idBytes, 0, idBytes.length)) return (false);
+    }
+    // Write the TSV line
+    if (id != null) write(id);
+    out.write('\t');
+    out.write(buf, start, objectEnd - start);
+    if (withValue) {
+      out.write('\t');
+      if (literal) {
+        String value = new Fact("", "", new String(buf, tab2 + 1, objectEnd - tab2 - 1, StandardCharsets.UTF_8)).getValue();
+        if (value != null) write(value);
+      }
+    }
+    out.write('\n');
+    fastFacts++;
+    return (true);
+  }
+
+  /** TRUE if the parser would read the entity in buf[start,end) as it is */
+  protected boolean isVerbatimEntity(int start, int end) {
+    return (isVerbatimEntity(buf, start, end));
+  }
+
+  /** TRUE if the parser would read the URI or qname as it is */
+  protected boolean isVerbatimEntity(byte[] b, int start, int end) {
+    if (end - start < 2) return (false);
+    byte first = b[start];
+    if (first == '<') {
+      if (b[end - 1] != '>') return (false);
+      for (int i = start + 1; i < end - 1; i++) {
+        if (b[i] == '>' || b[i] == ' ') return (false);
+      }
+      // Full URIs in the YAGO namespace or in a standard namespace are shortened by the parser
+      if (end - start > 8 && b[start + 1] == 'h' && b[start + 2] == 't' && b[start + 3] == 't' && b[start + 4] == 'p') {
+        if (Namespaces.STANDARD.longestMatch(b, start + 1, end - 1) != null) return (false);
+      }
+      return (true);
+    }
+    // Numbers, lists, blank nodes
+    if (first == '"' || first == '[' || first == '(' || first == '_' || first == '+' || first == '-' || (first >= '0' && first <= '9')) return (false);
+    // qnames with a standard prefix
+    for (int i = start; i < end; i++) {
+      byte c = b[i];
+      if (c == ':') {
+        if (Namespaces.STANDARD.namespace(b, start, i + 1) == null) return (false);
+        if (!customPrefixes.isEmpty() && customPrefixes.contains(new String(b, start, i - start + 1, StandardCharsets.US_ASCII))) return (false);
+        byte last = b[end - 1];
+        return (last != '.' && last != ',' && last != ';' && last != '<');
+      }
+      if (c == ' ' || c == '<' || c == '"') return (false);
+    }
+    // Names without prefix (including "a", "true", "false")
+    return (false);
+  }
+
+  /** TRUE if the parser would read the literal in buf[start,end) as it is */
+  protected boolean isVerbatimLiteral(int start, int end) {
+    // Multi-line literals
+    if (end - start >= 3 && buf[start + 1] == '"' && buf[start + 2] == '"') return (false);
+    int i = start + 1;
+    for (; i < end; i++) {
+      byte c = buf[i];
+      if (c == '"') break;
+      if (c >= 0 && c < 0x20) return (false);
+      if (c == '\\') {
+        // The parser decodes and re-encodes escapes. Only \\ and \n survive this unchanged.
+        if (i + 1 >= end) return (false);
+        byte next = buf[i + 1];
+        if (next != '\\' && next != 'n') return (false);
+        i++;
+      }
+    }
+    if (i >= end) return (false);
+    int rest = i + 1;
+    if (rest == end) return (true);
+    if (buf[rest] == '@') {
+      // Language tags with dialects and short tags are changed by the parser
+      if (end - rest < 3) return (false);
+      for (int j = rest + 1; j < end; j++) {
+        byte c = buf[j];
+        if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) return (false);
+      }
+      return (true);
+    }
+    if (end - rest > 2 && buf[rest] == '^' && buf[rest + 1] == '^') {
+      // xsd:string is dropped by the parser
+      String datatype = new String(buf, rest + 2, end - rest - 2, StandardCharsets.UTF_8);
+      if (datatype.equals(YAGO.string)) return (false);
+      return (isVerbatimEntity(rest + 2, end));
+    }
+    return (false);
+  }
+
+  /** Returns a short summary of the last run */
+  public String summary() {
+    return (String.format("%,d facts copied, %,d facts parsed, %,.1f MB read", fastFacts, parsedFacts, bytesRead / 1e6));
+  }
+
+  /** Returns the number of facts transcoded so far */
+  public long facts() {
+    return (fastFacts + parsedFacts);
+  }
+
+  /** Returns the number of bytes read so far */
+  public long bytesRead() {
+    return (bytesRead);
+  }
+
+  /**
+   * Transcodes a file into another file, depending on the extensions. Handles
+   * .gz files. Returns the transcoder, which can give a summary.
+   */
+  public static Transcoder transcode(File input, File output, boolean withValue) throws IOException {
+    String from = FactWriter.formatExtension(input);
+    String to = FactWriter.formatExtension(output);
+    output.getAbsoluteFile().getParentFile().mkdirs();
+    try (InputStream in = FactWriter.isCompressed(input) ? new GZIPInputStream(new FileInputStream(input), 1 << 16) : new FileInputStream(input);
+        OutputStream out = new BufferedOutputStream(
+            FactWriter.isCompressed(output) ? new GZIPOutputStream(new FileOutputStream(output), 1 << 16) : new FileOutputStream(output), 1 << 16)) {
+      Transcoder transcoder = new Transcoder(in, out);
+      if (from.equals(".tsv") && to.equals(".ttl")) transcoder.tsvToTtl();
+      else if (from.equals(".ttl") && to.equals(".tsv")) transcoder.ttlToTsv(withValue);
+      else throw new IOException("Cannot transcode " + input + " to " + output);
+      return (transcoder);
+    }
+  }
+}
@@ -25,27 +25,97 @@ This class translates a TSV file to a TTL file and vice versa.
 public class Tsv2Ttl {
 
   public static void main(String[] args) throws Exception {
-    if (args.length != 1) Announce.help("Tsv2Ttl file1.(tsv|ttl)", "", "Translates a tsv file to a ttl file or vice versa");
-    File input = new File(args[0]);
-    File output = null;
-    String extension = FileSet.extension(input).toLowerCase();
-    switch (extension) {
-      case ".ttl":
-        output = FileSet.newExtension(input, "tsv");
-        break;
-      case ".tsv":
-        output = FileSet.newExtension(input, "ttl");
-        break;
-      default:
-        Announce.error("Argument must be a TSV or TTL file");
+    int threads = Runtime.getRuntime().availableProcessors();
+    String to = null;
+    boolean compress = false;
+    boolean parse = false;
+    int files = 2;
+    int i = 0;
+    for (; i < args.length - 1; i++) {
+      switch (args[i]) {
+        case "-threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        case "-to":
+          to = args[++i].toLowerCase();
+          break;
+        case "-gz":
+          compress = true;
+          break;
+        case "-parse":
+          parse = true;
+          break;
+        case "-files":
+          files = Integer.parseInt(args[++i]);
+          break;
+        default:
+          Announce.error("Unknown option", args[i]);
+      }
     }
+    if (i != args.length - 1) Announce.help("Tsv2Ttl [-threads n] [-to tsv|tsv-value|ttl] [-gz] [-parse] [-files n] (file1.(tsv|ttl)[.gz]|directory|glob)", "",
+        "Translates a tsv file to a ttl file or vice versa.", "Translates all tsv and ttl files of a directory or of a glob such as \"yago/*.tsv\".",
+        "  -threads n  number of threads for parsing and formatting",
+        "  -to f       output format: tsv without value column, tsv with value column, or ttl", "              (default: the other format, tsv with value column)",
+        "  -gz         compresses the output", "  -parse      parses every fact instead of copying the components where possible",
+        "  -files n    number of files that are read and written at the same time (directory and glob only)");
+    File input = new File(args[i]);
+    if (input.isDirectory() || args[i].contains("*") || args[i].contains("?")) {
+      Announce.doing("Translating", args[i]);
+      long start = System.currentTimeMillis();
+      BatchConverter converter = new BatchConverter(to, compress, parse, threads, files);
+      BatchConverter.printSummary(converter.convert(BatchConverter.inputFiles(args[i])), System.currentTimeMillis() - start);
+      Announce.done();
+      return;
+    }
+    if (to == null) {
+      switch (FactWriter.formatExtension(input)) {
+        case ".ttl":
+          to = "tsv-value";
+          break;
+        case ".tsv":
+          to = "ttl";
+          break;
+        default:
+          Announce.error("Argument must be a TSV or TTL file");
+      }
+    }
+    File output = outputFile(input, to, compress);
     if (output.exists() && output.length() > 200) Announce.error("Output file already exists:", output);
     Announce.doing("Translating", input, "to", output);
-    try (FactWriter out = FactWriter.from(output)) {
-      for (Fact f : FactSource.from(input)) {
-        out.write(f);
-      }
+    if (!parse && !FactWriter.formatExtension(input).equals(FactWriter.formatExtension(output))) {
+      Transcoder transcoder = Transcoder.transcode(input, output, to.equals("tsv-value"));
+      Announce.message(transcoder.summary());
+      Announce.done();
+      return;
+    }
+    try (FactWriter out = writer(output, to)) {
+      ConversionPipeline pipeline = new ConversionPipeline(input, out, threads);
+      pipeline.run();
+      Announce.message(pipeline.progress());
     }
     Announce.done();
   }
+
+  /** Returns the output file for the input file and the target format (tsv, tsv-value, ttl) */
+  public static File outputFile(File input, String to, boolean compress) {
+    String name = input.getName();
+    if (FactWriter.isCompressed(input)) name = FileSet.noExtension(name);
+    name = FileSet.newExtension(name, to.startsWith("tsv") ? "tsv" : "ttl");
+    if (compress) name += ".gz";
+    return (new File(input.getAbsoluteFile().getParentFile(), name));
+  }
+
+  /** Returns a fact writer for the target format (tsv, tsv-value, ttl) */
+  public static FactWriter writer(File output, String to) throws Exception {
+    switch (to) {
+      case "tsv":
+        return (new TsvWriter(output, false));
+      case "tsv-value":
+        return (new TsvWriter(output, true));
+      case "ttl":
+        return (new N4Writer(output, null));
+      default:
+        throw new IllegalArgumentException("Unknown output format " + to);
+    }
+  }
 }
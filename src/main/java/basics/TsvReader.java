@@ -28,7 +28,7 @@ columns (relation will be "&lt;relation&gt;"); 3 columns (ids will be null); 4
 columns (id subject relation object); 5 columns (id subject relation object
 value)
  */
-public class TsvReader extends PeekIterator<Fact> {
+public class TsvReader extends PeekIterator<Fact> implements FactSource.BatchReader {
 
   /** Reads the file */
   protected FileLines lines;
@@ -58,31 +58,66 @@ public class TsvReader extends PeekIterator<Fact> {
 
   @Override
   protected Fact internalNext() throws Exception {
-    String entireLine;
     do {
-      do {
-        if (!lines.hasNext()) return (null);
-        entireLine = lines.next();
-      } while (entireLine.isEmpty() || entireLine.startsWith("// "));
+      if (!lines.hasNext()) return (null);
+      String entireLine = lines.next();
+      Fact fact = parseLine(entireLine);
+      if (fact != null) return (fact);
+      skipped(entireLine);
+    } while (true);
+  }
+
+  @Override
+  public int nextBatch(Fact[] buf) {
+    int size = 0;
+    // A fact that hasNext() has already read comes first
+    if (fetchedNextValue) {
+      fetchedNextValue = false;
+      if (next == null) return (0);
+      buf[size++] = next;
+    }
+    while (size < buf.length && lines.hasNext()) {
+      String entireLine = lines.next();
+      Fact fact = parseLine(entireLine);
+      if (fact != null) buf[size++] = fact;
+      else skipped(entireLine);
+    }
+    if (size == 0 && !closed) {
+      close();
+      closed = true;
+    }
+    return (size);
+  }
+
+  /** Warns about the first line with a wrong number of columns */
+  protected void skipped(String entireLine) {
+    if (showColumnWarning && !entireLine.isEmpty() && !entireLine.startsWith("// ") && !entireLine.startsWith("#")) {
       String[] line = entireLine.split("\t");
-      switch (line.length) {
-        case 2:
-          return (new Fact(line[0], "<relation>", line[1]));
-        case 3:
-          if (line[0].startsWith("#")) return (new Fact(line[0], line[1], "<relation>", line[2]));
-          return (new Fact(line[0], line[1], line[2]));
-        case 4:
-        case 5:
-          String id = line[0];
-          if (id.isEmpty() || id.equals("null")) id = null;
-          return (new Fact(id, line[1], line[2], line[3]));
-        default:
-          if (showColumnWarning && line.length > 0 && !line[0].startsWith("#")) {
-            Announce.warning("Unsupported number of columns: ", line.length, " (", info, ")");
-            showColumnWarning = false;
-          }
+      if (line.length > 0) {
+        Announce.warning("Unsupported number of columns: ", line.length, " (", info, ")");
+        showColumnWarning = false;
       }
-    } while (true);
+    }
+  }
+
+  /** Parses a TSV line into a fact. Returns NULL for empty lines, comments and lines with an unsupported number of columns */
+  public static Fact parseLine(String entireLine) {
+    if (entireLine.isEmpty() || entireLine.startsWith("// ")) return (null);
+    String[] line = entireLine.split("\t");
+    switch (line.length) {
+      case 2:
+        return (new Fact(line[0], "<relation>", line[1]));
+      case 3:
+        if (line[0].startsWith("#")) return (new Fact(line[0], line[1], "<relation>", line[2]));
+        return (new Fact(line[0], line[1], line[2]));
+      case 4:
+      case 5:
+        String id = line[0];
+        if (id.isEmpty() || id.equals("null")) id = null;
+        return (new Fact(id, line[1], line[2], line[3]));
+      default:
+        return (null);
+    }
   }
 
   @Override
@@ -4,9 +4,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 
-import javatools.filehandlers.FileSet;
-import javatools.filehandlers.FileUtils;
-
 /**
 Copyright 2016 Fabian M. Suchanek
 
@@ -24,7 +21,7 @@ limitations under the License.
 
 This class writes facts to TSV files
  */
-public class TsvWriter extends FactWriter {
+public class TsvWriter extends FactWriter implements FactFormatter {
 
   protected Writer out;
 
@@ -33,6 +30,7 @@ public class TsvWriter extends FactWriter {
   @Override
   public void close() throws IOException {
     out.close();
+    closeIdIndex();
   }
 
   @Override
@@ -41,10 +39,32 @@ public class TsvWriter extends FactWriter {
   }
 
   @Override
-  public void write(Fact f) throws IOException {
+  public synchronized void write(Fact f) throws IOException {
+    if (idIndex != null && f.getId() != null) idIndex.add(f.getId(), bytesWritten());
     out.write(f.toTsvLine(writeDoubleValue));
   }
 
+  @Override
+  public void format(Fact f, StringBuilder sb) {
+    sb.append(f.toTsvLine(writeDoubleValue));
+  }
+
+  /** Formats the facts into one buffer, and writes it in one go */
+  @Override
+  public synchronized void write(Fact[] facts, int offset, int length) throws IOException {
+    StringBuilder batch = new StringBuilder(length * 100);
+    for (int i = offset; i < offset + length; i++) {
+      format(facts[i], batch);
+    }
+    writeFormatted(batch);
+  }
+
+  @Override
+  public synchronized void writeFormatted(CharSequence formatted) throws IOException {
+    if (idIndex != null) idIndex.addFormatted(formatted, bytesWritten(), false);
+    out.append(formatted);
+  }
+
   public TsvWriter(File f) throws IOException {
     this(f, false);
   }
@@ -58,14 +78,16 @@ public class TsvWriter extends FactWriter {
   }
 
   public TsvWriter(File f, boolean writeDoubleValue, String header) throws IOException {
+    this(f, writeDoubleValue, header, themeName(f));
+  }
+
+  /** Starts a writer to this file, the header is attached as gloss to the given theme */
+  public TsvWriter(File f, boolean writeDoubleValue, String header, String theme) throws IOException {
     super(f);
     this.writeDoubleValue = writeDoubleValue;
-    out = FileUtils.getBufferedUTF8Writer(f);
+    out = openWriter(f);
     if (header != null) {
-      header = header.replaceAll("\\s+", " ");
-      Fact comment = new Fact(FactComponent.forYagoEntity("yagoTheme_" + FileSet.newExtension(f.getName(), null)), YAGO.hasGloss,
-          FactComponent.forString(header));
-      write(comment);
+      write(themeGloss(theme, header));
     }
   }
 
@@ -77,7 +99,7 @@ public class TsvWriter extends FactWriter {
   }
 
   @Override
-  public void writeComment(String comment) throws IOException {
+  public synchronized void writeComment(String comment) throws IOException {
     out.write("# ");
     out.write(comment);
     out.write("\n");
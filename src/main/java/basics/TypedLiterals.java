@@ -0,0 +1,363 @@
+package basics;
+
+import java.util.List;
+
+/**
+Copyright 2016 Fabian M. Suchanek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+This class decodes typed literals (numbers and dates) into primitive values
+without regular expressions. The scanners accept exactly what
+FactComponent.FLOATPATTERN and FactComponent.DATEPATTERN accept.
+
+Dates are encoded in a long that keeps the # wildcards:
+  bits 20-63: year (signed, # replaced by 0)
+  bits 13-19: month (# replaced by 0)
+  bits  6-12: day (# replaced by 0)
+  bits  2- 5: number of trailing # in the year
+  bit      1: month is #
+  bit      0: day is #
+The order of the codes is the order of the dates. "1935-01-##" becomes
+year 1935, month 1, day 0, day wildcard. NODATE marks values that are not
+dates or that cannot be encoded (e.g. "1#35-01-01").
+ */
+public class TypedLiterals {
+
+  /** Returned for literals that are not dates */
+  public static final long NODATE = Long.MIN_VALUE;
+
+  /** Returned for literals that are not integers */
+  public static final long NOLONG = Long.MIN_VALUE;
+
+  /** Largest year that can be encoded */
+  public static final long MAXYEAR = (1L << 43) - 1;
+
+  /** TRUE if c is a digit 0-9 */
+  protected static boolean isDigit(char c) {
+    return (c >= '0' && c <= '9');
+  }
+
+  /** Returns the end of the run of digits that starts at i */
+  protected static int digits(CharSequence s, int i, int end) {
+    while (i < end && isDigit(s.charAt(i))) {
+      i++;
+    }
+    return (i);
+  }
+
+  /** Tells whether s[start,end) is a float (as FactComponent.FLOATPATTERN) */
+  public static boolean isFloat(CharSequence s, int start, int end) {
+    int i = start;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+    int j = digits(s, i, end);
+    if (j == i) return (false);
+    i = j;
+    if (i < end && s.charAt(i) == '.') {
+      j = digits(s, i + 1, end);
+      if (j == i + 1) return (false);
+      i = j;
+    }
+    if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      i++;
+      if (i < end && s.charAt(i) == '-') i++;
+      j = digits(s, i, end);
+      if (j == i) return (false);
+      i = j;
+    }
+    return (i == end);
+  }
+
+  /** Tells whether s is a float (as FactComponent.FLOATPATTERN) */
+  public static boolean isFloat(CharSequence s) {
+    return (isFloat(s, 0, s.length()));
+  }
+
+  /** Returns the end of the run of digits and # that starts at i */
+  protected static int dateDigits(CharSequence s, int i, int end) {
+    while (i < end && (isDigit(s.charAt(i)) || s.charAt(i) == '#')) {
+      i++;
+    }
+    return (i);
+  }
+
+  /** Tells whether s[start,end) is a date (as FactComponent.DATEPATTERN) */
+  public static boolean isDate(CharSequence s, int start, int end) {
+    int i = start;
+    if (i < end && s.charAt(i) == '-') i++;
+    for (int field = 0; field < 3; field++) {
+      if (field > 0) {
+        if (i == end || s.charAt(i) != '-') return (false);
+        i++;
+      }
+      int j = dateDigits(s, i, end);
+      if (j == i) return (false);
+      i = j;
+    }
+    return (i == end);
+  }
+
+  /** Tells whether s is a date (as FactComponent.DATEPATTERN) */
+  public static boolean isDate(CharSequence s) {
+    return (isDate(s, 0, s.length()));
+  }
+
+  /** Parses s[start,end) as an integer (sign and digits). Returns NOLONG if it is none or if it overflows. */
+  public static long parseLong(CharSequence s, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+    if (i == end) return (NOLONG);
+    // Accumulate negatively, as Long.parseLong does
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long result = 0;
+    for (; i < end; i++) {
+      char c = s.charAt(i);
+      if (!isDigit(c) || result < limit / 10) return (NOLONG);
+      result *= 10;
+      if (result < limit + (c - '0')) return (NOLONG);
+      result -= c - '0';
+    }
+    return (negative ? result : -result);
+  }
+
+  /** Parses s[start,end) as a float (as FactComponent.FLOATPATTERN). Returns NaN if it is none. */
+  public static double parseDouble(CharSequence s, int start, int end) {
+    if (!isFloat(s, start, end)) return (Double.NaN);
+    // Short integers are exact as doubles
+    if (end - start <= 15) {
+      long l = parseLong(s, start, end);
+      // "-0" is -0.0
+      if (l != NOLONG && l != 0) return (l);
+    }
+    return (Double.parseDouble(s.subSequence(start, end).toString()));
+  }
+
+  /** Parses one field of a date. Returns value, or -1 if the field is all #, or -2 if it cannot be encoded */
+  protected static long dateField(CharSequence s, int start, int end, long max) {
+    if (s.charAt(start) == '#') {
+      for (int i = start; i < end; i++) {
+        if (s.charAt(i) != '#') return (-2);
+      }
+      return (-1);
+    }
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (!isDigit(c)) return (-2);
+      result = result * 10 + c - '0';
+      if (result > max) return (-2);
+    }
+    return (result);
+  }
+
+  /** Encodes the date s[start,end). Returns NODATE if it is not a date or cannot be encoded. */
+  public static long parseDate(CharSequence s, int start, int end) {
+    if (!isDate(s, start, end)) return (NODATE);
+    int i = start;
+    boolean negative = s.charAt(i) == '-';
+    if (negative) i++;
+    // Year: digits, then possibly trailing #
+    int yearEnd = dateDigits(s, i, end);
+    int wildcards = 0;
+    long year = 0;
+    for (int j = i; j < yearEnd; j++) {
+      char c = s.charAt(j);
+      if (c == '#') wildcards++;
+      else if (wildcards > 0) return (NODATE);
+      year = year * 10 + (c == '#' ? 0 : c - '0');
+      if (year > MAXYEAR) return (NODATE);
+    }
+    if (wildcards > 15) return (NODATE);
+    int monthEnd = dateDigits(s, yearEnd + 1, end);
+    long month = dateField(s, yearEnd + 1, monthEnd, 99);
+    long day = dateField(s, monthEnd + 1, end, 99);
+    if (month == -2 || day == -2) return (NODATE);
+    return (dateCode(negative ? -year : year, wildcards, month, day));
+  }
+
+  /** Encodes the date s (as FactComponent.DATEPATTERN). Returns NODATE if it is not a date or cannot be encoded. */
+  public static long parseDate(CharSequence s) {
+    return (parseDate(s, 0, s.length()));
+  }
+
+  /** Makes a date code. month and day are -1 for # */
+  public static long dateCode(long year, int yearWildcards, long month, long day) {
+    return ((year << 20) | (Math.max(0, month) << 13) | (Math.max(0, day) << 6) | (yearWildcards << 2) | (month == -1 ? 2 : 0) | (day == -1 ? 1 : 0));
+  }
+
+  /** Returns the year of a date code (# counts as 0) */
+  public static long year(long date) {
+    return (date >> 20);
+  }
+
+  /** Returns the month of a date code, or -1 for # */
+  public static int month(long date) {
+    return ((date & 2) != 0 ? -1 : (int) ((date >> 13) & 0x7F));
+  }
+
+  /** Returns the day of a date code, or -1 for # */
+  public static int day(long date) {
+    return ((date & 1) != 0 ? -1 : (int) ((date >> 6) & 0x7F));
+  }
+
+  /** Returns the number of # at the end of the year */
+  public static int yearWildcards(long date) {
+    return ((int) ((date >> 2) & 0xF));
+  }
+
+  /** Formats a date code as yyyy-mm-dd with # */
+  public static String formatDate(long date) {
+    StringBuilder result = new StringBuilder(12);
+    long year = year(date);
+    if (year < 0) result.append('-');
+    String digits = Long.toString(Math.abs(year));
+    for (int i = digits.length(); i < 4; i++) {
+      result.append('0');
+    }
+    result.append(digits);
+    for (int i = 0; i < yearWildcards(date); i++) {
+      result.setCharAt(result.length() - 1 - i, '#');
+    }
+    appendField(result.append('-'), month(date));
+    appendField(result.append('-'), day(date));
+    return (result.toString());
+  }
+
+  /** Appends a month or a day */
+  protected static void appendField(StringBuilder result, int value) {
+    if (value == -1) result.append("##");
+    else result.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+
+  /**
+   * Returns the TSV value of a date (yyyy.mmdd, as Fact.getValue), or NULL
+   * if the Java string does not have 3 fields
+   */
+  public static String dateValue(String javaString) {
+    // Field boundaries as in split("-"), which drops trailing empty fields
+    int end = javaString.length();
+    while (end > 0 && javaString.charAt(end - 1) == '-') {
+      end--;
+    }
+    int dash1 = javaString.indexOf('-');
+    if (dash1 == -1 || dash1 >= end) return (null);
+    int dash2 = javaString.indexOf('-', dash1 + 1);
+    if (dash2 == -1 || dash2 >= end || javaString.indexOf('-', dash2 + 1) != -1 && javaString.indexOf('-', dash2 + 1) < end) return (null);
+    StringBuilder result = new StringBuilder(end + 4);
+    appendValueField(result, javaString, 0, dash1);
+    result.append('.');
+    appendValueField(result, javaString, dash1 + 1, dash2);
+    appendValueField(result, javaString, dash2 + 1, end);
+    return (result.toString());
+  }
+
+  /** Appends a date field with # replaced by 0, padded to 2 characters */
+  protected static void appendValueField(StringBuilder result, String s, int start, int end) {
+    for (int i = end - start; i < 2; i++) {
+      result.append('0');
+    }
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      result.append(c == '#' ? '0' : c);
+    }
+  }
+
+  /** TRUE if the lexical form of the literal contains backslash escapes */
+  protected static boolean hasEscapes(LiteralView view) {
+    int backslash = view.component.indexOf('\\', 1);
+    return (backslash != -1 && backslash < view.lexicalEnd());
+  }
+
+  /** Returns the integer value of a literal, or NOLONG */
+  public static long longValue(LiteralView view) {
+    if (!view.isLiteral()) return (NOLONG);
+    if (hasEscapes(view)) return (parseLong(view.getJavaString(), 0, view.getJavaString().length()));
+    return (parseLong(view.component, 1, view.lexicalEnd()));
+  }
+
+  /** Returns the date code of a literal, or NODATE */
+  public static long dateValue(LiteralView view) {
+    if (!view.isLiteral()) return (NODATE);
+    if (hasEscapes(view)) return (parseDate(view.getJavaString()));
+    return (parseDate(view.component, 1, view.lexicalEnd()));
+  }
+
+  /**
+   * Returns the numeric value of Fact.getValue() for a literal: the number for
+   * typed literals that are floats, yyyy.mmdd for xsd:date. Returns NaN if
+   * getValue() is NULL.
+   */
+  public static double doubleValue(LiteralView view) {
+    String datatype = view.getDatatype();
+    if (datatype == null) return (Double.NaN);
+    if (!datatype.equals(YAGO.date)) {
+      if (hasEscapes(view)) return (parseDouble(view.getJavaString(), 0, view.getJavaString().length()));
+      return (parseDouble(view.component, 1, view.lexicalEnd()));
+    }
+    // Fast path for yyyy-mm-dd with 2 characters for month and day. The
+    // quotient is correctly rounded, just like Double.parseDouble("yyyy.mmdd").
+    if (!hasEscapes(view)) {
+      String s = view.component;
+      int end = view.lexicalEnd();
+      long date = parseDate(s, 1, end);
+      if (date != NODATE && s.charAt(1) != '-' && s.charAt(end - 3) == '-' && s.charAt(end - 6) == '-' && year(date) < 100000000000L) {
+        return ((year(date) * 10000 + Math.max(0, month(date)) * 100 + Math.max(0, day(date))) / 10000.0);
+      }
+    }
+    String value = dateValue(view.getJavaString());
+    if (value == null) return (Double.NaN);
+    try {
+      return (Double.parseDouble(value));
+    } catch (NumberFormatException e) {
+      return (Double.NaN);
+    }
+  }
+
+  /** Decodes the numeric values (as Fact.getDoubleValue) of the objects of the facts */
+  public static double[] doubleValues(List<Fact> facts) {
+    double[] result = new double[facts.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = facts.get(i).getDoubleValue();
+    }
+    return (result);
+  }
+
+  /** Decodes the integer values (as Fact.getLongValue) of the objects of the facts */
+  public static long[] longValues(List<Fact> facts) {
+    long[] result = new long[facts.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = facts.get(i).getLongValue();
+    }
+    return (result);
+  }
+
+  /** Decodes the date codes (as Fact.getDateValue) of the objects of the facts */
+  public static long[] dateValues(List<Fact> facts) {
+    long[] result = new long[facts.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = facts.get(i).getDateValue();
+    }
+    return (result);
+  }
+
+  /** Test */
+  public static void main(String[] args) throws Exception {
+    for (String date : new String[] { "1935-01-08", "1935-01-##", "19##-##-##", "-0500-03-01", "1#35-01-01" }) {
+      long code = parseDate(date);
+      System.out.println(date + " -> " + code + " -> " + (code == NODATE ? "NODATE" : formatDate(code)));
+    }
+    Fact f = new Fact("<Elvis>", "<wasBornOnDate>", FactComponent.forDate("1935-01-08"));
+    System.out.println(f.getValue() + " " + f.getDoubleValue() + " " + formatDate(f.getDateValue()));
+  }
+}
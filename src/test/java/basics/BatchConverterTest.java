@@ -0,0 +1,97 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks which files the BatchConverter converts when both formats of a
+ * theme are given.
+ */
+public class BatchConverterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("batchConverterTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  private static void writeTtl(File f, String... objects) throws Exception {
+    try (FactWriter w = new N4Writer(f, null)) {
+      for (String o : objects) {
+        w.write(new Fact("<Elvis>", "<likes>", o));
+      }
+    }
+  }
+
+  private static List<String> objects(File f) {
+    List<String> result = new ArrayList<>();
+    for (Fact fact : FactSource.from(f)) {
+      result.add(fact.getObject());
+    }
+    return (result);
+  }
+
+  @Test
+  public void testEditedSource() throws Exception {
+    File ttl = new File(dir, "a.ttl");
+    File tsv = new File(dir, "a.tsv");
+    writeTtl(ttl, "<music>");
+    BatchConverter converter = new BatchConverter(null, false, false, 2, 2);
+    converter.convert(Arrays.asList(ttl));
+    assertEquals(Arrays.asList("<music>"), objects(tsv));
+
+    // Both files up to date: nothing is converted in either direction
+    for (BatchConverter.Result r : converter.convert(Arrays.asList(ttl, tsv))) {
+      assertTrue(r.toString(), r.skipped());
+    }
+
+    // The source is edited later: it is converted, the stale output is not converted back
+    writeTtl(ttl, "<music>", "<cars>");
+    ttl.setLastModified(tsv.lastModified() + 2000);
+    int converted = 0;
+    for (BatchConverter.Result r : converter.convert(Arrays.asList(ttl, tsv))) {
+      assertEquals(null, r.error);
+      if (!r.skipped()) {
+        assertEquals(ttl, r.input);
+        converted++;
+      }
+    }
+    assertEquals(1, converted);
+    assertEquals(Arrays.asList("<music>", "<cars>"), objects(tsv));
+    assertEquals(Arrays.asList("<music>", "<cars>"), objects(ttl));
+  }
+
+  @Test
+  public void testNewerOutputIsNotConvertedBack() throws Exception {
+    File ttl = new File(dir, "a.ttl");
+    File tsv = new File(dir, "a.tsv");
+    writeTtl(ttl, "<music>");
+    Files.write(tsv.toPath(), "\t<Elvis>\t<likes>\t<cars>\t\n".getBytes(StandardCharsets.UTF_8));
+    tsv.setLastModified(ttl.lastModified() + 2000);
+    for (BatchConverter.Result r : new BatchConverter(null, false, false, 1, 1).convert(Arrays.asList(ttl, tsv))) {
+      assertTrue(r.toString(), r.skipped());
+    }
+    assertEquals(Arrays.asList("<music>"), objects(ttl));
+  }
+}
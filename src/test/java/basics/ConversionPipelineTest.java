@@ -0,0 +1,169 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Converts TSV to TTL and back with several threads, and checks that the
+ * facts arrive in the order of the input, also for writers that cannot
+ * format and for writers that fail.
+ */
+public class ConversionPipelineTest {
+
+  private File dir;
+
+  private final List<Fact> facts = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("conversionPipelineTest").toFile();
+    // Several chunks, and a last chunk that is not full
+    for (int i = 0; i < 2 * ConversionPipeline.CHUNKSIZE + 17; i++) {
+      Fact f = new Fact("<s" + i + ">", "<r" + (i % 7) + ">", i % 3 == 0 ? FactComponent.forStringWithLanguage("label " + i, "eng") : "<o" + (i % 100) + ">");
+      if (i % 2 == 0) f.makeId();
+      facts.add(f);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** Writes the facts to a file */
+  private File write(String name) throws Exception {
+    File file = new File(dir, name);
+    try (FactWriter w = FactWriter.from(file)) {
+      w.write(facts);
+    }
+    return (file);
+  }
+
+  /** Reads the facts of a file */
+  private static List<Fact> read(File file) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : FactSource.from(file)) {
+      result.add(f);
+    }
+    return (result);
+  }
+
+  @Test
+  public void testConvert() throws Exception {
+    for (String from : new String[] { "in.tsv", "in.ttl" }) {
+      File input = write(from);
+      for (String to : new String[] { "out.tsv", "out.ttl" }) {
+        for (int threads : new int[] { 1, 4 }) {
+          File output = new File(dir, to);
+          ConversionPipeline pipeline;
+          try (FactWriter w = FactWriter.from(output)) {
+            pipeline = new ConversionPipeline(input, w, threads).setReport(false);
+            assertEquals(facts.size(), pipeline.run());
+          }
+          assertEquals(input.length(), pipeline.bytesRead());
+          assertEquals(from + " " + to + " " + threads, facts, read(output));
+        }
+      }
+    }
+  }
+
+  /** A writer that has to see every fact */
+  private static class CountingWriter extends DelegatingFactWriter {
+
+    int batches = 0;
+
+    /** Fail at this batch, or never */
+    final int failAt;
+
+    CountingWriter(FactWriter out, int failAt) {
+      super(out);
+      this.failAt = failAt;
+    }
+
+    @Override
+    public void write(Fact[] facts, int offset, int length) throws IOException {
+      if (batches++ == failAt) throw new IOException("failed at " + failAt);
+      out.write(facts, offset, length);
+    }
+
+    @Override
+    public FactFormatter formatter() {
+      return (null);
+    }
+  }
+
+  @Test
+  public void testFormatter() throws Exception {
+    File output = new File(dir, "out.ttl");
+    try (FactWriter w = FactWriter.from(output)) {
+      assertSame(w, FactFormatter.of(w));
+      DelegatingFactWriter delegating = new DelegatingFactWriter(w);
+      assertSame(delegating, FactFormatter.of(delegating));
+      DelegatingFactWriter nested = new DelegatingFactWriter(delegating);
+      assertSame(nested, FactFormatter.of(nested));
+      assertNull(FactFormatter.of(new CountingWriter(w, -1)));
+      assertNull(FactFormatter.of(new DelegatingFactWriter(new CountingWriter(w, -1))));
+      assertNull(FactFormatter.of(new ProvenanceWriter(w)));
+    }
+  }
+
+  @Test
+  public void testWriterWithoutFormat() throws Exception {
+    File input = write("in.tsv");
+    File output = new File(dir, "out.ttl");
+    CountingWriter w = new CountingWriter(FactWriter.from(output), -1);
+    try (FactWriter x = w) {
+      assertEquals(facts.size(), new ConversionPipeline(input, x, 4).setReport(false).run());
+    }
+    assertEquals(3, w.batches);
+    assertEquals(facts, read(output));
+  }
+
+  @Test
+  public void testFailingWriter() throws Exception {
+    File input = write("in.ttl");
+    for (int failAt : new int[] { 0, 1 }) {
+      File output = new File(dir, "out.tsv");
+      try (FactWriter w = new CountingWriter(FactWriter.from(output), failAt)) {
+        new ConversionPipeline(input, w, 4).setReport(false).run();
+        fail("The failing writer must make the conversion fail");
+      } catch (IOException e) {
+        assertNotNull(e.getCause());
+        assertEquals("failed at " + failAt, e.getCause().getMessage());
+      }
+      // The chunks before the error were written in order
+      List<Fact> written = read(output);
+      assertEquals(failAt * ConversionPipeline.CHUNKSIZE, written.size());
+      assertEquals(facts.subList(0, written.size()), written);
+    }
+  }
+
+  @Test
+  public void testUnknownFormat() throws Exception {
+    File input = new File(dir, "in.xyz");
+    assertTrue(input.createNewFile());
+    try (FactWriter w = FactWriter.from(new File(dir, "out.tsv"))) {
+      new ConversionPipeline(input, w, 2).setReport(false).run();
+      fail("Unknown formats cannot be converted");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("Unknown file format"));
+    }
+  }
+}
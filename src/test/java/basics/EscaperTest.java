@@ -0,0 +1,58 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import javatools.parsers.Char17;
+
+import org.junit.Test;
+
+/**
+ * Checks that the Escaper produces the same output as Char17.
+ */
+public class EscaperTest {
+
+  /** Characters that trigger the special cases */
+  private static final String CHARS = "ab09 _\\\\\\\"'\n\t\r\u0001<>{}|^`%uUbtnfr012345678+-éሴ😀０٠";
+
+  private static String randomString(Random random) {
+    StringBuilder result = new StringBuilder();
+    int length = random.nextInt(12);
+    for (int i = 0; i < length; i++) {
+      result.append(CHARS.charAt(random.nextInt(CHARS.length())));
+    }
+    return (result.toString());
+  }
+
+  @Test
+  public void testEncode() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      String s = randomString(random);
+      assertEquals(s, Char17.encodeBackslash(s, FactComponent.turtleString), Escaper.TURTLESTRING.encode(s));
+      assertEquals(s, Char17.encodeBackslash(s, FactComponent.turtleUri), Escaper.TURTLEURI.encode(s));
+    }
+  }
+
+  @Test
+  public void testDecode() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      String s = randomString(random);
+      assertEquals(s, Char17.decodeBackslash(s), Escaper.decode(s));
+    }
+    for (String s : new String[] { "\\u0041", "\\u00e9x", "\\u-001", "\\u+041", "\\u12", "\\uzzzz", "\\u0a0B", "\\u０٠４1", "\\101", "\\18", "\\777777777777", "\\", "a\\" }) {
+      assertEquals(s, Char17.decodeBackslash(s), Escaper.decode(s));
+    }
+  }
+
+  @Test
+  public void testCleanStringsAreReturned() {
+    String s = "Elvis_Presley";
+    assertSame(s, Escaper.TURTLESTRING.encode(s));
+    assertSame(s, Escaper.TURTLEURI.encode(s));
+    assertSame(s, Escaper.decode(s));
+  }
+}
@@ -0,0 +1,160 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javatools.datatypes.Pair;
+
+/**
+ * Compares mergeJoin() and hashJoin() with a nested-loop join, on the subject
+ * and on the id. The keys are skewed, and maxFacts is small enough that the
+ * hash join spills down to MAXLEVEL.
+ */
+public class FactJoinTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("factJoinTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** A skewed key: half of the facts have the key 0 */
+  private static String key(Random random) {
+    return ("<e" + (random.nextBoolean() ? 0 : random.nextInt(300)) + ">");
+  }
+
+  /** Facts with skewed subjects, some with ids */
+  private static List<Fact> facts(Random random, int n) {
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Fact f = new Fact(key(random), "<r" + random.nextInt(3) + ">", FactComponent.forString("v\t\"" + i + "\" é"));
+      if (random.nextInt(3) > 0) f.makeId();
+      result.add(f);
+    }
+    return (result);
+  }
+
+  /** Meta-facts about the facts with ids */
+  private static List<Fact> metaFacts(Random random, List<Fact> facts) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : facts) {
+      for (int i = random.nextInt(3); f.getId() != null && i > 0; i--) {
+        result.add(new Fact(f.getId(), YAGO.extractionSource, "<source" + random.nextInt(5) + ">"));
+      }
+    }
+    // Meta-facts of a fact that does not exist
+    result.add(new Fact("<id_nothing>", YAGO.extractionSource, "<source0>"));
+    return (result);
+  }
+
+  private static List<String> nestedLoop(List<Fact> left, FactJoin.Key leftKey, List<Fact> right, FactJoin.Key rightKey) {
+    List<String> result = new ArrayList<>();
+    for (Fact l : left) {
+      for (Fact r : right) {
+        if (leftKey.of(l) != null && leftKey.of(l).equals(rightKey.of(r))) result.add(l + " | " + r);
+      }
+    }
+    Collections.sort(result);
+    return (result);
+  }
+
+  private static List<String> pairs(Iterator<Pair<Fact, Fact>> join) {
+    List<String> result = new ArrayList<>();
+    while (join.hasNext()) {
+      Pair<Fact, Fact> p = join.next();
+      result.add(p.first + " | " + p.second);
+    }
+    Collections.sort(result);
+    return (result);
+  }
+
+  private static List<Fact> sortedBy(List<Fact> facts, FactJoin.Key key) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : facts) {
+      if (key.of(f) != null) result.add(f);
+    }
+    result.sort((a, b) -> key.of(a).compareTo(key.of(b)));
+    return (result);
+  }
+
+  private void check(List<Fact> left, FactJoin.Key leftKey, List<Fact> right, FactJoin.Key rightKey) {
+    List<String> expected = nestedLoop(left, leftKey, right, rightKey);
+    for (int maxFacts : new int[] { 1000000, 200, 50 }) {
+      assertEquals("maxFacts " + maxFacts, expected, pairs(FactJoin.hashJoin(left, leftKey, right, rightKey, maxFacts, dir)));
+      assertEquals(0, dir.list().length);
+    }
+    assertEquals(expected, pairs(FactJoin.mergeJoin(sortedBy(left, leftKey), leftKey, sortedBy(right, rightKey), rightKey)));
+  }
+
+  @Test
+  public void testSubject() {
+    Random random = new Random(3);
+    check(facts(random, 1000), FactJoin.Key.SUBJECT, facts(random, 600), FactJoin.Key.SUBJECT);
+  }
+
+  @Test
+  public void testId() {
+    Random random = new Random(4);
+    List<Fact> facts = facts(random, 2000);
+    check(facts, FactJoin.Key.ID, metaFacts(random, facts), FactJoin.Key.SUBJECT);
+  }
+
+  @Test
+  public void testThreeInputs() {
+    Random random = new Random(5);
+    List<Fact> a = facts(random, 200), b = facts(random, 100), c = facts(random, 50);
+    List<String> expected = new ArrayList<>();
+    for (Fact x : a) {
+      for (Fact y : b) {
+        for (Fact z : c) {
+          if (x.getSubject().equals(y.getSubject()) && y.getSubject().equals(z.getSubject())) expected.add(x + " | " + y + " | " + z);
+        }
+      }
+    }
+    Collections.sort(expected);
+    List<String> result = new ArrayList<>();
+    FactJoin.Key s = FactJoin.Key.SUBJECT;
+    Iterator<Fact[]> join = FactJoin.mergeJoin(Arrays.asList(sortedBy(a, s), sortedBy(b, s), sortedBy(c, s)), Arrays.asList(s, s, s));
+    while (join.hasNext()) {
+      Fact[] facts = join.next();
+      result.add(facts[0] + " | " + facts[1] + " | " + facts[2]);
+    }
+    Collections.sort(result);
+    assertEquals(expected, result);
+  }
+
+  @Test
+  public void testUnsorted() {
+    List<Fact> left = Arrays.asList(new Fact("<a>", "<r>", "<x>"), new Fact("<c>", "<r>", "<x>"), new Fact("<b>", "<r>", "<x>"));
+    List<Fact> right = Arrays.asList(new Fact("<a>", "<r>", "<y>"), new Fact("<b>", "<r>", "<y>"), new Fact("<c>", "<r>", "<y>"));
+    try {
+      pairs(FactJoin.mergeJoin(left, FactJoin.Key.SUBJECT, right, FactJoin.Key.SUBJECT));
+      fail("No exception on unsorted input");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
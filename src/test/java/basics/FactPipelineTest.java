@@ -0,0 +1,124 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a chain of all stages with several thread counts and compares it with
+ * a sequential computation. Checks that a failing stage makes run() fail.
+ */
+public class FactPipelineTest {
+
+  private File file;
+
+  /** The facts of the file, one run per subject */
+  private List<Fact> facts = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("factPipelineTest", ".tsv");
+    try (FactWriter w = new TsvWriter(file)) {
+      for (int s = 0; s < 20000; s++) {
+        for (int k = 0; k < 1 + s % 5; k++) {
+          Fact f = new Fact("<s" + s + ">", "<r" + (k % 3) + ">", "<o" + ((s * 7 + k) % 50) + ">");
+          w.write(f);
+          facts.add(f);
+        }
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private static boolean keep(Fact f) {
+    return (!f.getRelation().equals("<r2>"));
+  }
+
+  private static Fact map(Fact f) {
+    return (new Fact(f.getSubject(), "<m>", f.getObject()));
+  }
+
+  /** The fact and a type fact, which is the same for all facts of a subject */
+  private static List<Fact> expand(Fact f) {
+    return (Arrays.asList(f, new Fact(f.getSubject(), "rdf:type", "<T>")));
+  }
+
+  /** One fact per subject with its distinct objects */
+  private static List<Fact> summarize(List<Fact> group) {
+    Set<String> objects = new TreeSet<>();
+    for (Fact f : group) {
+      objects.add(f.getObject());
+    }
+    return (Arrays.asList(new Fact(group.get(0).getSubject(), "<summary>", FactComponent.forString(group.size() + " " + objects))));
+  }
+
+  /** Computes the chain sequentially */
+  private List<Fact> expected() {
+    List<Fact> deduped = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    for (Fact f : facts) {
+      if (!keep(f)) continue;
+      for (Fact g : expand(map(f))) {
+        if (seen.add(g.getSubject() + "\t" + g.getRelation() + "\t" + g.getObject())) deduped.add(g);
+      }
+    }
+    List<Fact> result = new ArrayList<>();
+    List<Fact> group = new ArrayList<>();
+    for (Fact f : deduped) {
+      if (!group.isEmpty() && !group.get(0).getSubject().equals(f.getSubject())) {
+        result.addAll(summarize(group));
+        group = new ArrayList<>();
+      }
+      group.add(f);
+    }
+    if (!group.isEmpty()) result.addAll(summarize(group));
+    return (result);
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    List<Fact> expected = expected();
+    for (int threads : new int[] { 1, 2, 8 }) {
+      List<Fact> result = new ArrayList<>();
+      long n = FactPipeline.from(FactSource.from(file)).setThreads(threads).setCapacity(2).filter(FactPipelineTest::keep)
+          .map(FactPipelineTest::map).flatMap(FactPipelineTest::expand).dedup().groupBySubject(FactPipelineTest::summarize).sink(result::add)
+          .run();
+      assertEquals("threads " + threads, expected, result);
+      assertEquals(expected.size(), n);
+    }
+  }
+
+  @Test
+  public void testFailingStage() throws Exception {
+    for (int threads : new int[] { 1, 4 }) {
+      List<Fact> result = new ArrayList<>();
+      try {
+        FactPipeline.from(FactSource.from(file)).setThreads(threads).setCapacity(2).map(f -> {
+          if (f.getSubject().equals("<s15000>")) throw new IllegalStateException("boom");
+          return (f);
+        }).sink(result::add).run();
+        fail("No exception with " + threads + " threads");
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      assertTrue(result.size() < facts.size());
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks getFacts() and count() for all patterns against a naive filter,
+ * before and after freeze(), with duplicate facts, facts that differ only by
+ * their id, and meta-facts. Also loads a segmented theme in parallel.
+ */
+public class FactStoreTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("factStoreTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** Random facts with duplicates, with ids, and with meta-facts */
+  private static List<Fact> facts(long seed) {
+    Random random = new Random(seed);
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < 600; i++) {
+      String s = "<e" + random.nextInt(15) + ">", p = "<r" + random.nextInt(4) + ">", o = "<e" + random.nextInt(15) + ">";
+      switch (random.nextInt(4)) {
+        case 0:
+          // The same fact with and without an id
+          Fact f = new Fact("<id" + i + ">", s, p, o);
+          result.add(f);
+          result.add(new Fact(s, p, o));
+          result.add(new Fact(f.getId(), YAGO.extractionSource, "<source" + random.nextInt(3) + ">"));
+          break;
+        case 1:
+          // A duplicate of an earlier fact
+          if (!result.isEmpty()) result.add(new Fact(result.get(random.nextInt(result.size()))));
+          break;
+        default:
+          result.add(new Fact(s, p, o));
+      }
+    }
+    return (result);
+  }
+
+  private static List<String> sorted(Collection<Fact> facts) {
+    List<String> result = new ArrayList<>();
+    for (Fact f : facts) {
+      result.add(f.toString());
+    }
+    result.sort(null);
+    return (result);
+  }
+
+  private static boolean matches(String pattern, String component) {
+    return (pattern == null || pattern.equals(component));
+  }
+
+  /** Checks all patterns of the components of the facts and of a missing component */
+  private static void check(FactStore store, Set<Fact> distinct) {
+    assertEquals(distinct.size(), store.size());
+    List<Fact> all = new ArrayList<>();
+    for (Fact f : store) {
+      all.add(f);
+    }
+    assertEquals(sorted(distinct), sorted(all));
+    // NULL is the wildcard
+    Set<String> subjects = new LinkedHashSet<>(), relations = new LinkedHashSet<>(), objects = new LinkedHashSet<>();
+    subjects.add(null);
+    relations.add(null);
+    objects.add(null);
+    for (Fact f : distinct) {
+      subjects.add(f.getSubject());
+      relations.add(f.getRelation());
+      objects.add(f.getObject());
+    }
+    subjects.add("<missing>");
+    for (String s : subjects) {
+      for (String p : relations) {
+        for (String o : objects) {
+          List<Fact> expected = new ArrayList<>();
+          for (Fact f : distinct) {
+            if (matches(s, f.getSubject()) && matches(p, f.getRelation()) && matches(o, f.getObject())) expected.add(f);
+          }
+          String pattern = s + " " + p + " " + o;
+          assertEquals(pattern, sorted(expected), sorted(store.getFacts(s, p, o)));
+          assertEquals(pattern, expected.size(), store.count(s, p, o));
+          Fact first = store.getFact(s, p, o);
+          if (expected.isEmpty()) assertNull(first);
+          else assertTrue(pattern, expected.contains(first));
+        }
+      }
+    }
+    for (Fact f : distinct) {
+      if (f.getId() == null) continue;
+      assertEquals(f, store.getFactById(f.getId()));
+      List<Fact> meta = new ArrayList<>();
+      for (Fact g : distinct) {
+        if (g.getSubject().equals(f.getId())) meta.add(g);
+      }
+      assertEquals(sorted(meta), sorted(store.getMetaFacts(f)));
+    }
+    assertNull(store.getFactById("<missing>"));
+  }
+
+  @Test
+  public void testPatterns() {
+    for (long seed = 0; seed < 3; seed++) {
+      List<Fact> facts = facts(seed);
+      Set<Fact> distinct = new LinkedHashSet<>(facts);
+      FactStore store = new FactStore();
+      for (Fact f : facts) {
+        assertEquals(!store.getFacts(f.getSubject(), f.getRelation(), f.getObject()).contains(f), store.add(f));
+      }
+      assertFalse(store.isFrozen());
+      check(store, distinct);
+      store.freeze();
+      assertTrue(store.isFrozen());
+      check(store, distinct);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFrozen() {
+    FactStore store = new FactStore();
+    store.add(new Fact("<a>", "<r>", "<b>"));
+    store.freeze();
+    store.add(new Fact("<a>", "<r>", "<c>"));
+  }
+
+  @Test
+  public void testParallelLoad() throws Exception {
+    List<Fact> facts = facts(42);
+    File theme = new File(dir, "theme.tsv");
+    try (FactWriter w = new SegmentedFactWriter(theme, null, 0, 500)) {
+      for (Fact f : facts) {
+        w.write(f);
+      }
+    }
+    FactSource source = FactSource.from(SegmentedFactWriter.manifestFor(theme));
+    assertTrue(source.segments().size() > 1);
+    FactStore store = FactStore.load(source, 4);
+    store.freeze();
+    check(store, new LinkedHashSet<>(facts));
+  }
+}
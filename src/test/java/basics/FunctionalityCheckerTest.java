@@ -0,0 +1,111 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks a theme with compatible and conflicting dates, with the default
+ * memory cap and with one that forces the partitions to be split.
+ */
+public class FunctionalityCheckerTest {
+
+  private static final String BORN = "<wasBornOnDate>";
+
+  private File dir, tmpDir, theme;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("functionalityCheckerTest").toFile();
+    tmpDir = new File(dir, "tmp");
+    tmpDir.mkdir();
+    theme = new File(dir, "theme.tsv");
+    try (FactWriter w = new TsvWriter(theme)) {
+      for (int i = 0; i < 3000; i++) {
+        String subject = "<e" + i + ">";
+        w.write(new Fact(subject, BORN, FactComponent.forDate("1935-01-08")));
+        // Not functional
+        w.write(new Fact(subject, "<livesIn>", "<Memphis>"));
+        w.write(new Fact(subject, "<livesIn>", "<Tupelo>"));
+        switch (i % 3) {
+          case 0:
+            // A refinement is compatible
+            w.write(new Fact(subject, BORN, FactComponent.forDate("1935-##-##")));
+            break;
+          case 1:
+            // An unrelated date is a conflict
+            w.write(new Fact(subject, BORN, FactComponent.forDate("1940-02-02")));
+            break;
+          default:
+            // A duplicate is no conflict
+            w.write(new Fact(subject, BORN, FactComponent.forDate("1935-01-08")));
+        }
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : tmpDir.listFiles()) {
+      f.delete();
+    }
+    tmpDir.delete();
+    theme.delete();
+    dir.delete();
+  }
+
+  private void check(FunctionalityChecker checker) throws Exception {
+    Map<String, FunctionalityChecker.Conflict> conflicts = new ConcurrentHashMap<>();
+    long n = checker.check(FactSource.from(theme), 4, tmpDir, c -> conflicts.put(c.subject, c));
+    assertEquals(1000, n);
+    assertEquals(2000, conflicts.size());
+    for (int i = 0; i < 3000; i++) {
+      FunctionalityChecker.Conflict c = conflicts.get("<e" + i + ">");
+      switch (i % 3) {
+        case 0:
+          assertEquals(BORN, c.relation);
+          assertEquals(FactComponent.forDate("1935-01-08"), c.resolve().getObject());
+          break;
+        case 1:
+          assertNull(c.resolve());
+          assertEquals(Arrays.asList(FactComponent.forDate("1935-01-08"), FactComponent.forDate("1940-02-02")), Arrays.asList(c.facts.get(0).getObject(),
+              c.facts.get(1).getObject()));
+          break;
+        default:
+          assertNull(c);
+      }
+    }
+    assertEquals(0, tmpDir.list().length);
+  }
+
+  @Test
+  public void testDefault() throws Exception {
+    check(new FunctionalityChecker(Collections.singleton(BORN)));
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    check(new FunctionalityChecker(Collections.singleton(BORN)).setPartitions(4).setMaxFacts(10));
+  }
+
+  @Test
+  public void testMostSpecific() {
+    Fact a = new Fact("<e>", BORN, FactComponent.forDate("1935-##-##"));
+    Fact b = new Fact("<e>", BORN, FactComponent.forDate("1935-01-08"));
+    Fact c = new Fact("<e>", BORN, FactComponent.forDate("1935-01-##"));
+    assertEquals(b, FunctionalityChecker.Conflict.mostSpecific(Arrays.asList(a, b, c)));
+    assertEquals(b, FunctionalityChecker.Conflict.mostSpecific(Arrays.asList(c, b, a)));
+    assertNull(FunctionalityChecker.Conflict.mostSpecific(Arrays.asList(a, b, new Fact("<e>", BORN, FactComponent.forDate("1935-02-##")))));
+  }
+}
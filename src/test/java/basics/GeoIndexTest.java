@@ -0,0 +1,103 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Builds a GeoIndex file, loads it, and compares its answers with a scan
+ * over all points, also near the poles and the antimeridian.
+ */
+public class GeoIndexTest {
+
+  private File file;
+
+  /** Coordinates of the entities */
+  private final Map<String, double[]> points = new HashMap<>();
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("geoIndexTest", ".index");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private GeoIndex build() throws IOException {
+    Random random = new Random(3);
+    List<Fact> facts = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      double lat = random.nextDouble() * 180 - 90, lon = random.nextDouble() * 360 - 180;
+      if (i % 10 == 0) lat = 89 + random.nextDouble();
+      if (i % 7 == 0) lon = 179.5 + random.nextDouble() * 0.5;
+      points.put("<e" + i + ">", new double[] { lat, lon });
+      facts.add(new Fact("<e" + i + ">", YAGO.hasLatitude, FactComponent.forDegree(lat)));
+      facts.add(new Fact("<e" + i + ">", YAGO.hasLongitude, FactComponent.forDegree(lon)));
+    }
+    // An entity with a location gets its coordinates, an entity with half of the coordinates is left out
+    facts.add(new Fact("<city>", YAGO.hasGeoLocation, "<e5>"));
+    points.put("<city>", points.get("<e5>"));
+    facts.add(new Fact("<half>", YAGO.hasLatitude, FactComponent.forDegree(10)));
+    GeoIndex.build(facts, file, 1.0);
+    return (GeoIndex.load(file));
+  }
+
+  private double distance(double lat, double lon, String entity) {
+    double[] p = points.get(entity);
+    return (GeoIndex.distance(lat, lon, p[0], p[1]));
+  }
+
+  @Test
+  public void testQueries() throws IOException {
+    GeoIndex index = build();
+    assertEquals(points.size(), index.size());
+    assertEquals(new HashSet<>(Arrays.asList("<e5>", "<city>")), new HashSet<>(index.entitiesInRadius(points.get("<e5>")[0], points.get("<e5>")[1], 0.001)));
+    Random random = new Random(5);
+    for (int q = 0; q < 50; q++) {
+      double lat = q % 5 == 0 ? 88 + random.nextDouble() * 2 : random.nextDouble() * 180 - 90;
+      double lon = q % 6 == 0 ? -179.9 : random.nextDouble() * 360 - 180;
+      // Radius
+      double km = random.nextDouble() * 2000;
+      Set<String> expected = new HashSet<>();
+      for (String e : points.keySet()) {
+        if (distance(lat, lon, e) <= km) expected.add(e);
+      }
+      List<String> radius = index.entitiesInRadius(lat, lon, km);
+      assertEquals(expected.size(), radius.size());
+      assertEquals(expected, new HashSet<>(radius));
+      // Nearest neighbors, compared by distance because of ties
+      List<String> all = new ArrayList<>(points.keySet());
+      all.sort(Comparator.comparingDouble(e -> distance(lat, lon, e)));
+      List<String> nearest = index.nearestEntities(lat, lon, 7);
+      assertEquals(7, nearest.size());
+      for (int i = 0; i < 7; i++) {
+        assertEquals(distance(lat, lon, all.get(i)), distance(lat, lon, nearest.get(i)), 1e-9);
+      }
+      // Box, which can cross the antimeridian
+      double minLat = lat - 5, maxLat = Math.min(90, lat + 5), minLon = lon, maxLon = lon + 20 > 180 ? lon - 340 : lon + 20;
+      expected.clear();
+      for (Map.Entry<String, double[]> e : points.entrySet()) {
+        double x = e.getValue()[0], y = e.getValue()[1];
+        boolean inLon = minLon <= maxLon ? y >= minLon && y <= maxLon : y >= minLon || y <= maxLon;
+        if (x >= minLat && x <= maxLat && inLon) expected.add(e.getKey());
+      }
+      assertEquals(expected, new HashSet<>(index.entitiesInBox(minLat, minLon, maxLat, maxLon)));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javatools.datatypes.Pair;
+
+/**
+ * Writes facts with ids from several threads, through write(), the batch
+ * write() and writeFormatted(), and finds them again with the IdIndex.
+ */
+public class IdIndexTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("idIndexTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** The facts of thread t, every other one with an id */
+  private static List<Fact> facts(int t) {
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      Fact f = new Fact("<e" + t + "_" + i + ">", "<hasGloss>", FactComponent.forString("gloss é " + i));
+      if (i % 2 == 0) f.makeId();
+      result.add(f);
+    }
+    return (result);
+  }
+
+  private static void write(FactWriter w, int t) throws IOException {
+    List<Fact> facts = facts(t);
+    for (int i = 0; i < facts.size(); i += 10) {
+      List<Fact> part = facts.subList(i, i + 10);
+      switch (t % 3) {
+        case 0:
+          for (Fact f : part) {
+            w.write(f);
+          }
+          break;
+        case 1:
+          w.write(part);
+          break;
+        default:
+          FactFormatter formatter = FactFormatter.of(w);
+          StringBuilder formatted = new StringBuilder();
+          for (Fact f : part) {
+            formatter.format(f, formatted);
+          }
+          formatter.writeFormatted(formatted);
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    for (String extension : new String[] { ".ttl", ".tsv" }) {
+      File file = new File(dir, "facts" + extension);
+      ExecutorService executor = Executors.newFixedThreadPool(6);
+      try (FactWriter w = FactWriter.from(file, "Header")) {
+        w.indexIds();
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+          final int thread = t;
+          results.add(executor.submit(() -> {
+            write(w, thread);
+            return (null);
+          }));
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+      } finally {
+        executor.shutdown();
+      }
+      assertEquals(6 * 150, IdIndex.load(file).size());
+      FactSource source = FactSource.from(file);
+      List<Fact> metaFacts = new ArrayList<>();
+      for (int t = 0; t < 6; t++) {
+        for (Fact f : facts(t)) {
+          if (f.getId() == null) continue;
+          Fact found = source.getFactById(f.getId());
+          assertEquals(f, found);
+          assertEquals(f.getId(), found.getId());
+          metaFacts.add(new Fact(f.getId(), "<extractionSource>", "<http://example.org/" + t + ">"));
+          metaFacts.add(new Fact(f.getId(), "<extractionTechnique>", FactComponent.forString("test")));
+        }
+      }
+      assertNull(source.getFactById("<id_unknown>"));
+      int groups = 0;
+      for (Pair<Fact, List<Fact>> group : source.withMetaFacts(metaFacts)) {
+        assertEquals(group.first().getId(), group.second().get(0).getSubject());
+        assertEquals(2, group.second().size());
+        groups++;
+      }
+      assertEquals(metaFacts.size() / 2, groups);
+      // Without the IdIndex, the base facts come from one pass over the file
+      assertTrue(source.hasIdIndex());
+      IdIndex.indexFor(file).delete();
+      source = FactSource.from(file);
+      assertFalse(source.hasIdIndex());
+      metaFacts.add(new Fact("<id_unknown>", "<extractionSource>", "<http://example.org/>"));
+      groups = 0;
+      for (Pair<Fact, List<Fact>> group : source.withMetaFacts(metaFacts)) {
+        if (group.second().get(0).getSubject().equals("<id_unknown>")) assertNull(group.first());
+        else assertEquals(group.first().getId(), group.second().get(0).getSubject());
+        groups++;
+      }
+      assertEquals(metaFacts.size() / 2 + 1, groups);
+    }
+  }
+}
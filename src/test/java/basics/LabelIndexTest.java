@@ -0,0 +1,85 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Builds a LabelIndex file, loads it, and compares exact and prefix lookups
+ * with a map of all labels, also for non-ASCII labels and escapes.
+ */
+public class LabelIndexTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("labelIndexTest", ".index");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testQueries() throws IOException {
+    Random random = new Random(7);
+    String[] words = { "Elvis", "Elvis Presley", "El", "Paris", "Pärïs", "日本", "Paris Hilton", "Zeta", "a\"b", "x\\y" };
+    String[] languages = { null, "eng", "deu" };
+    List<Fact> facts = new ArrayList<>();
+    // Entities per label + NUL + language
+    Map<String, Set<String>> expected = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      String word = words[random.nextInt(words.length)] + (random.nextInt(3) == 0 ? "" : " " + random.nextInt(500));
+      String language = languages[random.nextInt(languages.length)];
+      String entity = "<e" + random.nextInt(2000) + ">";
+      String relation = LabelIndex.LABELRELATIONS.get(random.nextInt(LabelIndex.LABELRELATIONS.size()));
+      facts.add(new Fact(entity, relation, FactComponent.forStringWithLanguage(word, language)));
+      expected.computeIfAbsent(word + "\u0000" + (language == null ? "" : language), k -> new TreeSet<>()).add(entity);
+    }
+    // Other relations are not indexed
+    facts.add(new Fact("<other>", "<hasGloss>", FactComponent.forString("Elvis")));
+    LabelIndex.build(facts, file);
+    LabelIndex index = LabelIndex.load(file);
+    assertEquals(expected.size(), index.numLabels());
+    for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+      String[] key = e.getKey().split("\u0000", -1);
+      assertEquals(e.getKey(), e.getValue(), new TreeSet<>(index.exact(key[0], key[1])));
+    }
+    for (String word : words) {
+      Set<String> any = new TreeSet<>();
+      for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+        if (e.getKey().startsWith(word + "\u0000")) any.addAll(e.getValue());
+      }
+      assertEquals(word, any, new TreeSet<>(index.exact(word)));
+      for (String prefix : new String[] { word.substring(0, 1), word, word + " 1" }) {
+        int count = 0;
+        for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+          if (e.getKey().startsWith(prefix)) count += e.getValue().size();
+        }
+        List<Fact> found = index.prefix(prefix, Integer.MAX_VALUE);
+        assertEquals(prefix, count, found.size());
+        for (Fact f : found) {
+          assertTrue(f.toString(), f.getObjectView().getJavaString().startsWith(prefix));
+        }
+        assertEquals(Math.min(3, count), index.prefix(prefix, 3).size());
+      }
+    }
+    assertTrue(index.exact("nothing").isEmpty());
+    assertTrue(index.prefix("zzz", 3).isEmpty());
+  }
+}
@@ -0,0 +1,132 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks the eviction order of the MemoCache for LRU and FIFO, its counters,
+ * its capacity, and concurrent use.
+ */
+public class MemoCacheTest {
+
+  /** Gets the keys from the cache, returns the keys that had to be computed */
+  private static String misses(MemoCache<String, String> cache, String... keys) {
+    StringBuilder computed = new StringBuilder();
+    for (String key : keys) {
+      assertEquals(key + "!", cache.get(key, k -> {
+        computed.append(k);
+        return (k + "!");
+      }));
+    }
+    return (computed.toString());
+  }
+
+  @Test
+  public void testLru() {
+    // One segment
+    MemoCache<String, String> cache = new MemoCache<>(3, MemoCache.Policy.LRU);
+    assertEquals("abc", misses(cache, "a", "b", "c"));
+    assertEquals("", misses(cache, "a"));
+    // b was used least recently
+    assertEquals("d", misses(cache, "d"));
+    assertEquals("", misses(cache, "a", "c", "d"));
+    assertEquals("b", misses(cache, "b"));
+    assertEquals("a", misses(cache, "a"));
+    assertEquals(6, cache.misses());
+    assertEquals(4, cache.hits());
+    assertEquals(3, cache.evictions());
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void testFifo() {
+    MemoCache<String, String> cache = new MemoCache<>(3, MemoCache.Policy.FIFO);
+    assertEquals("abc", misses(cache, "a", "b", "c"));
+    assertEquals("", misses(cache, "a"));
+    // a was added first, although it was used last
+    assertEquals("d", misses(cache, "d"));
+    assertEquals("", misses(cache, "b", "c", "d"));
+    assertEquals("a", misses(cache, "a"));
+    assertEquals("", misses(cache, "c", "d", "a"));
+    assertEquals("b", misses(cache, "b"));
+    assertEquals(6, cache.misses());
+    assertEquals(7, cache.hits());
+    assertEquals(3, cache.evictions());
+  }
+
+  @Test
+  public void testNullAndClear() {
+    MemoCache<String, String> cache = new MemoCache<>(10, MemoCache.Policy.LRU);
+    AtomicInteger calls = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      assertNull(cache.get("x", k -> {
+        calls.incrementAndGet();
+        return (null);
+      }));
+    }
+    // NULL results are cached, too
+    assertEquals(1, calls.get());
+    assertEquals(2, cache.hits());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.hits());
+    assertEquals(0, cache.misses());
+    assertEquals("a", misses(cache, "a"));
+  }
+
+  @Test
+  public void testCapacity() {
+    for (int capacity : new int[] { 1, 31, 32, 33, 100, 1000, 1025, 12345 }) {
+      for (MemoCache.Policy policy : MemoCache.Policy.values()) {
+        MemoCache<String, String> cache = new MemoCache<>(capacity, policy);
+        int sum = 0;
+        for (MemoCache<String, String>.Segment segment : cache.segments) {
+          sum += segment.maxSize;
+        }
+        assertEquals(capacity, sum);
+        int n = 3 * capacity + 100;
+        for (int i = 0; i < n; i++) {
+          cache.get("k" + i, k -> k);
+          assertTrue(cache.size() <= capacity);
+        }
+        assertEquals(n, cache.misses());
+        assertEquals(n - cache.size(), cache.evictions());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    MemoCache<Integer, String> cache = new MemoCache<>(500, MemoCache.Policy.LRU);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> results = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int seed = t;
+      results.add(executor.submit(() -> {
+        Random random = new Random(seed);
+        for (int i = 0; i < 100000; i++) {
+          int key = (int) Math.abs(random.nextGaussian() * 300);
+          assertEquals(String.valueOf(key), cache.get(key, String::valueOf));
+        }
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+    assertEquals(400000, cache.hits() + cache.misses());
+    assertTrue(cache.hits() > cache.misses());
+    assertTrue(cache.size() <= 500);
+  }
+}
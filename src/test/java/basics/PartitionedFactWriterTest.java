@@ -0,0 +1,147 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes themes with PartitionedFactWriter and reads them back with
+ * PartitionedFactSource, with all encodings and with sorted runs.
+ */
+public class PartitionedFactWriterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new File(Files.createTempDirectory("partitionedFactWriterTest").toFile(), "theme" + PartitionedFactWriter.EXTENSION);
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+    dir.getParentFile().delete();
+  }
+
+  /** Facts with plain, integer, date and escaped objects, and with and without ids */
+  private static List<Fact> facts() {
+    Random random = new Random(7);
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String subject = "<e" + random.nextInt(60) + ">";
+      Fact f;
+      switch (i % 5) {
+        case 0:
+          f = new Fact(subject, "rdf:type", "<c" + random.nextInt(5) + ">");
+          break;
+        case 1:
+          f = new Fact(subject, "<hasNumberOfPeople>", FactComponent.forStringWithDatatype(String.valueOf(random.nextInt(2000) - 1000), "xsd:integer"));
+          break;
+        case 2:
+          f = new Fact(subject, "<wasBornOnDate>", FactComponent.forStringWithDatatype("19" + (10 + random.nextInt(90)) + "-0" + (1 + random.nextInt(9)) + "-##", "xsd:date"));
+          break;
+        case 3:
+          f = new Fact(subject, "<hasGloss>", FactComponent.forString("line " + i + "\n\"quoted\" é"));
+          break;
+        default:
+          f = new Fact(subject, "<hasNumberOfPeople>", FactComponent.forStringWithDatatype("007", "xsd:integer"));
+      }
+      if (i % 3 == 0) f.makeId();
+      result.add(f);
+    }
+    return (result);
+  }
+
+  /** Returns the facts of a relation in the order of the table: by subject, then in the order of writing */
+  private static List<Fact> expected(List<Fact> facts, String relation) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : facts) {
+      if (f.getRelation().equals(relation)) result.add(f);
+    }
+    result.sort((a, b) -> a.getSubject().compareTo(b.getSubject()));
+    return (result);
+  }
+
+  private static List<Fact> list(Iterable<Fact> source) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : source) {
+      result.add(f);
+    }
+    return (result);
+  }
+
+  private static void assertSameFacts(List<Fact> expected, List<Fact> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), actual.get(i));
+      assertEquals(expected.get(i).getId(), actual.get(i).getId());
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<Fact> facts = facts();
+    int[] allFlags = { 0, PartitionedFactWriter.DICTIONARY, PartitionedFactWriter.TYPED, PartitionedFactWriter.DICTIONARY | PartitionedFactWriter.TYPED };
+    for (int flags : allFlags) {
+      // 1000 facts fit into memory, 7 facts per run force a merge
+      for (int maxFacts : new int[] { 1000, 7 }) {
+        try (PartitionedFactWriter w = new PartitionedFactWriter(dir, null, "theme", flags).setMaxFacts(maxFacts)) {
+          w.write(facts);
+        }
+        PartitionedFactSource source = new PartitionedFactSource(dir);
+        assertEquals(Arrays.asList("rdf:type", "<hasNumberOfPeople>", "<wasBornOnDate>", "<hasGloss>"), source.relations());
+        for (String relation : source.relations()) {
+          List<Fact> expected = expected(facts, relation);
+          assertEquals(expected.size(), source.count(relation));
+          assertSameFacts(expected, list(source.relation(relation)));
+          assertSameFacts(expected, list(source.table(relation)));
+          assertSameFacts(expected.subList(0, 1), source.getFacts(relation, expected.get(0).getSubject()).subList(0, 1));
+        }
+        assertEquals(facts.size(), list(source).size());
+      }
+    }
+  }
+
+  @Test
+  public void testCloseTwice() throws Exception {
+    try (PartitionedFactWriter w = new PartitionedFactWriter(dir, null, "theme")) {
+      w.write(facts());
+      w.close();
+    }
+    PartitionedFactSource source = new PartitionedFactSource(dir);
+    assertEquals(Arrays.asList("rdf:type", "<hasNumberOfPeople>", "<wasBornOnDate>", "<hasGloss>"), source.relations());
+    assertEquals(facts().size(), list(source).size());
+  }
+
+  @Test
+  public void testRewriteRemovesOldTables() throws Exception {
+    try (FactWriter w = new PartitionedFactWriter(dir, "Header", "theme")) {
+      w.write(facts());
+    }
+    try (FactWriter w = new PartitionedFactWriter(dir, null, "theme")) {
+      w.write(new Fact("<Elvis>", "<likes>", "<music>"));
+    }
+    PartitionedFactSource source = new PartitionedFactSource(dir);
+    assertEquals(Arrays.asList("<likes>"), source.relations());
+    assertEquals(Arrays.asList(new Fact("<Elvis>", "<likes>", "<music>")), list(source));
+    for (String name : dir.list()) {
+      assertTrue(name, name.equals(PartitionedFactWriter.INDEX) || name.equals("r00000.bin"));
+    }
+    assertFalse(new File(dir, "r00001.bin").exists());
+  }
+}
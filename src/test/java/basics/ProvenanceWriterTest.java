@@ -0,0 +1,90 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes a theme with ProvenanceWriter, reads the .provenance file, and
+ * expands the theme again.
+ */
+public class ProvenanceWriterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("provenanceWriterTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  private static List<String> sorted(Iterable<Fact> facts) {
+    List<String> result = new ArrayList<>();
+    for (Fact f : facts) {
+      result.add(f.toTsvLine(false));
+    }
+    Collections.sort(result);
+    return (result);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    File theme = new File(dir, "theme.ttl");
+    List<Fact> all = new ArrayList<>();
+    List<String> ids = new ArrayList<>();
+    try (FactWriter w = new ProvenanceWriter(FactWriter.from(theme, "Header"))) {
+      all.add(FactWriter.themeGloss("theme", "Header"));
+      for (int i = 0; i < 100; i++) {
+        Fact f = new Fact("<e" + i + ">", "rdf:type", "<person>");
+        List<Fact> facts = new ArrayList<>();
+        facts.add(f);
+        facts.add(f.metaFact(YAGO.extractionSource, "<http://example.org/" + (i % 7) + ">"));
+        if (i % 2 == 0) facts.add(f.metaFact(YAGO.extractionTechnique, FactComponent.forString("technique " + (i % 3))));
+        // A second source cannot be stored in the table, and stays in the theme
+        if (i % 10 == 0) facts.add(f.metaFact(YAGO.extractionSource, "<http://example.org/other>"));
+        if (i % 2 == 0) w.write(facts);
+        else for (Fact x : facts) {
+          w.write(x);
+        }
+        all.addAll(facts);
+        ids.add(f.getId());
+      }
+    }
+    File provenance = ProvenanceTable.provenanceFor(theme);
+    assertTrue(provenance.exists());
+    ProvenanceTable table = ProvenanceTable.read(provenance);
+    assertEquals(100, table.size());
+    assertEquals("<http://example.org/0>", table.getSource(ids.get(0)));
+    assertEquals(FactComponent.forString("technique 0"), table.getTechnique(ids.get(0)));
+    assertEquals("<http://example.org/3>", table.getSource(ids.get(10)));
+    assertEquals(null, table.getTechnique(ids.get(1)));
+    // The theme holds the facts and the meta-facts that did not fit
+    for (Fact f : FactSource.from(theme)) {
+      assertFalse(f.toString(), f.getRelation().equals(YAGO.extractionTechnique));
+      if (f.getRelation().equals(YAGO.extractionSource)) assertEquals("<http://example.org/other>", f.getObject());
+    }
+    File expanded = new File(dir, "expanded.tsv");
+    try (FactWriter w = FactWriter.from(expanded)) {
+      ProvenanceWriter.expand(theme, w);
+    }
+    assertEquals(sorted(all), sorted(FactSource.from(expanded)));
+  }
+}
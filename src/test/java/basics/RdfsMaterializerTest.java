@@ -0,0 +1,122 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the RdfsMaterializer against a naive fixpoint loop on random
+ * schemas and instances, also when the partitions have to be split.
+ */
+public class RdfsMaterializerTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("rdfsMaterializerTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** Applies the RDFS rules until nothing changes, returns the new facts */
+  private static Set<Fact> naive(List<Fact> schema, List<Fact> instances) {
+    Map<String, List<Fact>> rules = new HashMap<>();
+    for (Fact s : schema) {
+      rules.computeIfAbsent(s.getSubject(), k -> new ArrayList<>()).add(s);
+    }
+    Set<Fact> all = new HashSet<>(instances);
+    boolean changed = true;
+    while (changed) {
+      List<Fact> add = new ArrayList<>();
+      for (Fact f : all) {
+        for (Fact s : rules.getOrDefault(f.getRelation(), Collections.emptyList())) {
+          if (s.getRelation().equals(RDFS.subpropertyOf)) add.add(new Fact(f.getSubject(), s.getObject(), f.getObject()));
+          if (s.getRelation().equals(RDFS.domain)) add.add(new Fact(f.getSubject(), RDFS.type, s.getObject()));
+          if (s.getRelation().equals(RDFS.range) && !FactComponent.isLiteral(f.getObject())) add.add(new Fact(f.getObject(), RDFS.type, s.getObject()));
+        }
+        if (!f.getRelation().equals(RDFS.type)) continue;
+        for (Fact s : rules.getOrDefault(f.getObject(), Collections.emptyList())) {
+          if (s.getRelation().equals(RDFS.subclassOf)) add.add(new Fact(f.getSubject(), RDFS.type, s.getObject()));
+        }
+      }
+      changed = all.addAll(add);
+    }
+    all.removeAll(instances);
+    return (all);
+  }
+
+  private void check(long seed, int partitions, long memory) throws Exception {
+    Random random = new Random(seed);
+    int classes = 5 + random.nextInt(40), properties = 2 + random.nextInt(10);
+    List<Fact> schema = new ArrayList<>();
+    for (int c = 1; c < classes; c++) {
+      schema.add(new Fact("<C" + c + ">", RDFS.subclassOf, "<C" + random.nextInt(classes) + ">"));
+    }
+    for (int p = 0; p < properties; p++) {
+      if (random.nextBoolean()) schema.add(new Fact("<p" + p + ">", RDFS.subpropertyOf, "<p" + random.nextInt(properties) + ">"));
+      if (random.nextBoolean()) schema.add(new Fact("<p" + p + ">", RDFS.domain, "<C" + random.nextInt(classes) + ">"));
+      if (random.nextBoolean()) schema.add(new Fact("<p" + p + ">", RDFS.range, "<C" + random.nextInt(classes) + ">"));
+    }
+    List<Fact> instances = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      String subject = "<e" + random.nextInt(300) + ">";
+      if (random.nextInt(3) == 0) instances.add(new Fact(subject, RDFS.type, "<C" + random.nextInt(classes) + ">"));
+      else instances.add(new Fact(subject, "<p" + random.nextInt(properties) + ">",
+          random.nextInt(4) == 0 ? FactComponent.forString("lit") : "<e" + random.nextInt(300) + ">"));
+    }
+    File in = new File(dir, "in.tsv"), out = new File(dir, "out.tsv");
+    try (FactWriter w = FactWriter.from(in)) {
+      for (Fact f : instances) {
+        w.write(f);
+      }
+    }
+    long n;
+    try (FactWriter w = FactWriter.from(out)) {
+      n = new RdfsMaterializer(schema).setPartitions(partitions).setMemory(memory).materialize(FactSource.from(in), w, 4, dir);
+    }
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : FactSource.from(out)) {
+      result.add(f);
+    }
+    Set<Fact> expected = naive(schema, instances);
+    assertEquals(expected, new HashSet<>(result));
+    assertEquals(expected.size(), result.size());
+    assertEquals(expected.size(), n);
+    assertEquals(2, dir.list().length);
+  }
+
+  @Test
+  public void testRandom() throws Exception {
+    for (int seed = 0; seed < 10; seed++) {
+      check(seed, 7, Runtime.getRuntime().maxMemory() / 2);
+    }
+  }
+
+  @Test
+  public void testSplitPartitions() throws Exception {
+    for (int seed = 10; seed < 15; seed++) {
+      check(seed, 3, 4096);
+    }
+  }
+}
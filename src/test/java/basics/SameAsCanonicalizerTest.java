@@ -0,0 +1,181 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the classes of the SameAsCanonicalizer with the connected
+ * components of the links, and rewrites a theme in parallel.
+ */
+public class SameAsCanonicalizerTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("sameAsCanonicalizerTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /** Returns random links between YAGO entities, prefixed names and URIs */
+  private static List<Fact> links(Random random) {
+    String[] prefixes = { "<e", "dbp:e", "<http://www.wikidata.org/entity/Q" };
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < 6000; i++) {
+      String prefix = prefixes[random.nextInt(prefixes.length)];
+      String subject = prefix + random.nextInt(5000) + (prefix.startsWith("<") ? ">" : "");
+      result.add(new Fact(subject, RDFS.sameas, "<e" + random.nextInt(5000) + ">"));
+    }
+    return (result);
+  }
+
+  /** Returns the canonical entity of every linked entity, by a search of the components */
+  private static Map<String, String> naive(List<Fact> links) {
+    Map<String, Set<String>> neighbors = new HashMap<>();
+    for (Fact f : links) {
+      neighbors.computeIfAbsent(f.getSubject(), k -> new HashSet<>()).add(f.getObject());
+      neighbors.computeIfAbsent(f.getObject(), k -> new HashSet<>()).add(f.getSubject());
+    }
+    Map<String, String> result = new HashMap<>();
+    for (String start : neighbors.keySet()) {
+      if (result.containsKey(start)) continue;
+      List<String> component = new ArrayList<>();
+      Set<String> seen = new HashSet<>();
+      Deque<String> queue = new ArrayDeque<>();
+      queue.add(start);
+      seen.add(start);
+      while (!queue.isEmpty()) {
+        String e = queue.poll();
+        component.add(e);
+        for (String n : neighbors.get(e)) {
+          if (seen.add(n)) queue.add(n);
+        }
+      }
+      String best = Collections.min(component, SameAsCanonicalizer.YAGOFIRST);
+      for (String e : component) {
+        result.put(e, best);
+      }
+    }
+    return (result);
+  }
+
+  @Test
+  public void testClasses() {
+    Random random = new Random(11);
+    List<Fact> links = links(random);
+    Map<String, String> expected = naive(links);
+    SameAsCanonicalizer c = new SameAsCanonicalizer();
+    List<Fact> all = new ArrayList<>(links);
+    // Literals and other relations are no links
+    all.add(new Fact("<e1>", RDFS.sameas, FactComponent.forString("e2")));
+    all.add(new Fact("<e1>", "<linksTo>", "<e3>"));
+    assertEquals(links.size(), c.addLinks(all));
+    assertEquals(expected.size(), c.numEntities());
+    assertEquals(new HashSet<>(expected.values()).size(), c.numClasses());
+    for (Map.Entry<String, String> e : expected.entrySet()) {
+      assertEquals(e.getValue(), c.canonical(e.getKey()));
+      assertTrue(c.isSame(e.getKey(), e.getValue()));
+    }
+    assertEquals("<unlinked>", c.canonical("<unlinked>"));
+    assertTrue(c.isSame("<unlinked>", "<unlinked>"));
+    for (int i = 0; i < 1000; i++) {
+      String a = links.get(random.nextInt(links.size())).getSubject();
+      String b = links.get(random.nextInt(links.size())).getObject();
+      assertEquals(expected.get(a).equals(expected.get(b)), c.isSame(a, b));
+    }
+    // A later link merges two classes and changes the canonical entity
+    c.union("<a>", "dbp:a");
+    assertEquals("<a>", c.canonical("dbp:a"));
+    c.union("dbp:a", "<A>");
+    assertEquals("<A>", c.canonical("<a>"));
+    assertEquals(new HashSet<>(expected.values()).size() + 1, c.numClasses());
+    assertFalse(c.isSame("<a>", "<unlinked>"));
+  }
+
+  @Test
+  public void testPreference() {
+    SameAsCanonicalizer c = new SameAsCanonicalizer(String.CASE_INSENSITIVE_ORDER.reversed());
+    c.union("<a>", "<b>");
+    c.union("<c>", "<b>");
+    assertEquals("<c>", c.canonical("<a>"));
+    assertEquals(1, c.numClasses());
+  }
+
+  @Test
+  public void testRewrite() throws Exception {
+    Random random = new Random(13);
+    List<Fact> links = links(random);
+    Map<String, String> expected = naive(links);
+    SameAsCanonicalizer c = new SameAsCanonicalizer();
+    c.addLinks(links);
+    List<String> entities = new ArrayList<>(expected.keySet());
+    entities.add("<unlinked>");
+    File in = new File(dir, "in.tsv");
+    List<Fact> facts = new ArrayList<>();
+    // Segments, so that the threads read in parallel
+    try (FactWriter w = new SegmentedFactWriter(in, null, 0, 2000)) {
+      for (int i = 0; i < 20000; i++) {
+        String subject = entities.get(random.nextInt(entities.size()));
+        String object = random.nextBoolean() ? entities.get(random.nextInt(entities.size())) : FactComponent.forString("<e" + i + ">");
+        Fact f = new Fact(subject, "<rel>", object);
+        f.makeId();
+        w.write(f);
+        facts.add(f);
+      }
+      // The links are dropped
+      w.write(links.subList(0, 100));
+    }
+    Map<String, Fact> expectedFacts = new HashMap<>();
+    long changed = 0;
+    for (Fact f : facts) {
+      Fact g = new Fact(f.getId(), expected.getOrDefault(f.getSubject(), f.getSubject()), f.getRelation(),
+          FactComponent.isLiteral(f.getObject()) ? f.getObject() : expected.getOrDefault(f.getObject(), f.getObject()));
+      if (!g.getSubject().equals(f.getSubject()) || !g.getObject().equals(f.getObject())) changed++;
+      expectedFacts.put(f.getId(), g);
+      assertEquals(g, c.rewrite(f));
+    }
+    Fact unchanged = new Fact("<unlinked>", "<rel>", FactComponent.forString("x"));
+    assertSame(unchanged, c.rewrite(unchanged));
+    FactSource source = FactSource.from(SegmentedFactWriter.manifestFor(in));
+    assertTrue(source.segments().size() > 1);
+    for (int threads : new int[] { 1, 4 }) {
+      File out = new File(dir, "out" + threads + ".tsv");
+      try (FactWriter w = FactWriter.from(out)) {
+        assertEquals(changed, c.rewrite(source, w, threads));
+      }
+      int n = 0;
+      for (Fact f : FactSource.from(out)) {
+        assertEquals(expectedFacts.get(f.getId()), f);
+        n++;
+      }
+      assertEquals(facts.size(), n);
+    }
+  }
+}
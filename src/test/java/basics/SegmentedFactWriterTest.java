@@ -0,0 +1,172 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes themes with SegmentedFactWriter, checks the roll-over limits, the
+ * manifest and the gloss, and reads the theme back through the manifest.
+ */
+public class SegmentedFactWriterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("segmentedFactWriterTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  private static List<Fact> facts(int n) {
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Fact f = new Fact("<e" + i + ">", "<r" + (i % 5) + ">", i % 4 == 0 ? FactComponent.forString("label " + i) : "<o" + (i % 30) + ">");
+      f.makeId();
+      result.add(f);
+    }
+    return (result);
+  }
+
+  private static List<Fact> read(FactSource source) {
+    List<Fact> result = new ArrayList<>();
+    for (Fact f : source) {
+      result.add(f);
+    }
+    return (result);
+  }
+
+  /** Writes the facts, checks the manifest and the segments, returns the segments */
+  private List<SegmentedFactWriter.Segment> writeAndCheck(String name, List<Fact> facts, long maxBytes, long maxFacts) throws Exception {
+    File theme = new File(dir, name);
+    SegmentedFactWriter w = new SegmentedFactWriter(theme, "The header", maxBytes, maxFacts);
+    w.indexIds();
+    try (FactWriter x = w) {
+      x.write(facts.subList(0, facts.size() / 2));
+      for (Fact f : facts.subList(facts.size() / 2, facts.size())) {
+        x.write(f);
+      }
+    }
+    File manifest = SegmentedFactWriter.manifestFor(theme);
+    assertTrue(manifest.exists());
+    List<SegmentedFactWriter.Segment> segments = SegmentedFactWriter.readManifest(manifest);
+    assertEquals(w.segments().size(), segments.size());
+    long offset = 0;
+    long numFacts = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      SegmentedFactWriter.Segment s = segments.get(i);
+      assertEquals(w.segments().get(i).toTsvLine(), s.toTsvLine());
+      File file = new File(dir, s.name);
+      assertEquals(name.replace(".", String.format("-%05d.", i)), s.name);
+      assertEquals(file.length(), s.bytes);
+      assertEquals(offset, s.offset);
+      offset += s.bytes;
+      numFacts += s.facts;
+    }
+    assertEquals(facts.size(), numFacts);
+    assertEquals(offset, w.bytesWritten());
+    // Read back through the manifest, the gloss comes once at the start
+    FactSource source = FactSource.from(manifest);
+    List<Fact> expected = new ArrayList<>();
+    expected.add(FactWriter.themeGloss(FactWriter.themeName(theme), "The header"));
+    expected.addAll(facts);
+    assertEquals(expected, read(source));
+    List<FactSource> parts = source.segments();
+    assertEquals(segments.size(), parts.size());
+    for (int i = 0; i < parts.size(); i++) {
+      List<Fact> part = read(parts.get(i));
+      assertEquals(segments.get(i).facts + (i == 0 ? 1 : 0), part.size());
+      for (int j = 0; j < part.size(); j++) {
+        assertEquals(i == 0 && j == 0, part.get(j).getRelation().equals(YAGO.hasGloss));
+      }
+    }
+    List<Fact> parallel = Collections.synchronizedList(new ArrayList<>());
+    source.parallelForEach(parallel::add, 4);
+    assertEquals(expected.size(), parallel.size());
+    assertTrue(parallel.containsAll(expected));
+    // Every segment has an IdIndex
+    assertTrue(source.hasIdIndex());
+    for (int i = 0; i < facts.size(); i += 97) {
+      assertEquals(facts.get(i), source.getFactById(facts.get(i).getId()));
+    }
+    assertNull(source.getFactById("<id_unknown>"));
+    return (segments);
+  }
+
+  @Test
+  public void testFactLimit() throws Exception {
+    for (String name : new String[] { "theme.ttl", "theme.tsv" }) {
+      // Not a multiple of the limit
+      List<SegmentedFactWriter.Segment> segments = writeAndCheck(name, facts(1050), 0, 100);
+      assertEquals(11, segments.size());
+      for (int i = 0; i < 10; i++) {
+        assertEquals(100, segments.get(i).facts);
+      }
+      assertEquals(50, segments.get(10).facts);
+      // A multiple of the limit does not leave an empty segment
+      tearDown();
+      setUp();
+      segments = writeAndCheck(name, facts(1000), 0, 100);
+      assertEquals(10, segments.size());
+      assertEquals(100, segments.get(9).facts);
+    }
+  }
+
+  @Test
+  public void testByteLimit() throws Exception {
+    List<Fact> facts = facts(800);
+    for (String name : new String[] { "theme.ttl", "theme.tsv" }) {
+      long maxBytes = 4000;
+      List<SegmentedFactWriter.Segment> segments = writeAndCheck(name, facts, maxBytes, 0);
+      assertTrue(segments.size() > 5);
+      // Each full segment stops with the first fact that reaches the limit
+      long maxFact = 200;
+      for (int i = 0; i < segments.size() - 1; i++) {
+        assertTrue(segments.get(i).bytes >= maxBytes);
+        assertTrue(segments.get(i).bytes < maxBytes + maxFact);
+      }
+      assertTrue(segments.get(segments.size() - 1).bytes < maxBytes + maxFact);
+      tearDown();
+      setUp();
+    }
+  }
+
+  @Test
+  public void testBothLimits() throws Exception {
+    // The fact limit applies to short facts, the byte limit to long ones
+    List<Fact> facts = facts(300);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 6000; i++) {
+      text.append('x');
+    }
+    for (int i = 0; i < 10; i++) {
+      Fact f = new Fact("<long" + i + ">", "<r>", FactComponent.forString(text.toString()));
+      f.makeId();
+      facts.add(f);
+    }
+    List<SegmentedFactWriter.Segment> segments = writeAndCheck("theme.tsv", facts, 20000, 100);
+    assertEquals(6, segments.size());
+    long[] expected = { 100, 100, 100, 4, 4, 2 };
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], segments.get(i).facts);
+    }
+  }
+}
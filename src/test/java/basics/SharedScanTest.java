@@ -0,0 +1,119 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a SharedScan with queues of one batch, and checks that every consumer
+ * sees every fact exactly once, also if another consumer fails.
+ */
+public class SharedScanTest {
+
+  private File file;
+
+  private final List<Fact> facts = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("sharedScanTest", ".tsv");
+    try (FactWriter w = new TsvWriter(file)) {
+      // Not a multiple of the batch size
+      for (int i = 0; i < 10 * SharedScan.BATCHSIZE + 123; i++) {
+        Fact f = new Fact("<s" + i + ">", "<r" + (i % 3) + ">", "<o" + (i % 50) + ">");
+        w.write(f);
+        facts.add(f);
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  /** Returns a consumer that counts how often it sees each fact */
+  private static SharedScan register(SharedScan scan, Map<String, Integer> seen) {
+    return (scan.register(f -> seen.merge(f.toString(), 1, Integer::sum)));
+  }
+
+  /** Checks that every fact was seen exactly once */
+  private void check(Map<String, Integer> seen) {
+    assertEquals(facts.size(), seen.size());
+    for (Fact f : facts) {
+      assertEquals(f.toString(), Integer.valueOf(1), seen.get(f.toString()));
+    }
+  }
+
+  @Test
+  public void testAllConsumers() throws Exception {
+    List<Map<String, Integer>> seen = new ArrayList<>();
+    SharedScan scan = new SharedScan(FactSource.from(file)).setCapacity(1);
+    for (int i = 0; i < 3; i++) {
+      seen.add(new HashMap<>());
+      register(scan, seen.get(i));
+    }
+    // A slow consumer that gets the batches
+    Map<String, Integer> batches = new HashMap<>();
+    seen.add(batches);
+    scan.registerBatches(batch -> {
+      for (Fact f : batch) {
+        batches.merge(f.toString(), 1, Integer::sum);
+      }
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertEquals(facts.size(), scan.run());
+    for (Map<String, Integer> s : seen) {
+      check(s);
+    }
+    // A second run starts from scratch
+    for (Map<String, Integer> s : seen) {
+      s.clear();
+    }
+    assertEquals(facts.size(), scan.run());
+    for (Map<String, Integer> s : seen) {
+      check(s);
+    }
+  }
+
+  @Test
+  public void testFailingConsumer() throws Exception {
+    for (int failAt : new int[] { 0, 5000, facts.size() - 1 }) {
+      Map<String, Integer> before = new HashMap<>();
+      Map<String, Integer> after = new HashMap<>();
+      int[] calls = new int[1];
+      SharedScan scan = new SharedScan(FactSource.from(file)).setCapacity(1);
+      register(scan, before);
+      scan.register(f -> {
+        if (calls[0]++ == failAt) throw new IllegalStateException("failed at " + failAt);
+      });
+      register(scan, after);
+      try {
+        scan.run();
+        fail("The failing consumer must make the scan fail");
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("failed at " + failAt, e.getCause().getMessage());
+      }
+      // The failing consumer gets no more batches, the others get all facts
+      assertEquals(failAt + 1, calls[0]);
+      check(before);
+      check(after);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Checks the Taxonomy against a naive search, also on hierarchies with
+ * cycles.
+ */
+public class TaxonomyTest {
+
+  private static Fact sub(String c, String d) {
+    return (new Fact(c, RDFS.subclassOf, d));
+  }
+
+  private static List<String> sorted(List<String> list) {
+    List<String> result = new ArrayList<>(list);
+    Collections.sort(result);
+    return (result);
+  }
+
+  @Test
+  public void testCycle() {
+    Taxonomy t = new Taxonomy(Arrays.asList(sub("<A>", "<B>"), sub("<B>", "<A>"), sub("<B>", "<C>"), sub("<D>", "<A>"), sub("<E>", "<E>"),
+        new Fact("<x>", RDFS.type, "<D>"), new Fact("<y>", RDFS.type, "<B>")));
+    assertEquals(Arrays.asList("<B>", "<C>"), sorted(t.superclasses("<A>")));
+    assertEquals(Arrays.asList("<A>", "<C>"), sorted(t.superclasses("<B>")));
+    assertEquals(Arrays.asList("<B>", "<D>"), sorted(t.subclasses("<A>")));
+    assertEquals(Arrays.asList("<x>", "<y>"), sorted(t.instancesOf("<A>")));
+    assertTrue(t.isSubclassOf("<B>", "<A>"));
+    assertTrue(t.isSubclassOf("<D>", "<C>"));
+    assertEquals(t.depth("<A>"), t.depth("<B>"));
+    assertEquals(t.depth("<A>") + 1, t.depth("<D>"));
+    assertEquals(Collections.emptyList(), t.subclasses("<E>"));
+    assertEquals(Collections.emptyList(), t.superclasses("<E>"));
+  }
+
+  @Test
+  public void testRandomHierarchies() {
+    Random random = new Random(42);
+    for (int round = 0; round < 50; round++) {
+      int n = 2 + random.nextInt(30);
+      boolean[][] parent = new boolean[n][n];
+      List<Fact> facts = new ArrayList<>();
+      for (int e = random.nextInt(2 * n); e >= 0; e--) {
+        int c = random.nextInt(n), d = random.nextInt(n);
+        parent[c][d] = true;
+        facts.add(sub("<c" + c + ">", "<c" + d + ">"));
+      }
+      Taxonomy t = new Taxonomy(facts);
+      for (int c = 0; c < n; c++) {
+        if (!t.isClass("<c" + c + ">")) continue;
+        // Naive search for the superclasses
+        boolean[] reached = new boolean[n];
+        List<Integer> todo = new ArrayList<>(Arrays.asList(c));
+        while (!todo.isEmpty()) {
+          int x = todo.remove(todo.size() - 1);
+          for (int d = 0; d < n; d++) {
+            if (parent[x][d] && !reached[d]) {
+              reached[d] = true;
+              todo.add(d);
+            }
+          }
+        }
+        TreeSet<String> expectedSuper = new TreeSet<>(), expectedSub = new TreeSet<>();
+        for (int d = 0; d < n; d++) {
+          if (d != c && reached[d]) expectedSuper.add("<c" + d + ">");
+        }
+        for (int d = 0; d < n; d++) {
+          if (d != c && t.isClass("<c" + d + ">") && t.isSubclassOf("<c" + d + ">", "<c" + c + ">")) expectedSub.add("<c" + d + ">");
+        }
+        assertEquals(new ArrayList<>(expectedSuper), sorted(t.superclasses("<c" + c + ">")));
+        assertEquals(new ArrayList<>(expectedSub), sorted(t.subclasses("<c" + c + ">")));
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the queries of the TemporalIndex with a naive scan, on dates with
+ * negative years and with # in the year, month and day. Checks that the
+ * facts keep their ids.
+ */
+public class TemporalIndexTest {
+
+  private static final String BORN = "<wasBornOnDate>", DIED = "<diedOnDate>";
+
+  /** Returns a random date string, with # at some level */
+  private static String date(Random random) {
+    int year = (random.nextInt(4) == 0 ? -1 : 1) * (1000 + random.nextInt(1100));
+    String result = String.valueOf(Math.abs(year));
+    int level = random.nextInt(7);
+    if (level > 3) result = result.substring(0, 4 - (level - 3)) + "####".substring(0, level - 3);
+    result = (year < 0 ? "-" : "") + result;
+    if (level >= 3) return (result + "-##-##");
+    String month = String.format("%02d", 1 + random.nextInt(12));
+    if (level == 2) return (result + "-##-##");
+    if (level == 1) return (result + "-" + month + "-##");
+    return (result + "-" + month + "-" + String.format("%02d", 1 + random.nextInt(28)));
+  }
+
+  /** Returns yyyymmdd of the first (or last) day of a date string, computed on the string */
+  private static long naive(String date, boolean last) {
+    boolean negative = date.startsWith("-");
+    String[] parts = (negative ? date.substring(1) : date).split("-");
+    // Negative years count backwards: -19## is -1999 to -1900
+    long year = Long.parseLong(parts[0].replace('#', last == negative ? '0' : '9'));
+    if (negative) year = -year;
+    int month = parts[1].equals("##") ? (last ? 12 : 1) : Integer.parseInt(parts[1]);
+    int day = parts[2].equals("##") ? (last ? 31 : 1) : Integer.parseInt(parts[2]);
+    return (year * 10000 + month * 100 + day);
+  }
+
+  private static List<String> sorted(List<Fact> facts) {
+    List<String> result = new ArrayList<>();
+    for (Fact f : facts) {
+      result.add(f.toString());
+    }
+    result.sort(null);
+    return (result);
+  }
+
+  @Test
+  public void testIntervals() {
+    assertEquals(19350101, TemporalIndex.start("1935-01-##"));
+    assertEquals(19350131, TemporalIndex.end("1935-01-##"));
+    assertEquals(19000101, TemporalIndex.start("19##-##-##"));
+    assertEquals(19991231, TemporalIndex.end("19##-##-##"));
+    assertEquals(-1999 * 10000 + 101, TemporalIndex.start("-19##-##-##"));
+    assertEquals(-1900 * 10000 + 1231, TemporalIndex.end("-19##-##-##"));
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      String date = date(random);
+      assertEquals(date, naive(date, false), TemporalIndex.start(date));
+      assertEquals(date, naive(date, true), TemporalIndex.end(date));
+    }
+  }
+
+  @Test
+  public void testQueries() {
+    Random random = new Random(2);
+    List<Fact> facts = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      Fact f = new Fact("<e" + i + ">", random.nextBoolean() ? BORN : DIED, FactComponent.forDate(date(random)));
+      if (random.nextBoolean()) f.makeId();
+      facts.add(f);
+    }
+    facts.add(new Fact("<other>", "<hasGloss>", FactComponent.forDate("1935-01-08")));
+    facts.add(new Fact("<nodate>", BORN, FactComponent.forString("yesterday")));
+    TemporalIndex index = new TemporalIndex(facts, BORN, DIED);
+    assertEquals(3000, index.size());
+    for (int q = 0; q < 300; q++) {
+      String a = date(random), b = date(random);
+      long from = Math.min(naive(a, false), naive(b, false)), to = Math.max(naive(a, true), naive(b, true));
+      String relation = q % 3 == 0 ? null : q % 3 == 1 ? BORN : DIED;
+      List<Fact> overlapping = new ArrayList<>(), within = new ArrayList<>();
+      for (Fact f : facts.subList(0, 3000)) {
+        if (relation != null && !relation.equals(f.getRelation())) continue;
+        String date = f.getObjectAsJavaString();
+        long start = naive(date, false), end = naive(date, true);
+        if (start <= to && end >= from) overlapping.add(f);
+        if (start >= from && end <= to) within.add(f);
+      }
+      assertEquals(sorted(overlapping), sorted(index.overlapping(relation, from, to)));
+      assertEquals(sorted(within), sorted(index.within(relation, from, to)));
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the HyperLogLog and CountMinSketch estimates against exact counts,
+ * merges partial ThemeStatistics, and reads back the .stats file that a
+ * StatisticsWriter writes.
+ */
+public class ThemeStatisticsTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("themeStatisticsTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testHyperLogLog() {
+    for (int n : new int[] { 0, 1, 10, 100, 1000, 10000, 100000, 1000000 }) {
+      HyperLogLog hll = new HyperLogLog();
+      HyperLogLog half1 = new HyperLogLog();
+      HyperLogLog half2 = new HyperLogLog();
+      for (int i = 0; i < n; i++) {
+        // Every string twice: duplicates must not count
+        String s = "<e" + i + ">";
+        hll.add(s);
+        hll.add(s);
+        (i % 2 == 0 ? half1 : half2).add(s);
+      }
+      long estimate = hll.estimate();
+      if (n <= 100) assertEquals("n=" + n, n, estimate);
+      else assertTrue("n=" + n + " estimate=" + estimate, Math.abs(estimate - n) <= n * 0.03);
+      half1.merge(half2);
+      assertEquals(estimate, half1.estimate());
+    }
+    HyperLogLog small = new HyperLogLog(4);
+    for (int i = 0; i < 1000; i++) {
+      small.add("<e" + i + ">");
+    }
+    // 16 registers give a rough estimate only
+    assertTrue(small.estimate() > 300 && small.estimate() < 3000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHyperLogLogMergeBits() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+  @Test
+  public void testCountMinSketch() {
+    Random random = new Random(3);
+    CountMinSketch cms = new CountMinSketch(4, 256);
+    CountMinSketch half1 = new CountMinSketch(4, 256);
+    CountMinSketch half2 = new CountMinSketch(4, 256);
+    Map<String, Long> counts = new HashMap<>();
+    long total = 0;
+    for (int i = 0; i < 50000; i++) {
+      // Skewed keys, so that many keys collide with frequent ones
+      String key = "<k" + (int) Math.pow(random.nextInt(1000), 2) / 1000 + ">";
+      long count = random.nextInt(5) == 0 ? 1 + random.nextInt(10) : 1;
+      if (count == 1) cms.add(key);
+      else cms.add(key, count);
+      (i % 2 == 0 ? half1 : half2).add(key, count);
+      counts.merge(key, count, Long::sum);
+      total += count;
+    }
+    assertEquals(total, cms.total());
+    for (Map.Entry<String, Long> e : counts.entrySet()) {
+      assertTrue(e.getKey(), cms.estimate(e.getKey()) >= e.getValue());
+    }
+    assertEquals(0, new CountMinSketch().estimate("<k0>"));
+    half1.merge(half2);
+    assertEquals(total, half1.total());
+    for (String key : counts.keySet()) {
+      assertEquals(cms.estimate(key), half1.estimate(key));
+    }
+  }
+
+  private static List<Fact> facts() {
+    Random random = new Random(5);
+    List<Fact> result = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      String subject = "<e" + random.nextInt(3000) + ">";
+      switch (random.nextInt(4)) {
+        case 0:
+          result.add(new Fact(subject, "rdf:type", "<c" + random.nextInt(20) + ">"));
+          break;
+        case 1:
+          result.add(new Fact(subject, "rdfs:label", FactComponent.forStringWithLanguage("label " + random.nextInt(5000), random.nextBoolean() ? "eng" : "deu")));
+          break;
+        case 2:
+          result.add(new Fact(subject, "<hasNumber>", FactComponent.forNumber(random.nextInt(100))));
+          break;
+        default:
+          result.add(new Fact(subject, "<linksTo>", "<e" + random.nextInt(3000) + ">"));
+      }
+    }
+    return (result);
+  }
+
+  /** Checks that the statistics match the exact counts of the facts */
+  private static void check(List<Fact> facts, ThemeStatistics stats) {
+    assertEquals(facts.size(), stats.facts());
+    Map<String, Long> perRelation = new HashMap<>();
+    Map<String, Long> literals = new HashMap<>();
+    Map<String, Long> perObject = new HashMap<>();
+    long bytes = 0;
+    for (Fact f : facts) {
+      perRelation.merge(f.getRelation(), 1L, Long::sum);
+      if (FactComponent.isLiteral(f.getObject())) literals.merge(f.getRelation(), 1L, Long::sum);
+      perObject.merge(f.getRelation() + "\t" + f.getObject(), 1L, Long::sum);
+      bytes += ThemeStatistics.utf8Length(f.getId()) + ThemeStatistics.utf8Length(f.getSubject()) + ThemeStatistics.utf8Length(f.getRelation()) + ThemeStatistics.utf8Length(f.getObject()) + 4;
+    }
+    assertEquals(bytes, stats.bytes());
+    assertEquals(perRelation.keySet(), stats.relations().keySet());
+    for (Map.Entry<String, Long> e : perRelation.entrySet()) {
+      ThemeStatistics.RelationStatistics r = stats.relation(e.getKey());
+      assertEquals(e.getValue().longValue(), r.facts());
+      assertEquals(literals.getOrDefault(e.getKey(), 0L).longValue(), r.literals());
+    }
+    for (Map.Entry<String, Long> e : perObject.entrySet()) {
+      String[] key = e.getKey().split("\t");
+      assertTrue(stats.objectFrequency(key[0], key[1]) >= e.getValue());
+    }
+    assertNull(stats.relation("<unknown>"));
+    assertEquals(2, stats.languages().size());
+    assertEquals(perRelation.get("rdfs:label"), Long.valueOf(stats.languages().get("eng") + stats.languages().get("deu")));
+    assertEquals(perRelation.get("<hasNumber>"), stats.datatypes().values().iterator().next());
+  }
+
+  /** Asserts that two statistics are equal */
+  private static void assertEqualStatistics(ThemeStatistics expected, ThemeStatistics actual) {
+    assertEquals(expected.toString(), actual.toString());
+    for (String relation : expected.relations().keySet()) {
+      ThemeStatistics.RelationStatistics e = expected.relation(relation);
+      ThemeStatistics.RelationStatistics a = actual.relation(relation);
+      assertEquals(e.bytes(), a.bytes());
+      assertEquals(e.distinctSubjects(), a.distinctSubjects());
+      assertEquals(e.distinctObjects(), a.distinctObjects());
+    }
+    assertEquals(expected.datatypes(), actual.datatypes());
+    assertEquals(expected.languages(), actual.languages());
+  }
+
+  @Test
+  public void testMerge() {
+    List<Fact> facts = facts();
+    ThemeStatistics all = new ThemeStatistics();
+    ThemeStatistics part1 = new ThemeStatistics();
+    ThemeStatistics part2 = new ThemeStatistics();
+    for (int i = 0; i < facts.size(); i++) {
+      all.add(facts.get(i));
+      (i < facts.size() / 3 ? part1 : part2).add(facts.get(i));
+    }
+    check(facts, all);
+    part1.merge(part2);
+    assertEqualStatistics(all, part1);
+    for (Fact f : facts) {
+      assertEquals(all.objectFrequency(f.getRelation(), f.getObject()), part1.objectFrequency(f.getRelation(), f.getObject()));
+    }
+  }
+
+  @Test
+  public void testStatisticsWriter() throws Exception {
+    List<Fact> facts = facts();
+    File theme = new File(dir, "theme.tsv");
+    assertNull(ThemeStatistics.of(theme));
+    ThemeStatistics collected;
+    try (StatisticsWriter w = new StatisticsWriter(FactWriter.from(theme))) {
+      w.write(facts.subList(0, 100));
+      for (Fact f : facts.subList(100, 1000)) {
+        w.write(f);
+      }
+      Fact[] batch = facts.subList(1000, facts.size()).toArray(new Fact[0]);
+      w.write(batch, 0, batch.length);
+      collected = w.getStatistics();
+    }
+    check(facts, collected);
+    ThemeStatistics read = ThemeStatistics.of(theme);
+    assertNotNull(read);
+    assertEqualStatistics(collected, read);
+    for (Fact f : facts) {
+      assertEquals(collected.objectFrequency(f.getRelation(), f.getObject()), read.objectFrequency(f.getRelation(), f.getObject()));
+    }
+    // The statistics of the written theme are the same
+    ThemeStatistics fromTheme = new ThemeStatistics();
+    for (Fact f : FactSource.from(theme)) {
+      fromTheme.add(f);
+    }
+    assertEqualStatistics(collected, fromTheme);
+  }
+}
@@ -0,0 +1,100 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Checks that the Transcoder produces the same output as a conversion
+ * through N4Reader/TsvReader and Fact objects.
+ */
+public class TranscoderTest {
+
+  private static final String RESOURCESPATH = "src/test/resources/" + N4Reader.class.getName();
+
+  /** Converts TTL to TSV through Fact objects */
+  private static String parseTtl(String ttl, boolean withValue) throws IOException {
+    StringBuilder result = new StringBuilder();
+    N4Reader reader = new N4Reader(new StringReader(ttl));
+    while (reader.hasNext()) {
+      result.append(reader.next().toTsvLine(withValue));
+    }
+    return (result.toString());
+  }
+
+  /** Converts TTL to TSV with the transcoder */
+  private static String transcodeTtl(String ttl, boolean withValue) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Transcoder(new ByteArrayInputStream(ttl.getBytes(StandardCharsets.UTF_8)), out).ttlToTsv(withValue);
+    return (new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testConformanceFiles() throws IOException {
+    for (File f : new File(RESOURCESPATH + "/input").listFiles()) {
+      String ttl = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+      assertEquals(f.getName(), parseTtl(ttl, true), transcodeTtl(ttl, true));
+    }
+  }
+
+  @Test
+  public void testYagoLines() throws IOException {
+    String ttl = N4Writer.preamble(null, FactComponent.YAGONAMESPACE, null) + "@prefix ex: <http://example.org/> .\n" //
+        + "#@ <id_1>\n<Elvis>\trdf:type\t<person> .\n" //
+        + "<Elvis>\t<hasName>\t\"Elvis \\\"the King\\\"\"@eng .\n" //
+        + "<Elvis>\t<hasName>\t\"Elvis\\\\n\"@en-US .\n" //
+        + "<Elvis>\t<hasGloss>\t\"a\\nb\" .\n" //
+        + "<Elvis>\t<hasWebsite>\t<http://elvis.com/> .\n" //
+        + "<Elvis>\t<sameAs>\t<http://yago-knowledge.org/resource/Elvis2> .\n" //
+        + "<Elvis>\t<x>\tex:foo .\n" //
+        + "<Elvis>\t<born>\t\"1935-01-##\"^^xsd:date .\n" //
+        + "<Elvis>\t<born>\t\"1935-01-08\"^^xsd:string .\n" //
+        + "<Elvis>\t<n>\t42 .\n" //
+        + "<Elvis> a <person> ;\n  <likes> <music>, <cars> .\n" //
+        + "<Elvis>\t<c>\t\"\"\"multi\nline\"\"\" .\n" //
+        + "#@ <id_2>\n<Elvis>\t<w>\t\"1.5\"^^<degrees> .\n";
+    assertEquals(parseTtl(ttl, true), transcodeTtl(ttl, true));
+    assertEquals(parseTtl(ttl, false), transcodeTtl(ttl, false));
+  }
+
+  @Test
+  public void testOtherBase() throws IOException {
+    StringBuilder ttl = new StringBuilder(N4Writer.preamble(null, FactComponent.YAGONAMESPACE, null));
+    ttl.append("<Elvis>\trdf:type\t<person> .\n");
+    ttl.append("#@ <id_1>\n@base <http://example.org/> .\n");
+    for (int i = 0; i < 1000; i++) {
+      ttl.append("<e").append(i).append(">\t<likes>\t\"").append(i).append("\"@en .\n");
+      if (i % 100 == 0) ttl.append("@prefix p").append(i).append(": <http://example.org/p").append(i).append("/> .\n");
+    }
+    ttl.append("<last> p900:x <music> .");
+    assertEquals(parseTtl(ttl.toString(), true), transcodeTtl(ttl.toString(), true));
+  }
+
+  @Test
+  public void testTsvToTtl() throws IOException {
+    String tsv = "<id_1>\t<Elvis>\trdf:type\t<person>\t\n" //
+        + "\t<Elvis>\t<born>\t\"1935-01-08\"^^xsd:date\t1935.0108\n" //
+        + "null\t<Elvis>\t<n>\t\"a\"@eng\n" //
+        + "<Elvis>\t<likes>\t<music>\n" //
+        + "<Elvis>\t<cars>\n" //
+        + "// comment\n\n" //
+        + "a\tb\tc\td\te\tf\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Transcoder(new ByteArrayInputStream(tsv.getBytes(StandardCharsets.UTF_8)), out).tsvToTtl();
+    String ttl = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    StringBuilder expected = new StringBuilder();
+    for (String line : tsv.split("\n")) {
+      Fact f = TsvReader.parseLine(line);
+      if (f != null) expected.append(f.toTsvLine());
+    }
+    assertEquals(expected.toString(), parseTtl(ttl, false));
+  }
+}
@@ -0,0 +1,53 @@
+package basics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks the decoding of numbers and dates.
+ */
+public class TypedLiteralsTest {
+
+  @Test
+  public void testScannersMatchPatterns() {
+    for (String s : new String[] { "1", "-1", "+1.5", "1.", ".5", "1e5", "1E-5", "1e+5", "1.5e", "", "-", "1935-01-08", "-500-##-##", "19##-1-1",
+        "1935-01", "1935--01", "a-b-c", "1935-01-08-" }) {
+      assertEquals(s, FactComponent.FLOATPATTERN.matcher(s).matches(), TypedLiterals.isFloat(s));
+      assertEquals(s, FactComponent.DATEPATTERN.matcher(s).matches(), TypedLiterals.isDate(s));
+    }
+  }
+
+  @Test
+  public void testDates() {
+    for (String s : new String[] { "1935-01-08", "1935-01-##", "19##-##-##", "-0500-03-01" }) {
+      assertEquals(s, TypedLiterals.formatDate(TypedLiterals.parseDate(s)));
+    }
+    assertEquals(TypedLiterals.NODATE, TypedLiterals.parseDate("1#35-01-01"));
+    assertTrue(TypedLiterals.parseDate("1935-01-08") < TypedLiterals.parseDate("1935-02-01"));
+    assertTrue(TypedLiterals.parseDate("-0500-01-01") < TypedLiterals.parseDate("0010-01-01"));
+    long date = TypedLiterals.parseDate("1935-01-##");
+    assertEquals(1935, TypedLiterals.year(date));
+    assertEquals(1, TypedLiterals.month(date));
+    assertEquals(-1, TypedLiterals.day(date));
+  }
+
+  @Test
+  public void testFactAccessors() {
+    Fact date = new Fact("<Elvis>", "<wasBornOnDate>", FactComponent.forDate("1935-01-##"));
+    assertEquals("1935.0100", date.getValue());
+    assertEquals(1935.01, date.getDoubleValue(), 0);
+    assertEquals(TypedLiterals.parseDate("1935-01-##"), date.getDateValue());
+    Fact number = new Fact("<Elvis>", "<hasNumber>", FactComponent.forNumber(42));
+    assertEquals(42, number.getLongValue());
+    assertEquals(42.0, number.getDoubleValue(), 0);
+    Fact string = new Fact("<Elvis>", "<hasName>", FactComponent.forString("Elvis"));
+    assertTrue(Double.isNaN(string.getDoubleValue()));
+    assertEquals(TypedLiterals.NOLONG, string.getLongValue());
+    assertFalse(Double.isNaN(TypedLiterals.doubleValues(Arrays.asList(date, number))[1]));
+  }
+}